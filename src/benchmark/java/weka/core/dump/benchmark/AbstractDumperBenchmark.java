@@ -0,0 +1,116 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AbstractDumperBenchmark.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.core.dump.AbstractDumper;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ancestor for benchmarks that measure the overhead of the dumpers within
+ * one of the integration points. The "none" dumper measures the wrapped
+ * scheme without the integration point. Allocation rates are obtained by
+ * running JMH with "-prof gc" (the default of the benchmark profile).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class AbstractDumperBenchmark {
+
+  /** the number of rows. */
+  @Param({"1000", "10000"})
+  public int rows;
+
+  /** the number of attributes (excluding the class). */
+  @Param({"10", "100"})
+  public int attributes;
+
+  /** the layout of the data. */
+  @Param({BenchmarkData.LAYOUT_DENSE, BenchmarkData.LAYOUT_SPARSE})
+  public String layout;
+
+  /** the type of attributes. */
+  @Param({BenchmarkData.TYPE_NUMERIC, BenchmarkData.TYPE_NOMINAL})
+  public String type;
+
+  /** the dumper to use. */
+  @Param({
+    BenchmarkData.DUMPER_NONE,
+    BenchmarkData.DUMPER_NULL,
+    BenchmarkData.DUMPER_INMEMORY,
+    BenchmarkData.DUMPER_ARFF,
+    BenchmarkData.DUMPER_CSV,
+    BenchmarkData.DUMPER_SERIALIZED})
+  public String dumper;
+
+  /** the generated data. */
+  protected Instances m_Data;
+
+  /** the directory for output files. */
+  protected File m_OutputDir;
+
+  /**
+   * Generates the data and configures the scheme.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    m_Data      = BenchmarkData.generate(rows, attributes, layout, type, 42);
+    m_OutputDir = BenchmarkData.createTempDir();
+    configure(BenchmarkData.createDumper(dumper, m_OutputDir));
+  }
+
+  /**
+   * Configures the scheme to benchmark.
+   *
+   * @param dumper	the dumper to use, null for the unwrapped scheme
+   * @throws Exception	if configuration fails
+   */
+  protected abstract void configure(AbstractDumper dumper) throws Exception;
+
+  /**
+   * Removes the output files.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.deleteDir(m_OutputDir);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BenchmarkData.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump.benchmark;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.dump.AbstractDumper;
+import weka.core.dump.InMemory;
+import weka.core.dump.Null;
+import weka.core.dump.SaveToDisk;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic datasets and dumpers for the benchmarks.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class BenchmarkData {
+
+  /** the dense layout. */
+  public static final String LAYOUT_DENSE = "dense";
+
+  /** the sparse layout. */
+  public static final String LAYOUT_SPARSE = "sparse";
+
+  /** numeric attributes. */
+  public static final String TYPE_NUMERIC = "numeric";
+
+  /** nominal attributes. */
+  public static final String TYPE_NOMINAL = "nominal";
+
+  /** no dumper, i.e., the unwrapped scheme. */
+  public static final String DUMPER_NONE = "none";
+
+  /** the Null dumper. */
+  public static final String DUMPER_NULL = "Null";
+
+  /** the InMemory dumper. */
+  public static final String DUMPER_INMEMORY = "InMemory";
+
+  /** SaveToDisk writing ARFF. */
+  public static final String DUMPER_ARFF = "arff";
+
+  /** SaveToDisk writing CSV. */
+  public static final String DUMPER_CSV = "csv";
+
+  /** SaveToDisk writing serialized instances. */
+  public static final String DUMPER_SERIALIZED = "serialized";
+
+  /** the fraction of non-zero values in sparse datasets. */
+  public static final double SPARSE_DENSITY = 0.1;
+
+  /** the number of labels of nominal attributes (including the class). */
+  public static final int NUM_LABELS = 3;
+
+  /**
+   * Generates a dataset with a nominal class attribute as last attribute.
+   *
+   * @param rows	the number of rows
+   * @param attributes	the number of attributes (excluding the class)
+   * @param layout	the layout ({@link #LAYOUT_DENSE} or {@link #LAYOUT_SPARSE})
+   * @param type	the attribute type ({@link #TYPE_NUMERIC} or {@link #TYPE_NOMINAL})
+   * @param seed	the seed for the random number generator
+   * @return		the generated data
+   */
+  public static Instances generate(int rows, int attributes, String layout, String type, long seed) {
+    Instances			result;
+    ArrayList<Attribute>	atts;
+    ArrayList<String>		labels;
+    Random			rand;
+    boolean			sparse;
+    boolean			nominal;
+    double[]			values;
+    int				i;
+    int				n;
+
+    sparse  = LAYOUT_SPARSE.equals(layout);
+    nominal = TYPE_NOMINAL.equals(type);
+    labels  = new ArrayList<String>();
+    for (i = 0; i < NUM_LABELS; i++)
+      labels.add("v" + i);
+
+    atts = new ArrayList<Attribute>();
+    for (i = 0; i < attributes; i++) {
+      if (nominal)
+	atts.add(new Attribute("att-" + (i + 1), new ArrayList<String>(labels)));
+      else
+	atts.add(new Attribute("att-" + (i + 1)));
+    }
+    atts.add(new Attribute("class", new ArrayList<String>(labels)));
+
+    result = new Instances(layout + "-" + type + "-" + rows + "x" + attributes, atts, rows);
+    result.setClassIndex(attributes);
+
+    rand   = new Random(seed);
+    values = new double[attributes + 1];
+    for (n = 0; n < rows; n++) {
+      Arrays.fill(values, 0);
+      for (i = 0; i < attributes; i++) {
+	if (sparse && (rand.nextDouble() >= SPARSE_DENSITY))
+	  continue;
+	if (nominal)
+	  values[i] = sparse ? 1 + rand.nextInt(NUM_LABELS - 1) : rand.nextInt(NUM_LABELS);
+	else
+	  values[i] = rand.nextGaussian();
+      }
+      values[attributes] = rand.nextInt(NUM_LABELS);
+      if (sparse)
+	result.add(new SparseInstance(1.0, values.clone()));
+      else
+	result.add(new DenseInstance(1.0, values.clone()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param dumper	the type of dumper (DUMPER_*)
+   * @param dir		the directory for the output files
+   * @return		the dumper, null for {@link #DUMPER_NONE}
+   */
+  public static AbstractDumper createDumper(String dumper, File dir) {
+    SaveToDisk	save;
+    String	ext;
+
+    if (DUMPER_NONE.equals(dumper))
+      return null;
+    if (DUMPER_NULL.equals(dumper))
+      return new Null();
+    if (DUMPER_INMEMORY.equals(dumper))
+      return new InMemory();
+
+    if (DUMPER_ARFF.equals(dumper))
+      ext = ".arff";
+    else if (DUMPER_CSV.equals(dumper))
+      ext = ".csv";
+    else if (DUMPER_SERIALIZED.equals(dumper))
+      ext = ".bsi";
+    else
+      throw new IllegalArgumentException("Unknown dumper: " + dumper);
+
+    save = new SaveToDisk();
+    save.setOutputFile(new File(dir, "benchmark" + ext));
+    return save;
+  }
+
+  /**
+   * Creates a temporary directory for the output files.
+   *
+   * @return		the directory
+   * @throws Exception	if creation fails
+   */
+  public static File createTempDir() throws Exception {
+    File	result;
+
+    result = File.createTempFile("data-dumper-", "-benchmark");
+    if (!result.delete() || !result.mkdirs())
+      throw new Exception("Failed to create temp directory: " + result);
+
+    return result;
+  }
+
+  /**
+   * Removes the directory and the files in it.
+   *
+   * @param dir		the directory to remove
+   */
+  public static void deleteDir(File dir) {
+    File[]	files;
+
+    if (dir == null)
+      return;
+    files = dir.listFiles();
+    if (files != null) {
+      for (File file: files)
+	file.delete();
+    }
+    dir.delete();
+  }
+}
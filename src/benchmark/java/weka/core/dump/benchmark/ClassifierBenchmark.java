@@ -0,0 +1,73 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ClassifierBenchmark.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import weka.classifiers.Classifier;
+import weka.classifiers.meta.Dumper;
+import weka.classifiers.rules.ZeroR;
+import weka.core.dump.AbstractDumper;
+
+/**
+ * Measures the overhead of {@link Dumper} when training, compared to
+ * training the (cheap) base classifier {@link ZeroR} directly.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ClassifierBenchmark
+  extends AbstractDumperBenchmark {
+
+  /** the classifier to benchmark. */
+  protected Classifier m_Classifier;
+
+  /**
+   * Configures the classifier.
+   *
+   * @param dumper	the dumper to use, null for the unwrapped scheme
+   * @throws Exception	if configuration fails
+   */
+  @Override
+  protected void configure(AbstractDumper dumper) throws Exception {
+    Dumper	classifier;
+
+    if (dumper == null) {
+      m_Classifier = new ZeroR();
+    }
+    else {
+      classifier = new Dumper();
+      classifier.setClassifier(new ZeroR());
+      classifier.setDumper(dumper);
+      m_Classifier = classifier;
+    }
+  }
+
+  /**
+   * Trains the classifier.
+   *
+   * @return		the trained classifier
+   * @throws Exception	if training fails
+   */
+  @Benchmark
+  public Classifier train() throws Exception {
+    m_Classifier.buildClassifier(m_Data);
+    return m_Classifier;
+  }
+}
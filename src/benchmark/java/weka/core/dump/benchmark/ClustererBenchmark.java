@@ -0,0 +1,79 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ClustererBenchmark.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import weka.clusterers.Clusterer;
+import weka.clusterers.Dumper;
+import weka.clusterers.SimpleKMeans;
+import weka.core.dump.AbstractDumper;
+
+/**
+ * Measures the overhead of {@link Dumper} when building, compared to
+ * building {@link SimpleKMeans} (limited to a single iteration) directly.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ClustererBenchmark
+  extends AbstractDumperBenchmark {
+
+  /** the clusterer to benchmark. */
+  protected Clusterer m_Clusterer;
+
+  /**
+   * Configures the clusterer, removes the class attribute from the data.
+   *
+   * @param dumper	the dumper to use, null for the unwrapped scheme
+   * @throws Exception	if configuration fails
+   */
+  @Override
+  protected void configure(AbstractDumper dumper) throws Exception {
+    SimpleKMeans	kmeans;
+    Dumper		clusterer;
+
+    m_Data.setClassIndex(-1);
+    m_Data.deleteAttributeAt(m_Data.numAttributes() - 1);
+
+    kmeans = new SimpleKMeans();
+    kmeans.setMaxIterations(1);
+    if (dumper == null) {
+      m_Clusterer = kmeans;
+    }
+    else {
+      clusterer = new Dumper();
+      clusterer.setClusterer(kmeans);
+      clusterer.setDumper(dumper);
+      m_Clusterer = clusterer;
+    }
+  }
+
+  /**
+   * Builds the clusterer.
+   *
+   * @return		the built clusterer
+   * @throws Exception	if building fails
+   */
+  @Benchmark
+  public Clusterer build() throws Exception {
+    m_Clusterer.buildClusterer(m_Data);
+    return m_Clusterer;
+  }
+}
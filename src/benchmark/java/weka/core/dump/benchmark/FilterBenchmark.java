@@ -0,0 +1,73 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FilterBenchmark.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import weka.core.Instances;
+import weka.core.dump.AbstractDumper;
+import weka.filters.AllFilter;
+import weka.filters.Dumper;
+import weka.filters.Filter;
+
+/**
+ * Measures the overhead of {@link Dumper}, compared to {@link AllFilter},
+ * which passes the data through as well.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class FilterBenchmark
+  extends AbstractDumperBenchmark {
+
+  /** the filter to benchmark. */
+  protected Filter m_Filter;
+
+  /**
+   * Configures the filter.
+   *
+   * @param dumper	the dumper to use, null for the unwrapped scheme
+   * @throws Exception	if configuration fails
+   */
+  @Override
+  protected void configure(AbstractDumper dumper) throws Exception {
+    Dumper	filter;
+
+    if (dumper == null) {
+      m_Filter = new AllFilter();
+    }
+    else {
+      filter = new Dumper();
+      filter.setDumper(dumper);
+      m_Filter = filter;
+    }
+  }
+
+  /**
+   * Filters the data.
+   *
+   * @return		the filtered data
+   * @throws Exception	if filtering fails
+   */
+  @Benchmark
+  public Instances filter() throws Exception {
+    m_Filter.setInputFormat(m_Data);
+    return Filter.useFilter(m_Data, m_Filter);
+  }
+}
@@ -20,23 +20,35 @@
 
 package weka.classifiers.meta;
 
+import weka.classifiers.Classifier;
 import weka.classifiers.SingleClassifierEnhancer;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.RevisionUtils;
+import weka.core.SelectedTag;
+import weka.core.Tag;
 import weka.core.Utils;
 import weka.core.dump.AbstractDumper;
+import weka.core.dump.DiskCache;
+import weka.core.dump.InMemory;
 import weka.core.dump.Null;
+import weka.core.dump.PredictionCapture;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Forwards the training data to the selected data dumper before training the base classifier.
+ * Optionally, the scored instances and their predictions can be forwarded to
+ * another data dumper in batches. With the model cache enabled, trained
+ * models get stored on disk and reused when training on the same data with
+ * the same base classifier setup again.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -46,6 +58,48 @@ public class Dumper
   /** the dumper */
   protected AbstractDumper m_Dumper = new Null();
 
+  /** the dumper for the predictions (Null disables the capture) */
+  protected AbstractDumper m_PredictionDumper = new Null();
+
+  /** the size of the buffer for the predictions */
+  protected int m_PredictionBufferSize = 1024;
+
+  /** the number of predictions to dump at a time */
+  protected int m_PredictionBatchSize = 100;
+
+  /** the names of the distribution attributes, null if not capturing */
+  protected String[] m_DistributionNames;
+
+  /** for capturing the predictions */
+  protected transient volatile PredictionCapture m_Capture;
+
+  /** the name of the default model cache directory in the Weka home directory */
+  public final static String DEFAULT_MODEL_CACHE_DIR = "model-cache";
+
+  /** whether to cache the trained models */
+  protected boolean m_ModelCache = false;
+
+  /** the directory for the cached models */
+  protected File m_ModelCacheDir = DiskCache.getDefaultDir(DEFAULT_MODEL_CACHE_DIR);
+
+  /** the maximum number of cached models (<= 0 for unlimited) */
+  protected int m_ModelCacheMaxEntries = 100;
+
+  /** the maximum size of the cached models in bytes (<= 0 for unlimited) */
+  protected long m_ModelCacheMaxSize = 0;
+
+  /** the eviction policy for the cached models */
+  protected int m_ModelCacheEviction = InMemory.EVICTION_LRU;
+
+  /** the model cache */
+  protected transient DiskCache m_Cache;
+
+  /** the number of model cache hits across all instances */
+  protected static AtomicLong m_TotalHits = new AtomicLong();
+
+  /** the number of model cache misses across all instances */
+  protected static AtomicLong m_TotalMisses = new AtomicLong();
+
   /**
    * Returns a string describing this filter.
    *
@@ -53,7 +107,15 @@ public class Dumper
    *         explorer/experimenter gui
    */
   public String globalInfo() {
-    return "Forwards the training data to the selected data dumper before training the base classifier.";
+    return "Forwards the training data to the selected data dumper before training the base classifier.\n"
+      + "Optionally, the scored instances and their predictions can be forwarded "
+      + "to another data dumper, using a background thread that dumps them in batches.\n"
+      + "With the model cache enabled, the trained model gets stored in the cache "
+      + "directory, keyed by a hash of the training data and the command-line of "
+      + "the base classifier; training on the same data with the same setup "
+      + "again loads the model rather than rebuilding it. Access to the cache "
+      + "directory gets restricted to the owner, the cache does not get used "
+      + "if that fails.";
   }
 
   /**
@@ -71,6 +133,55 @@ public class Dumper
 	  + "\t(default: " + Null.class.getName() + ")",
 	"dumper", 1, "-dumper <classname + options>"));
 
+    result.addElement(
+      new Option(
+	"\tThe data dumper for the predictions, "
+	  + Null.class.getName() + " disables the capture.\n"
+	  + "\t(default: " + Null.class.getName() + ")",
+	"prediction-dumper", 1, "-prediction-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe size of the buffer for the predictions.\n"
+	  + "\t(default: 1024)",
+	"prediction-buffer-size", 1, "-prediction-buffer-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of predictions to dump at a time.\n"
+	  + "\t(default: 100)",
+	"prediction-batch-size", 1, "-prediction-batch-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tWhether to cache the trained models on disk.\n"
+	  + "\t(default: no)",
+	"model-cache", 0, "-model-cache"));
+
+    result.addElement(
+      new Option(
+	"\tThe directory for the cached models.\n"
+	  + "\t(default: WEKA_HOME/" + DEFAULT_MODEL_CACHE_DIR + ")",
+	"model-cache-dir", 1, "-model-cache-dir <dir>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum number of cached models (<= 0 for unlimited).\n"
+	  + "\t(default: 100)",
+	"model-cache-max-entries", 1, "-model-cache-max-entries <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum size of the cached models in bytes (<= 0 for unlimited).\n"
+	  + "\t(default: 0)",
+	"model-cache-max-size", 1, "-model-cache-max-size <bytes>"));
+
+    result.addElement(
+      new Option(
+	"\tThe eviction policy for the cached models.\n"
+	  + "\t(default: " + new SelectedTag(InMemory.EVICTION_LRU, InMemory.TAGS_EVICTION) + ")",
+	"model-cache-eviction", 1, "-model-cache-eviction " + Tag.toOptionList(InMemory.TAGS_EVICTION)));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -99,6 +210,55 @@ public class Dumper
       setDumper(new Null());
     }
 
+    tmpStr = Utils.getOption("prediction-dumper", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setPredictionDumper((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    else {
+      setPredictionDumper(new Null());
+    }
+
+    tmpStr = Utils.getOption("prediction-buffer-size", options);
+    if (tmpStr.length() != 0)
+      setPredictionBufferSize(Integer.parseInt(tmpStr));
+    else
+      setPredictionBufferSize(1024);
+
+    tmpStr = Utils.getOption("prediction-batch-size", options);
+    if (tmpStr.length() != 0)
+      setPredictionBatchSize(Integer.parseInt(tmpStr));
+    else
+      setPredictionBatchSize(100);
+
+    setModelCache(Utils.getFlag("model-cache", options));
+
+    tmpStr = Utils.getOption("model-cache-dir", options);
+    if (tmpStr.length() != 0)
+      setModelCacheDir(new File(tmpStr));
+    else
+      setModelCacheDir(DiskCache.getDefaultDir(DEFAULT_MODEL_CACHE_DIR));
+
+    tmpStr = Utils.getOption("model-cache-max-entries", options);
+    if (tmpStr.length() != 0)
+      setModelCacheMaxEntries(Integer.parseInt(tmpStr));
+    else
+      setModelCacheMaxEntries(100);
+
+    tmpStr = Utils.getOption("model-cache-max-size", options);
+    if (tmpStr.length() != 0)
+      setModelCacheMaxSize(Long.parseLong(tmpStr));
+    else
+      setModelCacheMaxSize(0);
+
+    tmpStr = Utils.getOption("model-cache-eviction", options);
+    if (tmpStr.length() != 0)
+      setModelCacheEviction(new SelectedTag(tmpStr, InMemory.TAGS_EVICTION));
+    else
+      setModelCacheEviction(new SelectedTag(InMemory.EVICTION_LRU, InMemory.TAGS_EVICTION));
+
     super.setOptions(options);
   }
 
@@ -114,6 +274,30 @@ public class Dumper
     result.add("-dumper");
     result.add(Utils.toCommandLine(getDumper()));
 
+    result.add("-prediction-dumper");
+    result.add(Utils.toCommandLine(getPredictionDumper()));
+
+    result.add("-prediction-buffer-size");
+    result.add("" + getPredictionBufferSize());
+
+    result.add("-prediction-batch-size");
+    result.add("" + getPredictionBatchSize());
+
+    if (getModelCache())
+      result.add("-model-cache");
+
+    result.add("-model-cache-dir");
+    result.add(getModelCacheDir().toString());
+
+    result.add("-model-cache-max-entries");
+    result.add("" + getModelCacheMaxEntries());
+
+    result.add("-model-cache-max-size");
+    result.add("" + getModelCacheMaxSize());
+
+    result.add("-model-cache-eviction");
+    result.add("" + getModelCacheEviction());
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[0]);
@@ -147,6 +331,354 @@ public class Dumper
     return "The data dumper to use.";
   }
 
+  /**
+   * Sets the data dumper for the predictions.
+   *
+   * @param value the data dumper to use, Null disables the capture
+   */
+  public void setPredictionDumper(AbstractDumper value) {
+    m_PredictionDumper = value;
+  }
+
+  /**
+   * Gets the data dumper for the predictions.
+   *
+   * @return the data dumper, Null disables the capture
+   */
+  public AbstractDumper getPredictionDumper() {
+    return m_PredictionDumper;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionDumperTipText() {
+    return "The data dumper that the scored instances and their predictions "
+      + "get forwarded to; " + Null.class.getName() + " disables the capture.";
+  }
+
+  /**
+   * Sets the size of the buffer for the predictions.
+   *
+   * @param value the size (at least 1)
+   */
+  public void setPredictionBufferSize(int value) {
+    if (value > 0)
+      m_PredictionBufferSize = value;
+  }
+
+  /**
+   * Returns the size of the buffer for the predictions.
+   *
+   * @return the size
+   */
+  public int getPredictionBufferSize() {
+    return m_PredictionBufferSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionBufferSizeTipText() {
+    return "The size of the buffer for the predictions (rounded up to the "
+      + "next power of 2); predictions get dropped when it is full.";
+  }
+
+  /**
+   * Sets the number of predictions to dump at a time.
+   *
+   * @param value the batch size (at least 1)
+   */
+  public void setPredictionBatchSize(int value) {
+    if (value > 0)
+      m_PredictionBatchSize = value;
+  }
+
+  /**
+   * Returns the number of predictions to dump at a time.
+   *
+   * @return the batch size
+   */
+  public int getPredictionBatchSize() {
+    return m_PredictionBatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionBatchSizeTipText() {
+    return "The number of predictions to dump at a time.";
+  }
+
+  /**
+   * Sets whether to cache the trained models.
+   *
+   * @param value true if to cache
+   */
+  public void setModelCache(boolean value) {
+    m_ModelCache = value;
+  }
+
+  /**
+   * Returns whether to cache the trained models.
+   *
+   * @return true if to cache
+   */
+  public boolean getModelCache() {
+    return m_ModelCache;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modelCacheTipText() {
+    return "If enabled, trained models get cached on disk and reused when "
+      + "training on the same data with the same base classifier setup.";
+  }
+
+  /**
+   * Sets the directory for the cached models.
+   *
+   * @param value the directory
+   */
+  public void setModelCacheDir(File value) {
+    m_ModelCacheDir = value;
+    m_Cache         = null;
+  }
+
+  /**
+   * Returns the directory for the cached models.
+   *
+   * @return the directory
+   */
+  public File getModelCacheDir() {
+    return m_ModelCacheDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modelCacheDirTipText() {
+    return "The directory for the cached models.";
+  }
+
+  /**
+   * Sets the maximum number of cached models.
+   *
+   * @param value the maximum, &lt;= 0 for unlimited
+   */
+  public void setModelCacheMaxEntries(int value) {
+    m_ModelCacheMaxEntries = value;
+    m_Cache                = null;
+  }
+
+  /**
+   * Returns the maximum number of cached models.
+   *
+   * @return the maximum, &lt;= 0 for unlimited
+   */
+  public int getModelCacheMaxEntries() {
+    return m_ModelCacheMaxEntries;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modelCacheMaxEntriesTipText() {
+    return "The maximum number of cached models; <= 0 for unlimited.";
+  }
+
+  /**
+   * Sets the maximum size of the cached models.
+   *
+   * @param value the size in bytes, &lt;= 0 for unlimited
+   */
+  public void setModelCacheMaxSize(long value) {
+    m_ModelCacheMaxSize = value;
+    m_Cache             = null;
+  }
+
+  /**
+   * Returns the maximum size of the cached models.
+   *
+   * @return the size in bytes, &lt;= 0 for unlimited
+   */
+  public long getModelCacheMaxSize() {
+    return m_ModelCacheMaxSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modelCacheMaxSizeTipText() {
+    return "The maximum total size of the cached models in bytes; <= 0 for unlimited.";
+  }
+
+  /**
+   * Sets the eviction policy for the cached models.
+   *
+   * @param value the policy
+   */
+  public void setModelCacheEviction(SelectedTag value) {
+    if (value.getTags() == InMemory.TAGS_EVICTION) {
+      m_ModelCacheEviction = value.getSelectedTag().getID();
+      m_Cache              = null;
+    }
+  }
+
+  /**
+   * Returns the eviction policy for the cached models.
+   *
+   * @return the policy
+   */
+  public SelectedTag getModelCacheEviction() {
+    return new SelectedTag(m_ModelCacheEviction, InMemory.TAGS_EVICTION);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modelCacheEvictionTipText() {
+    return "Which cached models to remove once a limit is exceeded: the least recently used or the oldest ones.";
+  }
+
+  /**
+   * Returns the model cache, initializes it if necessary.
+   *
+   * @return		the cache
+   */
+  public synchronized DiskCache getCache() {
+    if (m_Cache == null)
+      m_Cache = new DiskCache(m_ModelCacheDir, m_ModelCacheMaxSize, m_ModelCacheMaxEntries, m_ModelCacheEviction);
+    return m_Cache;
+  }
+
+  /**
+   * Returns the number of model cache hits of this instance.
+   *
+   * @return		the hits
+   */
+  public long getModelCacheHits() {
+    return (m_Cache == null) ? 0 : m_Cache.getHits();
+  }
+
+  /**
+   * Returns the number of model cache misses of this instance.
+   *
+   * @return		the misses
+   */
+  public long getModelCacheMisses() {
+    return (m_Cache == null) ? 0 : m_Cache.getMisses();
+  }
+
+  /**
+   * Returns the number of model cache hits across all instances, e.g., the
+   * classifier copies of a cross-validation.
+   *
+   * @return		the hits
+   */
+  public static long getTotalModelCacheHits() {
+    return m_TotalHits.get();
+  }
+
+  /**
+   * Returns the number of model cache misses across all instances, e.g., the
+   * classifier copies of a cross-validation.
+   *
+   * @return		the misses
+   */
+  public static long getTotalModelCacheMisses() {
+    return m_TotalMisses.get();
+  }
+
+  /**
+   * Trains the base classifier or loads the trained model from the cache.
+   *
+   * @param data	the training data
+   * @throws Exception	if build fails
+   */
+  protected void buildOrLoad(Instances data) throws Exception {
+    String	key;
+    Object	model;
+
+    key   = DiskCache.getKey(data, Utils.toCommandLine(m_Classifier));
+    model = getCache().get(key);
+    if (model instanceof Classifier) {
+      m_TotalHits.incrementAndGet();
+      m_Classifier = (Classifier) model;
+      return;
+    }
+
+    m_TotalMisses.incrementAndGet();
+    m_Classifier.buildClassifier(data);
+    try {
+      getCache().put(key, m_Classifier);
+    }
+    catch (Exception e) {
+      System.err.println("Failed to cache model of " + Utils.toCommandLine(m_Classifier) + ":");
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the capture for the predictions, initializes it if necessary.
+   *
+   * @return		the capture, null if not capturing
+   */
+  protected PredictionCapture getCapture() {
+    PredictionCapture	result;
+
+    result = m_Capture;
+    if ((result == null) && (m_DistributionNames != null)) {
+      synchronized (this) {
+	result = m_Capture;
+	if (result == null) {
+	  result    = new PredictionCapture(m_PredictionDumper, m_DistributionNames, m_PredictionBufferSize, m_PredictionBatchSize);
+	  m_Capture = result;
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Dumps the predictions captured so far.
+   *
+   * @throws Exception	if dumping fails
+   */
+  public void flushPredictions() throws Exception {
+    PredictionCapture	capture;
+
+    capture = m_Capture;
+    if (capture != null)
+      capture.flush();
+  }
+
   /**
    * Builds the classifier.
    *
@@ -155,8 +687,16 @@ public class Dumper
    */
   @Override
   public void buildClassifier(Instances data) throws Exception {
+    flushPredictions();
+    m_Capture           = null;
+    m_DistributionNames = null;
     m_Dumper.dump(data);
-    m_Classifier.buildClassifier(data);
+    if (m_ModelCache)
+      buildOrLoad(data);
+    else
+      m_Classifier.buildClassifier(data);
+    if (!(m_PredictionDumper instanceof Null))
+      m_DistributionNames = PredictionCapture.distributionNames(data);
   }
 
   /**
@@ -168,7 +708,15 @@ public class Dumper
    */
   @Override
   public double[] distributionForInstance(Instance instance) throws Exception {
-    return m_Classifier.distributionForInstance(instance);
+    double[]		result;
+    PredictionCapture	capture;
+
+    result  = m_Classifier.distributionForInstance(instance);
+    capture = getCapture();
+    if (capture != null)
+      capture.capture((Instance) instance.copy(), result, Utils.missingValue());
+
+    return result;
   }
 
   /**
@@ -180,7 +728,15 @@ public class Dumper
    */
   @Override
   public double classifyInstance(Instance instance) throws Exception {
-    return m_Classifier.classifyInstance(instance);
+    double		result;
+    PredictionCapture	capture;
+
+    result  = m_Classifier.classifyInstance(instance);
+    capture = getCapture();
+    if (capture != null)
+      capture.capture((Instance) instance.copy(), null, result);
+
+    return result;
   }
 
   /**
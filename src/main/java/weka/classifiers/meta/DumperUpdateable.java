@@ -0,0 +1,322 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperUpdateable.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.bayes.NaiveBayesUpdateable;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.dump.AbstractDumper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Updateable variant of the Dumper meta-classifier. Forwards the training
+ * data to the selected data dumper before training the base classifier and
+ * the instances used for updating the base classifier in micro-batches.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperUpdateable
+  extends Dumper
+  implements UpdateableClassifier {
+
+  private static final long serialVersionUID = -2733516466785938213L;
+
+  /** the number of instances after which to flush the dumper. */
+  protected int m_DumpBatchSize = 100;
+
+  /** the interval in msec after which to flush the dumper. */
+  protected long m_FlushInterval = 1000;
+
+  /** the number of instances dumped since the last flush. */
+  protected int m_Count;
+
+  /** the time of the last flush. */
+  protected long m_LastFlush;
+
+  /**
+   * Initializes the classifier.
+   */
+  public DumperUpdateable() {
+    super();
+    m_Classifier = new NaiveBayesUpdateable();
+  }
+
+  /**
+   * Returns a string describing this filter.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Forwards the training data to the selected data dumper before training the base classifier.\n"
+      + "The instances that the base classifier gets updated with are forwarded "
+      + "to the dumper one by one, flushing the dumper once the batch size is "
+      + "reached or the flush interval has passed. The dumper gets closed "
+      + "with close() or at the latest at JVM exit, writing any instances "
+      + "that are still pending.";
+  }
+
+  /**
+   * String describing default classifier.
+   *
+   * @return the default classifier classname
+   */
+  @Override
+  protected String defaultClassifierString() {
+    return NaiveBayesUpdateable.class.getName();
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe number of instances after which to flush the dumper.\n"
+	  + "\t(default: 100)",
+	"dump-batch-size", 1, "-dump-batch-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe interval in msec after which to flush the dumper, ignored if 0.\n"
+	  + "\t(default: 1000)",
+	"flush-interval", 1, "-flush-interval <msec>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 	tmpStr;
+
+    tmpStr = Utils.getOption("dump-batch-size", options);
+    if (tmpStr.length() != 0)
+      setDumpBatchSize(Integer.parseInt(tmpStr));
+    else
+      setDumpBatchSize(100);
+
+    tmpStr = Utils.getOption("flush-interval", options);
+    if (tmpStr.length() != 0)
+      setFlushInterval(Long.parseLong(tmpStr));
+    else
+      setFlushInterval(1000);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-dump-batch-size");
+    result.add("" + getDumpBatchSize());
+
+    result.add("-flush-interval");
+    result.add("" + getFlushInterval());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Set the base learner.
+   *
+   * @param value the classifier to use, must be updateable
+   */
+  @Override
+  public void setClassifier(Classifier value) {
+    if (!(value instanceof UpdateableClassifier))
+      throw new IllegalArgumentException(
+	"Classifier must implement " + UpdateableClassifier.class.getName() + "!");
+    super.setClassifier(value);
+  }
+
+  /**
+   * Sets the number of instances after which to flush the dumper.
+   *
+   * @param value the batch size (at least 1)
+   */
+  public void setDumpBatchSize(int value) {
+    if (value > 0)
+      m_DumpBatchSize = value;
+  }
+
+  /**
+   * Returns the number of instances after which to flush the dumper.
+   *
+   * @return the batch size
+   */
+  public int getDumpBatchSize() {
+    return m_DumpBatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumpBatchSizeTipText() {
+    return "The number of instances after which to flush the dumper.";
+  }
+
+  /**
+   * Sets the interval after which to flush the dumper.
+   *
+   * @param value the interval in msec, ignored if 0
+   */
+  public void setFlushInterval(long value) {
+    if (value >= 0)
+      m_FlushInterval = value;
+  }
+
+  /**
+   * Returns the interval after which to flush the dumper.
+   *
+   * @return the interval in msec, ignored if 0
+   */
+  public long getFlushInterval() {
+    return m_FlushInterval;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String flushIntervalTipText() {
+    return "The interval in msec after which to flush the dumper; checked "
+      + "whenever an update occurs, ignored if 0.";
+  }
+
+  /**
+   * Builds the classifier.
+   *
+   * @param data	the training data
+   * @throws Exception	if build fails
+   */
+  @Override
+  public void buildClassifier(Instances data) throws Exception {
+    super.buildClassifier(data);
+    m_Dumper.dumpHeader(new Instances(data, 0));
+    m_Count     = 0;
+    m_LastFlush = System.currentTimeMillis();
+    AbstractDumper.closeAtExit(m_Dumper);
+  }
+
+  /**
+   * Forwards the instance to the dumper and updates the base classifier.
+   *
+   * @param instance	the instance to update the classifier with
+   * @throws Exception	if update fails
+   */
+  @Override
+  public void updateClassifier(Instance instance) throws Exception {
+    long	now;
+
+    m_Dumper.dumpInstance(instance);
+    m_Count++;
+    if (m_Count >= m_DumpBatchSize) {
+      flushDumper();
+    }
+    else if (m_FlushInterval > 0) {
+      now = System.currentTimeMillis();
+      if (now - m_LastFlush >= m_FlushInterval)
+	flushDumper();
+    }
+
+    ((UpdateableClassifier) m_Classifier).updateClassifier(instance);
+  }
+
+  /**
+   * Flushes the dumper, dumping any instances that are still pending.
+   *
+   * @throws Exception	if flushing fails
+   */
+  public void flushDumper() throws Exception {
+    m_Dumper.flush();
+    m_Count     = 0;
+    m_LastFlush = System.currentTimeMillis();
+  }
+
+  /**
+   * Flushes and closes the dumper, e.g., finishing the file that the
+   * instances are being written to.
+   *
+   * @throws Exception	if closing fails
+   */
+  public void close() throws Exception {
+    m_Dumper.close();
+    m_Count     = 0;
+    m_LastFlush = System.currentTimeMillis();
+    AbstractDumper.removeCloseAtExit(m_Dumper);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * Main method for testing this class.
+   *
+   * @param args the commandline options, use "-h" for help
+   */
+  public static void main(String[] args) {
+    runClassifier(new DumperUpdateable(), args);
+  }
+}
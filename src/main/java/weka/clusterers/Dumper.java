@@ -20,6 +20,8 @@
 
 package weka.clusterers;
 
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Drawable;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -28,15 +30,27 @@ import weka.core.RevisionUtils;
 import weka.core.Utils;
 import weka.core.dump.AbstractDumper;
 import weka.core.dump.Null;
+import weka.core.dump.PredictionCapture;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Forwards the training data to the selected data dumper before training the base clusterer.
+ * Optionally, the clustered instances and their cluster distributions can be
+ * forwarded to another data dumper in batches. Instead of the raw training
+ * data, the training data annotated with the cluster assignments can be
+ * dumped after training.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -46,9 +60,36 @@ public class Dumper
 
   private static final long serialVersionUID = 3849909650437555245L;
 
+  /** the name of the nominal attribute with the assigned cluster */
+  public final static String ATT_CLUSTER = "cluster";
+
   /** the dumper */
   protected AbstractDumper m_Dumper = new Null();
 
+  /** the dumper for the predictions (Null disables the capture) */
+  protected AbstractDumper m_PredictionDumper = new Null();
+
+  /** the size of the buffer for the predictions */
+  protected int m_PredictionBufferSize = 1024;
+
+  /** the number of predictions to dump at a time */
+  protected int m_PredictionBatchSize = 100;
+
+  /** the names of the distribution attributes, null if not capturing */
+  protected String[] m_DistributionNames;
+
+  /** for capturing the predictions */
+  protected transient volatile PredictionCapture m_Capture;
+
+  /** whether to dump the training data with the cluster assignments */
+  protected boolean m_DumpAssignments = false;
+
+  /** the number of rows per chunk when computing the assignments */
+  protected int m_AssignmentChunkSize = 1000;
+
+  /** the executor shared by all instances */
+  protected static ExecutorService m_Executor;
+
   /**
    * Returns a string describing this filter.
    *
@@ -56,7 +97,15 @@ public class Dumper
    *         explorer/experimenter gui
    */
   public String globalInfo() {
-    return "Forwards the training data to the selected data dumper before training the base clusterer.";
+    return "Forwards the training data to the selected data dumper before training the base clusterer.\n"
+      + "Optionally, the clustered instances and their cluster distributions can "
+      + "be forwarded to another data dumper, using a background thread that "
+      + "dumps them in batches.\n"
+      + "Alternatively, the training data can be dumped after training, annotated "
+      + "with the assigned cluster (nominal attribute, like AddCluster) and the "
+      + "cluster distribution; these get "
+      + "computed in parallel, in chunks of rows, using copies of the trained "
+      + "clusterer.";
   }
 
   /**
@@ -74,6 +123,38 @@ public class Dumper
 	  + "\t(default: " + Null.class.getName() + ")",
 	"dumper", 1, "-dumper <classname + options>"));
 
+    result.addElement(
+      new Option(
+	"\tThe data dumper for the predictions, "
+	  + Null.class.getName() + " disables the capture.\n"
+	  + "\t(default: " + Null.class.getName() + ")",
+	"prediction-dumper", 1, "-prediction-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe size of the buffer for the predictions.\n"
+	  + "\t(default: 1024)",
+	"prediction-buffer-size", 1, "-prediction-buffer-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of predictions to dump at a time.\n"
+	  + "\t(default: 100)",
+	"prediction-batch-size", 1, "-prediction-batch-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tWhether to dump the training data annotated with the cluster\n"
+	  + "\tassignments after training rather than the raw data.\n"
+	  + "\t(default: no)",
+	"dump-assignments", 0, "-dump-assignments"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of rows per chunk when computing the assignments.\n"
+	  + "\t(default: 1000)",
+	"assignment-chunk-size", 1, "-assignment-chunk-size <int>"));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -102,6 +183,37 @@ public class Dumper
       setDumper(new Null());
     }
 
+    tmpStr = Utils.getOption("prediction-dumper", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setPredictionDumper((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    else {
+      setPredictionDumper(new Null());
+    }
+
+    tmpStr = Utils.getOption("prediction-buffer-size", options);
+    if (tmpStr.length() != 0)
+      setPredictionBufferSize(Integer.parseInt(tmpStr));
+    else
+      setPredictionBufferSize(1024);
+
+    tmpStr = Utils.getOption("prediction-batch-size", options);
+    if (tmpStr.length() != 0)
+      setPredictionBatchSize(Integer.parseInt(tmpStr));
+    else
+      setPredictionBatchSize(100);
+
+    setDumpAssignments(Utils.getFlag("dump-assignments", options));
+
+    tmpStr = Utils.getOption("assignment-chunk-size", options);
+    if (tmpStr.length() != 0)
+      setAssignmentChunkSize(Integer.parseInt(tmpStr));
+    else
+      setAssignmentChunkSize(1000);
+
     super.setOptions(options);
   }
 
@@ -117,6 +229,21 @@ public class Dumper
     result.add("-dumper");
     result.add(Utils.toCommandLine(getDumper()));
 
+    result.add("-prediction-dumper");
+    result.add(Utils.toCommandLine(getPredictionDumper()));
+
+    result.add("-prediction-buffer-size");
+    result.add("" + getPredictionBufferSize());
+
+    result.add("-prediction-batch-size");
+    result.add("" + getPredictionBatchSize());
+
+    if (getDumpAssignments())
+      result.add("-dump-assignments");
+
+    result.add("-assignment-chunk-size");
+    result.add("" + getAssignmentChunkSize());
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[0]);
@@ -150,6 +277,309 @@ public class Dumper
     return "The data dumper to use.";
   }
 
+  /**
+   * Sets the data dumper for the predictions.
+   *
+   * @param value the data dumper to use, Null disables the capture
+   */
+  public void setPredictionDumper(AbstractDumper value) {
+    m_PredictionDumper = value;
+  }
+
+  /**
+   * Gets the data dumper for the predictions.
+   *
+   * @return the data dumper, Null disables the capture
+   */
+  public AbstractDumper getPredictionDumper() {
+    return m_PredictionDumper;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionDumperTipText() {
+    return "The data dumper that the scored instances and their predictions "
+      + "get forwarded to; " + Null.class.getName() + " disables the capture.";
+  }
+
+  /**
+   * Sets the size of the buffer for the predictions.
+   *
+   * @param value the size (at least 1)
+   */
+  public void setPredictionBufferSize(int value) {
+    if (value > 0)
+      m_PredictionBufferSize = value;
+  }
+
+  /**
+   * Returns the size of the buffer for the predictions.
+   *
+   * @return the size
+   */
+  public int getPredictionBufferSize() {
+    return m_PredictionBufferSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionBufferSizeTipText() {
+    return "The size of the buffer for the predictions (rounded up to the "
+      + "next power of 2); predictions get dropped when it is full.";
+  }
+
+  /**
+   * Sets the number of predictions to dump at a time.
+   *
+   * @param value the batch size (at least 1)
+   */
+  public void setPredictionBatchSize(int value) {
+    if (value > 0)
+      m_PredictionBatchSize = value;
+  }
+
+  /**
+   * Returns the number of predictions to dump at a time.
+   *
+   * @return the batch size
+   */
+  public int getPredictionBatchSize() {
+    return m_PredictionBatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String predictionBatchSizeTipText() {
+    return "The number of predictions to dump at a time.";
+  }
+
+  /**
+   * Sets whether to dump the training data with the cluster assignments.
+   *
+   * @param value true if to dump the assignments
+   */
+  public void setDumpAssignments(boolean value) {
+    m_DumpAssignments = value;
+  }
+
+  /**
+   * Returns whether to dump the training data with the cluster assignments.
+   *
+   * @return true if to dump the assignments
+   */
+  public boolean getDumpAssignments() {
+    return m_DumpAssignments;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumpAssignmentsTipText() {
+    return "If enabled, the training data gets dumped after training, annotated "
+      + "with the assigned cluster and the cluster distribution, rather than "
+      + "dumping the raw data before training.";
+  }
+
+  /**
+   * Sets the number of rows per chunk when computing the assignments.
+   *
+   * @param value the chunk size (at least 1)
+   */
+  public void setAssignmentChunkSize(int value) {
+    if (value > 0)
+      m_AssignmentChunkSize = value;
+  }
+
+  /**
+   * Returns the number of rows per chunk when computing the assignments.
+   *
+   * @return the chunk size
+   */
+  public int getAssignmentChunkSize() {
+    return m_AssignmentChunkSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String assignmentChunkSizeTipText() {
+    return "The number of rows per chunk when computing the cluster assignments in parallel.";
+  }
+
+  /**
+   * Returns the executor, initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    final AtomicInteger	count;
+
+    if (m_Executor == null) {
+      count = new AtomicInteger();
+      m_Executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Dumper.class.getSimpleName() + "-" + count.incrementAndGet());
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Annotates the rows with the cluster assignment and distribution.
+   *
+   * @param clusterer	the trained clusterer to use
+   * @param data	the data to annotate
+   * @param rows	for storing the annotated values
+   * @param from	the first row (incl)
+   * @param to		the last row (excl)
+   * @throws Exception	if clustering fails
+   */
+  protected static void annotate(Clusterer clusterer, Instances data, double[][] rows, int from, int to) throws Exception {
+    double[]	dist;
+    double[]	values;
+    int		numAtts;
+    int		i;
+
+    numAtts = data.numAttributes();
+    for (i = from; i < to; i++) {
+      dist   = clusterer.distributionForInstance(data.instance(i));
+      values = Arrays.copyOf(data.instance(i).toDoubleArray(), numAtts + 1 + dist.length);
+      values[numAtts] = Utils.maxIndex(dist);
+      System.arraycopy(dist, 0, values, numAtts + 1, dist.length);
+      rows[i] = values;
+    }
+  }
+
+  /**
+   * Generates the training data annotated with the cluster assignments of
+   * the trained clusterer. Larger datasets get processed in parallel, in
+   * chunks of rows, with each thread using its own copy of the clusterer.
+   *
+   * @param data	the training data
+   * @return		the annotated data
+   * @throws Exception	if clustering fails
+   */
+  public Instances getAssignments(final Instances data) throws Exception {
+    Instances			result;
+    String[]			names;
+    ArrayList<String>		clusters;
+    final double[][]		rows;
+    final AtomicInteger		next;
+    final int			chunkSize;
+    Clusterer[]			copies;
+    List<Future<Object>>	futures;
+    int				workers;
+    int				i;
+
+    names    = PredictionCapture.distributionNames(m_Clusterer.numberOfClusters());
+    clusters = new ArrayList<String>();
+    for (i = 0; i < names.length; i++)
+      clusters.add(ATT_CLUSTER + (i + 1));
+    result = new Instances(data, 0);
+    result.insertAttributeAt(new Attribute(PredictionCapture.uniqueName(result, ATT_CLUSTER), clusters), result.numAttributes());
+    for (i = 0; i < names.length; i++)
+      result.insertAttributeAt(new Attribute(PredictionCapture.uniqueName(result, names[i])), result.numAttributes());
+
+    rows      = new double[data.numInstances()][];
+    chunkSize = m_AssignmentChunkSize;
+    workers   = Math.min(Runtime.getRuntime().availableProcessors(), (rows.length + chunkSize - 1) / chunkSize);
+    copies    = null;
+    if (workers > 1) {
+      try {
+	copies = AbstractClusterer.makeCopies(m_Clusterer, workers);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to copy clusterer, computing assignments sequentially:");
+	e.printStackTrace();
+      }
+    }
+
+    if (copies == null) {
+      annotate(m_Clusterer, data, rows, 0, rows.length);
+    }
+    else {
+      next    = new AtomicInteger();
+      futures = new ArrayList<Future<Object>>();
+      for (i = 0; i < workers; i++) {
+	final Clusterer copy = copies[i];
+	futures.add(getExecutor().submit(new Callable<Object>() {
+	  @Override
+	  public Object call() throws Exception {
+	    int from;
+	    while ((from = next.getAndAdd(chunkSize)) < rows.length)
+	      annotate(copy, data, rows, from, Math.min(rows.length, from + chunkSize));
+	    return null;
+	  }
+	}));
+      }
+      for (Future<Object> future: futures)
+	future.get();
+    }
+
+    for (i = 0; i < rows.length; i++)
+      result.add(new DenseInstance(data.instance(i).weight(), rows[i]));
+
+    return result;
+  }
+
+  /**
+   * Returns the capture for the predictions, initializes it if necessary.
+   *
+   * @return		the capture, null if not capturing
+   */
+  protected PredictionCapture getCapture() {
+    PredictionCapture	result;
+
+    result = m_Capture;
+    if ((result == null) && (m_DistributionNames != null)) {
+      synchronized (this) {
+	result = m_Capture;
+	if (result == null) {
+	  result    = new PredictionCapture(m_PredictionDumper, m_DistributionNames, m_PredictionBufferSize, m_PredictionBatchSize);
+	  m_Capture = result;
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Dumps the predictions captured so far.
+   *
+   * @throws Exception	if dumping fails
+   */
+  public void flushPredictions() throws Exception {
+    PredictionCapture	capture;
+
+    capture = m_Capture;
+    if (capture != null)
+      capture.flush();
+  }
+
   /**
    * Generates a clusterer. Has to initialize all fields of the clusterer that
    * are not being set via options.
@@ -159,8 +589,20 @@ public class Dumper
    */
   @Override
   public void buildClusterer(Instances data) throws Exception {
-    m_Dumper.dump(data);
-    m_Clusterer.buildClusterer(data);
+    flushPredictions();
+    m_Capture           = null;
+    m_DistributionNames = null;
+    if (m_DumpAssignments) {
+      m_Clusterer.buildClusterer(data);
+      if (!(m_Dumper instanceof Null))
+	m_Dumper.dump(getAssignments(data));
+    }
+    else {
+      m_Dumper.dump(data);
+      m_Clusterer.buildClusterer(data);
+    }
+    if (!(m_PredictionDumper instanceof Null))
+      m_DistributionNames = PredictionCapture.distributionNames(m_Clusterer.numberOfClusters());
   }
 
   /**
@@ -172,7 +614,15 @@ public class Dumper
    */
   @Override
   public double[] distributionForInstance(Instance instance) throws Exception {
-    return m_Clusterer.distributionForInstance(instance);
+    double[]		result;
+    PredictionCapture	capture;
+
+    result  = m_Clusterer.distributionForInstance(instance);
+    capture = getCapture();
+    if (capture != null)
+      capture.capture((Instance) instance.copy(), result, Utils.missingValue());
+
+    return result;
   }
 
   /**
@@ -20,17 +20,24 @@
 
 package weka.core.dump;
 
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.Utils;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 /**
- * Ancestor for dumper schemes.
+ * Ancestor for dumper schemes. The dump calls get instrumented, see
+ * {@link #getMetrics()}.
  *
  * @author FracPete (fracpete at waikato dot ac dot nz)
  */
@@ -39,6 +46,21 @@ public abstract class AbstractDumper
 
   private static final long serialVersionUID = 6424471603637234937L;
 
+  /** the buffer for the incrementally dumped instances. */
+  protected transient Instances m_Buffer;
+
+  /** the label for the metrics. */
+  protected String m_Label = "";
+
+  /** the metrics. */
+  protected transient DumperMetrics m_Metrics;
+
+  /** the dumpers that still have to be closed at JVM exit. */
+  protected static Set<AbstractDumper> m_CloseAtExit;
+
+  /** the shutdown hook for closing the dumpers. */
+  protected static Thread m_CloseHook;
+
   /**
    * Returns a string describing this scheme.
    *
@@ -54,7 +76,16 @@ public abstract class AbstractDumper
    */
   @Override
   public Enumeration<Option> listOptions() {
-    return new Vector<Option>().elements();
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe label for the metrics, metrics with a label get shared by\n"
+	  + "\tall dumpers of the same type and label and registered with JMX.\n"
+	  + "\t(default: none)",
+	"label", 1, "-label <label>"));
+
+    return result.elements();
   }
 
   /**
@@ -65,6 +96,7 @@ public abstract class AbstractDumper
    */
   @Override
   public void setOptions(String[] options) throws Exception {
+    setLabel(Utils.getOption("label", options));
     Utils.checkForRemainingOptions(options);
   }
 
@@ -75,14 +107,189 @@ public abstract class AbstractDumper
    */
   @Override
   public String[] getOptions() {
-    return new String[0];
+    List<String> result = new ArrayList<String>();
+
+    if (!getLabel().isEmpty()) {
+      result.add("-label");
+      result.add(getLabel());
+    }
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the label for the metrics.
+   *
+   * @param value	the label, empty for private metrics
+   */
+  public void setLabel(String value) {
+    m_Label   = value;
+    m_Metrics = null;
+  }
+
+  /**
+   * Returns the label for the metrics.
+   *
+   * @return		the label, empty for private metrics
+   */
+  public String getLabel() {
+    return m_Label;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String labelTipText() {
+    return "The label for the metrics; metrics with a label get shared by all "
+      + "dumpers of the same type and label and registered with JMX.";
+  }
+
+  /**
+   * Returns the metrics of this dumper.
+   *
+   * @return		the metrics
+   */
+  public synchronized DumperMetrics getMetrics() {
+    if (m_Metrics == null)
+      m_Metrics = DumperMetrics.getMetrics(this);
+    return m_Metrics;
+  }
+
+  /**
+   * Dumps the data, recording the metrics. Final, to ensure that all dumps
+   * get recorded; derived classes implement {@link #doDump(Instances)}.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   * @see		#doDump(Instances)
+   */
+  public final void dump(Instances data) throws Exception {
+    DumperMetrics	metrics;
+    long		start;
+
+    metrics = getMetrics();
+    start   = System.nanoTime();
+    try {
+      doDump(data);
+    }
+    catch (Exception e) {
+      metrics.failure(e, System.nanoTime() - start);
+      throw e;
+    }
+    metrics.success(data.numInstances(), System.nanoTime() - start);
   }
 
   /**
-   * Dumps the data.
+   * Performs the actual dumping of the data.
    *
    * @param data	the data to dump
    * @throws Exception	if dumping fails
    */
-  public abstract void dump(Instances data) throws Exception;
+  protected abstract void doDump(Instances data) throws Exception;
+
+  /**
+   * Starts incremental dumping, using the specified dataset structure.
+   * Default implementation initializes the buffer that collects the
+   * instances until {@link #flush()} gets called.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  public void dumpHeader(Instances header) throws Exception {
+    m_Buffer = new Instances(header, 0);
+  }
+
+  /**
+   * Dumps a single instance. Default implementation buffers the instance,
+   * which gets dumped with the other buffered ones when {@link #flush()} gets
+   * called. Schemes that can write instances one by one should override this
+   * method.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   * @see		#dumpHeader(Instances)
+   */
+  public void dumpInstance(Instance inst) throws Exception {
+    if (m_Buffer == null) {
+      if (inst.dataset() == null)
+	throw new IllegalStateException("No header dumped yet!");
+      dumpHeader(inst.dataset());
+    }
+    m_Buffer.add(inst);
+  }
+
+  /**
+   * Flushes any data that is still pending. Default implementation dumps
+   * the instances buffered by {@link #dumpInstance(Instance)}, if any.
+   *
+   * @throws Exception	if flushing fails
+   */
+  public void flush() throws Exception {
+    Instances	data;
+
+    if ((m_Buffer == null) || (m_Buffer.numInstances() == 0))
+      return;
+
+    data     = m_Buffer;
+    m_Buffer = new Instances(data, 0);
+    dump(data);
+  }
+
+  /**
+   * Flushes any pending data and releases resources like open files.
+   * Default implementation only flushes.
+   *
+   * @throws Exception	if flushing or closing fails
+   * @see		#flush()
+   */
+  public void close() throws Exception {
+    flush();
+  }
+
+  /**
+   * Registers the dumper to get closed at JVM exit, e.g., while it holds
+   * an open file.
+   *
+   * @param dumper	the dumper to register
+   * @see		#close()
+   */
+  public static synchronized void closeAtExit(AbstractDumper dumper) {
+    if (m_CloseAtExit == null)
+      m_CloseAtExit = Collections.newSetFromMap(new WeakHashMap<AbstractDumper, Boolean>());
+    if (m_CloseHook == null) {
+      m_CloseHook = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  List<AbstractDumper> dumpers;
+	  synchronized (AbstractDumper.class) {
+	    dumpers = new ArrayList<AbstractDumper>(m_CloseAtExit);
+	  }
+	  for (AbstractDumper dumper: dumpers) {
+	    try {
+	      dumper.close();
+	    }
+	    catch (Exception e) {
+	      System.err.println("Failed to close dumper at exit:");
+	      e.printStackTrace();
+	    }
+	  }
+	}
+      });
+      Runtime.getRuntime().addShutdownHook(m_CloseHook);
+    }
+    m_CloseAtExit.add(dumper);
+  }
+
+  /**
+   * Removes the dumper from the ones to close at JVM exit.
+   *
+   * @param dumper	the dumper to remove
+   */
+  public static synchronized void removeCloseAtExit(AbstractDumper dumper) {
+    if (m_CloseAtExit != null)
+      m_CloseAtExit.remove(dumper);
+  }
 }
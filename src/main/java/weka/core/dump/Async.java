@@ -0,0 +1,711 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Async.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the data to a bounded queue that is processed by a pool of background
+ * threads, which forward it to the base dumper. That way, slow dumpers don't
+ * block training or filtering. Incrementally dumped headers and instances
+ * get forwarded in order by a separate, single background thread.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Async
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 2496498017462826312L;
+
+  /** blocks the caller until space becomes available in the queue. */
+  public static final int POLICY_BLOCK = 0;
+
+  /** discards the oldest queued data to make room. */
+  public static final int POLICY_DROP_OLDEST = 1;
+
+  /** discards the data that is to be queued. */
+  public static final int POLICY_DROP_NEWEST = 2;
+
+  /** the backpressure policies. */
+  public static final Tag[] TAGS_POLICY = {
+    new Tag(POLICY_BLOCK, "block", "Block"),
+    new Tag(POLICY_DROP_OLDEST, "drop-oldest", "Drop oldest"),
+    new Tag(POLICY_DROP_NEWEST, "drop-newest", "Drop newest"),
+  };
+
+  /**
+   * A queued piece of work for the base dumper.
+   */
+  protected abstract class Task
+    implements Runnable {
+
+    /** whether the task may get dropped if the queue is full. */
+    protected boolean m_Droppable;
+
+    /**
+     * Initializes the task.
+     *
+     * @param droppable	whether the task may get dropped if the queue is full
+     */
+    protected Task(boolean droppable) {
+      m_Droppable = droppable;
+    }
+
+    /**
+     * Returns whether the task may get dropped if the queue is full.
+     *
+     * @return		true if droppable
+     */
+    public boolean isDroppable() {
+      return m_Droppable;
+    }
+
+    /**
+     * Performs the actual work.
+     *
+     * @throws Exception	if the base dumper fails
+     */
+    protected abstract void execute() throws Exception;
+
+    /**
+     * Executes the task, recording the first failure.
+     */
+    @Override
+    public void run() {
+      try {
+	execute();
+      }
+      catch (Exception e) {
+	synchronized (Async.this) {
+	  if (m_Failure == null)
+	    m_Failure = e;
+	}
+      }
+      finally {
+	finished(false);
+      }
+    }
+  }
+
+  /** the base dumper. */
+  protected AbstractDumper m_Dumper = new Null();
+
+  /** the number of worker threads. */
+  protected int m_NumThreads = 1;
+
+  /** the maximum number of queued datasets. */
+  protected int m_QueueSize = 10;
+
+  /** the backpressure policy. */
+  protected int m_Policy = POLICY_BLOCK;
+
+  /** the executor for the background dumps. */
+  protected transient ThreadPoolExecutor m_Executor;
+
+  /** the single-threaded executor for the incrementally dumped data. */
+  protected transient ThreadPoolExecutor m_Lane;
+
+  /** the number of dumps that haven't finished yet. */
+  protected transient int m_Pending;
+
+  /** the number of dropped datasets/instances. */
+  protected transient int m_Dropped;
+
+  /** the first exception that occurred in the background. */
+  protected transient Exception m_Failure;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Hands the data to a bounded queue that is processed by a pool of "
+      + "background threads, which forward it to the base dumper. That way, "
+      + "slow dumpers don't block training or filtering.\n"
+      + "The data is queued as a shallow copy, i.e., the header and the "
+      + "values are shared until modified.\n"
+      + "If the queue is full, the backpressure policy determines whether the "
+      + "caller blocks or whether the oldest/newest data gets dropped.\n"
+      + "Incrementally dumped headers and instances get forwarded in order "
+      + "by a separate, single background thread; headers never get dropped.\n"
+      + "Pending data gets written when flushed, closing also closes the "
+      + "base dumper (which happens at JVM exit as well).";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe base data dumper to use.\n"
+	  + "\t(default: " + Null.class.getName() + ")",
+	"dumper", 1, "-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of background threads.\n"
+	  + "\t(default: 1)",
+	"num-threads", 1, "-num-threads <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum number of datasets to queue.\n"
+	  + "\t(default: 10)",
+	"queue-size", 1, "-queue-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe policy to apply when the queue is full.\n"
+	  + "\t(default: " + new SelectedTag(POLICY_BLOCK, TAGS_POLICY) + ")",
+	"policy", 1, "-policy " + Tag.toOptionList(TAGS_POLICY)));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 	tmpStr;
+    String 	className;
+    String[] 	classOptions;
+
+    tmpStr = Utils.getOption("dumper", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setDumper((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    else {
+      setDumper(new Null());
+    }
+
+    tmpStr = Utils.getOption("num-threads", options);
+    if (tmpStr.length() != 0)
+      setNumThreads(Integer.parseInt(tmpStr));
+    else
+      setNumThreads(1);
+
+    tmpStr = Utils.getOption("queue-size", options);
+    if (tmpStr.length() != 0)
+      setQueueSize(Integer.parseInt(tmpStr));
+    else
+      setQueueSize(10);
+
+    tmpStr = Utils.getOption("policy", options);
+    if (tmpStr.length() != 0)
+      setPolicy(new SelectedTag(tmpStr, TAGS_POLICY));
+    else
+      setPolicy(new SelectedTag(POLICY_BLOCK, TAGS_POLICY));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-dumper");
+    result.add(Utils.toCommandLine(getDumper()));
+
+    result.add("-num-threads");
+    result.add("" + getNumThreads());
+
+    result.add("-queue-size");
+    result.add("" + getQueueSize());
+
+    result.add("-policy");
+    result.add("" + getPolicy());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the base data dumper to use.
+   *
+   * @param value the data dumper to use
+   */
+  public void setDumper(AbstractDumper value) {
+    m_Dumper = value;
+  }
+
+  /**
+   * Gets the current base data dumper.
+   *
+   * @return the data dumper
+   */
+  public AbstractDumper getDumper() {
+    return m_Dumper;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumperTipText() {
+    return "The base data dumper to use.";
+  }
+
+  /**
+   * Sets the number of background threads.
+   *
+   * @param value the number of threads (at least 1)
+   */
+  public void setNumThreads(int value) {
+    if (value > 0)
+      m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of background threads.
+   *
+   * @return the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of background threads; the base dumper must be able to "
+      + "handle concurrent calls when using more than one thread.";
+  }
+
+  /**
+   * Sets the maximum number of datasets to queue.
+   *
+   * @param value the queue size (at least 1)
+   */
+  public void setQueueSize(int value) {
+    if (value > 0)
+      m_QueueSize = value;
+  }
+
+  /**
+   * Returns the maximum number of datasets to queue.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return m_QueueSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String queueSizeTipText() {
+    return "The maximum number of datasets to queue.";
+  }
+
+  /**
+   * Sets the policy to apply when the queue is full.
+   *
+   * @param value the policy
+   */
+  public void setPolicy(SelectedTag value) {
+    if (value.getTags() == TAGS_POLICY)
+      m_Policy = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the policy to apply when the queue is full.
+   *
+   * @return the policy
+   */
+  public SelectedTag getPolicy() {
+    return new SelectedTag(m_Policy, TAGS_POLICY);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String policyTipText() {
+    return "The policy to apply when the queue is full.";
+  }
+
+  /**
+   * Returns the number of datasets (or incrementally dumped instances) that
+   * got dropped due to the queue being full.
+   *
+   * @return the number of dropped datasets/instances
+   */
+  public synchronized int getDroppedCount() {
+    return m_Dropped;
+  }
+
+  /**
+   * Returns the number of datasets that are queued or being dumped.
+   *
+   * @return the number of pending datasets
+   */
+  public synchronized int getPendingCount() {
+    return m_Pending;
+  }
+
+  /**
+   * Creates a new executor using the bounded queue and the backpressure
+   * policy. Registers the dumper to get closed at JVM exit.
+   *
+   * @param numThreads	the number of threads
+   * @param name	the name suffix for the threads
+   * @return		the executor
+   */
+  protected ThreadPoolExecutor newExecutor(int numThreads, final String name) {
+    ThreadPoolExecutor		result;
+    final AtomicInteger		count;
+
+    count = new AtomicInteger();
+    result = new ThreadPoolExecutor(
+      numThreads, numThreads, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<Runnable>(m_QueueSize),
+      new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Async.class.getSimpleName() + name + "-" + count.incrementAndGet());
+	  result.setDaemon(true);
+	  return result;
+	}
+      },
+      new RejectedExecutionHandler() {
+	@Override
+	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+	  rejected(r, executor);
+	}
+      });
+    result.allowCoreThreadTimeOut(true);
+    closeAtExit(this);
+
+    return result;
+  }
+
+  /**
+   * Returns the executor, initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected synchronized ThreadPoolExecutor getExecutor() {
+    if (m_Executor == null)
+      m_Executor = newExecutor(m_NumThreads, "");
+    return m_Executor;
+  }
+
+  /**
+   * Returns the single-threaded executor for the incrementally dumped data,
+   * initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected synchronized ThreadPoolExecutor getLane() {
+    if (m_Lane == null)
+      m_Lane = newExecutor(1, "-incremental");
+    return m_Lane;
+  }
+
+  /**
+   * Removes the oldest droppable task from the queue.
+   *
+   * @param queue	the queue to remove the task from
+   * @return		true if a task got removed
+   */
+  protected boolean dropOldest(BlockingQueue<Runnable> queue) {
+    Iterator<Runnable>	iter;
+    Runnable		r;
+
+    iter = queue.iterator();
+    while (iter.hasNext()) {
+      r = iter.next();
+      if ((r instanceof Task) && ((Task) r).isDroppable()) {
+	iter.remove();
+	return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Applies the backpressure policy to a task that didn't fit into the queue.
+   * Tasks that are not droppable (e.g., headers) always block.
+   *
+   * @param r		the rejected task
+   * @param executor	the executor that rejected it
+   */
+  protected void rejected(Runnable r, ThreadPoolExecutor executor) {
+    int		policy;
+
+    if (executor.isShutdown()) {
+      finished(true);
+      return;
+    }
+
+    policy = m_Policy;
+    if ((r instanceof Task) && !((Task) r).isDroppable())
+      policy = POLICY_BLOCK;
+    if ((policy == POLICY_DROP_OLDEST) && !dropOldest(executor.getQueue()))
+      policy = POLICY_BLOCK;
+
+    switch (policy) {
+      case POLICY_BLOCK:
+	try {
+	  executor.getQueue().put(r);
+	}
+	catch (InterruptedException e) {
+	  finished(true);
+	  Thread.currentThread().interrupt();
+	}
+	break;
+
+      case POLICY_DROP_OLDEST:
+	finished(true);
+	executor.execute(r);
+	break;
+
+      case POLICY_DROP_NEWEST:
+	finished(true);
+	break;
+
+      default:
+	throw new IllegalStateException("Unhandled policy: " + m_Policy);
+    }
+  }
+
+  /**
+   * Gets called when a queued task was processed or discarded.
+   *
+   * @param dropped	whether the task got dropped
+   */
+  protected synchronized void finished(boolean dropped) {
+    m_Pending--;
+    if (dropped)
+      m_Dropped++;
+    notifyAll();
+  }
+
+  /**
+   * Queues the task.
+   *
+   * @param executor	the executor to use
+   * @param task	the task to queue
+   */
+  protected void queue(ThreadPoolExecutor executor, Task task) {
+    synchronized (this) {
+      m_Pending++;
+    }
+    executor.execute(task);
+  }
+
+  /**
+   * Queues the data for dumping.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    final Instances	snapshot;
+
+    snapshot = InMemory.snapshot(data);
+    queue(getExecutor(), new Task(true) {
+      @Override
+      protected void execute() throws Exception {
+	m_Dumper.dump(snapshot);
+      }
+    });
+  }
+
+  /**
+   * Waits for all queued data to be dumped.
+   *
+   * @throws InterruptedException	if interrupted
+   */
+  protected synchronized void waitForPending() throws InterruptedException {
+    while (m_Pending > 0)
+      wait();
+  }
+
+  /**
+   * Queues the header for the base dumper, in order with the incrementally
+   * dumped instances. Waits for the queued data first, so that the base
+   * dumper sees a preceding batch dump before the stream starts. Headers
+   * never get dropped.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpHeader(Instances header) throws Exception {
+    final Instances	structure;
+
+    structure = new Instances(header, 0);
+    waitForPending();
+    queue(getLane(), new Task(false) {
+      @Override
+      protected void execute() throws Exception {
+	m_Dumper.dumpHeader(structure);
+      }
+    });
+  }
+
+  /**
+   * Queues the instance for the base dumper, in order with the header.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpInstance(final Instance inst) throws Exception {
+    queue(getLane(), new Task(true) {
+      @Override
+      protected void execute() throws Exception {
+	m_Dumper.dumpInstance(inst);
+      }
+    });
+    getMetrics().addRows(1);
+  }
+
+  /**
+   * Waits for all queued data to be dumped and flushes the base dumper.
+   *
+   * @throws Exception	if flushing fails or a background dump failed
+   */
+  @Override
+  public void flush() throws Exception {
+    Exception	failure;
+
+    synchronized (this) {
+      waitForPending();
+      failure   = m_Failure;
+      m_Failure = null;
+    }
+
+    m_Dumper.flush();
+
+    if (failure != null)
+      throw new Exception("Background dump failed!", failure);
+  }
+
+  /**
+   * Stops the background threads.
+   */
+  protected void stop() {
+    synchronized (this) {
+      if (m_Executor != null) {
+	m_Executor.shutdown();
+	m_Executor = null;
+      }
+      if (m_Lane != null) {
+	m_Lane.shutdown();
+	m_Lane = null;
+      }
+    }
+    removeCloseAtExit(this);
+  }
+
+  /**
+   * Flushes any pending data and stops the background threads.
+   *
+   * @throws Exception	if flushing fails or a background dump failed
+   */
+  public void shutdown() throws Exception {
+    try {
+      flush();
+    }
+    finally {
+      stop();
+    }
+  }
+
+  /**
+   * Waits for all queued data to be dumped, closes the base dumper and
+   * stops the background threads.
+   *
+   * @throws Exception	if flushing/closing fails or a background dump failed
+   */
+  @Override
+  public void close() throws Exception {
+    try {
+      flush();
+    }
+    finally {
+      try {
+	m_Dumper.close();
+      }
+      finally {
+	stop();
+      }
+    }
+  }
+}
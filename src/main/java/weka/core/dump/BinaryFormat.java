@@ -0,0 +1,585 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BinaryFormat.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a dataset. Layout (big endian):
+ * <pre>
+ * int     magic
+ * byte    version
+ * byte    flags (FLAG_SPARSE, FLAG_WEIGHTS)
+ * short   reserved
+ * int     number of rows
+ * int     number of attributes
+ * int     class index
+ * int     length of header
+ * byte[]  header (ARFF, UTF-8), padded to multiple of 8
+ * dense:  double[attributes * rows] values, column by column
+ * sparse: int[rows + 1] row starts, int[n] indices (padded to multiple of 8), double[n] values
+ * double[rows] weights (only if FLAG_WEIGHTS)
+ * strings: for each string attribute, for each row: int length (-1 = missing), byte[] UTF-8
+ * </pre>
+ * Values of dense data can be accessed without copying, see
+ * {@link #getColumn(ByteBuffer, int)}. Relational attributes are not
+ * supported.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class BinaryFormat {
+
+  /** the magic number ("WDMP"). */
+  public static final int MAGIC = 0x57444D50;
+
+  /** the version of the format. */
+  public static final byte VERSION = 1;
+
+  /** flag for sparse data. */
+  public static final byte FLAG_SPARSE = 1;
+
+  /** flag for weights other than 1. */
+  public static final byte FLAG_WEIGHTS = 2;
+
+  /** the size of the fixed part of the header. */
+  public static final int FIXED_SIZE = 24;
+
+  /** the charset for header and strings. */
+  public static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** the data to encode. */
+  protected Instances m_Data;
+
+  /** the flags. */
+  protected byte m_Flags;
+
+  /** the encoded header. */
+  protected byte[] m_Header;
+
+  /** the indices of the string attributes. */
+  protected int[] m_StringIndices;
+
+  /** the encoded string values (attribute - row). */
+  protected byte[][][] m_Strings;
+
+  /** the indices of the sparse rows (incl. string attributes). */
+  protected int[][] m_Indices;
+
+  /** the number of sparse values. */
+  protected int m_NumValues;
+
+  /** the size of the encoded data in bytes. */
+  protected int m_Size;
+
+  /**
+   * Prepares the data for encoding.
+   *
+   * @param data	the data to encode
+   */
+  public BinaryFormat(Instances data) {
+    List<Integer>	strings;
+    boolean		sparse;
+    boolean		weights;
+    long		size;
+    int			i;
+    int			n;
+
+    strings = new ArrayList<Integer>();
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (data.attribute(i).isRelationValued())
+	throw new IllegalArgumentException("Relational attributes are not supported!");
+      if (data.attribute(i).isString())
+	strings.add(i);
+    }
+    m_StringIndices = new int[strings.size()];
+    for (i = 0; i < strings.size(); i++)
+      m_StringIndices[i] = strings.get(i);
+
+    sparse  = (data.numInstances() > 0);
+    weights = false;
+    for (i = 0; i < data.numInstances(); i++) {
+      if (!(data.instance(i) instanceof SparseInstance))
+	sparse = false;
+      if (data.instance(i).weight() != 1.0)
+	weights = true;
+    }
+
+    m_Data   = data;
+    m_Flags  = (byte) ((sparse ? FLAG_SPARSE : 0) | (weights ? FLAG_WEIGHTS : 0));
+    m_Header = new Instances(data, 0).toString().getBytes(UTF8);
+    size     = FIXED_SIZE + pad(m_Header.length);
+
+    if (sparse) {
+      m_Indices   = new int[data.numInstances()][];
+      m_NumValues = 0;
+      for (i = 0; i < data.numInstances(); i++) {
+	m_Indices[i] = sparseIndices(data.instance(i));
+	m_NumValues += m_Indices[i].length;
+      }
+      size += pad(4L * (data.numInstances() + 1 + m_NumValues)) + 8L * m_NumValues;
+    }
+    else {
+      size += 8L * data.numAttributes() * data.numInstances();
+    }
+    if (weights)
+      size += 8L * data.numInstances();
+
+    m_Strings = new byte[m_StringIndices.length][data.numInstances()][];
+    for (n = 0; n < m_StringIndices.length; n++) {
+      for (i = 0; i < data.numInstances(); i++) {
+	if (!data.instance(i).isMissing(m_StringIndices[n]))
+	  m_Strings[n][i] = data.instance(i).stringValue(m_StringIndices[n]).getBytes(UTF8);
+	size += 4 + ((m_Strings[n][i] == null) ? 0 : m_Strings[n][i].length);
+      }
+    }
+
+    if (size > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Data too large for binary format: " + size + " bytes");
+    m_Size = (int) size;
+  }
+
+  /**
+   * Pads the size to a multiple of 8.
+   *
+   * @param size	the size
+   * @return		the padded size
+   */
+  protected static int pad(int size) {
+    return (int) pad((long) size);
+  }
+
+  /**
+   * Pads the size to a multiple of 8.
+   *
+   * @param size	the size
+   * @return		the padded size
+   */
+  protected static long pad(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /**
+   * Returns the indices of the values to store for a sparse instance:
+   * the stored ones plus the ones of the string attributes.
+   *
+   * @param inst	the instance
+   * @return		the sorted indices
+   */
+  protected int[] sparseIndices(Instance inst) {
+    int[]	result;
+    int		count;
+    int		i;
+    int		n;
+    int		index;
+
+    if (m_StringIndices.length == 0) {
+      result = new int[inst.numValues()];
+      for (i = 0; i < result.length; i++)
+	result[i] = inst.index(i);
+      return result;
+    }
+
+    result = new int[inst.numValues() + m_StringIndices.length];
+    count  = 0;
+    n      = 0;
+    for (i = 0; i < inst.numValues(); i++) {
+      index = inst.index(i);
+      while ((n < m_StringIndices.length) && (m_StringIndices[n] < index))
+	result[count++] = m_StringIndices[n++];
+      if ((n < m_StringIndices.length) && (m_StringIndices[n] == index))
+	n++;
+      result[count++] = index;
+    }
+    while (n < m_StringIndices.length)
+      result[count++] = m_StringIndices[n++];
+
+    if (count < result.length)
+      result = Arrays.copyOf(result, count);
+
+    return result;
+  }
+
+  /**
+   * Returns the size of the encoded data.
+   *
+   * @return		the size in bytes
+   */
+  public int getSize() {
+    return m_Size;
+  }
+
+  /**
+   * Writes the encoded data to the buffer, starting at its current position.
+   * The buffer must have at least {@link #getSize()} bytes remaining.
+   *
+   * @param buffer	the buffer to write to
+   */
+  public void write(ByteBuffer buffer) {
+    Instances	data;
+    Instance	inst;
+    int		start;
+    int		i;
+    int		n;
+
+    data  = m_Data;
+    start = buffer.position();
+    buffer.putInt(MAGIC);
+    buffer.put(VERSION);
+    buffer.put(m_Flags);
+    buffer.putShort((short) 0);
+    buffer.putInt(data.numInstances());
+    buffer.putInt(data.numAttributes());
+    buffer.putInt(data.classIndex());
+    buffer.putInt(m_Header.length);
+    buffer.put(m_Header);
+    align(buffer, start);
+
+    if ((m_Flags & FLAG_SPARSE) != 0) {
+      n = 0;
+      buffer.putInt(n);
+      for (i = 0; i < data.numInstances(); i++) {
+	n += m_Indices[i].length;
+	buffer.putInt(n);
+      }
+      for (i = 0; i < data.numInstances(); i++) {
+	for (n = 0; n < m_Indices[i].length; n++)
+	  buffer.putInt(m_Indices[i][n]);
+      }
+      align(buffer, start);
+      for (i = 0; i < data.numInstances(); i++) {
+	inst = data.instance(i);
+	for (n = 0; n < m_Indices[i].length; n++)
+	  buffer.putDouble(inst.value(m_Indices[i][n]));
+      }
+    }
+    else {
+      for (n = 0; n < data.numAttributes(); n++) {
+	for (i = 0; i < data.numInstances(); i++)
+	  buffer.putDouble(data.instance(i).value(n));
+      }
+    }
+
+    if ((m_Flags & FLAG_WEIGHTS) != 0) {
+      for (i = 0; i < data.numInstances(); i++)
+	buffer.putDouble(data.instance(i).weight());
+    }
+
+    for (n = 0; n < m_StringIndices.length; n++) {
+      for (i = 0; i < data.numInstances(); i++) {
+	if (m_Strings[n][i] == null) {
+	  buffer.putInt(-1);
+	}
+	else {
+	  buffer.putInt(m_Strings[n][i].length);
+	  buffer.put(m_Strings[n][i]);
+	}
+      }
+    }
+  }
+
+  /**
+   * Pads the buffer with zeroes to a multiple of 8, relative to the start.
+   *
+   * @param buffer	the buffer to pad
+   * @param start	the start of the encoded data
+   */
+  protected static void align(ByteBuffer buffer, int start) {
+    while (((buffer.position() - start) & 7) != 0)
+      buffer.put((byte) 0);
+  }
+
+  /**
+   * Encodes the data.
+   *
+   * @param data	the data to encode
+   * @return		the encoded data
+   */
+  public static byte[] toBytes(Instances data) {
+    BinaryFormat	format;
+    byte[]		result;
+
+    format = new BinaryFormat(data);
+    result = new byte[format.getSize()];
+    format.write(ByteBuffer.wrap(result));
+
+    return result;
+  }
+
+  /**
+   * Decodes the data.
+   *
+   * @param bytes	the encoded data
+   * @return		the data
+   * @throws Exception	if decoding fails
+   */
+  public static Instances fromBytes(byte[] bytes) throws Exception {
+    return read(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Checks the magic number and version of the encoded data.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   */
+  protected static void check(ByteBuffer buffer) {
+    if (buffer.getInt(0) != MAGIC)
+      throw new IllegalStateException("Not in binary dump format!");
+    if (buffer.get(4) != VERSION)
+      throw new IllegalStateException("Unsupported binary dump format version: " + buffer.get(4));
+  }
+
+  /**
+   * Returns the number of rows of the encoded data.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		the number of rows
+   */
+  public static int getNumRows(ByteBuffer buffer) {
+    check(buffer);
+    return buffer.getInt(8);
+  }
+
+  /**
+   * Returns the number of attributes of the encoded data.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		the number of attributes
+   */
+  public static int getNumAttributes(ByteBuffer buffer) {
+    check(buffer);
+    return buffer.getInt(12);
+  }
+
+  /**
+   * Returns whether the encoded data is sparse.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		true if sparse
+   */
+  public static boolean isSparse(ByteBuffer buffer) {
+    check(buffer);
+    return (buffer.get(5) & FLAG_SPARSE) != 0;
+  }
+
+  /**
+   * Returns the offset of the values.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		the offset
+   */
+  protected static int getValuesOffset(ByteBuffer buffer) {
+    return FIXED_SIZE + pad(buffer.getInt(20));
+  }
+
+  /**
+   * Returns the structure of the encoded data.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		the structure
+   * @throws Exception	if decoding fails
+   */
+  public static Instances getHeader(ByteBuffer buffer) throws Exception {
+    Instances	result;
+    byte[]	header;
+    ByteBuffer	buf;
+
+    check(buffer);
+    header = new byte[buffer.getInt(20)];
+    buf    = buffer.duplicate();
+    buf.position(FIXED_SIZE);
+    buf.get(header);
+    result = new Instances(new BufferedReader(new StringReader(new String(header, UTF8))));
+    result.setClassIndex(buffer.getInt(16));
+
+    return result;
+  }
+
+  /**
+   * Returns a view on the values of an attribute of dense data, without
+   * copying them. The values of string attributes are only indices, use
+   * {@link #read(ByteBuffer)} to obtain the actual strings.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @param index	the index of the attribute
+   * @return		the values (one per row), null if data is sparse
+   */
+  public static DoubleBuffer getColumn(ByteBuffer buffer, int index) {
+    ByteBuffer	buf;
+    int		rows;
+    int		offset;
+
+    if (isSparse(buffer))
+      return null;
+    if ((index < 0) || (index >= getNumAttributes(buffer)))
+      throw new IndexOutOfBoundsException("Invalid attribute index: " + index);
+
+    rows   = getNumRows(buffer);
+    offset = getValuesOffset(buffer) + 8 * index * rows;
+    buf    = buffer.duplicate();
+    buf.limit(offset + 8 * rows);
+    buf.position(offset);
+
+    return buf.slice().asDoubleBuffer().asReadOnlyBuffer();
+  }
+
+  /**
+   * Decodes the data.
+   *
+   * @param buffer	the encoded data, starting at position 0
+   * @return		the data
+   * @throws Exception	if decoding fails
+   */
+  public static Instances read(ByteBuffer buffer) throws Exception {
+    Instances	result;
+    ByteBuffer	buf;
+    byte	flags;
+    int		rows;
+    int		atts;
+    int[]	starts;
+    int[]	indices;
+    double[]	values;
+    double[][]	dense;
+    double[]	weights;
+    double[]	row;
+    int[]	rowIndices;
+    int[]	strings;
+    String[][]	stringValues;
+    byte[]	bytes;
+    int		len;
+    int		i;
+    int		n;
+    int		k;
+    Attribute	att;
+
+    result = getHeader(buffer);
+    flags  = buffer.get(5);
+    rows   = buffer.getInt(8);
+    atts   = buffer.getInt(12);
+    buf    = buffer.duplicate();
+    buf.position(getValuesOffset(buffer));
+
+    starts  = null;
+    indices = null;
+    values  = null;
+    dense   = null;
+    if ((flags & FLAG_SPARSE) != 0) {
+      starts = new int[rows + 1];
+      for (i = 0; i <= rows; i++)
+	starts[i] = buf.getInt();
+      indices = new int[starts[rows]];
+      for (i = 0; i < indices.length; i++)
+	indices[i] = buf.getInt();
+      while ((buf.position() & 7) != 0)
+	buf.get();
+      values = new double[indices.length];
+      buf.asDoubleBuffer().get(values);
+      buf.position(buf.position() + 8 * values.length);
+    }
+    else {
+      dense = new double[atts][rows];
+      for (n = 0; n < atts; n++) {
+	buf.asDoubleBuffer().get(dense[n]);
+	buf.position(buf.position() + 8 * rows);
+      }
+    }
+
+    weights = null;
+    if ((flags & FLAG_WEIGHTS) != 0) {
+      weights = new double[rows];
+      buf.asDoubleBuffer().get(weights);
+      buf.position(buf.position() + 8 * rows);
+    }
+
+    n = 0;
+    for (i = 0; i < atts; i++) {
+      if (result.attribute(i).isString())
+	n++;
+    }
+    strings      = new int[n];
+    stringValues = new String[n][rows];
+    n            = 0;
+    for (i = 0; i < atts; i++) {
+      if (result.attribute(i).isString())
+	strings[n++] = i;
+    }
+    for (n = 0; n < strings.length; n++) {
+      for (i = 0; i < rows; i++) {
+	len = buf.getInt();
+	if (len == -1)
+	  continue;
+	bytes = new byte[len];
+	buf.get(bytes);
+	stringValues[n][i] = new String(bytes, UTF8);
+      }
+    }
+
+    // string attributes need the values in the header of the result
+    for (n = 0; n < strings.length; n++) {
+      att = result.attribute(strings[n]);
+      for (i = 0; i < rows; i++) {
+	if (stringValues[n][i] == null)
+	  continue;
+	if (dense != null) {
+	  dense[strings[n]][i] = att.addStringValue(stringValues[n][i]);
+	}
+	else {
+	  for (k = starts[i]; k < starts[i + 1]; k++) {
+	    if (indices[k] == strings[n]) {
+	      values[k] = att.addStringValue(stringValues[n][i]);
+	      break;
+	    }
+	  }
+	}
+      }
+    }
+
+    for (i = 0; i < rows; i++) {
+      if (dense != null) {
+	row = new double[atts];
+	for (n = 0; n < atts; n++)
+	  row[n] = dense[n][i];
+	result.add(new DenseInstance((weights == null) ? 1.0 : weights[i], row));
+      }
+      else {
+	rowIndices = new int[starts[i + 1] - starts[i]];
+	row        = new double[rowIndices.length];
+	System.arraycopy(indices, starts[i], rowIndices, 0, rowIndices.length);
+	System.arraycopy(values, starts[i], row, 0, row.length);
+	result.add(new SparseInstance((weights == null) ? 1.0 : weights[i], row, rowIndices, atts));
+      }
+    }
+
+    return result;
+  }
+}
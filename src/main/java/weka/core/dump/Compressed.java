@@ -0,0 +1,531 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Compressed.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the dumped data in memory, compressed. The data gets encoded with
+ * {@link BinaryFormat} and compressed with {@link Deflater} at dump time;
+ * it only gets decompressed when requested via a {@link Handle}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Compressed
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 2266384434850617226L;
+
+  /**
+   * Handle for compressed data, which decodes the data on request.
+   */
+  public static class Handle
+    implements Serializable {
+
+    private static final long serialVersionUID = -7410834862618963154L;
+
+    /** the sequence number. */
+    protected long m_Sequence;
+
+    /** the label. */
+    protected String m_Label;
+
+    /** the time the data was dumped. */
+    protected long m_Timestamp;
+
+    /** the number of rows. */
+    protected int m_Rows;
+
+    /** the size of the uncompressed data. */
+    protected int m_Size;
+
+    /** the compressed data. */
+    protected byte[] m_Compressed;
+
+    /**
+     * Initializes the handle.
+     *
+     * @param sequence	the sequence number
+     * @param label	the label
+     * @param rows	the number of rows
+     * @param size	the size of the uncompressed data
+     * @param compressed	the compressed data
+     */
+    public Handle(long sequence, String label, int rows, int size, byte[] compressed) {
+      m_Sequence   = sequence;
+      m_Label      = label;
+      m_Timestamp  = System.currentTimeMillis();
+      m_Rows       = rows;
+      m_Size       = size;
+      m_Compressed = compressed;
+    }
+
+    /**
+     * Returns the sequence number.
+     *
+     * @return		the sequence number
+     */
+    public long getSequence() {
+      return m_Sequence;
+    }
+
+    /**
+     * Returns the label.
+     *
+     * @return		the label
+     */
+    public String getLabel() {
+      return m_Label;
+    }
+
+    /**
+     * Returns the time the data was dumped.
+     *
+     * @return		the timestamp (msec since epoch)
+     */
+    public long getTimestamp() {
+      return m_Timestamp;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return		the number of rows
+     */
+    public int getRows() {
+      return m_Rows;
+    }
+
+    /**
+     * Returns the size of the encoded data before compression.
+     *
+     * @return		the size in bytes
+     */
+    public int getSize() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the size of the compressed data.
+     *
+     * @return		the size in bytes
+     */
+    public int getCompressedSize() {
+      return m_Compressed.length;
+    }
+
+    /**
+     * Decompresses and decodes the data. Every call returns a new copy.
+     *
+     * @return		the data
+     * @throws Exception	if decoding fails
+     */
+    public Instances getData() throws Exception {
+      return BinaryFormat.fromBytes(decompress(m_Compressed, m_Size));
+    }
+
+    /**
+     * Returns a short description of the handle.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "seq=" + m_Sequence + ", label=" + m_Label + ", rows=" + m_Rows
+	+ ", size=" + m_Size + ", compressed=" + m_Compressed.length;
+    }
+  }
+
+  /** the compression level. */
+  protected int m_Level = Deflater.DEFAULT_COMPRESSION;
+
+  /** the maximum size of the compressed data to keep in bytes. */
+  protected long m_MaxBytes = 100 * 1024 * 1024;
+
+  /** the handles (sequence - handle), oldest first. */
+  protected transient LinkedHashMap<Long, Handle> m_Handles;
+
+  /** the size of the compressed data. */
+  protected transient long m_Bytes;
+
+  /** the next sequence number. */
+  protected transient long m_Sequence;
+
+  /** the number of handles evicted. */
+  protected transient long m_Evictions;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Keeps the dumped data in memory in compressed form: the data "
+      + "gets encoded column by column in a compact binary format and "
+      + "compressed (deflate) at dump time. The data is only decompressed "
+      + "when requested via the handles (API use), e.g., when inspecting the "
+      + "data of a failed run.\n"
+      + "The oldest data gets evicted once the compressed data exceeds the "
+      + "maximum size, always keeping the most recent one.\n"
+      + "Relational attributes are not supported.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe compression level (0-9, -1 for default).\n"
+	  + "\t(default: -1)",
+	"level", 1, "-level <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum size in bytes of the compressed data to keep.\n"
+	  + "\t(default: 104857600)",
+	"max-bytes", 1, "-max-bytes <long>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("level", options);
+    if (tmpStr.length() != 0)
+      setLevel(Integer.parseInt(tmpStr));
+    else
+      setLevel(Deflater.DEFAULT_COMPRESSION);
+
+    tmpStr = Utils.getOption("max-bytes", options);
+    if (tmpStr.length() != 0)
+      setMaxBytes(Long.parseLong(tmpStr));
+    else
+      setMaxBytes(100 * 1024 * 1024);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-level");
+    result.add("" + getLevel());
+
+    result.add("-max-bytes");
+    result.add("" + getMaxBytes());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the compression level.
+   *
+   * @param value the level (0-9, -1 for default)
+   */
+  public void setLevel(int value) {
+    if ((value >= -1) && (value <= 9))
+      m_Level = value;
+  }
+
+  /**
+   * Returns the compression level.
+   *
+   * @return the level (0-9, -1 for default)
+   */
+  public int getLevel() {
+    return m_Level;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String levelTipText() {
+    return "The compression level (0-9, -1 for default); lower levels are faster, higher ones compress better.";
+  }
+
+  /**
+   * Sets the maximum size of the compressed data to keep.
+   *
+   * @param value the maximum in bytes
+   */
+  public void setMaxBytes(long value) {
+    if (value > 0)
+      m_MaxBytes = value;
+  }
+
+  /**
+   * Returns the maximum size of the compressed data to keep.
+   *
+   * @return the maximum in bytes
+   */
+  public long getMaxBytes() {
+    return m_MaxBytes;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxBytesTipText() {
+    return "The maximum size in bytes of the compressed data to keep; the oldest data gets evicted first.";
+  }
+
+  /**
+   * Compresses the data.
+   *
+   * @param data	the data to compress
+   * @param level	the compression level
+   * @return		the compressed data
+   */
+  public static byte[] compress(byte[] data, int level) {
+    ByteArrayOutputStream	out;
+    Deflater			deflater;
+    byte[]			buffer;
+
+    deflater = new Deflater(level);
+    out      = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+    buffer   = new byte[8192];
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      while (!deflater.finished())
+	out.write(buffer, 0, deflater.deflate(buffer));
+    }
+    finally {
+      deflater.end();
+    }
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Decompresses the data.
+   *
+   * @param data	the compressed data
+   * @param size	the size of the uncompressed data
+   * @return		the uncompressed data
+   * @throws DataFormatException	if the data is corrupt
+   */
+  public static byte[] decompress(byte[] data, int size) throws DataFormatException {
+    Inflater	inflater;
+    byte[]	result;
+    int		count;
+
+    inflater = new Inflater();
+    result   = new byte[size];
+    count    = 0;
+    try {
+      inflater.setInput(data);
+      while ((count < size) && !inflater.finished()) {
+	count += inflater.inflate(result, count, size - count);
+	if (inflater.needsInput() || inflater.needsDictionary())
+	  break;
+      }
+    }
+    finally {
+      inflater.end();
+    }
+    if (count != size)
+      throw new DataFormatException("Expected " + size + " bytes, but decompressed " + count);
+
+    return result;
+  }
+
+  /**
+   * Compresses and stores the data.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    store(data, data.relationName());
+  }
+
+  /**
+   * Compresses and stores the data under the specified label.
+   *
+   * @param data	the data to store
+   * @param label	the label for the data
+   * @return		the handle for the data
+   */
+  public Handle store(Instances data, String label) {
+    Handle	result;
+    byte[]	encoded;
+    byte[]	compressed;
+
+    encoded    = BinaryFormat.toBytes(data);
+    compressed = compress(encoded, m_Level);
+    getMetrics().addBytes(compressed.length);
+
+    synchronized (this) {
+      if (m_Handles == null)
+	m_Handles = new LinkedHashMap<Long, Handle>();
+      result = new Handle(m_Sequence++, label, data.numInstances(), encoded.length, compressed);
+      m_Handles.put(result.getSequence(), result);
+      m_Bytes += compressed.length;
+      evict();
+    }
+
+    return result;
+  }
+
+  /**
+   * Evicts the oldest handles until the size limit is met, always keeping
+   * the most recent one.
+   */
+  protected void evict() {
+    Handle	handle;
+
+    while ((m_Bytes > m_MaxBytes) && (m_Handles.size() > 1)) {
+      handle = m_Handles.values().iterator().next();
+      m_Handles.remove(handle.getSequence());
+      m_Bytes -= handle.getCompressedSize();
+      m_Evictions++;
+    }
+  }
+
+  /**
+   * Returns the handle with the specified sequence number.
+   *
+   * @param sequence	the sequence number
+   * @return		the handle, null if not available
+   */
+  public synchronized Handle getHandle(long sequence) {
+    if (m_Handles == null)
+      return null;
+    return m_Handles.get(sequence);
+  }
+
+  /**
+   * Returns the most recent handle with the specified label.
+   *
+   * @param label	the label
+   * @return		the handle, null if not available
+   */
+  public synchronized Handle getHandle(String label) {
+    Handle	result;
+
+    result = null;
+    if (m_Handles != null) {
+      for (Handle h: m_Handles.values()) {
+	if (h.getLabel().equals(label))
+	  result = h;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the handle of the most recent data.
+   *
+   * @return		the handle, null if none available
+   */
+  public synchronized Handle getLatest() {
+    if ((m_Handles == null) || (m_Sequence == 0))
+      return null;
+    return m_Handles.get(m_Sequence - 1);
+  }
+
+  /**
+   * Returns all handles, oldest first.
+   *
+   * @return		the handles
+   */
+  public synchronized List<Handle> getHandles() {
+    if (m_Handles == null)
+      return new ArrayList<Handle>();
+    return new ArrayList<Handle>(m_Handles.values());
+  }
+
+  /**
+   * Returns the size of the compressed data.
+   *
+   * @return		the size in bytes
+   */
+  public synchronized long getBytes() {
+    return m_Bytes;
+  }
+
+  /**
+   * Returns the number of handles evicted.
+   *
+   * @return		the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return m_Evictions;
+  }
+
+  /**
+   * Removes all data.
+   */
+  public synchronized void clear() {
+    if (m_Handles != null)
+      m_Handles.clear();
+    m_Bytes = 0;
+  }
+}
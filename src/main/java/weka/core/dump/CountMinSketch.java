@@ -0,0 +1,291 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CountMinSketch.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Mergeable sketch for estimating the frequencies of values, following
+ * Cormode and Muthukrishnan: "An improved data stream summary: the
+ * count-min sketch and its applications" (2005). Estimates never
+ * underestimate and overestimate by at most e/width * total with
+ * probability 1 - exp(-depth). Additionally keeps track of the most
+ * frequent values (heavy hitters).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class CountMinSketch
+  implements Serializable {
+
+  private static final long serialVersionUID = 1965735089373217787L;
+
+  /**
+   * Heavy hitter candidate, ordered by estimated count (and value).
+   */
+  protected static class Candidate
+    implements Comparable<Candidate> {
+
+    /** the value. */
+    public final String value;
+
+    /** the estimated count. */
+    public final long count;
+
+    /**
+     * Initializes the candidate.
+     *
+     * @param value	the value
+     * @param count	the estimated count
+     */
+    public Candidate(String value, long count) {
+      this.value = value;
+      this.count = count;
+    }
+
+    /**
+     * Compares the count, then the value.
+     *
+     * @param o		the candidate to compare with
+     * @return		less than, equal to or greater than zero
+     */
+    @Override
+    public int compareTo(Candidate o) {
+      if (count != o.count)
+	return (count < o.count) ? -1 : 1;
+      return value.compareTo(o.value);
+    }
+  }
+
+  /** the number of columns. */
+  protected int m_Width;
+
+  /** the number of rows. */
+  protected int m_Depth;
+
+  /** the counts. */
+  protected long[][] m_Counts;
+
+  /** the total count. */
+  protected long m_Total;
+
+  /** the number of heavy hitters to keep. */
+  protected int m_Top;
+
+  /** the heavy hitter candidates (value - estimated count). */
+  protected Map<String, Long> m_HeavyHitters;
+
+  /** the heavy hitter candidates, least frequent first (rebuilt after deserialization). */
+  protected transient TreeSet<Candidate> m_Candidates;
+
+  /**
+   * Initializes the sketch.
+   *
+   * @param width	the number of columns
+   * @param depth	the number of rows
+   * @param top		the number of heavy hitters to keep track of
+   */
+  public CountMinSketch(int width, int depth, int top) {
+    if ((width < 1) || (depth < 1))
+      throw new IllegalArgumentException("Width and depth must be at least 1: " + width + "/" + depth);
+    m_Width        = width;
+    m_Depth        = depth;
+    m_Top          = top;
+    m_Counts       = new long[depth][width];
+    m_HeavyHitters = new HashMap<String, Long>();
+  }
+
+  /**
+   * Returns the column for the hash in the row.
+   *
+   * @param hash	the 64-bit hash
+   * @param row		the row
+   * @return		the column
+   */
+  protected int column(long hash, int row) {
+    int		combined;
+
+    combined = (int) hash + row * (int) (hash >>> 32);
+    return (combined & Integer.MAX_VALUE) % m_Width;
+  }
+
+  /**
+   * Returns the estimated count of the hash.
+   *
+   * @param hash	the 64-bit hash of the value
+   * @return		the estimated count
+   */
+  public long estimate(long hash) {
+    long	result;
+    int		i;
+
+    result = Long.MAX_VALUE;
+    for (i = 0; i < m_Depth; i++)
+      result = Math.min(result, m_Counts[i][column(hash, i)]);
+
+    return result;
+  }
+
+  /**
+   * Returns the estimated count of the value.
+   *
+   * @param value	the value
+   * @return		the estimated count
+   */
+  public long estimate(String value) {
+    return estimate(HyperLogLog.hash(value));
+  }
+
+  /**
+   * Adds the value.
+   *
+   * @param value	the value
+   * @param count	the count to add
+   */
+  public void add(String value, long count) {
+    long	hash;
+    long	estimate;
+    int		i;
+
+    hash     = HyperLogLog.hash(value);
+    estimate = Long.MAX_VALUE;
+    for (i = 0; i < m_Depth; i++) {
+      m_Counts[i][column(hash, i)] += count;
+      estimate = Math.min(estimate, m_Counts[i][column(hash, i)]);
+    }
+    m_Total += count;
+    offer(value, estimate);
+  }
+
+  /**
+   * Returns the heavy hitter candidates ordered by count, initializes them
+   * if necessary.
+   *
+   * @return		the candidates, least frequent first
+   */
+  protected TreeSet<Candidate> getCandidates() {
+    if (m_Candidates == null) {
+      m_Candidates = new TreeSet<Candidate>();
+      for (Map.Entry<String, Long> entry: m_HeavyHitters.entrySet())
+	m_Candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+    }
+    return m_Candidates;
+  }
+
+  /**
+   * Updates the heavy hitter candidates with the value, replacing the least
+   * frequent candidate if necessary (logarithmic in the number of
+   * candidates).
+   *
+   * @param value	the value
+   * @param estimate	its estimated count
+   */
+  protected void offer(String value, long estimate) {
+    TreeSet<Candidate>	candidates;
+    Candidate		min;
+    Long		current;
+
+    if (m_Top < 1)
+      return;
+
+    candidates = getCandidates();
+    current    = m_HeavyHitters.get(value);
+    if (current != null) {
+      if (current == estimate)
+	return;
+      candidates.remove(new Candidate(value, current));
+    }
+    else if (m_HeavyHitters.size() >= m_Top) {
+      min = candidates.first();
+      if (estimate <= min.count)
+	return;
+      candidates.pollFirst();
+      m_HeavyHitters.remove(min.value);
+    }
+    m_HeavyHitters.put(value, estimate);
+    candidates.add(new Candidate(value, estimate));
+  }
+
+  /**
+   * Merges the other sketch into this one.
+   *
+   * @param other	the sketch to merge
+   */
+  public void merge(CountMinSketch other) {
+    List<String>	candidates;
+    int			i;
+    int			n;
+
+    if ((other.m_Width != m_Width) || (other.m_Depth != m_Depth))
+      throw new IllegalArgumentException("Cannot merge sketches with different dimensions: "
+	+ m_Width + "x" + m_Depth + " != " + other.m_Width + "x" + other.m_Depth);
+
+    for (i = 0; i < m_Depth; i++) {
+      for (n = 0; n < m_Width; n++)
+	m_Counts[i][n] += other.m_Counts[i][n];
+    }
+    m_Total += other.m_Total;
+
+    candidates = new ArrayList<String>(m_HeavyHitters.keySet());
+    candidates.addAll(other.m_HeavyHitters.keySet());
+    m_HeavyHitters.clear();
+    m_Candidates = null;
+    for (String candidate: candidates)
+      offer(candidate, estimate(candidate));
+  }
+
+  /**
+   * Returns the total count.
+   *
+   * @return		the total
+   */
+  public long getTotal() {
+    return m_Total;
+  }
+
+  /**
+   * Returns the heavy hitters, most frequent first.
+   *
+   * @return		the values with their estimated counts
+   */
+  public List<Map.Entry<String, Long>> getHeavyHitters() {
+    List<Map.Entry<String, Long>>	result;
+
+    result = new ArrayList<Map.Entry<String, Long>>(m_HeavyHitters.entrySet());
+    Collections.sort(result, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+	int result = o2.getValue().compareTo(o1.getValue());
+	if (result == 0)
+	  result = o1.getKey().compareTo(o2.getKey());
+	return result;
+      }
+    });
+
+    return result;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataHash.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+/**
+ * Computes a content hash of datasets, without turning the instances into
+ * strings. The hash covers the header, the class index, the weights and
+ * the values of the instances (including their sparse/dense layout).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DataHash {
+
+  /** the digest algorithm to use. */
+  public static final String ALGORITHM = "MD5";
+
+  /** the encoding for strings. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /** the digest. */
+  protected MessageDigest m_Digest;
+
+  /** the buffer for the values. */
+  protected ByteBuffer m_Buffer;
+
+  /**
+   * Initializes the hash.
+   *
+   * @throws Exception	if the digest algorithm is not available
+   */
+  public DataHash() throws Exception {
+    m_Digest = MessageDigest.getInstance(ALGORITHM);
+    m_Buffer = ByteBuffer.allocate(8192);
+  }
+
+  /**
+   * Passes the buffered bytes on to the digest.
+   */
+  protected void drain() {
+    m_Digest.update(m_Buffer.array(), 0, m_Buffer.position());
+    m_Buffer.clear();
+  }
+
+  /**
+   * Makes sure that the specified number of bytes fits into the buffer.
+   *
+   * @param bytes	the number of bytes
+   */
+  protected void ensure(int bytes) {
+    if (m_Buffer.remaining() < bytes)
+      drain();
+  }
+
+  /**
+   * Adds the string.
+   *
+   * @param s		the string to add
+   */
+  public void update(String s) {
+    byte[]	bytes;
+
+    bytes = s.getBytes(UTF8);
+    update(bytes.length);
+    drain();
+    m_Digest.update(bytes);
+  }
+
+  /**
+   * Adds the integer.
+   *
+   * @param value	the value to add
+   */
+  public void update(int value) {
+    ensure(4);
+    m_Buffer.putInt(value);
+  }
+
+  /**
+   * Adds the double.
+   *
+   * @param value	the value to add
+   */
+  public void update(double value) {
+    ensure(8);
+    m_Buffer.putLong(Double.doubleToLongBits(value));
+  }
+
+  /**
+   * Adds the structure of the dataset.
+   *
+   * @param header	the dataset to add the structure for
+   */
+  public void updateHeader(Instances header) {
+    update(new Instances(header, 0).toString());
+    update(header.classIndex());
+  }
+
+  /**
+   * Adds the instance.
+   *
+   * @param inst	the instance to add
+   */
+  public void update(Instance inst) {
+    int		i;
+    int		index;
+    boolean	sparse;
+
+    sparse = (inst.numValues() != inst.numAttributes());
+    update(sparse ? inst.numValues() : -1);
+    update(inst.weight());
+    for (i = 0; i < inst.numValues(); i++) {
+      index = inst.index(i);
+      if (sparse)
+	update(index);
+      if (inst.isMissingSparse(i)) {
+	update(Double.NaN);
+      }
+      else if (inst.attributeSparse(i).isString()) {
+	update(inst.stringValue(index));
+      }
+      else if (inst.attributeSparse(i).isRelationValued()) {
+	updateHeader(inst.relationalValue(index));
+	update(inst.relationalValue(index).toString());
+      }
+      else {
+	update(inst.valueSparse(i));
+      }
+    }
+  }
+
+  /**
+   * Returns the hash as hexadecimal string and resets it.
+   *
+   * @return		the hash
+   */
+  public String digest() {
+    StringBuilder	result;
+    byte[]		bytes;
+
+    drain();
+    bytes  = m_Digest.digest();
+    result = new StringBuilder(bytes.length * 2);
+    for (byte b: bytes) {
+      result.append(Character.forDigit((b >> 4) & 0x0F, 16));
+      result.append(Character.forDigit(b & 0x0F, 16));
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Computes the hash for the dataset.
+   *
+   * @param data	the data to hash
+   * @return		the hash
+   * @throws Exception	if the digest algorithm is not available
+   */
+  public static String hash(Instances data) throws Exception {
+    DataHash	hash;
+    int		i;
+
+    hash = new DataHash();
+    hash.updateHeader(data);
+    hash.update(data.numInstances());
+    for (i = 0; i < data.numInstances(); i++)
+      hash.update(data.instance(i));
+
+    return hash.digest();
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DiskCache.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+import weka.core.ResourceUtils;
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores serialized objects in a directory, one file per key, limited by
+ * the total size and/or number of entries. The least recently used
+ * (or oldest, see {@link InMemory#EVICTION_FIFO}) entries get removed once
+ * a limit is exceeded. The file modification time records the last access,
+ * so the same directory can be shared across runs and JVMs.
+ * <br>
+ * As the entries get deserialized, access to the directory gets restricted
+ * to the owner; the cache refuses to use a directory for which that fails
+ * (e.g., one owned by another user).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DiskCache {
+
+  /** the extension of the cache files. */
+  public static final String EXTENSION = ".cache";
+
+  /** the directory to store the entries in. */
+  protected File m_Directory;
+
+  /** whether access to the directory has been restricted to the owner. */
+  protected volatile boolean m_Secured;
+
+  /** the maximum total size in bytes (&lt;= 0 for unlimited). */
+  protected long m_MaxSize;
+
+  /** the maximum number of entries (&lt;= 0 for unlimited). */
+  protected int m_MaxEntries;
+
+  /** the eviction policy (see {@link InMemory#TAGS_EVICTION}). */
+  protected int m_Eviction;
+
+  /** the number of hits. */
+  protected AtomicLong m_Hits;
+
+  /** the number of misses. */
+  protected AtomicLong m_Misses;
+
+  /** the number of evicted entries. */
+  protected AtomicLong m_Evictions;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param dir		the directory to store the entries in
+   * @param maxSize	the maximum total size in bytes, &lt;= 0 for unlimited
+   * @param maxEntries	the maximum number of entries, &lt;= 0 for unlimited
+   * @param eviction	the eviction policy, see {@link InMemory#TAGS_EVICTION}
+   */
+  public DiskCache(File dir, long maxSize, int maxEntries, int eviction) {
+    m_Directory  = dir.getAbsoluteFile();
+    m_MaxSize    = maxSize;
+    m_MaxEntries = maxEntries;
+    m_Eviction   = eviction;
+    m_Hits       = new AtomicLong();
+    m_Misses     = new AtomicLong();
+    m_Evictions  = new AtomicLong();
+  }
+
+  /**
+   * Returns the default directory for a cache, located in the user's Weka
+   * home directory.
+   *
+   * @param name	the name of the cache directory
+   * @return		the directory
+   */
+  public static File getDefaultDir(String name) {
+    return new File(ResourceUtils.getWekaHome(), name);
+  }
+
+  /**
+   * Creates the directory if necessary and restricts access to the owner.
+   * On Windows, the permissions cannot be set this way, the directory gets
+   * used as is.
+   *
+   * @param dir		the directory to secure
+   * @return		true if successful
+   */
+  public static boolean secure(File dir) {
+    if (!dir.exists() && !dir.mkdirs())
+      return false;
+    if (File.separatorChar == '\\')
+      return true;
+    return dir.setReadable(false, false) && dir.setWritable(false, false)
+      && dir.setExecutable(false, false) && dir.setReadable(true, true)
+      && dir.setWritable(true, true) && dir.setExecutable(true, true);
+  }
+
+  /**
+   * Creates the cache directory if necessary and restricts access to the
+   * owner.
+   *
+   * @return		true if successful
+   * @see		#secure(File)
+   */
+  protected boolean secure() {
+    if (m_Secured)
+      return true;
+
+    m_Secured = secure(m_Directory);
+    if (!m_Secured)
+      System.err.println("Cannot restrict access to cache directory " + m_Directory + " to owner, not using it!");
+
+    return m_Secured;
+  }
+
+  /**
+   * Returns the directory.
+   *
+   * @return		the directory
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Returns the file for the key.
+   *
+   * @param key		the key
+   * @return		the file
+   */
+  protected File getFile(String key) {
+    return new File(m_Directory, key + EXTENSION);
+  }
+
+  /**
+   * Returns the cache files.
+   *
+   * @return		the files
+   */
+  protected File[] list() {
+    File[]	result;
+
+    result = m_Directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File pathname) {
+	return pathname.isFile() && pathname.getName().endsWith(EXTENSION);
+      }
+    });
+
+    return (result == null) ? new File[0] : result;
+  }
+
+  /**
+   * Returns whether an entry is stored for the key.
+   *
+   * @param key		the key
+   * @return		true if stored
+   */
+  public boolean contains(String key) {
+    return getFile(key).exists();
+  }
+
+  /**
+   * Returns the object stored under the key, updating the hit/miss counters.
+   * An entry that cannot be read (e.g., of an incompatible class version)
+   * gets removed and counts as miss. Nothing gets read if access to the
+   * directory cannot be restricted to the owner.
+   *
+   * @param key		the key
+   * @return		the object, null if not stored
+   */
+  public Object get(String key) {
+    Object	result;
+    File	file;
+
+    file = getFile(key);
+    synchronized (SaveToDisk.getLock(m_Directory)) {
+      if (!file.exists() || !secure()) {
+	m_Misses.incrementAndGet();
+	return null;
+      }
+      try {
+	result = SerializationHelper.read(file.getAbsolutePath());
+      }
+      catch (Exception e) {
+	System.err.println("Failed to read cache entry: " + file);
+	e.printStackTrace();
+	file.delete();
+	m_Misses.incrementAndGet();
+	return null;
+      }
+      if (m_Eviction == InMemory.EVICTION_LRU)
+	file.setLastModified(System.currentTimeMillis());
+    }
+    m_Hits.incrementAndGet();
+
+    return result;
+  }
+
+  /**
+   * Stores the object under the key and evicts entries if necessary.
+   *
+   * @param key		the key
+   * @param value	the object to store
+   * @throws Exception	if writing fails
+   */
+  public void put(String key, Object value) throws Exception {
+    File	file;
+    File	tmp;
+
+    file = getFile(key);
+    tmp  = new File(m_Directory, key + ".tmp");
+    synchronized (SaveToDisk.getLock(m_Directory)) {
+      if (!secure())
+	throw new IllegalStateException("Failed to create cache directory or restrict access to owner: " + m_Directory);
+      try {
+	SerializationHelper.write(tmp.getAbsolutePath(), value);
+      }
+      catch (Exception e) {
+	tmp.delete();
+	throw e;
+      }
+      if (file.exists())
+	file.delete();
+      if (!tmp.renameTo(file))
+	throw new IllegalStateException("Failed to rename " + tmp + " to " + file);
+      evict(file);
+    }
+  }
+
+  /**
+   * Removes the entry stored under the key.
+   *
+   * @param key		the key
+   * @return		true if removed
+   */
+  public boolean remove(String key) {
+    synchronized (SaveToDisk.getLock(m_Directory)) {
+      return getFile(key).delete();
+    }
+  }
+
+  /**
+   * Removes the oldest entries (according to the modification time) until
+   * the cache is within its limits again.
+   *
+   * @param keep	the entry to keep, can be null
+   */
+  protected void evict(File keep) {
+    File[]	files;
+    long	size;
+    long	length;
+    int		count;
+    int		i;
+
+    if ((m_MaxSize <= 0) && (m_MaxEntries <= 0))
+      return;
+
+    files = list();
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+	int result = Long.valueOf(o1.lastModified()).compareTo(o2.lastModified());
+	if (result == 0)
+	  result = o1.getName().compareTo(o2.getName());
+	return result;
+      }
+    });
+    size = 0;
+    for (File file: files)
+      size += file.length();
+    count = files.length;
+
+    for (i = 0; i < files.length; i++) {
+      if (((m_MaxSize <= 0) || (size <= m_MaxSize)) && ((m_MaxEntries <= 0) || (count <= m_MaxEntries)))
+	break;
+      if (files[i].equals(keep))
+	continue;
+      length = files[i].length();
+      if (files[i].delete()) {
+	size -= length;
+	count--;
+	m_Evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Removes all entries.
+   */
+  public void clear() {
+    synchronized (SaveToDisk.getLock(m_Directory)) {
+      for (File file: list())
+	file.delete();
+    }
+  }
+
+  /**
+   * Returns the number of stored entries.
+   *
+   * @return		the number of entries
+   */
+  public int size() {
+    return list().length;
+  }
+
+  /**
+   * Returns the total size of the stored entries.
+   *
+   * @return		the size in bytes
+   */
+  public long getSize() {
+    long	result;
+
+    result = 0;
+    for (File file: list())
+      result += file.length();
+
+    return result;
+  }
+
+  /**
+   * Returns the number of hits.
+   *
+   * @return		the hits
+   */
+  public long getHits() {
+    return m_Hits.get();
+  }
+
+  /**
+   * Returns the number of misses.
+   *
+   * @return		the misses
+   */
+  public long getMisses() {
+    return m_Misses.get();
+  }
+
+  /**
+   * Returns the number of evicted entries.
+   *
+   * @return		the evictions
+   */
+  public long getEvictions() {
+    return m_Evictions.get();
+  }
+
+  /**
+   * Generates a key from the content of the data and the configuration,
+   * e.g., the command-line of a scheme.
+   *
+   * @param data	the data
+   * @param config	the configuration strings
+   * @return		the key
+   * @throws Exception	if the digest algorithm is not available
+   */
+  public static String getKey(Instances data, String... config) throws Exception {
+    DataHash	hash;
+    int		i;
+
+    hash = new DataHash();
+    hash.updateHeader(data);
+    hash.update(data.numInstances());
+    for (i = 0; i < data.numInstances(); i++)
+      hash.update(data.instance(i));
+    hash.update(config.length);
+    for (String c: config)
+      hash.update(c);
+
+    return hash.digest();
+  }
+}
@@ -0,0 +1,367 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperMetrics.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects statistics about the dump calls of a dumper: number of calls,
+ * failures, rows, bytes and a latency histogram.
+ * <br>
+ * Dumpers with a label share their metrics with all other dumpers of the
+ * same class and label (e.g., the copies of a classifier created during
+ * cross-validation). These metrics get registered with the platform MBean
+ * server under "weka.core.dump:type=&lt;class&gt;,label=&lt;label&gt;" and
+ * are available via {@link #getRegistered()}. Dumpers without a label
+ * have private metrics.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperMetrics
+  implements DumperMetricsMBean {
+
+  /** the JMX domain. */
+  public static final String DOMAIN = "weka.core.dump";
+
+  /** the upper bounds of the histogram bins in msec. */
+  public static final long[] HISTOGRAM_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  /** the registered metrics (class + label). */
+  protected static Map<String, DumperMetrics> m_Registered = new HashMap<String, DumperMetrics>();
+
+  /** the classname of the dumper. */
+  protected String m_DumperClass;
+
+  /** the label. */
+  protected String m_Label;
+
+  /** the number of calls. */
+  protected long m_Calls;
+
+  /** the number of failed calls. */
+  protected long m_Errors;
+
+  /** the number of rows. */
+  protected long m_Rows;
+
+  /** the number of bytes. */
+  protected long m_Bytes;
+
+  /** the total duration in nanoseconds. */
+  protected long m_TotalNanos;
+
+  /** the maximum duration in nanoseconds. */
+  protected long m_MaxNanos;
+
+  /** the histogram counts. */
+  protected long[] m_Histogram;
+
+  /** the time of the last finished call. */
+  protected long m_LastDump;
+
+  /** the last error message. */
+  protected String m_LastError;
+
+  /**
+   * Initializes the metrics.
+   *
+   * @param dumperClass	the classname of the dumper
+   * @param label	the label
+   */
+  public DumperMetrics(String dumperClass, String label) {
+    m_DumperClass = dumperClass;
+    m_Label       = label;
+    m_Histogram   = new long[HISTOGRAM_BOUNDS.length + 1];
+  }
+
+  /**
+   * Returns the metrics for the dumper. Labelled metrics get shared and
+   * registered with JMX.
+   *
+   * @param dumper	the dumper to get the metrics for
+   * @return		the metrics
+   */
+  public static synchronized DumperMetrics getMetrics(AbstractDumper dumper) {
+    DumperMetrics	result;
+    String		cls;
+    String		label;
+    String		key;
+
+    cls   = dumper.getClass().getName();
+    label = dumper.getLabel();
+    if (label.isEmpty())
+      return new DumperMetrics(cls, label);
+
+    key    = cls + "\t" + label;
+    result = m_Registered.get(key);
+    if (result == null) {
+      result = new DumperMetrics(cls, label);
+      m_Registered.put(key, result);
+      try {
+	ManagementFactory.getPlatformMBeanServer().registerMBean(result, result.getObjectName());
+      }
+      catch (Exception e) {
+	System.err.println("Failed to register metrics for " + cls + "/" + label + " with JMX:");
+	e.printStackTrace();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns all registered (= labelled) metrics.
+   *
+   * @return		the metrics
+   */
+  public static synchronized List<DumperMetrics> getRegistered() {
+    return new ArrayList<DumperMetrics>(m_Registered.values());
+  }
+
+  /**
+   * Returns the JMX name of these metrics.
+   *
+   * @return		the name
+   * @throws Exception	if the name is invalid
+   */
+  public ObjectName getObjectName() throws Exception {
+    return new ObjectName(
+      DOMAIN + ":type=" + ObjectName.quote(m_DumperClass) + ",label=" + ObjectName.quote(m_Label));
+  }
+
+  /**
+   * Records a successful dump call.
+   *
+   * @param rows	the number of rows dumped
+   * @param nanos	the duration in nanoseconds
+   */
+  public synchronized void success(int rows, long nanos) {
+    m_Rows += rows;
+    record(nanos);
+  }
+
+  /**
+   * Records a failed dump call.
+   *
+   * @param e		the error
+   * @param nanos	the duration in nanoseconds
+   */
+  public synchronized void failure(Exception e, long nanos) {
+    m_Errors++;
+    m_LastError = e.toString();
+    record(nanos);
+  }
+
+  /**
+   * Records the call duration.
+   *
+   * @param nanos	the duration in nanoseconds
+   */
+  protected void record(long nanos) {
+    long	msec;
+    int		i;
+
+    m_Calls++;
+    m_TotalNanos += nanos;
+    m_MaxNanos    = Math.max(m_MaxNanos, nanos);
+    m_LastDump    = System.currentTimeMillis();
+    msec          = nanos / 1000000L;
+    for (i = 0; i < HISTOGRAM_BOUNDS.length; i++) {
+      if (msec < HISTOGRAM_BOUNDS[i])
+	break;
+    }
+    m_Histogram[i]++;
+  }
+
+  /**
+   * Adds rows that were written outside dump calls (e.g., incrementally).
+   *
+   * @param rows	the number of rows
+   */
+  public synchronized void addRows(long rows) {
+    m_Rows += rows;
+  }
+
+  /**
+   * Adds the number of bytes written.
+   *
+   * @param bytes	the number of bytes
+   */
+  public synchronized void addBytes(long bytes) {
+    m_Bytes += bytes;
+  }
+
+  /**
+   * Returns the classname of the dumper.
+   *
+   * @return		the classname
+   */
+  @Override
+  public String getDumperClass() {
+    return m_DumperClass;
+  }
+
+  /**
+   * Returns the label of the dumper.
+   *
+   * @return		the label
+   */
+  @Override
+  public String getLabel() {
+    return m_Label;
+  }
+
+  /**
+   * Returns the number of dump calls.
+   *
+   * @return		the number of calls
+   */
+  @Override
+  public synchronized long getCalls() {
+    return m_Calls;
+  }
+
+  /**
+   * Returns the number of failed dump calls.
+   *
+   * @return		the number of failures
+   */
+  @Override
+  public synchronized long getErrors() {
+    return m_Errors;
+  }
+
+  /**
+   * Returns the number of rows dumped.
+   *
+   * @return		the number of rows
+   */
+  @Override
+  public synchronized long getRows() {
+    return m_Rows;
+  }
+
+  /**
+   * Returns the number of bytes written, if known to the dumper.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public synchronized long getBytes() {
+    return m_Bytes;
+  }
+
+  /**
+   * Returns the average duration of a dump call.
+   *
+   * @return		the duration in msec
+   */
+  @Override
+  public synchronized double getMeanLatency() {
+    if (m_Calls == 0)
+      return 0;
+    return m_TotalNanos / 1000000.0 / m_Calls;
+  }
+
+  /**
+   * Returns the maximum duration of a dump call.
+   *
+   * @return		the duration in msec
+   */
+  @Override
+  public synchronized double getMaxLatency() {
+    return m_MaxNanos / 1000000.0;
+  }
+
+  /**
+   * Returns the upper bounds of the latency histogram bins (the last bin
+   * collects everything above the last bound).
+   *
+   * @return		the bounds in msec
+   */
+  @Override
+  public long[] getHistogramBounds() {
+    return HISTOGRAM_BOUNDS.clone();
+  }
+
+  /**
+   * Returns the counts of the latency histogram.
+   *
+   * @return		the counts, one more than bounds
+   */
+  @Override
+  public synchronized long[] getHistogram() {
+    return m_Histogram.clone();
+  }
+
+  /**
+   * Returns the time of the last dump call that finished.
+   *
+   * @return		the timestamp (msec since epoch), 0 if none yet
+   */
+  @Override
+  public synchronized long getLastDump() {
+    return m_LastDump;
+  }
+
+  /**
+   * Returns the message of the last error.
+   *
+   * @return		the message, null if none
+   */
+  @Override
+  public synchronized String getLastError() {
+    return m_LastError;
+  }
+
+  /**
+   * Resets all counters.
+   */
+  @Override
+  public synchronized void reset() {
+    m_Calls      = 0;
+    m_Errors     = 0;
+    m_Rows       = 0;
+    m_Bytes      = 0;
+    m_TotalNanos = 0;
+    m_MaxNanos   = 0;
+    m_Histogram  = new long[HISTOGRAM_BOUNDS.length + 1];
+    m_LastDump   = 0;
+    m_LastError  = null;
+  }
+
+  /**
+   * Returns a short description of the metrics.
+   *
+   * @return		the description
+   */
+  @Override
+  public synchronized String toString() {
+    return m_DumperClass + (m_Label.isEmpty() ? "" : "/" + m_Label)
+      + ": calls=" + m_Calls + ", errors=" + m_Errors + ", rows=" + m_Rows
+      + ", bytes=" + m_Bytes + ", mean=" + getMeanLatency() + "ms, max=" + getMaxLatency() + "ms";
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperMetricsMBean.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+/**
+ * JMX management interface of {@link DumperMetrics}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public interface DumperMetricsMBean {
+
+  /**
+   * Returns the classname of the dumper.
+   *
+   * @return		the classname
+   */
+  public String getDumperClass();
+
+  /**
+   * Returns the label of the dumper.
+   *
+   * @return		the label
+   */
+  public String getLabel();
+
+  /**
+   * Returns the number of dump calls.
+   *
+   * @return		the number of calls
+   */
+  public long getCalls();
+
+  /**
+   * Returns the number of failed dump calls.
+   *
+   * @return		the number of failures
+   */
+  public long getErrors();
+
+  /**
+   * Returns the number of rows dumped.
+   *
+   * @return		the number of rows
+   */
+  public long getRows();
+
+  /**
+   * Returns the number of bytes written, if known to the dumper.
+   *
+   * @return		the number of bytes
+   */
+  public long getBytes();
+
+  /**
+   * Returns the average duration of a dump call.
+   *
+   * @return		the duration in msec
+   */
+  public double getMeanLatency();
+
+  /**
+   * Returns the maximum duration of a dump call.
+   *
+   * @return		the duration in msec
+   */
+  public double getMaxLatency();
+
+  /**
+   * Returns the upper bounds of the latency histogram bins (the last bin
+   * collects everything above the last bound).
+   *
+   * @return		the bounds in msec
+   */
+  public long[] getHistogramBounds();
+
+  /**
+   * Returns the counts of the latency histogram.
+   *
+   * @return		the counts, one more than bounds
+   */
+  public long[] getHistogram();
+
+  /**
+   * Returns the time of the last dump call that finished.
+   *
+   * @return		the timestamp (msec since epoch), 0 if none yet
+   */
+  public long getLastDump();
+
+  /**
+   * Returns the message of the last error.
+   *
+   * @return		the message, null if none
+   */
+  public String getLastError();
+
+  /**
+   * Resets all counters.
+   */
+  public void reset();
+}
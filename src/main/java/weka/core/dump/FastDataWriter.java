@@ -0,0 +1,694 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FastDataWriter.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes ARFF and CSV files for datasets without relational attributes,
+ * formatting numbers and nominal labels directly into a byte buffer without
+ * creating strings per row (only string and date values still get turned
+ * into strings). The output is identical to the one of ArffSaver and
+ * CSVSaver (with default options), as used by DataSink.
+ * <br>
+ * Numbers that cannot be formatted unambiguously (e.g., ties when rounding
+ * or very large values) get formatted with Utils.doubleToString. If the
+ * number format of the default locale differs from the built-in one, the
+ * fast path is disabled altogether (see {@link #isAvailable()}).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class FastDataWriter {
+
+  /** ARFF format. */
+  public static final int FORMAT_ARFF = 0;
+
+  /** CSV format. */
+  public static final int FORMAT_CSV = 1;
+
+  /** the number of decimal places used by the savers. */
+  public static final int MAX_DECIMAL_PLACES = 6;
+
+  /** the size of the buffer. */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  /** the largest scaled value that gets formatted directly. */
+  protected static final double MAX_SCALED = 1L << 52;
+
+  /** the powers of ten. */
+  protected static final long[] POW10 = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+  /** the buffers for {@link #write(File, Instances)}. */
+  protected static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
+  /** whether the number formatting agrees with Utils.doubleToString. */
+  protected static Boolean m_Available;
+
+  /** the format. */
+  protected int m_Format;
+
+  /** the structure of the data. */
+  protected Instances m_Header;
+
+  /** whether the attributes are nominal. */
+  protected boolean[] m_Nominal;
+
+  /** the (quoted) labels of the nominal attributes. */
+  protected byte[][][] m_Labels;
+
+  /** whether the attributes are string attributes. */
+  protected boolean[] m_String;
+
+  /** the indices of the string attributes. */
+  protected int[] m_StringIndices;
+
+  /** the line separator. */
+  protected byte[] m_NewLine;
+
+  /** the charset to use. */
+  protected Charset m_Charset;
+
+  /** the buffer. */
+  protected ByteBuffer m_Buffer;
+
+  /** for assembling digits. */
+  protected byte[] m_Digits;
+
+  /** the channel to write to. */
+  protected WritableByteChannel m_Channel;
+
+  /** the number of bytes written to the channel since opening it. */
+  protected long m_Written;
+
+  /**
+   * Initializes the writer with its own buffer.
+   *
+   * @param header	the structure of the data
+   * @param format	the format (FORMAT_ARFF or FORMAT_CSV)
+   */
+  public FastDataWriter(Instances header, int format) {
+    this(header, format, ByteBuffer.allocateDirect(BUFFER_SIZE));
+  }
+
+  /**
+   * Initializes the writer.
+   *
+   * @param header	the structure of the data
+   * @param format	the format (FORMAT_ARFF or FORMAT_CSV)
+   * @param buffer	the buffer to use
+   */
+  public FastDataWriter(Instances header, int format, ByteBuffer buffer) {
+    Attribute		att;
+    List<Integer>	strings;
+    int			i;
+    int			n;
+
+    if (!isSupported(header))
+      throw new IllegalArgumentException("Relational attributes are not supported!");
+
+    m_Format  = format;
+    m_Header  = new Instances(header, 0);
+    m_Charset = Charset.defaultCharset();
+    m_NewLine = System.getProperty("line.separator").getBytes(m_Charset);
+    m_Buffer  = buffer;
+    m_Digits  = new byte[20];
+    m_Nominal = new boolean[header.numAttributes()];
+    m_Labels  = new byte[header.numAttributes()][][];
+    m_String  = new boolean[header.numAttributes()];
+    strings   = new ArrayList<Integer>();
+    for (i = 0; i < header.numAttributes(); i++) {
+      att = header.attribute(i);
+      if (att.isString()) {
+	m_String[i] = true;
+	strings.add(i);
+      }
+      if (!att.isNominal())
+	continue;
+      m_Nominal[i] = true;
+      m_Labels[i]  = new byte[att.numValues()][];
+      for (n = 0; n < att.numValues(); n++)
+	m_Labels[i][n] = Utils.quote(att.value(n)).getBytes(m_Charset);
+    }
+    m_StringIndices = new int[strings.size()];
+    for (i = 0; i < strings.size(); i++)
+      m_StringIndices[i] = strings.get(i);
+    m_Buffer.clear();
+  }
+
+  /**
+   * Checks whether the number formatting of the default locale agrees with
+   * the one of this writer.
+   *
+   * @return		true if the writer can be used
+   */
+  public static synchronized boolean isAvailable() {
+    FastDataWriter	writer;
+    Instances		header;
+    double[]		values;
+    byte[]		bytes;
+    boolean		result;
+
+    if (m_Available == null) {
+      values = new double[]{
+	0.0, -0.0, 1.0, -1.0, 0.5, -0.5, 0.1, 1.25, -3.75, 0.0000001, -0.0000001,
+	0.0000005, 0.0000015, 123456.123456, 0.3333333333, 2.0 / 3.0, 1234567.0,
+	99999.9999995, 0.000999, 1e-300, 123456789.987654321};
+      header = new Instances("check", new ArrayList<Attribute>(), 0);
+      writer = new FastDataWriter(header, FORMAT_CSV, ByteBuffer.allocate(1024));
+      result = true;
+      for (double value: values) {
+	writer.m_Buffer.clear();
+	try {
+	  writer.appendDouble(value);
+	}
+	catch (IOException e) {
+	  result = false;
+	  break;
+	}
+	writer.m_Buffer.flip();
+	bytes = new byte[writer.m_Buffer.remaining()];
+	writer.m_Buffer.get(bytes);
+	if (!new String(bytes, writer.m_Charset).equals(Utils.doubleToString(value, MAX_DECIMAL_PLACES))) {
+	  result = false;
+	  break;
+	}
+      }
+      m_Available = result;
+    }
+
+    return m_Available;
+  }
+
+  /**
+   * Checks whether the dataset can be written, i.e., it contains no
+   * relational attributes.
+   *
+   * @param header	the structure of the data
+   * @return		true if supported
+   */
+  public static boolean isSupported(Instances header) {
+    int		i;
+
+    for (i = 0; i < header.numAttributes(); i++) {
+      if (header.attribute(i).isRelationValued())
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Determines the format from the file extension.
+   *
+   * @param file	the file to get the format for
+   * @return		the format, -1 if not supported
+   */
+  public static int getFormat(File file) {
+    String	name;
+
+    name = file.getName().toLowerCase();
+    if (name.endsWith(".arff"))
+      return FORMAT_ARFF;
+    if (name.endsWith(".csv"))
+      return FORMAT_CSV;
+    return -1;
+  }
+
+  /**
+   * Checks whether any of the instances has a weight other than 1.
+   *
+   * @param data	the data to check
+   * @return		true if weighted
+   */
+  public static boolean hasWeights(Instances data) {
+    int		i;
+
+    for (i = 0; i < data.numInstances(); i++) {
+      if (data.instance(i).weight() != 1.0)
+	return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks whether the data can be written to the file with this writer.
+   * CSV can't store instance weights, weighted data is left to the CSVSaver,
+   * which rejects it.
+   *
+   * @param file	the file to write to
+   * @param data	the data to write
+   * @return		true if the writer can be used
+   */
+  public static boolean canWrite(File file, Instances data) {
+    int		format;
+
+    format = getFormat(file);
+    if ((format == FORMAT_CSV) && hasWeights(data))
+      return false;
+    return (format > -1) && isSupported(data) && isAvailable();
+  }
+
+  /**
+   * Writes the data to the file. Like DataSink, checks the data against the
+   * capabilities of the saver for the file type first.
+   *
+   * @param file	the file to write to
+   * @param data	the data to write
+   * @throws Exception	if writing fails or the saver can't handle the data
+   * @see		#canWrite(File, Instances)
+   */
+  public static void write(File file, Instances data) throws Exception {
+    FastDataWriter	writer;
+    FileOutputStream	out;
+    FileChannel		channel;
+    int			i;
+
+    ConverterUtils.getSaverForFile(file).getCapabilities().testWithFail(data);
+
+    writer = new FastDataWriter(data, getFormat(file), BUFFERS.get());
+    if ((file.getAbsoluteFile().getParentFile() != null) && !file.getAbsoluteFile().getParentFile().exists())
+      file.getAbsoluteFile().getParentFile().mkdirs();
+    out     = new FileOutputStream(file);
+    channel = out.getChannel();
+    try {
+      writer.open(channel);
+      writer.writeHeader();
+      for (i = 0; i < data.numInstances(); i++)
+	writer.write(data.instance(i));
+      writer.flush();
+    }
+    finally {
+      writer.m_Channel = null;
+      out.close();
+    }
+  }
+
+  /**
+   * Sets the channel to write to.
+   *
+   * @param channel	the channel
+   */
+  public void open(WritableByteChannel channel) {
+    m_Channel = channel;
+    m_Written = 0;
+    m_Buffer.clear();
+  }
+
+  /**
+   * Returns the number of bytes written since opening the channel,
+   * including the ones still buffered.
+   *
+   * @return		the number of bytes
+   */
+  public long getBytesWritten() {
+    return m_Written + m_Buffer.position();
+  }
+
+  /**
+   * Writes the buffered bytes to the channel.
+   *
+   * @throws IOException	if writing fails
+   */
+  public void flush() throws IOException {
+    m_Buffer.flip();
+    m_Written += m_Buffer.remaining();
+    while (m_Buffer.hasRemaining())
+      m_Channel.write(m_Buffer);
+    m_Buffer.clear();
+  }
+
+  /**
+   * Makes sure that the specified number of bytes fits into the buffer.
+   *
+   * @param bytes	the number of bytes
+   * @throws IOException	if writing fails
+   */
+  protected void ensure(int bytes) throws IOException {
+    if (m_Buffer.remaining() < bytes)
+      flush();
+  }
+
+  /**
+   * Appends the bytes.
+   *
+   * @param bytes	the bytes to append
+   * @throws IOException	if writing fails
+   */
+  protected void append(byte[] bytes) throws IOException {
+    ByteBuffer	wrapped;
+
+    if (bytes.length > m_Buffer.capacity()) {
+      flush();
+      wrapped = ByteBuffer.wrap(bytes);
+      while (wrapped.hasRemaining())
+	m_Channel.write(wrapped);
+      return;
+    }
+    ensure(bytes.length);
+    m_Buffer.put(bytes);
+  }
+
+  /**
+   * Appends the ASCII character.
+   *
+   * @param c		the character
+   * @throws IOException	if writing fails
+   */
+  protected void append(char c) throws IOException {
+    ensure(1);
+    m_Buffer.put((byte) c);
+  }
+
+  /**
+   * Appends the digits of the non-negative number.
+   *
+   * @param value	the number
+   */
+  protected void appendDigits(long value) {
+    int		pos;
+
+    pos = m_Digits.length;
+    do {
+      m_Digits[--pos] = (byte) ('0' + (value % 10));
+      value /= 10;
+    }
+    while (value > 0);
+    m_Buffer.put(m_Digits, pos, m_Digits.length - pos);
+  }
+
+  /**
+   * Appends the number the same way as Utils.doubleToString with
+   * {@link #MAX_DECIMAL_PLACES} decimal places.
+   *
+   * @param value	the number
+   * @throws IOException	if writing fails
+   */
+  protected void appendDouble(double value) throws IOException {
+    double	scaled;
+    double	lower;
+    double	fraction;
+    long	rounded;
+    long	intPart;
+    long	fracPart;
+    int		digits;
+
+    scaled = Math.abs(value) * POW10[MAX_DECIMAL_PLACES];
+    if (Double.isNaN(value) || Double.isInfinite(value) || (scaled >= MAX_SCALED)) {
+      append(Utils.doubleToString(value, MAX_DECIMAL_PLACES).getBytes(m_Charset));
+      return;
+    }
+
+    // ties can't be decided reliably in floating point
+    lower    = Math.floor(scaled);
+    fraction = scaled - lower;
+    if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+      append(Utils.doubleToString(value, MAX_DECIMAL_PLACES).getBytes(m_Charset));
+      return;
+    }
+    rounded = (long) lower;
+    if (fraction > 0.5)
+      rounded++;
+
+    ensure(40);
+    if ((value < 0) || ((value == 0) && (1.0 / value < 0)))
+      m_Buffer.put((byte) '-');
+    intPart  = rounded / POW10[MAX_DECIMAL_PLACES];
+    fracPart = rounded % POW10[MAX_DECIMAL_PLACES];
+    appendDigits(intPart);
+    if (fracPart > 0) {
+      digits = MAX_DECIMAL_PLACES;
+      while (fracPart % 10 == 0) {
+	fracPart /= 10;
+	digits--;
+      }
+      m_Buffer.put((byte) '.');
+      while (digits > 1 && fracPart < POW10[digits - 1]) {
+	m_Buffer.put((byte) '0');
+	digits--;
+      }
+      appendDigits(fracPart);
+    }
+  }
+
+  /**
+   * Appends the value of the attribute.
+   *
+   * @param inst	the instance the value belongs to
+   * @param index	the attribute index
+   * @param value	the internal value
+   * @throws IOException	if writing fails
+   */
+  protected void appendValue(Instance inst, int index, double value) throws IOException {
+    if (Utils.isMissingValue(value))
+      append('?');
+    else if (m_Nominal[index])
+      append(m_Labels[index][(int) value]);
+    else if (m_String[index])
+      append(Utils.quote(inst.stringValue(index)).getBytes(m_Charset));
+    else if (m_Header.attribute(index).isDate())
+      append(Utils.quote(m_Header.attribute(index).formatDate(value)).getBytes(m_Charset));
+    else
+      appendDouble(value);
+  }
+
+  /**
+   * Appends the index of a sparse value.
+   *
+   * @param index	the index
+   * @throws IOException	if writing fails
+   */
+  protected void appendIndex(int index) throws IOException {
+    ensure(20);
+    appendDigits(index);
+  }
+
+  /**
+   * Appends the line separator.
+   *
+   * @throws IOException	if writing fails
+   */
+  protected void appendNewLine() throws IOException {
+    append(m_NewLine);
+  }
+
+  /**
+   * Writes the header.
+   *
+   * @throws IOException	if writing fails
+   */
+  public void writeHeader() throws IOException {
+    StringBuilder	header;
+    int			i;
+
+    if (m_Format == FORMAT_ARFF) {
+      append(m_Header.toString().getBytes(m_Charset));
+    }
+    else {
+      header = new StringBuilder();
+      for (i = 0; i < m_Header.numAttributes(); i++) {
+	if (i > 0)
+	  header.append(",");
+	header.append(Utils.quote(m_Header.attribute(i).name()));
+      }
+      append(header.toString().getBytes(m_Charset));
+      appendNewLine();
+    }
+  }
+
+  /**
+   * Writes the instance.
+   *
+   * @param inst	the instance to write
+   * @throws IOException	if writing fails
+   */
+  public void write(Instance inst) throws IOException {
+    write(inst, null);
+  }
+
+  /**
+   * Writes the instance, with an additional value for the last attribute
+   * of the header, which must be a string attribute.
+   *
+   * @param inst	the instance to write, with one attribute less than the header
+   * @param extra	the quoted and encoded value of the additional attribute, null if none
+   * @throws IOException	if writing fails
+   */
+  public void write(Instance inst, byte[] extra) throws IOException {
+    if (m_Format == FORMAT_CSV)
+      writeCSV(inst, extra);
+    else if (inst.getClass() == DenseInstance.class)
+      writeDense(inst, extra);
+    else if ((inst.getClass() == SparseInstance.class) || (extra != null))
+      writeSparse(inst, extra);
+    else
+      append(inst.toStringMaxDecimalDigits(MAX_DECIMAL_PLACES).getBytes(m_Charset));
+
+    if (m_Format == FORMAT_ARFF)
+      appendNewLine();
+  }
+
+  /**
+   * Encodes the value for the additional attribute.
+   *
+   * @param value	the value
+   * @return		the quoted and encoded value
+   * @see		#write(Instance, byte[])
+   */
+  public byte[] encode(String value) {
+    return Utils.quote(value).getBytes(m_Charset);
+  }
+
+  /**
+   * Writes the instance as CSV row (without weight).
+   *
+   * @param inst	the instance to write
+   * @param extra	the value of the additional attribute, null if none
+   * @throws IOException	if writing fails
+   */
+  protected void writeCSV(Instance inst, byte[] extra) throws IOException {
+    int		i;
+
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (i > 0)
+	append(',');
+      appendValue(inst, i, inst.value(i));
+    }
+    if (extra != null) {
+      append(',');
+      append(extra);
+    }
+    appendNewLine();
+  }
+
+  /**
+   * Writes the dense instance in ARFF format.
+   *
+   * @param inst	the instance to write
+   * @param extra	the value of the additional attribute, null if none
+   * @throws IOException	if writing fails
+   */
+  protected void writeDense(Instance inst, byte[] extra) throws IOException {
+    int		i;
+
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (i > 0)
+	append(',');
+      appendValue(inst, i, inst.value(i));
+    }
+    if (extra != null) {
+      append(',');
+      append(extra);
+    }
+    appendWeight(inst);
+  }
+
+  /**
+   * Writes the sparse instance in ARFF format. Like SparseInstance, zeros
+   * don't get output, apart from string attributes.
+   *
+   * @param inst	the instance to write
+   * @param extra	the value of the additional attribute, null if none
+   * @throws IOException	if writing fails
+   */
+  protected void writeSparse(Instance inst, byte[] extra) throws IOException {
+    boolean	first;
+    double	value;
+    int		index;
+    int		i;
+    int		s;
+    int		numStrings;
+
+    append('{');
+    first      = true;
+    i          = 0;
+    s          = 0;
+    numStrings = m_StringIndices.length;
+    if (extra != null)
+      numStrings--;
+    while ((i < inst.numValues()) || (s < numStrings)) {
+      // string attributes always get output, even if not stored
+      if ((s < numStrings) && ((i >= inst.numValues()) || (m_StringIndices[s] < inst.index(i)))) {
+	index = m_StringIndices[s++];
+	value = inst.value(index);
+      }
+      else {
+	index = inst.index(i);
+	value = inst.valueSparse(i++);
+	if ((s < numStrings) && (m_StringIndices[s] == index))
+	  s++;
+	else if (!Utils.isMissingValue(value) && (value == 0))
+	  continue;
+      }
+      if (!first)
+	append(',');
+      first = false;
+      appendIndex(index);
+      append(' ');
+      appendValue(inst, index, value);
+    }
+    if (extra != null) {
+      if (!first)
+	append(',');
+      appendIndex(inst.numAttributes());
+      append(' ');
+      append(extra);
+    }
+    append('}');
+    appendWeight(inst);
+  }
+
+  /**
+   * Appends the weight in ARFF format, if not 1.
+   *
+   * @param inst	the instance to get the weight from
+   * @throws IOException	if writing fails
+   */
+  protected void appendWeight(Instance inst) throws IOException {
+    if (inst.weight() == 1.0)
+      return;
+    append(',');
+    append('{');
+    appendDouble(inst.weight());
+    append('}');
+  }
+}
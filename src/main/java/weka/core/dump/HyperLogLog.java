@@ -0,0 +1,178 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * HyperLogLog.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import java.io.Serializable;
+
+/**
+ * Mergeable sketch for estimating the number of distinct values, following
+ * Flajolet et al: "HyperLogLog: the analysis of a near-optimal cardinality
+ * estimation algorithm" (2007), using 64-bit hashes and linear counting
+ * for small cardinalities. The relative error is about 1.04 / sqrt(2^p).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class HyperLogLog
+  implements Serializable {
+
+  private static final long serialVersionUID = -2217383040402745104L;
+
+  /** the precision (number of index bits). */
+  protected int m_Precision;
+
+  /** the registers. */
+  protected byte[] m_Registers;
+
+  /**
+   * Initializes the sketch.
+   *
+   * @param precision	the number of index bits (4-18), uses 2^precision bytes
+   */
+  public HyperLogLog(int precision) {
+    if ((precision < 4) || (precision > 18))
+      throw new IllegalArgumentException("Precision must be within 4 and 18: " + precision);
+    m_Precision = precision;
+    m_Registers = new byte[1 << precision];
+  }
+
+  /**
+   * Returns the precision.
+   *
+   * @return		the number of index bits
+   */
+  public int getPrecision() {
+    return m_Precision;
+  }
+
+  /**
+   * Adds the hash of a value.
+   *
+   * @param hash	the 64-bit hash, see {@link #hash(long)}
+   */
+  public void add(long hash) {
+    int		index;
+    int		rank;
+
+    index = (int) (hash >>> (64 - m_Precision));
+    rank  = Math.min(Long.numberOfLeadingZeros(hash << m_Precision), 64 - m_Precision) + 1;
+    if (rank > m_Registers[index])
+      m_Registers[index] = (byte) rank;
+  }
+
+  /**
+   * Merges the other sketch into this one.
+   *
+   * @param other	the sketch to merge
+   */
+  public void merge(HyperLogLog other) {
+    int		i;
+
+    if (other.m_Precision != m_Precision)
+      throw new IllegalArgumentException("Cannot merge sketches with different precision: " + m_Precision + " != " + other.m_Precision);
+    for (i = 0; i < m_Registers.length; i++) {
+      if (other.m_Registers[i] > m_Registers[i])
+	m_Registers[i] = other.m_Registers[i];
+    }
+  }
+
+  /**
+   * Returns the estimated number of distinct values.
+   *
+   * @return		the estimate
+   */
+  public long getEstimate() {
+    double	sum;
+    double	alpha;
+    double	estimate;
+    int		zeros;
+    int		m;
+    int		i;
+
+    m     = m_Registers.length;
+    sum   = 0;
+    zeros = 0;
+    for (i = 0; i < m; i++) {
+      sum += 1.0 / (1L << m_Registers[i]);
+      if (m_Registers[i] == 0)
+	zeros++;
+    }
+
+    if (m == 16)
+      alpha = 0.673;
+    else if (m == 32)
+      alpha = 0.697;
+    else if (m == 64)
+      alpha = 0.709;
+    else
+      alpha = 0.7213 / (1 + 1.079 / m);
+
+    estimate = alpha * m * m / sum;
+    if ((estimate <= 2.5 * m) && (zeros > 0))
+      estimate = m * Math.log((double) m / zeros);
+
+    return Math.round(estimate);
+  }
+
+  /**
+   * Mixes the bits of the value (finalizer of MurmurHash3).
+   *
+   * @param value	the value to hash
+   * @return		the 64-bit hash
+   */
+  public static long hash(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  /**
+   * Hashes the number.
+   *
+   * @param value	the value to hash
+   * @return		the 64-bit hash
+   */
+  public static long hash(double value) {
+    // treat 0.0 and -0.0 the same
+    return hash(Double.doubleToLongBits(value + 0.0));
+  }
+
+  /**
+   * Hashes the string (FNV-1a, mixed).
+   *
+   * @param value	the value to hash
+   * @return		the 64-bit hash
+   */
+  public static long hash(String value) {
+    long	result;
+    int		i;
+
+    result = 0xcbf29ce484222325L;
+    for (i = 0; i < value.length(); i++) {
+      result ^= value.charAt(i);
+      result *= 0x100000001b3L;
+    }
+
+    return hash(result);
+  }
+}
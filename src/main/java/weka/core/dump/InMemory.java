@@ -20,12 +20,41 @@
 
 package weka.core.dump;
 
+import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Keeps the data in memory and notifies any registered listeners when data changes.
@@ -38,11 +67,308 @@ public class InMemory
 
   private static final long serialVersionUID = -5971382385452901618L;
 
+  /** evicts the least recently used data first. */
+  public static final int EVICTION_LRU = 0;
+
+  /** evicts the oldest data first. */
+  public static final int EVICTION_FIFO = 1;
+
+  /** the eviction policies. */
+  public static final Tag[] TAGS_EVICTION = {
+    new Tag(EVICTION_LRU, "lru", "Least recently used"),
+    new Tag(EVICTION_FIFO, "fifo", "First in, first out"),
+  };
+
+  /** the name of the default spill directory in the Weka home directory. */
+  public static final String DEFAULT_SPILL_DIR = "spill";
+
+  /**
+   * Container for data stored in the history.
+   */
+  public static class HistoryEntry
+    implements Serializable {
+
+    private static final long serialVersionUID = 5396425519735716263L;
+
+    /** the sequence number. */
+    protected long m_Sequence;
+
+    /** the label. */
+    protected String m_Label;
+
+    /** the time the data was dumped. */
+    protected long m_Timestamp;
+
+    /** the estimated size in bytes. */
+    protected long m_Size;
+
+    /** the data, null if spilled to disk. */
+    protected volatile Instances m_Data;
+
+    /** the file the data was spilled to, null if not spilled. */
+    protected volatile File m_File;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param sequence	the sequence number
+     * @param label	the label
+     * @param data	the data
+     */
+    public HistoryEntry(long sequence, String label, Instances data) {
+      m_Sequence  = sequence;
+      m_Label     = label;
+      m_Timestamp = System.currentTimeMillis();
+      m_Size      = estimateSize(data);
+      m_Data      = data;
+    }
+
+    /**
+     * Returns the sequence number.
+     *
+     * @return		the sequence number
+     */
+    public long getSequence() {
+      return m_Sequence;
+    }
+
+    /**
+     * Returns the label.
+     *
+     * @return		the label
+     */
+    public String getLabel() {
+      return m_Label;
+    }
+
+    /**
+     * Returns the time the data was dumped.
+     *
+     * @return		the timestamp (msec since epoch)
+     */
+    public long getTimestamp() {
+      return m_Timestamp;
+    }
+
+    /**
+     * Returns the estimated size of the data.
+     *
+     * @return		the size in bytes
+     */
+    public long getSize() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the data, reading it from disk if it has been spilled (without
+     * putting it back into memory).
+     *
+     * @return		the data
+     */
+    public Instances getData() {
+      Instances	result;
+      File	file;
+
+      result = m_Data;
+      if (result != null)
+	return result;
+      file = m_File;
+      try {
+	return readSpill(file);
+      }
+      catch (Exception e) {
+	// reloaded (and file removed) in the meantime?
+	result = m_Data;
+	if (result != null)
+	  return result;
+	throw new IllegalStateException("Failed to read spilled data from " + file, e);
+      }
+    }
+
+    /**
+     * Removes the file the data was spilled to, if any.
+     */
+    protected void deleteFile() {
+      File	file;
+
+      file   = m_File;
+      m_File = null;
+      if (file != null)
+	deleteSpill(file);
+    }
+
+    /**
+     * Returns whether the data has been spilled to disk.
+     *
+     * @return		true if spilled
+     */
+    public boolean isSpilled() {
+      return (m_Data == null);
+    }
+
+    /**
+     * Returns the file the data was spilled to.
+     *
+     * @return		the file, null if not spilled yet
+     */
+    public File getFile() {
+      return m_File;
+    }
+
+    /**
+     * Returns a short description of the entry.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "seq=" + m_Sequence + ", label=" + m_Label + ", size=" + m_Size + (isSpilled() ? ", spilled" : "");
+    }
+  }
+
+  /**
+   * Interface for classes that want to be notified when data gets evicted
+   * from the history.
+   */
+  public interface EvictionListener {
+
+    /**
+     * Gets called when data got evicted from the history.
+     *
+     * @param source	the dumper that evicted the data
+     * @param entry	the evicted entry
+     */
+    public void evicted(InMemory source, HistoryEntry entry);
+  }
+
+  /**
+   * Notifies a listener in the background. Requests that arrive while the
+   * listener is being notified get coalesced into a single notification.
+   */
+  protected class Dispatcher
+    implements Runnable {
+
+    /** the listener to notify. */
+    protected ChangeListener m_Listener;
+
+    /** whether the dispatcher has been scheduled for execution. */
+    protected AtomicBoolean m_Scheduled = new AtomicBoolean();
+
+    /** whether a notification has been requested. */
+    protected volatile boolean m_Requested;
+
+    /**
+     * Initializes the dispatcher.
+     *
+     * @param l		the listener to notify
+     */
+    public Dispatcher(ChangeListener l) {
+      m_Listener = l;
+    }
+
+    /**
+     * Requests a notification of the listener.
+     */
+    public void request() {
+      m_Requested = true;
+      if (m_Scheduled.compareAndSet(false, true))
+	getNotifier().execute(this);
+    }
+
+    /**
+     * Notifies the listener until no more requests are pending.
+     */
+    @Override
+    public void run() {
+      do {
+	m_Requested = false;
+	try {
+	  m_Listener.stateChanged(new ChangeEvent(InMemory.this));
+	}
+	catch (Throwable t) {
+	  System.err.println("Failed to notify listener: " + m_Listener);
+	  t.printStackTrace();
+	}
+	m_Scheduled.set(false);
+      }
+      while (m_Requested && m_Scheduled.compareAndSet(false, true));
+    }
+  }
+
+  /** the executor for notifying listeners in the background. */
+  protected static ExecutorService m_Notifier;
+
+  /** the executor for spilling and reloading data in the background. */
+  protected static ExecutorService m_Spiller;
+
+  /** the spill files that haven't been removed yet. */
+  protected static Set<File> m_SpillFiles;
+
+  /** the shutdown hook for removing the spill files. */
+  protected static Thread m_SpillCleanup;
+
+  /** whether to store a snapshot rather than the data itself. */
+  protected boolean m_Snapshot = false;
+
+  /** whether to notify the listeners in the background. */
+  protected boolean m_AsyncNotify = false;
+
+  /** whether to keep a history of the data. */
+  protected boolean m_History = false;
+
+  /** the maximum estimated size of the history in bytes. */
+  protected long m_MaxBytes = 100 * 1024 * 1024;
+
+  /** the eviction policy. */
+  protected int m_Eviction = EVICTION_LRU;
+
+  /** whether to spill data to disk rather than evicting it. */
+  protected boolean m_Spill = false;
+
+  /** the directory for the spilled data. */
+  protected File m_SpillDir = DiskCache.getDefaultDir(DEFAULT_SPILL_DIR);
+
+  /** the history (sequence - entry). */
+  protected transient LinkedHashMap<Long, HistoryEntry> m_Entries;
+
+  /** the estimated size of the history in bytes. */
+  protected transient long m_Bytes;
+
+  /** the next sequence number. */
+  protected transient long m_Sequence;
+
+  /** the number of successful lookups in the history. */
+  protected transient long m_Hits;
+
+  /** the number of unsuccessful lookups in the history. */
+  protected transient long m_Misses;
+
+  /** the entries currently being spilled (sequence numbers). */
+  protected transient Set<Long> m_Pending;
+
+  /** the estimated size of the entries currently being spilled. */
+  protected transient long m_PendingBytes;
+
+  /** the number of entries spilled to disk. */
+  protected transient long m_Spills;
+
+  /** the number of entries reloaded from disk. */
+  protected transient long m_Reloads;
+
+  /** the number of evicted entries. */
+  protected transient long m_Evictions;
+
+  /** the eviction listeners. */
+  protected transient Set<EvictionListener> m_EvictionListeners;
+
   /** the data. */
-  protected transient Instances m_Data = null;
+  protected transient volatile Instances m_Data = null;
 
   /** the listeners. */
-  protected transient Set<ChangeListener> m_Listeners;
+  protected transient volatile Set<ChangeListener> m_Listeners;
+
+  /** the dispatchers for notifying the listeners in the background. */
+  protected transient volatile Map<ChangeListener, Dispatcher> m_Dispatchers;
 
   /**
    * Returns a string describing this scheme.
@@ -53,7 +379,394 @@ public class InMemory
   @Override
   public String globalInfo() {
     return "Keeps the data in memory and notifies any registered listeners when data changes.\n"
-      + "Not to be used from GUI, but from an API point of view.";
+      + "Not to be used from GUI, but from an API point of view.\n"
+      + "By default, the data is stored as is, i.e., subsequent modifications "
+      + "by other schemes are visible. In snapshot mode, a shallow copy is "
+      + "stored instead that shares the header and the attribute values with "
+      + "the original data; values only get copied once a row gets modified.\n"
+      + "Optionally, a history of the data can be kept, which can be accessed "
+      + "via sequence number or label (relation name by default). The history "
+      + "is limited by the estimated size of the data, evicting the least "
+      + "recently used or oldest data first. Alternatively, data exceeding "
+      + "the limit can get spilled to disk in the background (binary format) "
+      + "and gets reloaded transparently when requested.\n"
+      + "Listeners can be notified in the background, in which case "
+      + "notifications that arrive while a listener is still busy get "
+      + "coalesced, i.e., the listener only sees the latest data.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tWhether to store a copy-on-write snapshot of the data.\n"
+	  + "\t(default: no)",
+	"snapshot", 0, "-snapshot"));
+
+    result.addElement(
+      new Option(
+	"\tWhether to notify the listeners in the background.\n"
+	  + "\t(default: no)",
+	"async-notify", 0, "-async-notify"));
+
+    result.addElement(
+      new Option(
+	"\tWhether to keep a history of the data.\n"
+	  + "\t(default: no)",
+	"history", 0, "-history"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum estimated size of the history in bytes.\n"
+	  + "\t(default: 104857600)",
+	"max-bytes", 1, "-max-bytes <bytes>"));
+
+    result.addElement(
+      new Option(
+	"\tThe eviction policy for the history.\n"
+	  + "\t(default: " + new SelectedTag(EVICTION_LRU, TAGS_EVICTION) + ")",
+	"eviction", 1, "-eviction " + Tag.toOptionList(TAGS_EVICTION)));
+
+    result.addElement(
+      new Option(
+	"\tWhether to spill data exceeding the size limit to disk rather\n"
+	  + "\tthan evicting it.\n"
+	  + "\t(default: no)",
+	"spill", 0, "-spill"));
+
+    result.addElement(
+      new Option(
+	"\tThe directory for the spilled data.\n"
+	  + "\t(default: WEKA_HOME/" + DEFAULT_SPILL_DIR + ")",
+	"spill-dir", 1, "-spill-dir <dir>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    setSnapshot(Utils.getFlag("snapshot", options));
+
+    setAsyncNotify(Utils.getFlag("async-notify", options));
+
+    setHistory(Utils.getFlag("history", options));
+
+    tmpStr = Utils.getOption("max-bytes", options);
+    if (tmpStr.length() != 0)
+      setMaxBytes(Long.parseLong(tmpStr));
+    else
+      setMaxBytes(100 * 1024 * 1024);
+
+    tmpStr = Utils.getOption("eviction", options);
+    if (tmpStr.length() != 0)
+      setEviction(new SelectedTag(tmpStr, TAGS_EVICTION));
+    else
+      setEviction(new SelectedTag(EVICTION_LRU, TAGS_EVICTION));
+
+    setSpill(Utils.getFlag("spill", options));
+
+    tmpStr = Utils.getOption("spill-dir", options);
+    if (tmpStr.length() != 0)
+      setSpillDir(new File(tmpStr));
+    else
+      setSpillDir(DiskCache.getDefaultDir(DEFAULT_SPILL_DIR));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    if (getSnapshot())
+      result.add("-snapshot");
+
+    if (getAsyncNotify())
+      result.add("-async-notify");
+
+    if (getHistory())
+      result.add("-history");
+
+    result.add("-max-bytes");
+    result.add("" + getMaxBytes());
+
+    result.add("-eviction");
+    result.add("" + getEviction());
+
+    if (getSpill())
+      result.add("-spill");
+
+    result.add("-spill-dir");
+    result.add(getSpillDir().toString());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets whether to store a snapshot of the data.
+   *
+   * @param value true if to store a snapshot
+   */
+  public void setSnapshot(boolean value) {
+    m_Snapshot = value;
+  }
+
+  /**
+   * Returns whether to store a snapshot of the data.
+   *
+   * @return true if storing a snapshot
+   */
+  public boolean getSnapshot() {
+    return m_Snapshot;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String snapshotTipText() {
+    return "If enabled, a copy-on-write snapshot of the data is stored, "
+      + "protecting it against modifications by subsequent schemes.";
+  }
+
+  /**
+   * Sets whether to notify the listeners in the background.
+   *
+   * @param value true if to notify in the background
+   */
+  public void setAsyncNotify(boolean value) {
+    m_AsyncNotify = value;
+  }
+
+  /**
+   * Returns whether to notify the listeners in the background.
+   *
+   * @return true if notifying in the background
+   */
+  public boolean getAsyncNotify() {
+    return m_AsyncNotify;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String asyncNotifyTipText() {
+    return "If enabled, the listeners get notified in the background; "
+      + "notifications for busy listeners get coalesced.";
+  }
+
+  /**
+   * Sets whether to keep a history of the data.
+   *
+   * @param value true if to keep a history
+   */
+  public void setHistory(boolean value) {
+    m_History = value;
+  }
+
+  /**
+   * Returns whether to keep a history of the data.
+   *
+   * @return true if keeping a history
+   */
+  public boolean getHistory() {
+    return m_History;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String historyTipText() {
+    return "If enabled, a history of the data is kept.";
+  }
+
+  /**
+   * Sets the maximum estimated size of the history.
+   *
+   * @param value the size in bytes
+   */
+  public void setMaxBytes(long value) {
+    if (value > 0)
+      m_MaxBytes = value;
+  }
+
+  /**
+   * Returns the maximum estimated size of the history.
+   *
+   * @return the size in bytes
+   */
+  public long getMaxBytes() {
+    return m_MaxBytes;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxBytesTipText() {
+    return "The maximum estimated size of the history in bytes; the most recent data is always kept.";
+  }
+
+  /**
+   * Sets the eviction policy for the history.
+   *
+   * @param value the policy
+   */
+  public void setEviction(SelectedTag value) {
+    if (value.getTags() == TAGS_EVICTION)
+      m_Eviction = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the eviction policy for the history.
+   *
+   * @return the policy
+   */
+  public SelectedTag getEviction() {
+    return new SelectedTag(m_Eviction, TAGS_EVICTION);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String evictionTipText() {
+    return "The eviction policy for the history.";
+  }
+
+  /**
+   * Sets whether to spill data to disk rather than evicting it.
+   *
+   * @param value true if to spill
+   */
+  public void setSpill(boolean value) {
+    m_Spill = value;
+  }
+
+  /**
+   * Returns whether to spill data to disk rather than evicting it.
+   *
+   * @return true if to spill
+   */
+  public boolean getSpill() {
+    return m_Spill;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String spillTipText() {
+    return "If enabled, data exceeding the size limit of the history gets spilled "
+      + "to disk in the background (in eviction order) rather than evicted, "
+      + "and reloaded when requested; data with relational attributes is "
+      + "never spilled.";
+  }
+
+  /**
+   * Sets the directory for the spilled data.
+   *
+   * @param value the directory
+   */
+  public void setSpillDir(File value) {
+    m_SpillDir = value;
+  }
+
+  /**
+   * Returns the directory for the spilled data.
+   *
+   * @return the directory
+   */
+  public File getSpillDir() {
+    return m_SpillDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String spillDirTipText() {
+    return "The directory for the spilled data; the files get removed when the history is cleared or the JVM exits. "
+      + "Access to the directory gets restricted to the owner, no data gets spilled if that fails.";
+  }
+
+  /**
+   * Estimates the size of the data in memory.
+   *
+   * @param data	the data to estimate the size for
+   * @return		the estimated size in bytes
+   */
+  public static long estimateSize(Instances data) {
+    long	result;
+    Instance	inst;
+    int		i;
+
+    // header
+    result = 64 + data.numAttributes() * 128L;
+
+    // rows: object, weight, dataset, values (+ indices for sparse instances)
+    for (i = 0; i < data.numInstances(); i++) {
+      inst    = data.instance(i);
+      result += 32 + 16 + inst.numValues() * 8L;
+      if (inst.numValues() != inst.numAttributes())
+	result += 16 + inst.numValues() * 4L;
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a copy-on-write snapshot of the data. The header and the rows
+   * are shallow copies: Weka's instances share their attribute values with
+   * the instance they were copied from and only copy them when a value gets
+   * set. Likewise, the attribute list gets replaced rather than modified
+   * when the structure changes.
+   *
+   * @param data	the data to create the snapshot from
+   * @return		the snapshot
+   */
+  public static Instances snapshot(Instances data) {
+    return new Instances(data);
   }
 
   /**
@@ -65,14 +778,178 @@ public class InMemory
     return m_Data;
   }
 
+  /**
+   * Returns the executor for notifying listeners in the background,
+   * initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getNotifier() {
+    final AtomicInteger	count;
+
+    if (m_Notifier == null) {
+      count = new AtomicInteger();
+      m_Notifier = Executors.newCachedThreadPool(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, InMemory.class.getSimpleName() + "-notify-" + count.incrementAndGet());
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Notifier;
+  }
+
+  /**
+   * Returns the executor for spilling and reloading data in the background,
+   * initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getSpiller() {
+    if (m_Spiller == null) {
+      m_Spiller = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, InMemory.class.getSimpleName() + "-spill");
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Spiller;
+  }
+
+  /**
+   * Creates a new file for spilling data to, which gets removed when the
+   * JVM exits unless removed before. As the spilled data gets read back,
+   * access to the directory gets restricted to the owner first.
+   *
+   * @param dir		the directory for the file
+   * @return		the file
+   * @throws IOException	if the directory can't be secured or the file can't be created
+   */
+  protected static File createSpill(File dir) throws IOException {
+    File	result;
+
+    if (!DiskCache.secure(dir))
+      throw new IOException("Failed to create spill directory or restrict access to owner: " + dir);
+    result = File.createTempFile("inmemory-", ".bin", dir);
+
+    synchronized (InMemory.class) {
+      if (m_SpillFiles == null)
+	m_SpillFiles = new HashSet<File>();
+      if (m_SpillCleanup == null) {
+	m_SpillCleanup = new Thread(new Runnable() {
+	  @Override
+	  public void run() {
+	    List<File> files;
+	    synchronized (InMemory.class) {
+	      files = new ArrayList<File>(m_SpillFiles);
+	    }
+	    for (File file: files)
+	      file.delete();
+	  }
+	});
+	Runtime.getRuntime().addShutdownHook(m_SpillCleanup);
+      }
+      m_SpillFiles.add(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes a file created by {@link #createSpill(File)}.
+   *
+   * @param file	the file to remove
+   */
+  protected static void deleteSpill(File file) {
+    if (!file.delete() && file.exists())
+      System.err.println("Failed to delete spill file: " + file);
+    synchronized (InMemory.class) {
+      if (m_SpillFiles != null)
+	m_SpillFiles.remove(file);
+    }
+  }
+
+  /**
+   * Returns the number of spill files that haven't been removed yet.
+   *
+   * @return		the number of files
+   */
+  public static synchronized int getNumSpillFiles() {
+    if (m_SpillFiles == null)
+      return 0;
+    return m_SpillFiles.size();
+  }
+
+  /**
+   * Writes the data to the file in {@link BinaryFormat}.
+   *
+   * @param file	the file to write to
+   * @param data	the data to write
+   * @throws IOException	if writing fails
+   */
+  public static void writeSpill(File file, Instances data) throws IOException {
+    FileOutputStream	out;
+    FileChannel		channel;
+    ByteBuffer		buffer;
+
+    buffer  = ByteBuffer.wrap(BinaryFormat.toBytes(data));
+    out     = new FileOutputStream(file);
+    channel = out.getChannel();
+    try {
+      while (buffer.hasRemaining())
+	channel.write(buffer);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads data written by {@link #writeSpill(File, Instances)}.
+   *
+   * @param file	the file to read
+   * @return		the data
+   * @throws Exception	if reading fails
+   */
+  public static Instances readSpill(File file) throws Exception {
+    RandomAccessFile	in;
+    FileChannel		channel;
+
+    in = new RandomAccessFile(file, "r");
+    try {
+      channel = in.getChannel();
+      return BinaryFormat.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Initializes the listener sets if necessary.
+   */
+  protected synchronized void initListeners() {
+    if (m_Listeners == null) {
+      m_Dispatchers = new ConcurrentHashMap<ChangeListener, Dispatcher>();
+      m_Listeners   = new CopyOnWriteArraySet<ChangeListener>();
+    }
+  }
+
   /**
    * Adds the listener to its internal list to notify if data changes.
    *
    * @param l		the listener to add
    */
   public void addListener(ChangeListener l) {
-    if (m_Listeners == null)
-      m_Listeners = new HashSet<ChangeListener>();
+    initListeners();
+    m_Dispatchers.put(l, new Dispatcher(l));
     m_Listeners.add(l);
   }
 
@@ -82,34 +959,417 @@ public class InMemory
    * @param l		the listener to remove
    */
   public void removeListener(ChangeListener l) {
-    if (m_Listeners == null)
-      m_Listeners = new HashSet<ChangeListener>();
+    initListeners();
     m_Listeners.remove(l);
+    m_Dispatchers.remove(l);
   }
 
   /**
-   * Notifies all the listeners that the data has changed.
+   * Notifies all the listeners that the data has changed, either directly
+   * or in the background.
    */
   protected void notifyListeners() {
-    ChangeEvent e;
+    Set<ChangeListener>	listeners;
+    ChangeEvent 	e;
+    Dispatcher		dispatcher;
 
-    if (m_Listeners == null)
+    listeners = m_Listeners;
+    if (listeners == null)
       return;
 
-    e = new ChangeEvent(this);
-    for (ChangeListener l: m_Listeners)
-      l.stateChanged(e);
+    if (m_AsyncNotify) {
+      for (ChangeListener l: listeners) {
+	dispatcher = m_Dispatchers.get(l);
+	if (dispatcher != null)
+	  dispatcher.request();
+      }
+    }
+    else {
+      e = new ChangeEvent(this);
+      for (ChangeListener l: listeners)
+	l.stateChanged(e);
+    }
   }
 
   /**
-   * Dumps the data.
+   * Stores the data, notifies the listeners.
    *
    * @param data	the data to dump
    * @throws Exception	if dumping fails
    */
   @Override
-  public void dump(Instances data) throws Exception {
-    m_Data = data;
+  protected void doDump(Instances data) throws Exception {
+    store(data, data.relationName());
+  }
+
+  /**
+   * Stores the data under the specified label, notifies the listeners.
+   *
+   * @param data	the data to store
+   * @param label	the label for the data in the history
+   * @return		the sequence number in the history
+   */
+  public long store(Instances data, String label) {
+    long			result;
+    List<HistoryEntry>		evicted;
+
+    if (m_Snapshot)
+      data = snapshot(data);
+
+    evicted = null;
+    synchronized (this) {
+      m_Data = data;
+      result = m_Sequence++;
+      if (m_History) {
+	if (m_Entries == null)
+	  m_Entries = new LinkedHashMap<Long, HistoryEntry>(16, 0.75f, m_Eviction == EVICTION_LRU);
+	HistoryEntry entry = new HistoryEntry(result, label, data);
+	m_Entries.put(result, entry);
+	m_Bytes += entry.getSize();
+	evicted = evict();
+      }
+    }
+
+    if (evicted != null)
+      notifyEvictionListeners(evicted);
     notifyListeners();
+
+    return result;
+  }
+
+  /**
+   * Evicts entries from the history until the size limit is met, always
+   * keeping the most recent one. In spill mode, the entries get scheduled
+   * for spilling instead.
+   *
+   * @return		the evicted entries
+   */
+  protected List<HistoryEntry> evict() {
+    List<HistoryEntry>		result;
+    Iterator<HistoryEntry>	iter;
+    HistoryEntry		entry;
+
+    result = new ArrayList<HistoryEntry>();
+    if (m_Spill) {
+      scheduleSpills();
+      return result;
+    }
+
+    iter   = m_Entries.values().iterator();
+    while ((m_Bytes > m_MaxBytes) && (m_Entries.size() > 1) && iter.hasNext()) {
+      entry = iter.next();
+      if (entry.getSequence() == m_Sequence - 1)
+	continue;
+      iter.remove();
+      entry.deleteFile();
+      m_Bytes -= entry.getSize();
+      m_Evictions++;
+      result.add(entry);
+    }
+
+    return result;
+  }
+
+  /**
+   * Schedules entries for spilling (in eviction order) until the size of
+   * the entries remaining in memory meets the limit, always keeping the
+   * most recent one in memory.
+   */
+  protected void scheduleSpills() {
+    Iterator<HistoryEntry>	iter;
+    HistoryEntry		entry;
+    Instances			data;
+
+    if (m_Pending == null)
+      m_Pending = new HashSet<Long>();
+
+    iter = m_Entries.values().iterator();
+    while ((m_Bytes - m_PendingBytes > m_MaxBytes) && iter.hasNext()) {
+      entry = iter.next();
+      data  = entry.m_Data;
+      if ((entry.getSequence() == m_Sequence - 1) || (data == null) || m_Pending.contains(entry.getSequence()))
+	continue;
+      if (!FastDataWriter.isSupported(data))
+	continue;
+      m_Pending.add(entry.getSequence());
+      m_PendingBytes += entry.getSize();
+      spill(entry);
+    }
+  }
+
+  /**
+   * Spills the entry to disk in the background. Spilling gets cancelled if
+   * the entry gets accessed or removed in the meantime.
+   *
+   * @param entry	the entry to spill
+   */
+  protected void spill(final HistoryEntry entry) {
+    getSpiller().execute(new Runnable() {
+      @Override
+      public void run() {
+	Instances	data;
+	File		file;
+
+	synchronized (InMemory.this) {
+	  if ((m_Pending == null) || !m_Pending.contains(entry.getSequence()))
+	    return;
+	  data = entry.m_Data;
+	}
+
+	file = null;
+	try {
+	  file = createSpill(m_SpillDir);
+	  writeSpill(file, data);
+	}
+	catch (Exception e) {
+	  System.err.println("Failed to spill data to " + m_SpillDir + ":");
+	  e.printStackTrace();
+	  if (file != null)
+	    deleteSpill(file);
+	  file = null;
+	}
+
+	synchronized (InMemory.this) {
+	  if (!m_Pending.remove(entry.getSequence())) {
+	    // cancelled (accessed or removed)
+	    if (file != null)
+	      deleteSpill(file);
+	    return;
+	  }
+	  m_PendingBytes -= entry.getSize();
+	  if (file == null)
+	    return;
+	  entry.m_File = file;
+	  entry.m_Data = null;
+	  m_Bytes     -= entry.getSize();
+	  m_Spills++;
+	}
+      }
+    });
+  }
+
+  /**
+   * Returns the data with the specified sequence number from the history.
+   * Spilled data gets reloaded from disk (on the calling thread) and kept in
+   * memory again, which may result in other data getting spilled.
+   *
+   * @param sequence	the sequence number
+   * @return		the data, null if not available
+   * @see		#getDataAsync(long)
+   */
+  public Instances getData(long sequence) {
+    HistoryEntry		entry;
+    Instances			result;
+    List<HistoryEntry>		evicted;
+
+    synchronized (this) {
+      entry = null;
+      if (m_Entries != null)
+	entry = m_Entries.get(sequence);
+      if (entry == null) {
+	m_Misses++;
+	return null;
+      }
+      m_Hits++;
+      // accessed data stays in memory
+      if ((m_Pending != null) && m_Pending.remove(sequence))
+	m_PendingBytes -= entry.getSize();
+      result = entry.m_Data;
+      if (result != null)
+	return result;
+    }
+
+    try {
+      result = entry.getData();
+    }
+    catch (IllegalStateException e) {
+      // removed from the history in the meantime?
+      synchronized (this) {
+	if ((m_Entries != null) && m_Entries.containsKey(sequence))
+	  throw e;
+      }
+      return null;
+    }
+    evicted = null;
+    synchronized (this) {
+      if (entry.m_Data != null) {
+	result = entry.m_Data;
+      }
+      else if (m_Entries.containsKey(sequence)) {
+	entry.m_Data = result;
+	entry.deleteFile();
+	m_Bytes += entry.getSize();
+	m_Reloads++;
+	evicted = evict();
+      }
+    }
+    if (evicted != null)
+      notifyEvictionListeners(evicted);
+
+    return result;
+  }
+
+  /**
+   * Returns the data with the specified sequence number from the history,
+   * reloading spilled data in the background.
+   *
+   * @param sequence	the sequence number
+   * @return		the future data, null if not available
+   * @see		#getData(long)
+   */
+  public Future<Instances> getDataAsync(final long sequence) {
+    return getSpiller().submit(new Callable<Instances>() {
+      @Override
+      public Instances call() throws Exception {
+	return getData(sequence);
+      }
+    });
+  }
+
+  /**
+   * Returns the most recent data with the specified label from the history.
+   *
+   * @param label	the label
+   * @return		the data, null if not available
+   */
+  public Instances getData(String label) {
+    HistoryEntry	entry;
+
+    synchronized (this) {
+      entry = null;
+      if (m_Entries != null) {
+	for (HistoryEntry e: m_Entries.values()) {
+	  if (e.getLabel().equals(label) && ((entry == null) || (e.getSequence() > entry.getSequence())))
+	    entry = e;
+	}
+      }
+      if (entry == null) {
+	m_Misses++;
+	return null;
+      }
+    }
+
+    return getData(entry.getSequence());
+  }
+
+  /**
+   * Returns the entries currently in the history, in eviction order.
+   *
+   * @return		the entries
+   */
+  public synchronized List<HistoryEntry> getHistoryEntries() {
+    if (m_Entries == null)
+      return new ArrayList<HistoryEntry>();
+    return new ArrayList<HistoryEntry>(m_Entries.values());
+  }
+
+  /**
+   * Returns the estimated size of the history kept in memory.
+   *
+   * @return		the size in bytes
+   */
+  public synchronized long getHistoryBytes() {
+    return m_Bytes;
+  }
+
+  /**
+   * Returns the number of successful lookups in the history.
+   *
+   * @return		the number of hits
+   */
+  public synchronized long getHits() {
+    return m_Hits;
+  }
+
+  /**
+   * Returns the number of unsuccessful lookups in the history.
+   *
+   * @return		the number of misses
+   */
+  public synchronized long getMisses() {
+    return m_Misses;
+  }
+
+  /**
+   * Returns the number of entries evicted from the history.
+   *
+   * @return		the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return m_Evictions;
+  }
+
+  /**
+   * Removes all entries from the history.
+   */
+  public synchronized void clearHistory() {
+    if (m_Entries != null) {
+      for (HistoryEntry entry: m_Entries.values())
+	entry.deleteFile();
+      m_Entries.clear();
+    }
+    if (m_Pending != null)
+      m_Pending.clear();
+    m_Bytes        = 0;
+    m_PendingBytes = 0;
+  }
+
+  /**
+   * Returns the number of entries spilled to disk.
+   *
+   * @return		the number of spills
+   */
+  public synchronized long getSpills() {
+    return m_Spills;
+  }
+
+  /**
+   * Returns the number of entries reloaded from disk.
+   *
+   * @return		the number of reloads
+   */
+  public synchronized long getReloads() {
+    return m_Reloads;
+  }
+
+  /**
+   * Adds the listener to be notified when data gets evicted from the history.
+   *
+   * @param l		the listener to add
+   */
+  public synchronized void addEvictionListener(EvictionListener l) {
+    if (m_EvictionListeners == null)
+      m_EvictionListeners = new HashSet<EvictionListener>();
+    m_EvictionListeners.add(l);
+  }
+
+  /**
+   * Removes the eviction listener.
+   *
+   * @param l		the listener to remove
+   */
+  public synchronized void removeEvictionListener(EvictionListener l) {
+    if (m_EvictionListeners != null)
+      m_EvictionListeners.remove(l);
+  }
+
+  /**
+   * Notifies the eviction listeners.
+   *
+   * @param evicted	the evicted entries
+   */
+  protected void notifyEvictionListeners(List<HistoryEntry> evicted) {
+    List<EvictionListener>	listeners;
+
+    synchronized (this) {
+      if ((m_EvictionListeners == null) || evicted.isEmpty())
+	return;
+      listeners = new ArrayList<EvictionListener>(m_EvictionListeners);
+    }
+
+    for (HistoryEntry entry: evicted) {
+      for (EvictionListener l: listeners)
+	l.evicted(this, entry);
+    }
   }
 }
@@ -0,0 +1,328 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * KLLSketch.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Mergeable quantile sketch with bounded memory, following Karnin, Lang and
+ * Liberty: "Optimal Quantile Approximation in Streams" (2016). The sketch
+ * consists of compactors of decreasing capacity; a full compactor sorts its
+ * items and promotes every other one (random offset) to the next level,
+ * where each item carries twice the weight.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class KLLSketch
+  implements Serializable {
+
+  private static final long serialVersionUID = 4326862961413432853L;
+
+  /** the factor by which the capacity decreases per level. */
+  public static final double C = 2.0 / 3.0;
+
+  /** the capacity parameter (accuracy). */
+  protected int m_K;
+
+  /** the items per level. */
+  protected double[][] m_Levels;
+
+  /** the number of items per level. */
+  protected int[] m_Sizes;
+
+  /** the total number of items stored. */
+  protected int m_Size;
+
+  /** the maximum number of items before compacting. */
+  protected int m_MaxSize;
+
+  /** the number of values added. */
+  protected long m_N;
+
+  /** the minimum. */
+  protected double m_Min = Double.POSITIVE_INFINITY;
+
+  /** the maximum. */
+  protected double m_Max = Double.NEGATIVE_INFINITY;
+
+  /** for choosing the offset when compacting. */
+  protected Random m_Random;
+
+  /**
+   * Initializes the sketch.
+   *
+   * @param k		the capacity parameter, larger values are more accurate
+   */
+  public KLLSketch(int k) {
+    if (k < 8)
+      throw new IllegalArgumentException("k must be at least 8: " + k);
+    m_K      = k;
+    m_Levels = new double[0][];
+    m_Sizes  = new int[0];
+    m_Random = new Random(1);
+    grow();
+  }
+
+  /**
+   * Returns the capacity parameter.
+   *
+   * @return		k
+   */
+  public int getK() {
+    return m_K;
+  }
+
+  /**
+   * Returns the capacity of the level.
+   *
+   * @param level	the level
+   * @return		the capacity
+   */
+  protected int capacity(int level) {
+    return (int) Math.ceil(Math.pow(C, m_Levels.length - level - 1) * m_K) + 1;
+  }
+
+  /**
+   * Adds another level.
+   */
+  protected void grow() {
+    int		i;
+
+    m_Levels = Arrays.copyOf(m_Levels, m_Levels.length + 1);
+    m_Sizes  = Arrays.copyOf(m_Sizes, m_Sizes.length + 1);
+    m_Levels[m_Levels.length - 1] = new double[8];
+    m_MaxSize = 0;
+    for (i = 0; i < m_Levels.length; i++)
+      m_MaxSize += capacity(i);
+  }
+
+  /**
+   * Appends the value to the level.
+   *
+   * @param level	the level
+   * @param value	the value
+   */
+  protected void append(int level, double value) {
+    if (m_Sizes[level] == m_Levels[level].length)
+      m_Levels[level] = Arrays.copyOf(m_Levels[level], m_Levels[level].length * 2);
+    m_Levels[level][m_Sizes[level]++] = value;
+  }
+
+  /**
+   * Adds the value. Missing values (NaN) are ignored.
+   *
+   * @param value	the value
+   */
+  public void update(double value) {
+    if (Double.isNaN(value))
+      return;
+    m_N++;
+    if (value < m_Min)
+      m_Min = value;
+    if (value > m_Max)
+      m_Max = value;
+    append(0, value);
+    m_Size++;
+    if (m_Size >= m_MaxSize)
+      compress();
+  }
+
+  /**
+   * Compacts the lowest level that exceeds its capacity.
+   */
+  protected void compress() {
+    double[]	items;
+    int		level;
+    int		size;
+    int		offset;
+    int		i;
+
+    for (level = 0; level < m_Levels.length; level++) {
+      if (m_Sizes[level] < capacity(level))
+	continue;
+      if (level + 1 >= m_Levels.length)
+	grow();
+      items = m_Levels[level];
+      size  = m_Sizes[level];
+      Arrays.sort(items, 0, size);
+      offset = m_Random.nextBoolean() ? 1 : 0;
+      for (i = offset; i < size - (size % 2); i += 2)
+	append(level + 1, items[i]);
+      // an odd item stays behind
+      if (size % 2 == 1) {
+	items[0]       = items[size - 1];
+	m_Sizes[level] = 1;
+      }
+      else {
+	m_Sizes[level] = 0;
+      }
+      break;
+    }
+
+    m_Size = 0;
+    for (i = 0; i < m_Sizes.length; i++)
+      m_Size += m_Sizes[i];
+  }
+
+  /**
+   * Merges the other sketch into this one.
+   *
+   * @param other	the sketch to merge
+   */
+  public void merge(KLLSketch other) {
+    int		level;
+    int		i;
+
+    if (other.m_K != m_K)
+      throw new IllegalArgumentException("Cannot merge sketches with different k: " + m_K + " != " + other.m_K);
+
+    while (m_Levels.length < other.m_Levels.length)
+      grow();
+    for (level = 0; level < other.m_Levels.length; level++) {
+      for (i = 0; i < other.m_Sizes[level]; i++)
+	append(level, other.m_Levels[level][i]);
+    }
+    m_N   += other.m_N;
+    m_Min  = Math.min(m_Min, other.m_Min);
+    m_Max  = Math.max(m_Max, other.m_Max);
+    m_Size = 0;
+    for (i = 0; i < m_Sizes.length; i++)
+      m_Size += m_Sizes[i];
+    while (m_Size >= m_MaxSize)
+      compress();
+  }
+
+  /**
+   * Returns the number of values added.
+   *
+   * @return		the number of values
+   */
+  public long getN() {
+    return m_N;
+  }
+
+  /**
+   * Returns the minimum.
+   *
+   * @return		the minimum, NaN if empty
+   */
+  public double getMin() {
+    return (m_N == 0) ? Double.NaN : m_Min;
+  }
+
+  /**
+   * Returns the maximum.
+   *
+   * @return		the maximum, NaN if empty
+   */
+  public double getMax() {
+    return (m_N == 0) ? Double.NaN : m_Max;
+  }
+
+  /**
+   * Returns the approximate quantile.
+   *
+   * @param q		the quantile (0-1)
+   * @return		the value, NaN if empty
+   */
+  public double getQuantile(double q) {
+    return getQuantiles(new double[]{q})[0];
+  }
+
+  /**
+   * Returns the approximate quantiles.
+   *
+   * @param q		the quantiles (0-1), in ascending order
+   * @return		the values, NaN if empty
+   */
+  public double[] getQuantiles(double[] q) {
+    double[]		result;
+    final double[]	values;
+    long[]		weights;
+    Integer[]		order;
+    long		total;
+    long		cumulative;
+    int			count;
+    int			level;
+    int			i;
+    int			n;
+
+    result = new double[q.length];
+    if (m_N == 0) {
+      Arrays.fill(result, Double.NaN);
+      return result;
+    }
+
+    values  = new double[m_Size];
+    weights = new long[m_Size];
+    count   = 0;
+    total   = 0;
+    for (level = 0; level < m_Levels.length; level++) {
+      for (i = 0; i < m_Sizes[level]; i++) {
+	values[count]  = m_Levels[level][i];
+	weights[count] = 1L << level;
+	total         += weights[count];
+	count++;
+      }
+    }
+    order = new Integer[count];
+    for (i = 0; i < count; i++)
+      order[i] = i;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+	return Double.compare(values[o1], values[o2]);
+      }
+    });
+
+    cumulative = 0;
+    i          = 0;
+    for (n = 0; n < q.length; n++) {
+      if (q[n] <= 0) {
+	result[n] = m_Min;
+	continue;
+      }
+      if (q[n] >= 1) {
+	result[n] = m_Max;
+	continue;
+      }
+      while ((i < count) && (cumulative + weights[order[i]] <= q[n] * total)) {
+	cumulative += weights[order[i]];
+	i++;
+      }
+      result[n] = values[order[Math.min(i, count - 1)]];
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of values stored in the sketch.
+   *
+   * @return		the number of values
+   */
+  public int getSize() {
+    return m_Size;
+  }
+}
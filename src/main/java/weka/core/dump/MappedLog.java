@@ -0,0 +1,662 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MappedLog.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Appends the data in {@link BinaryFormat} to a single memory-mapped log
+ * file. An index file (log file + {@link #EXTENSION_INDEX}) records
+ * sequence number, label, stage, timestamp and location of each dump.
+ * Use {@link MappedLogReader} to access the dumps.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class MappedLog
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 5583069771338459311L;
+
+  /** the extension of the index file. */
+  public static final String EXTENSION_INDEX = ".idx";
+
+  /** the size of the memory-mapped regions. */
+  public static final int REGION_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * The index entry of a single dump.
+   */
+  public static class Entry
+    implements Serializable {
+
+    private static final long serialVersionUID = -5203454611427102017L;
+
+    /** the sequence number. */
+    public final long sequence;
+
+    /** the label of the dumper. */
+    public final String label;
+
+    /** the pipeline stage. */
+    public final String stage;
+
+    /** the time of the dump. */
+    public final long timestamp;
+
+    /** the offset in the log. */
+    public final long offset;
+
+    /** the length in bytes. */
+    public final int length;
+
+    /** the number of rows. */
+    public final int rows;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param sequence	the sequence number
+     * @param label	the label
+     * @param stage	the stage
+     * @param timestamp	the time of the dump
+     * @param offset	the offset in the log
+     * @param length	the length in bytes
+     * @param rows	the number of rows
+     */
+    public Entry(long sequence, String label, String stage, long timestamp, long offset, int length, int rows) {
+      this.sequence  = sequence;
+      this.label     = label;
+      this.stage     = stage;
+      this.timestamp = timestamp;
+      this.offset    = offset;
+      this.length    = length;
+      this.rows      = rows;
+    }
+
+    /**
+     * Writes the entry to the index.
+     *
+     * @param out	the index to write to
+     * @throws IOException	if writing fails
+     */
+    public void write(DataOutputStream out) throws IOException {
+      out.writeLong(sequence);
+      out.writeUTF(label);
+      out.writeUTF(stage);
+      out.writeLong(timestamp);
+      out.writeLong(offset);
+      out.writeInt(length);
+      out.writeInt(rows);
+    }
+
+    /**
+     * Reads an entry from the index.
+     *
+     * @param in	the index to read from
+     * @return		the entry
+     * @throws IOException	if reading fails
+     */
+    public static Entry read(DataInputStream in) throws IOException {
+      return new Entry(in.readLong(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt(), in.readInt());
+    }
+
+    /**
+     * Returns a short description of the entry.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "#" + sequence + ": label=" + label + ", stage=" + stage + ", rows=" + rows
+	+ ", offset=" + offset + ", length=" + length + ", timestamp=" + timestamp;
+    }
+  }
+
+  /**
+   * The writer for a single log file.
+   */
+  public static class Log {
+
+    /** the log file. */
+    protected File m_File;
+
+    /** the log file. */
+    protected RandomAccessFile m_Log;
+
+    /** the channel of the log file. */
+    protected FileChannel m_Channel;
+
+    /** the currently mapped region. */
+    protected MappedByteBuffer m_Region;
+
+    /** the offset of the mapped region. */
+    protected long m_RegionStart;
+
+    /** the end of the data in the log. */
+    protected long m_End;
+
+    /** the index. */
+    protected DataOutputStream m_Index;
+
+    /** the next sequence number. */
+    protected long m_Sequence;
+
+    /**
+     * Opens the log for appending.
+     *
+     * @param file	the log file
+     * @throws Exception	if the log or its index cannot be opened
+     */
+    public Log(File file) throws Exception {
+      List<Entry>	entries;
+      Entry		last;
+      File		index;
+      long		valid;
+      RandomAccessFile	raf;
+
+      m_File = file.getAbsoluteFile();
+      if (!m_File.getParentFile().exists())
+	m_File.getParentFile().mkdirs();
+
+      entries = new ArrayList<Entry>();
+      valid   = readIndex(m_File, entries);
+      if (entries.size() > 0) {
+	last       = entries.get(entries.size() - 1);
+	m_Sequence = last.sequence + 1;
+	m_End      = BinaryFormat.pad(last.offset + last.length);
+	if (m_File.length() < last.offset + last.length)
+	  throw new IOException("Log is shorter than index suggests: " + m_File);
+      }
+
+      // remove an incomplete last entry, the new entries would be misaligned
+      index = getIndexFile(m_File);
+      if (index.length() > valid) {
+	raf = new RandomAccessFile(index, "rw");
+	try {
+	  raf.setLength(valid);
+	}
+	finally {
+	  raf.close();
+	}
+      }
+
+      m_Log     = new RandomAccessFile(m_File, "rw");
+      m_Channel = m_Log.getChannel();
+      m_Index   = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index, true)));
+    }
+
+    /**
+     * Appends the data to the log.
+     *
+     * @param format	the encoded data
+     * @param rows	the number of rows
+     * @param label	the label of the dumper
+     * @param stage	the stage
+     * @return		the index entry
+     * @throws IOException	if writing fails
+     */
+    public synchronized Entry append(BinaryFormat format, int rows, String label, String stage) throws IOException {
+      Entry		result;
+      ByteBuffer	buffer;
+      int		size;
+
+      if (m_Channel == null)
+	throw new IllegalStateException("Log has been closed: " + m_File);
+
+      size = (int) BinaryFormat.pad((long) format.getSize());
+      if ((m_Region == null) || (m_End + size > m_RegionStart + m_Region.capacity())) {
+	m_RegionStart = m_End;
+	m_Region      = m_Channel.map(FileChannel.MapMode.READ_WRITE, m_RegionStart, Math.max(REGION_SIZE, size));
+      }
+      buffer = m_Region.duplicate();
+      buffer.position((int) (m_End - m_RegionStart));
+      format.write(buffer.slice());
+
+      result = new Entry(m_Sequence++, label, stage, System.currentTimeMillis(), m_End, format.getSize(), rows);
+      m_End += size;
+      result.write(m_Index);
+      m_Index.flush();
+
+      return result;
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return		the file
+     */
+    public File getFile() {
+      return m_File;
+    }
+
+    /**
+     * Writes the mapped data to disk and closes the log, removing the
+     * unused space at the end.
+     *
+     * @throws IOException	if closing fails
+     */
+    public synchronized void close() throws IOException {
+      if (m_Channel == null)
+	return;
+
+      try {
+	if (m_Region != null)
+	  m_Region.force();
+	m_Region = null;
+	m_Index.close();
+	m_Channel.truncate(m_End);
+      }
+      finally {
+	m_Log.close();
+	m_Channel = null;
+      }
+    }
+  }
+
+  /** the logs (absolute path - log). */
+  protected static Map<String, Log> m_Logs = new HashMap<String, Log>();
+
+  /** the shutdown hook for closing the logs. */
+  protected static Thread m_ShutdownHook;
+
+  /** the log file. */
+  protected File m_OutputFile = new File(".");
+
+  /** the label to record with the data. */
+  protected String m_EntryLabel = "";
+
+  /** the pipeline stage. */
+  protected String m_Stage = "";
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Appends the data in a compact binary format to a memory-mapped "
+      + "log file, which is shared by all dumpers in this JVM that use the "
+      + "same file. Existing logs get appended to.\n"
+      + "An index file (log file + '" + EXTENSION_INDEX + "') records sequence "
+      + "number, label, stage and timestamp of each dump, allowing "
+      + "weka.core.dump.MappedLogReader to access "
+      + "specific dumps (e.g., a certain fold or stage) without scanning the "
+      + "log; numeric values of dense data can be accessed without copying.\n"
+      + "Relational attributes are not supported.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe log file to append the data to.\n"
+	  + "\t(default: .)",
+	"output-file", 1, "-output-file <file>"));
+
+    result.addElement(
+      new Option(
+	"\tThe label to record with the data (e.g., the experiment).\n"
+	  + "\t(default: none)",
+	"entry-label", 1, "-entry-label <label>"));
+
+    result.addElement(
+      new Option(
+	"\tThe pipeline stage to record with the data.\n"
+	  + "\t(default: none)",
+	"stage", 1, "-stage <stage>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("output-file", options);
+    if (tmpStr.length() != 0)
+      setOutputFile(new File(tmpStr));
+    else
+      setOutputFile(new File("."));
+
+    setEntryLabel(Utils.getOption("entry-label", options));
+    setStage(Utils.getOption("stage", options));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-output-file");
+    result.add(getOutputFile().toString());
+
+    if (!getEntryLabel().isEmpty()) {
+      result.add("-entry-label");
+      result.add(getEntryLabel());
+    }
+
+    if (!getStage().isEmpty()) {
+      result.add("-stage");
+      result.add(getStage());
+    }
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the log file.
+   *
+   * @param value the log file to use
+   */
+  public void setOutputFile(File value) {
+    m_OutputFile = value;
+  }
+
+  /**
+   * Gets the log file.
+   *
+   * @return the log file
+   */
+  public File getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputFileTipText() {
+    return "The log file to append the data to.";
+  }
+
+  /**
+   * Sets the label to record with the data.
+   *
+   * @param value the label
+   */
+  public void setEntryLabel(String value) {
+    m_EntryLabel = value;
+  }
+
+  /**
+   * Returns the label to record with the data.
+   *
+   * @return the label
+   */
+  public String getEntryLabel() {
+    return m_EntryLabel;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String entryLabelTipText() {
+    return "The label to record with the data, e.g., the experiment; independent of the label for the metrics.";
+  }
+
+  /**
+   * Sets the pipeline stage.
+   *
+   * @param value the stage
+   */
+  public void setStage(String value) {
+    m_Stage = value;
+  }
+
+  /**
+   * Returns the pipeline stage.
+   *
+   * @return the stage
+   */
+  public String getStage() {
+    return m_Stage;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String stageTipText() {
+    return "The pipeline stage to record with the data, e.g., 'initial' or 'normalized'.";
+  }
+
+  /**
+   * Returns the index file for the log file.
+   *
+   * @param file	the log file
+   * @return		the index file
+   */
+  public static File getIndexFile(File file) {
+    return new File(file.getPath() + EXTENSION_INDEX);
+  }
+
+  /**
+   * Reads the index of the log file. An incomplete last entry gets ignored.
+   *
+   * @param file	the log file
+   * @return		the entries, empty if no index present
+   * @throws IOException	if reading fails
+   */
+  public static List<Entry> readIndex(File file) throws IOException {
+    List<Entry>		result;
+
+    result = new ArrayList<Entry>();
+    readIndex(file, result);
+
+    return result;
+  }
+
+  /**
+   * Reads the index of the log file. An incomplete last entry (e.g., due to
+   * a crash while writing) gets ignored.
+   *
+   * @param file	the log file
+   * @param entries	for adding the entries to
+   * @return		the length in bytes of the complete entries
+   * @throws IOException	if reading fails
+   */
+  public static long readIndex(File file, List<Entry> entries) throws IOException {
+    long		result;
+    File		index;
+    DataInputStream	in;
+    final long[]	count;
+
+    result = 0;
+    index  = getIndexFile(file);
+    if (!index.exists())
+      return result;
+
+    count = new long[1];
+    in    = new DataInputStream(new FilterInputStream(new BufferedInputStream(new FileInputStream(index))) {
+      @Override
+      public int read() throws IOException {
+	int b = super.read();
+	if (b != -1)
+	  count[0]++;
+	return b;
+      }
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+	int n = super.read(b, off, len);
+	if (n > 0)
+	  count[0] += n;
+	return n;
+      }
+    });
+    try {
+      while (true) {
+	entries.add(Entry.read(in));
+	result = count[0];
+      }
+    }
+    catch (EOFException e) {
+      // end of index
+    }
+    finally {
+      in.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the log for the file, opens it if necessary.
+   *
+   * @param file	the log file
+   * @return		the log
+   * @throws Exception	if the log cannot be opened
+   */
+  public static synchronized Log getLog(File file) throws Exception {
+    Log		result;
+    String	key;
+
+    key    = file.getAbsolutePath();
+    result = m_Logs.get(key);
+    if (result == null) {
+      result = new Log(file);
+      m_Logs.put(key, result);
+      if (m_ShutdownHook == null) {
+	m_ShutdownHook = new Thread(new Runnable() {
+	  @Override
+	  public void run() {
+	    closeAll();
+	  }
+	});
+	Runtime.getRuntime().addShutdownHook(m_ShutdownHook);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Closes the log. Dumping to the file again appends to it.
+   *
+   * @param file	the log file
+   * @throws IOException	if closing fails
+   */
+  public static void close(File file) throws IOException {
+    Log		log;
+
+    synchronized (MappedLog.class) {
+      log = m_Logs.remove(file.getAbsolutePath());
+    }
+    if (log != null)
+      log.close();
+  }
+
+  /**
+   * Closes all logs.
+   */
+  public static void closeAll() {
+    List<Log>	logs;
+
+    synchronized (MappedLog.class) {
+      logs = new ArrayList<Log>(m_Logs.values());
+      m_Logs.clear();
+    }
+    for (Log log: logs) {
+      try {
+	log.close();
+      }
+      catch (Exception e) {
+	System.err.println("Failed to close " + log.getFile() + ":");
+	e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Appends the data to the log.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    BinaryFormat	format;
+    Entry		entry;
+
+    if (m_OutputFile.isDirectory())
+      return;
+
+    format = new BinaryFormat(data);
+    entry  = getLog(m_OutputFile).append(format, data.numInstances(), m_EntryLabel, m_Stage);
+    getMetrics().addBytes(entry.length);
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MappedLogReader.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+import weka.core.dump.MappedLog.Entry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides access to the dumps stored by {@link MappedLog}. The index gets
+ * loaded into memory, the data of a dump gets memory-mapped on demand.
+ * <br>
+ * Example for printing the dataset of the 2nd fold of the "normalized"
+ * stage, with the dumpers using entry label "cv":
+ * <pre>
+ * MappedLogReader reader = new MappedLogReader(new File("dumps.log"));
+ * List&lt;MappedLog.Entry&gt; entries = reader.find("cv", "normalized");
+ * System.out.println(reader.getData(entries.get(1)));
+ * reader.close();
+ * </pre>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class MappedLogReader {
+
+  /** the log file. */
+  protected File m_File;
+
+  /** the log. */
+  protected RandomAccessFile m_Log;
+
+  /** the channel of the log. */
+  protected FileChannel m_Channel;
+
+  /** the entries. */
+  protected List<Entry> m_Entries;
+
+  /** the entries per sequence number. */
+  protected Map<Long, Entry> m_Sequences;
+
+  /** the entries per label and stage. */
+  protected Map<String, List<Entry>> m_Groups;
+
+  /**
+   * Opens the log.
+   *
+   * @param file	the log file
+   * @throws IOException	if the log or its index cannot be read
+   */
+  public MappedLogReader(File file) throws IOException {
+    m_File    = file.getAbsoluteFile();
+    m_Log     = new RandomAccessFile(m_File, "r");
+    m_Channel = m_Log.getChannel();
+    reload();
+  }
+
+  /**
+   * Re-reads the index, e.g., to pick up dumps that were added since
+   * opening the log.
+   *
+   * @throws IOException	if the index cannot be read
+   */
+  public void reload() throws IOException {
+    List<Entry>		group;
+    String		key;
+
+    m_Entries   = Collections.unmodifiableList(MappedLog.readIndex(m_File));
+    m_Sequences = new HashMap<Long, Entry>();
+    m_Groups    = new HashMap<String, List<Entry>>();
+    for (Entry entry: m_Entries) {
+      m_Sequences.put(entry.sequence, entry);
+      key   = key(entry.label, entry.stage);
+      group = m_Groups.get(key);
+      if (group == null) {
+	group = new ArrayList<Entry>();
+	m_Groups.put(key, group);
+      }
+      group.add(entry);
+    }
+  }
+
+  /**
+   * Generates the lookup key for label and stage.
+   *
+   * @param label	the label
+   * @param stage	the stage
+   * @return		the key
+   */
+  protected static String key(String label, String stage) {
+    return label + "\t" + stage;
+  }
+
+  /**
+   * Returns the log file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns all entries, in the order they were written.
+   *
+   * @return		the entries
+   */
+  public List<Entry> getEntries() {
+    return m_Entries;
+  }
+
+  /**
+   * Returns the entry with the sequence number.
+   *
+   * @param sequence	the sequence number
+   * @return		the entry, null if not found
+   */
+  public Entry getEntry(long sequence) {
+    return m_Sequences.get(sequence);
+  }
+
+  /**
+   * Returns the entries for the label and stage, in the order they were
+   * written (e.g., one per fold for the copies of a dumper used in
+   * cross-validation).
+   *
+   * @param label	the label of the dumper
+   * @param stage	the stage
+   * @return		the entries, empty if none found
+   */
+  public List<Entry> find(String label, String stage) {
+    List<Entry>		result;
+
+    result = m_Groups.get(key(label, stage));
+    if (result == null)
+      return Collections.emptyList();
+
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Returns the encoded data of the dump, mapped into memory (read-only).
+   *
+   * @param entry	the entry of the dump
+   * @return		the encoded data, see {@link BinaryFormat}
+   * @throws IOException	if mapping fails
+   */
+  public ByteBuffer getBuffer(Entry entry) throws IOException {
+    if (m_Channel == null)
+      throw new IllegalStateException("Reader has been closed: " + m_File);
+    return m_Channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+  }
+
+  /**
+   * Returns the structure of the dump.
+   *
+   * @param entry	the entry of the dump
+   * @return		the structure
+   * @throws Exception	if decoding fails
+   */
+  public Instances getHeader(Entry entry) throws Exception {
+    return BinaryFormat.getHeader(getBuffer(entry));
+  }
+
+  /**
+   * Returns the data of the dump.
+   *
+   * @param entry	the entry of the dump
+   * @return		the data
+   * @throws Exception	if decoding fails
+   */
+  public Instances getData(Entry entry) throws Exception {
+    return BinaryFormat.read(getBuffer(entry));
+  }
+
+  /**
+   * Returns the values of an attribute of the dump without copying them.
+   *
+   * @param entry	the entry of the dump
+   * @param index	the index of the attribute
+   * @return		the values, null if the data is sparse
+   * @throws IOException	if mapping fails
+   * @see		BinaryFormat#getColumn(ByteBuffer, int)
+   */
+  public DoubleBuffer getColumn(Entry entry, int index) throws IOException {
+    return BinaryFormat.getColumn(getBuffer(entry), index);
+  }
+
+  /**
+   * Closes the log.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    if (m_Channel == null)
+      return;
+    m_Log.close();
+    m_Channel = null;
+  }
+}
@@ -20,6 +20,7 @@
 
 package weka.core.dump;
 
+import weka.core.Instance;
 import weka.core.Instances;
 
 /**
@@ -49,6 +50,26 @@ public class Null
    * @throws Exception	if dumping fails
    */
   @Override
-  public void dump(Instances data) throws Exception {
+  protected void doDump(Instances data) throws Exception {
+  }
+
+  /**
+   * Does nothing.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpHeader(Instances header) throws Exception {
+  }
+
+  /**
+   * Does nothing.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpInstance(Instance inst) throws Exception {
   }
 }
@@ -0,0 +1,503 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PredictionCapture.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records scored instances together with their predictions in a lock-free
+ * ring buffer, which gets drained by a background thread that forwards the
+ * predictions in batches to a dumper.
+ * <br>
+ * The generated data consists of the attributes of the scored instances,
+ * the "prediction" attribute and one attribute per distribution element
+ * (made unique if the data already has attributes with these names).
+ * The background thread terminates when idle for a while and gets restarted
+ * automatically. If the buffer is full, predictions get dropped rather than
+ * blocking the caller. Predictions that cannot be processed get skipped,
+ * the error gets reported by {@link #flush()}. Pending predictions get
+ * dumped at JVM exit.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PredictionCapture {
+
+  /** the name of the prediction attribute. */
+  public static final String ATT_PREDICTION = "prediction";
+
+  /** the time in msec after which a partial batch gets dumped. */
+  public static final long MAX_LATENCY = 1000;
+
+  /** the time in msec after which an idle background thread terminates. */
+  public static final long MAX_IDLE = 5000;
+
+  /** the captures that still have to be flushed at JVM exit. */
+  protected static Set<PredictionCapture> m_Active;
+
+  /** the shutdown hook for flushing the captures. */
+  protected static Thread m_ShutdownHook;
+
+  /** the dumper to forward the predictions to. */
+  protected AbstractDumper m_Dumper;
+
+  /** the names of the distribution attributes. */
+  protected String[] m_DistributionNames;
+
+  /** the batch size. */
+  protected int m_BatchSize;
+
+  /** for turning sequence numbers into buffer indices. */
+  protected int m_Mask;
+
+  /** the buffered instances. */
+  protected Instance[] m_Instances;
+
+  /** the buffered distributions. */
+  protected double[][] m_Distributions;
+
+  /** the buffered predictions. */
+  protected double[] m_Predictions;
+
+  /** whether a buffer slot has been published (1) or not (0). */
+  protected AtomicIntegerArray m_Published;
+
+  /** the next sequence number to claim by producers. */
+  protected AtomicLong m_Tail;
+
+  /** the next sequence number to consume. */
+  protected AtomicLong m_Head;
+
+  /** the number of dropped predictions. */
+  protected AtomicLong m_Dropped;
+
+  /** whether the background thread is running. */
+  protected AtomicBoolean m_Running;
+
+  /** the output structure. */
+  protected Instances m_Header;
+
+  /** the batch currently being assembled. */
+  protected Instances m_Batch;
+
+  /** the time the current batch got started. */
+  protected long m_BatchStart;
+
+  /** the first exception that occurred in the background. */
+  protected Exception m_Failure;
+
+  /**
+   * Initializes the capture.
+   *
+   * @param dumper		the dumper to forward the predictions to
+   * @param distributionNames	the names for the distribution attributes
+   * @param bufferSize		the size of the ring buffer, gets rounded up to next power of 2
+   * @param batchSize		the number of predictions to dump at a time
+   */
+  public PredictionCapture(AbstractDumper dumper, String[] distributionNames, int bufferSize, int batchSize) {
+    int		size;
+
+    size = 1;
+    while (size < bufferSize)
+      size <<= 1;
+
+    m_Dumper            = dumper;
+    m_DistributionNames = distributionNames.clone();
+    m_BatchSize         = Math.max(1, batchSize);
+    m_Mask              = size - 1;
+    m_Instances         = new Instance[size];
+    m_Distributions     = new double[size][];
+    m_Predictions       = new double[size];
+    m_Published         = new AtomicIntegerArray(size);
+    m_Tail              = new AtomicLong();
+    m_Head              = new AtomicLong();
+    m_Dropped           = new AtomicLong();
+    m_Running           = new AtomicBoolean();
+  }
+
+  /**
+   * Generates the names for the distribution attributes of a classifier.
+   *
+   * @param data	the training data
+   * @return		the names
+   */
+  public static String[] distributionNames(Instances data) {
+    String[]	result;
+    int		i;
+
+    if (data.classAttribute().isNominal()) {
+      result = new String[data.classAttribute().numValues()];
+      for (i = 0; i < result.length; i++)
+	result[i] = "distribution-" + data.classAttribute().value(i);
+    }
+    else {
+      result = new String[]{"distribution"};
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the names for the distribution attributes of a clusterer.
+   *
+   * @param numClusters	the number of clusters
+   * @return		the names
+   */
+  public static String[] distributionNames(int numClusters) {
+    String[]	result;
+    int		i;
+
+    result = new String[numClusters];
+    for (i = 0; i < result.length; i++)
+      result[i] = "cluster-" + i;
+
+    return result;
+  }
+
+  /**
+   * Returns a name that is not used by any attribute of the data yet, by
+   * appending a number if necessary ("prediction" -> "prediction-1").
+   *
+   * @param data	the data to check against
+   * @param name	the preferred name
+   * @return		the unique name
+   */
+  public static String uniqueName(Instances data, String name) {
+    String	result;
+    int		i;
+
+    result = name;
+    i      = 0;
+    while (data.attribute(result) != null) {
+      i++;
+      result = name + "-" + i;
+    }
+
+    return result;
+  }
+
+  /**
+   * Registers the capture with the shutdown hook.
+   *
+   * @param capture	the capture to register
+   */
+  protected static synchronized void register(PredictionCapture capture) {
+    if (m_Active == null)
+      m_Active = Collections.newSetFromMap(new WeakHashMap<PredictionCapture, Boolean>());
+    if (m_ShutdownHook == null) {
+      m_ShutdownHook = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  List<PredictionCapture> active;
+	  synchronized (PredictionCapture.class) {
+	    active = new ArrayList<PredictionCapture>(m_Active);
+	  }
+	  for (PredictionCapture capture: active) {
+	    try {
+	      capture.flush();
+	    }
+	    catch (Exception e) {
+	      System.err.println("Failed to flush pending predictions at exit:");
+	      e.printStackTrace();
+	    }
+	  }
+	}
+      });
+      Runtime.getRuntime().addShutdownHook(m_ShutdownHook);
+    }
+    m_Active.add(capture);
+  }
+
+  /**
+   * Records the prediction. Returns immediately, even if the buffer is full.
+   *
+   * @param inst	the scored instance
+   * @param dist	the distribution, null if not available
+   * @param pred	the prediction, missing if not available
+   * @return		false if the buffer was full and the prediction got dropped
+   */
+  public boolean capture(Instance inst, double[] dist, double pred) {
+    long	seq;
+    int		index;
+
+    do {
+      seq = m_Tail.get();
+      if (seq - m_Head.get() > m_Mask) {
+	m_Dropped.incrementAndGet();
+	return false;
+      }
+    }
+    while (!m_Tail.compareAndSet(seq, seq + 1));
+
+    index                  = (int) (seq & m_Mask);
+    m_Instances[index]     = inst;
+    m_Distributions[index] = dist;
+    m_Predictions[index]   = pred;
+    m_Published.lazySet(index, 1);
+
+    if (!m_Running.get())
+      start();
+
+    return true;
+  }
+
+  /**
+   * Starts the background thread, if not already running.
+   */
+  protected void start() {
+    Thread	thread;
+
+    if (!m_Running.compareAndSet(false, true))
+      return;
+
+    register(this);
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+	try {
+	  drain();
+	}
+	catch (Throwable t) {
+	  failed(t);
+	  m_Running.set(false);
+	}
+      }
+    }, getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Drains the buffer until idle for too long.
+   */
+  protected void drain() {
+    long	idleSince;
+
+    idleSince = System.currentTimeMillis();
+    while (true) {
+      if (poll() > 0) {
+	idleSince = System.currentTimeMillis();
+	continue;
+      }
+      if (!checkBatch() && (System.currentTimeMillis() - idleSince >= MAX_IDLE)) {
+	m_Running.set(false);
+	// a producer might have published without seeing us running
+	if ((m_Head.get() == m_Tail.get()) || !m_Running.compareAndSet(false, true))
+	  return;
+      }
+      LockSupport.parkNanos(1000000L);
+    }
+  }
+
+  /**
+   * Dumps the current batch if it has been waiting for too long.
+   *
+   * @return		true if a batch is still pending
+   */
+  protected synchronized boolean checkBatch() {
+    if ((m_Batch != null) && (System.currentTimeMillis() - m_BatchStart >= MAX_LATENCY))
+      dumpBatch();
+    return (m_Batch != null);
+  }
+
+  /**
+   * Consumes the published predictions.
+   *
+   * @return		the number of consumed predictions
+   */
+  protected synchronized int poll() {
+    int		result;
+    long	head;
+    int		index;
+
+    result = 0;
+    head   = m_Head.get();
+    while (head < m_Tail.get()) {
+      index = (int) (head & m_Mask);
+      if (m_Published.get(index) == 0)
+	break;
+      try {
+	add(m_Instances[index], m_Distributions[index], m_Predictions[index]);
+      }
+      catch (Exception e) {
+	failed(e);
+      }
+      finally {
+	m_Instances[index]     = null;
+	m_Distributions[index] = null;
+	m_Published.set(index, 0);
+	head++;
+	m_Head.set(head);
+	result++;
+      }
+      if ((m_Batch != null) && (m_Batch.numInstances() >= m_BatchSize))
+	dumpBatch();
+    }
+
+    return result;
+  }
+
+  /**
+   * Records the first error that occurred in the background.
+   *
+   * @param t		the error
+   */
+  protected synchronized void failed(Throwable t) {
+    if (m_Failure == null) {
+      if (t instanceof Exception)
+	m_Failure = (Exception) t;
+      else
+	m_Failure = new Exception(t);
+    }
+  }
+
+  /**
+   * Initializes the output structure.
+   *
+   * @param inst	the first scored instance
+   */
+  protected void initHeader(Instance inst) {
+    Instances	header;
+    int		i;
+
+    if (inst.dataset() == null)
+      throw new IllegalArgumentException("Scored instance has no dataset!");
+
+    header = new Instances(inst.dataset(), 0).stringFreeStructure();
+    header.insertAttributeAt(new Attribute(uniqueName(header, ATT_PREDICTION)), header.numAttributes());
+    for (i = 0; i < m_DistributionNames.length; i++)
+      header.insertAttributeAt(new Attribute(uniqueName(header, m_DistributionNames[i])), header.numAttributes());
+    m_Header = header;
+  }
+
+  /**
+   * Adds the prediction to the current batch.
+   *
+   * @param inst	the scored instance
+   * @param dist	the distribution, null if not available
+   * @param pred	the prediction, missing if not available
+   */
+  protected void add(Instance inst, double[] dist, double pred) {
+    double[]	values;
+    int		numAtts;
+    int		i;
+
+    if (m_Header == null)
+      initHeader(inst);
+    if (inst.numAttributes() + 1 + m_DistributionNames.length != m_Header.numAttributes())
+      throw new IllegalArgumentException("Scored instance does not match the structure of the first one!");
+    if (m_Batch == null) {
+      m_Batch      = m_Header.stringFreeStructure();
+      m_BatchStart = System.currentTimeMillis();
+    }
+
+    numAtts = inst.numAttributes();
+    values  = new double[m_Header.numAttributes()];
+    for (i = 0; i < numAtts; i++) {
+      if (inst.isMissing(i))
+	values[i] = Utils.missingValue();
+      else if (inst.attribute(i).isString())
+	values[i] = m_Batch.attribute(i).addStringValue(inst.stringValue(i));
+      else if (inst.attribute(i).isRelationValued())
+	values[i] = m_Batch.attribute(i).addRelation(inst.relationalValue(i));
+      else
+	values[i] = inst.value(i);
+    }
+
+    if (Utils.isMissingValue(pred) && (dist != null)) {
+      if (m_Header.classIndex() > -1 && m_Header.classAttribute().isNumeric())
+	pred = dist[0];
+      else if (Utils.sum(dist) > 0)
+	pred = Utils.maxIndex(dist);
+    }
+    values[numAtts] = pred;
+
+    for (i = 0; i < m_DistributionNames.length; i++) {
+      if ((dist == null) || (i >= dist.length))
+	values[numAtts + 1 + i] = Utils.missingValue();
+      else
+	values[numAtts + 1 + i] = dist[i];
+    }
+
+    m_Batch.add(new DenseInstance(inst.weight(), values));
+  }
+
+  /**
+   * Dumps the current batch.
+   */
+  protected synchronized void dumpBatch() {
+    Instances	batch;
+
+    if (m_Batch == null)
+      return;
+
+    batch   = m_Batch;
+    m_Batch = null;
+    try {
+      m_Dumper.dump(batch);
+    }
+    catch (Exception e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Returns the number of predictions that got dropped due to the buffer
+   * being full.
+   *
+   * @return		the number of dropped predictions
+   */
+  public long getDroppedCount() {
+    return m_Dropped.get();
+  }
+
+  /**
+   * Dumps all predictions recorded so far and flushes the dumper.
+   *
+   * @throws Exception	if dumping fails
+   */
+  public synchronized void flush() throws Exception {
+    Exception	failure;
+
+    while (poll() > 0)
+      ;
+    dumpBatch();
+
+    failure   = m_Failure;
+    m_Failure = null;
+    m_Dumper.flush();
+    if (failure != null)
+      throw new Exception("Failed to dump predictions!", failure);
+  }
+}
@@ -0,0 +1,948 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Rolling.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends the data to the current segment file, starting a new segment
+ * once the current one exceeds a size or age limit. Completed segments get
+ * compressed in the background and old segments removed to stay within the
+ * retention limits.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Rolling
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = -1296475024508447416L;
+
+  /** ARFF format. */
+  public static final int FORMAT_ARFF = FastDataWriter.FORMAT_ARFF;
+
+  /** CSV format. */
+  public static final int FORMAT_CSV = FastDataWriter.FORMAT_CSV;
+
+  /** the output formats. */
+  public static final Tag[] TAGS_FORMAT = {
+    new Tag(FORMAT_ARFF, "arff", "ARFF"),
+    new Tag(FORMAT_CSV, "csv", "CSV"),
+  };
+
+  /** the extension for compressed segments. */
+  public static final String EXTENSION_GZ = ".gz";
+
+  /** the format of the timestamp in the segment names. */
+  public static final String TIMESTAMP_FORMAT = "yyyyMMdd_HHmmss_SSS";
+
+  /** the formatter for the timestamps. */
+  protected static final ThreadLocal<SimpleDateFormat> FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat(TIMESTAMP_FORMAT);
+    }
+  };
+
+  /** for numbering the segments. */
+  protected static final AtomicLong m_NextSegment = new AtomicLong();
+
+  /** the segments currently being written to (absolute paths). */
+  protected static final Set<String> m_Open = new HashSet<String>();
+
+  /** the single background thread for compressing and cleaning up. */
+  protected static ExecutorService m_Executor;
+
+  /** the scheduler for flushing the segments periodically. */
+  protected static ScheduledExecutorService m_Scheduler;
+
+  /** the output directory. */
+  protected File m_OutputDir = new File(".");
+
+  /** the prefix of the segment files. */
+  protected String m_Prefix = "dump";
+
+  /** the output format. */
+  protected int m_Format = FORMAT_ARFF;
+
+  /** the maximum size of a segment in bytes. */
+  protected long m_MaxSize = 64L * 1024 * 1024;
+
+  /** the maximum age of a segment in seconds. */
+  protected int m_MaxAge = 3600;
+
+  /** whether to compress completed segments. */
+  protected boolean m_Compress = true;
+
+  /** the maximum number of completed segments to keep. */
+  protected int m_MaxSegments = 10;
+
+  /** the maximum number of bytes of the completed segments to keep. */
+  protected long m_MaxTotalSize = 0;
+
+  /** the interval in msec for flushing the current segment. */
+  protected int m_FlushInterval = 1000;
+
+  /** the current segment. */
+  protected transient File m_Segment;
+
+  /** the stream of the current segment. */
+  protected transient FileOutputStream m_Stream;
+
+  /** the writer for the current segment. */
+  protected transient FastDataWriter m_Writer;
+
+  /** the buffer of the writer. */
+  protected transient ByteBuffer m_ByteBuffer;
+
+  /** the structure of the data in the current segment. */
+  protected transient Instances m_SegmentHeader;
+
+  /** when the current segment got started. */
+  protected transient long m_SegmentStart;
+
+  /** the structure of the incrementally dumped instances. */
+  protected transient Instances m_Header;
+
+  /** the periodic flushing of the current segment. */
+  protected transient ScheduledFuture<?> m_Flusher;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Appends the data to the current ARFF or CSV segment file in the "
+      + "output directory, starting a new segment once the current one "
+      + "exceeds the maximum size or age (or the structure of the data "
+      + "changes). Intended for continuous capture, e.g., with streaming "
+      + "filters or updateable classifiers.\n"
+      + "Segments are named 'prefix-timestamp-number.ext'. Completed "
+      + "segments get compressed with gzip in the background, if enabled, "
+      + "and the oldest completed segments get deleted to stay within the "
+      + "maximum number of segments and total size.\n"
+      + "Incrementally dumped instances get written to the current segment "
+      + "at the specified flush interval; the current segment gets closed "
+      + "with close() or when the JVM exits.\n"
+      + "Relational attributes are not supported.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe directory for the segment files.\n"
+	  + "\t(default: .)",
+	"output-dir", 1, "-output-dir <dir>"));
+
+    result.addElement(
+      new Option(
+	"\tThe prefix of the segment files.\n"
+	  + "\t(default: dump)",
+	"prefix", 1, "-prefix <prefix>"));
+
+    result.addElement(
+      new Option(
+	"\tThe output format.\n"
+	  + "\t(default: " + new SelectedTag(FORMAT_ARFF, TAGS_FORMAT) + ")",
+	"format", 1, "-format " + Tag.toOptionList(TAGS_FORMAT)));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum size of a segment in bytes, <= 0 for no limit.\n"
+	  + "\t(default: 67108864)",
+	"max-size", 1, "-max-size <bytes>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum age of a segment in seconds, <= 0 for no limit.\n"
+	  + "\t(default: 3600)",
+	"max-age", 1, "-max-age <sec>"));
+
+    result.addElement(
+      new Option(
+	"\tIf enabled, completed segments do not get compressed.",
+	"no-compression", 0, "-no-compression"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum number of completed segments to keep, <= 0 for no limit.\n"
+	  + "\t(default: 10)",
+	"max-segments", 1, "-max-segments <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum total size in bytes of the completed segments to keep,\n"
+	  + "\t<= 0 for no limit.\n"
+	  + "\t(default: 0)",
+	"max-total-size", 1, "-max-total-size <bytes>"));
+
+    result.addElement(
+      new Option(
+	"\tThe interval in msec for flushing the current segment, <= 0 to\n"
+	  + "\tonly flush when the buffer is full.\n"
+	  + "\t(default: 1000)",
+	"flush-interval", 1, "-flush-interval <msec>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("output-dir", options);
+    if (tmpStr.length() != 0)
+      setOutputDir(new File(tmpStr));
+    else
+      setOutputDir(new File("."));
+
+    tmpStr = Utils.getOption("prefix", options);
+    if (tmpStr.length() != 0)
+      setPrefix(tmpStr);
+    else
+      setPrefix("dump");
+
+    tmpStr = Utils.getOption("format", options);
+    if (tmpStr.length() != 0)
+      setFormat(new SelectedTag(tmpStr, TAGS_FORMAT));
+    else
+      setFormat(new SelectedTag(FORMAT_ARFF, TAGS_FORMAT));
+
+    tmpStr = Utils.getOption("max-size", options);
+    if (tmpStr.length() != 0)
+      setMaxSize(Long.parseLong(tmpStr));
+    else
+      setMaxSize(64L * 1024 * 1024);
+
+    tmpStr = Utils.getOption("max-age", options);
+    if (tmpStr.length() != 0)
+      setMaxAge(Integer.parseInt(tmpStr));
+    else
+      setMaxAge(3600);
+
+    setCompress(!Utils.getFlag("no-compression", options));
+
+    tmpStr = Utils.getOption("max-segments", options);
+    if (tmpStr.length() != 0)
+      setMaxSegments(Integer.parseInt(tmpStr));
+    else
+      setMaxSegments(10);
+
+    tmpStr = Utils.getOption("max-total-size", options);
+    if (tmpStr.length() != 0)
+      setMaxTotalSize(Long.parseLong(tmpStr));
+    else
+      setMaxTotalSize(0);
+
+    tmpStr = Utils.getOption("flush-interval", options);
+    if (tmpStr.length() != 0)
+      setFlushInterval(Integer.parseInt(tmpStr));
+    else
+      setFlushInterval(1000);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-output-dir");
+    result.add(getOutputDir().toString());
+
+    result.add("-prefix");
+    result.add(getPrefix());
+
+    result.add("-format");
+    result.add("" + getFormat());
+
+    result.add("-max-size");
+    result.add("" + getMaxSize());
+
+    result.add("-max-age");
+    result.add("" + getMaxAge());
+
+    if (!getCompress())
+      result.add("-no-compression");
+
+    result.add("-max-segments");
+    result.add("" + getMaxSegments());
+
+    result.add("-max-total-size");
+    result.add("" + getMaxTotalSize());
+
+    result.add("-flush-interval");
+    result.add("" + getFlushInterval());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the directory for the segments.
+   *
+   * @param value the directory
+   */
+  public void setOutputDir(File value) {
+    m_OutputDir = value;
+  }
+
+  /**
+   * Returns the directory for the segments.
+   *
+   * @return the directory
+   */
+  public File getOutputDir() {
+    return m_OutputDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputDirTipText() {
+    return "The directory for the segment files.";
+  }
+
+  /**
+   * Sets the prefix of the segment files.
+   *
+   * @param value the prefix
+   */
+  public void setPrefix(String value) {
+    m_Prefix = value;
+  }
+
+  /**
+   * Returns the prefix of the segment files.
+   *
+   * @return the prefix
+   */
+  public String getPrefix() {
+    return m_Prefix;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String prefixTipText() {
+    return "The prefix of the segment files; retention only considers segments with this prefix.";
+  }
+
+  /**
+   * Sets the output format.
+   *
+   * @param value the format
+   */
+  public void setFormat(SelectedTag value) {
+    if (value.getTags() == TAGS_FORMAT)
+      m_Format = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the output format.
+   *
+   * @return the format
+   */
+  public SelectedTag getFormat() {
+    return new SelectedTag(m_Format, TAGS_FORMAT);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String formatTipText() {
+    return "The output format of the segments.";
+  }
+
+  /**
+   * Sets the maximum size of a segment.
+   *
+   * @param value the size in bytes, <= 0 for no limit
+   */
+  public void setMaxSize(long value) {
+    m_MaxSize = value;
+  }
+
+  /**
+   * Returns the maximum size of a segment.
+   *
+   * @return the size in bytes, <= 0 for no limit
+   */
+  public long getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxSizeTipText() {
+    return "The maximum size of a segment in bytes (uncompressed), <= 0 for no limit.";
+  }
+
+  /**
+   * Sets the maximum age of a segment.
+   *
+   * @param value the age in seconds, <= 0 for no limit
+   */
+  public void setMaxAge(int value) {
+    m_MaxAge = value;
+  }
+
+  /**
+   * Returns the maximum age of a segment.
+   *
+   * @return the age in seconds, <= 0 for no limit
+   */
+  public int getMaxAge() {
+    return m_MaxAge;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxAgeTipText() {
+    return "The maximum age of a segment in seconds, <= 0 for no limit; "
+      + "checked whenever data gets dumped.";
+  }
+
+  /**
+   * Sets whether to compress completed segments.
+   *
+   * @param value true if to compress
+   */
+  public void setCompress(boolean value) {
+    m_Compress = value;
+  }
+
+  /**
+   * Returns whether to compress completed segments.
+   *
+   * @return true if to compress
+   */
+  public boolean getCompress() {
+    return m_Compress;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String compressTipText() {
+    return "If enabled, completed segments get compressed with gzip in the background.";
+  }
+
+  /**
+   * Sets the maximum number of completed segments to keep.
+   *
+   * @param value the maximum, <= 0 for no limit
+   */
+  public void setMaxSegments(int value) {
+    m_MaxSegments = value;
+  }
+
+  /**
+   * Returns the maximum number of completed segments to keep.
+   *
+   * @return the maximum, <= 0 for no limit
+   */
+  public int getMaxSegments() {
+    return m_MaxSegments;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxSegmentsTipText() {
+    return "The maximum number of completed segments to keep, <= 0 for no limit.";
+  }
+
+  /**
+   * Sets the maximum total size of the completed segments to keep.
+   *
+   * @param value the size in bytes, <= 0 for no limit
+   */
+  public void setMaxTotalSize(long value) {
+    m_MaxTotalSize = value;
+  }
+
+  /**
+   * Returns the maximum total size of the completed segments to keep.
+   *
+   * @return the size in bytes, <= 0 for no limit
+   */
+  public long getMaxTotalSize() {
+    return m_MaxTotalSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxTotalSizeTipText() {
+    return "The maximum total size in bytes of the completed segments to keep (as stored on disk), <= 0 for no limit.";
+  }
+
+  /**
+   * Sets the interval for flushing the current segment.
+   *
+   * @param value the interval in msec, <= 0 to only flush when the buffer is full
+   */
+  public void setFlushInterval(int value) {
+    m_FlushInterval = value;
+  }
+
+  /**
+   * Returns the interval for flushing the current segment.
+   *
+   * @return the interval in msec, <= 0 to only flush when the buffer is full
+   */
+  public int getFlushInterval() {
+    return m_FlushInterval;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String flushIntervalTipText() {
+    return "The interval in msec for flushing the current segment, <= 0 to only flush when the buffer is full.";
+  }
+
+  /**
+   * Returns the executor, initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Rolling.class.getSimpleName());
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Returns the scheduler for flushing, initializes it if necessary.
+   *
+   * @return		the scheduler
+   */
+  protected static synchronized ScheduledExecutorService getScheduler() {
+    if (m_Scheduler == null) {
+      m_Scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Rolling.class.getSimpleName() + "-flush");
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Scheduler;
+  }
+
+  /**
+   * Returns the current segment.
+   *
+   * @return		the segment, null if none open
+   */
+  public synchronized File getSegment() {
+    return m_Segment;
+  }
+
+  /**
+   * Starts a new segment.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if the segment cannot be created
+   */
+  protected void open(Instances header) throws Exception {
+    File	file;
+    String	ext;
+
+    if (!m_OutputDir.exists() && !m_OutputDir.mkdirs())
+      throw new IOException("Failed to create output directory: " + m_OutputDir);
+
+    ext = (m_Format == FORMAT_CSV) ? ".csv" : ".arff";
+    do {
+      file = new File(m_OutputDir.getAbsoluteFile(),
+	m_Prefix + "-" + FORMATTER.get().format(new Date()) + "-" + String.format("%06d", m_NextSegment.incrementAndGet()) + ext);
+    }
+    while (!file.createNewFile());
+
+    synchronized (m_Open) {
+      m_Open.add(file.getAbsolutePath());
+    }
+    if (m_ByteBuffer == null)
+      m_ByteBuffer = ByteBuffer.allocateDirect(FastDataWriter.BUFFER_SIZE);
+    m_Segment       = file;
+    m_SegmentHeader = new Instances(header, 0);
+    m_SegmentStart  = System.currentTimeMillis();
+    m_Stream        = new FileOutputStream(file);
+    m_Writer        = new FastDataWriter(header, m_Format, m_ByteBuffer);
+    m_Writer.open(m_Stream.getChannel());
+    m_Writer.writeHeader();
+
+    closeAtExit(this);
+    if (m_FlushInterval > 0) {
+      m_Flusher = getScheduler().scheduleWithFixedDelay(new Runnable() {
+	@Override
+	public void run() {
+	  try {
+	    flush();
+	  }
+	  catch (Exception e) {
+	    System.err.println("Failed to flush segment " + getSegment() + ":");
+	    e.printStackTrace();
+	  }
+	}
+      }, m_FlushInterval, m_FlushInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Closes the current segment (if any) and schedules compression and
+   * clean up.
+   *
+   * @throws Exception	if closing fails
+   */
+  protected void rotate() throws Exception {
+    final File	segment;
+
+    if (m_Segment == null)
+      return;
+
+    segment = m_Segment;
+    if (m_Flusher != null) {
+      m_Flusher.cancel(false);
+      m_Flusher = null;
+    }
+    removeCloseAtExit(this);
+    try {
+      m_Writer.flush();
+      getMetrics().addBytes(m_Writer.getBytesWritten());
+    }
+    finally {
+      m_Stream.close();
+      m_Stream        = null;
+      m_Writer        = null;
+      m_Segment       = null;
+      m_SegmentHeader = null;
+      synchronized (m_Open) {
+	m_Open.remove(segment.getAbsolutePath());
+      }
+    }
+
+    getExecutor().submit(new Runnable() {
+      @Override
+      public void run() {
+	try {
+	  if (m_Compress)
+	    compress(segment);
+	  cleanUp();
+	}
+	catch (Exception e) {
+	  System.err.println("Failed to process completed segment " + segment + ":");
+	  e.printStackTrace();
+	}
+      }
+    });
+  }
+
+  /**
+   * Returns whether the segment has reached its size or age limit.
+   *
+   * @return		true if a new segment is required
+   */
+  protected boolean isFull() {
+    if ((m_MaxSize > 0) && (m_Writer.getBytesWritten() >= m_MaxSize))
+      return true;
+    if ((m_MaxAge > 0) && (System.currentTimeMillis() - m_SegmentStart >= m_MaxAge * 1000L))
+      return true;
+    return false;
+  }
+
+  /**
+   * Makes sure that a segment that is suitable for the data is open.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if opening/closing a segment fails
+   */
+  protected void prepare(Instances header) throws Exception {
+    if ((m_Segment != null) && (isFull() || !m_SegmentHeader.equalHeaders(header)))
+      rotate();
+    if (m_Segment == null)
+      open(header);
+  }
+
+  /**
+   * Compresses the segment and removes the uncompressed one.
+   *
+   * @param segment	the segment to compress
+   * @throws IOException	if compression fails
+   */
+  protected static void compress(File segment) throws IOException {
+    File		tmp;
+    FileInputStream	in;
+    GZIPOutputStream	out;
+    byte[]		buffer;
+    int			read;
+
+    tmp    = new File(segment.getPath() + EXTENSION_GZ + ".tmp");
+    buffer = new byte[FastDataWriter.BUFFER_SIZE];
+    in     = new FileInputStream(segment);
+    out    = null;
+    try {
+      out = new GZIPOutputStream(new FileOutputStream(tmp), buffer.length);
+      while ((read = in.read(buffer)) > -1)
+	out.write(buffer, 0, read);
+      out.finish();
+    }
+    finally {
+      in.close();
+      if (out != null)
+	out.close();
+    }
+
+    if (!tmp.renameTo(new File(segment.getPath() + EXTENSION_GZ)))
+      throw new IOException("Failed to rename " + tmp + "!");
+    if (!segment.delete())
+      throw new IOException("Failed to delete " + segment + "!");
+  }
+
+  /**
+   * Returns the completed segments in the output directory, oldest first.
+   *
+   * @return		the segments
+   */
+  public File[] getCompletedSegments() {
+    File[]	result;
+
+    result = m_OutputDir.getAbsoluteFile().listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+	String name = file.getName();
+	if (!file.isFile() || !name.startsWith(m_Prefix + "-"))
+	  return false;
+	if (name.endsWith(EXTENSION_GZ))
+	  name = name.substring(0, name.length() - EXTENSION_GZ.length());
+	if (!name.endsWith(".arff") && !name.endsWith(".csv"))
+	  return false;
+	synchronized (m_Open) {
+	  return !m_Open.contains(file.getAbsolutePath());
+	}
+      }
+    });
+    if (result == null)
+      return new File[0];
+
+    // names (prefix-timestamp-number.ext) sort chronologically
+    Arrays.sort(result);
+
+    return result;
+  }
+
+  /**
+   * Removes the oldest completed segments that exceed the retention limits.
+   */
+  protected void cleanUp() {
+    File[]	segments;
+    long	total;
+    int		i;
+    int		keep;
+
+    if ((m_MaxSegments <= 0) && (m_MaxTotalSize <= 0))
+      return;
+
+    segments = getCompletedSegments();
+    keep     = 0;
+    total    = 0;
+    for (i = segments.length - 1; i >= 0; i--) {
+      total += segments[i].length();
+      if ((m_MaxSegments > 0) && (keep >= m_MaxSegments))
+	break;
+      if ((m_MaxTotalSize > 0) && (total > m_MaxTotalSize))
+	break;
+      keep++;
+    }
+    for (i = 0; i < segments.length - keep; i++) {
+      if (!segments[i].delete())
+	System.err.println("Failed to delete segment: " + segments[i]);
+    }
+  }
+
+  /**
+   * Appends the data to the current segment.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected synchronized void doDump(Instances data) throws Exception {
+    int		i;
+
+    prepare(data);
+    for (i = 0; i < data.numInstances(); i++)
+      m_Writer.write(data.instance(i));
+    m_Writer.flush();
+    if (isFull())
+      rotate();
+  }
+
+  /**
+   * Starts incremental dumping.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    m_Header = new Instances(header, 0);
+  }
+
+  /**
+   * Appends the instance to the current segment, which gets rotated as soon
+   * as it is full.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    if (m_Header == null) {
+      if (inst.dataset() == null)
+	throw new IllegalStateException("No header dumped yet!");
+      dumpHeader(inst.dataset());
+    }
+    prepare(m_Header);
+    m_Writer.write(inst);
+    getMetrics().addRows(1);
+    if (isFull())
+      rotate();
+  }
+
+  /**
+   * Writes any buffered data to the current segment.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public synchronized void flush() throws Exception {
+    if (m_Writer != null)
+      m_Writer.flush();
+  }
+
+  /**
+   * Closes the current segment, which then gets compressed and cleaned up
+   * like all other completed segments. Dumping again starts a new segment.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  public synchronized void close() throws Exception {
+    rotate();
+  }
+}
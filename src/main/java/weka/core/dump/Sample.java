@@ -0,0 +1,615 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Sample.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Forwards only a sample of the data to the base dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Sample
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 4519447627427305286L;
+
+  /** reservoir sampling with a fixed sample size. */
+  public static final int MODE_RESERVOIR = 0;
+
+  /** bernoulli sampling with a fixed percentage. */
+  public static final int MODE_BERNOULLI = 1;
+
+  /** class-stratified sampling with a fixed percentage. */
+  public static final int MODE_STRATIFIED = 2;
+
+  /** the sampling modes. */
+  public static final Tag[] TAGS_MODE = {
+    new Tag(MODE_RESERVOIR, "reservoir", "Reservoir"),
+    new Tag(MODE_BERNOULLI, "bernoulli", "Bernoulli"),
+    new Tag(MODE_STRATIFIED, "stratified", "Stratified"),
+  };
+
+  /** the base dumper. */
+  protected AbstractDumper m_Dumper = new Null();
+
+  /** the sampling mode. */
+  protected int m_Mode = MODE_RESERVOIR;
+
+  /** the sample size (reservoir). */
+  protected int m_SampleSize = 1000;
+
+  /** the percentage (bernoulli, stratified). */
+  protected double m_Percentage = 10.0;
+
+  /** the seed for the random number generator. */
+  protected long m_Seed = 1;
+
+  /** the random number generator. */
+  protected transient Random m_Random;
+
+  /** the reservoir. */
+  protected transient Instance[] m_Reservoir;
+
+  /** the positions of the instances in the reservoir. */
+  protected transient long[] m_Positions;
+
+  /** the number of instances seen so far per stratum. */
+  protected transient long[] m_Seen;
+
+  /** the random start offsets per stratum. */
+  protected transient double[] m_Offsets;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Forwards only a sample of the data to the base dumper.\n"
+      + "Available modes:\n"
+      + "- reservoir: uniform sample with a fixed size, order is preserved\n"
+      + "- bernoulli: every instance is forwarded with the given probability\n"
+      + "- stratified: per class value, the given percentage of instances "
+      + "is forwarded (systematic sampling with random start)\n"
+      + "When dumping incrementally, the reservoir is kept across flushes and "
+      + "forwarded once at the end of the stream (when closed, or when a new "
+      + "header or a batch gets dumped), the other modes forward the "
+      + "instances straight away.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe base data dumper to use.\n"
+	  + "\t(default: " + Null.class.getName() + ")",
+	"dumper", 1, "-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe sampling mode.\n"
+	  + "\t(default: " + new SelectedTag(MODE_RESERVOIR, TAGS_MODE) + ")",
+	"mode", 1, "-mode " + Tag.toOptionList(TAGS_MODE)));
+
+    result.addElement(
+      new Option(
+	"\tThe sample size (reservoir).\n"
+	  + "\t(default: 1000)",
+	"sample-size", 1, "-sample-size <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe percentage to sample (bernoulli, stratified).\n"
+	  + "\t(default: 10.0)",
+	"percentage", 1, "-percentage <0-100>"));
+
+    result.addElement(
+      new Option(
+	"\tThe seed for the random number generator.\n"
+	  + "\t(default: 1)",
+	"seed", 1, "-seed <long>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 	tmpStr;
+    String 	className;
+    String[] 	classOptions;
+
+    tmpStr = Utils.getOption("dumper", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setDumper((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    else {
+      setDumper(new Null());
+    }
+
+    tmpStr = Utils.getOption("mode", options);
+    if (tmpStr.length() != 0)
+      setMode(new SelectedTag(tmpStr, TAGS_MODE));
+    else
+      setMode(new SelectedTag(MODE_RESERVOIR, TAGS_MODE));
+
+    tmpStr = Utils.getOption("sample-size", options);
+    if (tmpStr.length() != 0)
+      setSampleSize(Integer.parseInt(tmpStr));
+    else
+      setSampleSize(1000);
+
+    tmpStr = Utils.getOption("percentage", options);
+    if (tmpStr.length() != 0)
+      setPercentage(Double.parseDouble(tmpStr));
+    else
+      setPercentage(10.0);
+
+    tmpStr = Utils.getOption("seed", options);
+    if (tmpStr.length() != 0)
+      setSeed(Long.parseLong(tmpStr));
+    else
+      setSeed(1);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-dumper");
+    result.add(Utils.toCommandLine(getDumper()));
+
+    result.add("-mode");
+    result.add("" + getMode());
+
+    result.add("-sample-size");
+    result.add("" + getSampleSize());
+
+    result.add("-percentage");
+    result.add("" + getPercentage());
+
+    result.add("-seed");
+    result.add("" + getSeed());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the base data dumper to use.
+   *
+   * @param value the data dumper to use
+   */
+  public void setDumper(AbstractDumper value) {
+    m_Dumper = value;
+  }
+
+  /**
+   * Gets the current base data dumper.
+   *
+   * @return the data dumper
+   */
+  public AbstractDumper getDumper() {
+    return m_Dumper;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumperTipText() {
+    return "The base data dumper to use.";
+  }
+
+  /**
+   * Sets the sampling mode.
+   *
+   * @param value the mode
+   */
+  public void setMode(SelectedTag value) {
+    if (value.getTags() == TAGS_MODE)
+      m_Mode = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the sampling mode.
+   *
+   * @return the mode
+   */
+  public SelectedTag getMode() {
+    return new SelectedTag(m_Mode, TAGS_MODE);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String modeTipText() {
+    return "The sampling mode.";
+  }
+
+  /**
+   * Sets the sample size (reservoir).
+   *
+   * @param value the sample size (at least 1)
+   */
+  public void setSampleSize(int value) {
+    if (value > 0)
+      m_SampleSize = value;
+  }
+
+  /**
+   * Returns the sample size (reservoir).
+   *
+   * @return the sample size
+   */
+  public int getSampleSize() {
+    return m_SampleSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String sampleSizeTipText() {
+    return "The sample size when using reservoir sampling.";
+  }
+
+  /**
+   * Sets the percentage to sample (bernoulli, stratified).
+   *
+   * @param value the percentage (0-100)
+   */
+  public void setPercentage(double value) {
+    if ((value >= 0) && (value <= 100))
+      m_Percentage = value;
+  }
+
+  /**
+   * Returns the percentage to sample (bernoulli, stratified).
+   *
+   * @return the percentage (0-100)
+   */
+  public double getPercentage() {
+    return m_Percentage;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String percentageTipText() {
+    return "The percentage to sample when using bernoulli or stratified sampling.";
+  }
+
+  /**
+   * Sets the seed for the random number generator.
+   *
+   * @param value the seed
+   */
+  public void setSeed(long value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Returns the seed for the random number generator.
+   *
+   * @return the seed
+   */
+  public long getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for the random number generator.";
+  }
+
+  /**
+   * Returns the stratum of the instance, i.e., the index of the class value
+   * (missing class values are counted as the last stratum).
+   *
+   * @param inst	the instance to get the stratum for
+   * @return		the stratum, 0 if no nominal class
+   */
+  protected int stratum(Instance inst) {
+    if ((inst.classIndex() < 0) || !inst.classAttribute().isNominal())
+      return 0;
+    if (inst.classIsMissing())
+      return inst.classAttribute().numValues();
+    return (int) inst.classValue();
+  }
+
+  /**
+   * Returns the number of strata for the data.
+   *
+   * @param header	the structure of the data
+   * @return		the number of strata
+   */
+  protected int numStrata(Instances header) {
+    if ((header.classIndex() < 0) || !header.classAttribute().isNominal())
+      return 1;
+    return header.classAttribute().numValues() + 1;
+  }
+
+  /**
+   * Initializes the state for sampling.
+   *
+   * @param header	the structure of the data
+   */
+  protected void initSampling(Instances header) {
+    int		i;
+
+    m_Random    = new Random(m_Seed);
+    m_Reservoir = null;
+    m_Positions = null;
+    m_Seen      = new long[numStrata(header)];
+    m_Offsets   = new double[m_Seen.length];
+    for (i = 0; i < m_Offsets.length; i++)
+      m_Offsets[i] = m_Random.nextDouble();
+    if (m_Mode == MODE_RESERVOIR) {
+      m_Reservoir = new Instance[m_SampleSize];
+      m_Positions = new long[m_SampleSize];
+    }
+  }
+
+  /**
+   * Determines whether to select the instance (bernoulli, stratified).
+   *
+   * @param inst	the instance to check
+   * @return		true if selected
+   */
+  protected boolean select(Instance inst) {
+    double	fraction;
+    int		stratum;
+    long	seen;
+
+    fraction = m_Percentage / 100.0;
+    if (m_Mode == MODE_BERNOULLI)
+      return (m_Random.nextDouble() < fraction);
+
+    // systematic sampling with random start: select whenever the expected
+    // number of selected instances in the stratum increases
+    stratum = stratum(inst);
+    seen    = m_Seen[stratum]++;
+    return Math.floor((seen + 1 + m_Offsets[stratum]) * fraction) > Math.floor((seen + m_Offsets[stratum]) * fraction);
+  }
+
+  /**
+   * Offers the instance to the reservoir (algorithm R).
+   *
+   * @param inst	the instance to offer
+   * @param pos		the position of the instance in the stream
+   */
+  protected void offer(Instance inst, long pos) {
+    long	index;
+
+    if (pos < m_SampleSize)
+      index = pos;
+    else
+      index = (long) (m_Random.nextDouble() * (pos + 1));
+    if (index < m_SampleSize) {
+      m_Reservoir[(int) index] = inst;
+      m_Positions[(int) index] = pos;
+    }
+  }
+
+  /**
+   * Returns the reservoir in the original order of the instances.
+   *
+   * @return		the instances
+   */
+  protected Instance[] reservoir() {
+    Instance[]	result;
+    Integer[]	order;
+    int		count;
+    int		i;
+
+    count = (int) Math.min(m_SampleSize, m_Seen[0]);
+    order = new Integer[count];
+    for (i = 0; i < count; i++)
+      order[i] = i;
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+	return Long.valueOf(m_Positions[o1]).compareTo(m_Positions[o2]);
+      }
+    });
+
+    result = new Instance[count];
+    for (i = 0; i < count; i++)
+      result[i] = m_Reservoir[order[i]];
+
+    return result;
+  }
+
+  /**
+   * Forwards the reservoir of the incremental stream (if any) to the base
+   * dumper, flushes the latter and clears the reservoir, ending the stream.
+   *
+   * @throws Exception	if dumping fails
+   */
+  protected void forwardReservoir() throws Exception {
+    if ((m_Reservoir != null) && (m_Seen[0] > 0)) {
+      for (Instance inst: reservoir())
+	m_Dumper.dumpInstance(inst);
+      m_Dumper.flush();
+    }
+    m_Reservoir = null;
+    m_Seen      = null;
+  }
+
+  /**
+   * Dumps a sample of the data. Ends an incremental stream.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected synchronized void doDump(Instances data) throws Exception {
+    Instances	sample;
+    int		i;
+
+    forwardReservoir();
+    initSampling(data);
+
+    if ((m_Mode == MODE_RESERVOIR) && (data.numInstances() <= m_SampleSize)) {
+      sample = data;
+    }
+    else if (m_Mode == MODE_RESERVOIR) {
+      for (i = 0; i < data.numInstances(); i++)
+	offer(data.instance(i), m_Seen[0]++);
+      sample = new Instances(data, m_SampleSize);
+      for (Instance inst: reservoir())
+	sample.add(inst);
+    }
+    else {
+      sample = new Instances(data, (int) (data.numInstances() * m_Percentage / 100.0) + 1);
+      for (i = 0; i < data.numInstances(); i++) {
+	if (select(data.instance(i)))
+	  sample.add(data.instance(i));
+      }
+    }
+
+    // the batch does not continue an incremental stream
+    m_Reservoir = null;
+    m_Seen      = null;
+
+    m_Dumper.dump(sample);
+  }
+
+  /**
+   * Starts incremental dumping, using the specified dataset structure.
+   * Ends a preceding incremental stream.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    forwardReservoir();
+    initSampling(header);
+    m_Dumper.dumpHeader(header);
+  }
+
+  /**
+   * Samples the instance. Instances selected by bernoulli or stratified
+   * sampling get forwarded immediately, the reservoir gets forwarded at the
+   * end of the stream.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    if (m_Seen == null) {
+      if (inst.dataset() == null)
+	throw new IllegalStateException("No header dumped yet!");
+      dumpHeader(inst.dataset());
+    }
+
+    if (m_Mode == MODE_RESERVOIR)
+      offer((Instance) inst.copy(), m_Seen[0]++);
+    else if (select(inst))
+      m_Dumper.dumpInstance(inst);
+  }
+
+  /**
+   * Flushes the base dumper. The reservoir is kept, to maintain the fixed
+   * sample size across flushes.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public synchronized void flush() throws Exception {
+    m_Dumper.flush();
+  }
+
+  /**
+   * Forwards the reservoir (if any) and closes the base dumper.
+   *
+   * @throws Exception	if forwarding or closing fails
+   */
+  @Override
+  public synchronized void close() throws Exception {
+    try {
+      forwardReservoir();
+    }
+    finally {
+      m_Dumper.close();
+    }
+  }
+}
@@ -20,19 +20,34 @@
 
 package weka.core.dump;
 
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.Utils;
+import weka.core.converters.AbstractFileSaver;
+import weka.core.converters.ConverterUtils;
 import weka.core.converters.ConverterUtils.DataSink;
+import weka.core.converters.IncrementalConverter;
+import weka.core.converters.Saver;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Saves the data to the specified file.
@@ -45,16 +60,171 @@ public class SaveToDisk
   private static final long serialVersionUID = -5971382385452901618L;
 
   /** the format for the timestamp. */
-  public final static String TIMESTAMP_FORMAT = "yyyyMMdd_mmhhss_SSS";
+  public final static String TIMESTAMP_FORMAT = "yyyyMMdd_HHmmss_SSS";
   
   /** the output file. */
   protected File m_OutputFile = new File(".");
 
-  /** whether to append a timestamp to the file (eg "file.arff" -> "file-20190919_164637_234.arff"). */
+  /** whether to append a timestamp to the file (eg "file.arff" -> "file-20190919_164637_234-t1-0.arff"). */
   protected boolean m_AppendTimestamp = false;
 
-  /** the timetamp format. */
-  protected transient SimpleDateFormat m_Formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
+  /** the extension for reference files. */
+  public final static String REFERENCE_EXTENSION = ".ref";
+
+  /**
+   * Map that drops the least recently used entries once it exceeds the
+   * maximum size.
+   *
+   * @param <K>	the type of the keys
+   * @param <V>	the type of the values
+   */
+  protected static class BoundedMap<K, V>
+    extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = -2361519263853016728L;
+
+    /** the maximum number of entries. */
+    protected int m_MaxSize;
+
+    /**
+     * Initializes the map.
+     *
+     * @param maxSize	the maximum number of entries
+     */
+    public BoundedMap(int maxSize) {
+      super(16, 0.75f, true);
+      m_MaxSize = maxSize;
+    }
+
+    /**
+     * Returns whether to remove the eldest entry.
+     *
+     * @param eldest	the eldest entry
+     * @return		true if the maximum size is exceeded
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > m_MaxSize;
+    }
+  }
+
+  /**
+   * Container for a file written in deduplication mode.
+   */
+  protected static class WrittenFile {
+
+    /** the file. */
+    public File file;
+
+    /** the hash of the data in the file (incl extension). */
+    public String hash;
+
+    /** the timestamp of the file after writing it. */
+    public long lastModified;
+
+    /** the size of the file after writing it. */
+    public long length;
+
+    /**
+     * Initializes the container with the current state of the file.
+     *
+     * @param file	the file
+     * @param hash	the hash of the data in the file
+     */
+    public WrittenFile(File file, String hash) {
+      this.file         = file.getAbsoluteFile();
+      this.hash         = hash;
+      this.lastModified = file.lastModified();
+      this.length       = file.length();
+    }
+
+    /**
+     * Checks whether the file still contains the data, i.e., it hasn't been
+     * written to since (by this or another dumper in this JVM) and neither
+     * timestamp nor size changed. Must be called while holding the lock on
+     * {@link #m_Written}.
+     *
+     * @return		true if unchanged
+     */
+    public boolean isValid() {
+      return hash.equals(m_Contents.get(file.getPath()))
+	&& file.exists() && (file.lastModified() == lastModified) && (file.length() == length);
+    }
+  }
+
+  /** the maximum number of files to remember in deduplication mode. */
+  public final static int MAX_WRITTEN = 10000;
+
+  /** the files written in deduplication mode (hash + extension - file). */
+  protected static final Map<String, WrittenFile> m_Written = new BoundedMap<String, WrittenFile>(MAX_WRITTEN);
+
+  /** the hash of the data that got last written to a file (absolute path - hash + extension). */
+  protected static final Map<String, String> m_Contents = new BoundedMap<String, String>(MAX_WRITTEN);
+
+  /** whether to write identical data only once. */
+  protected boolean m_Deduplicate = false;
+
+  /** the timestamp formats (SimpleDateFormat is not thread-safe). */
+  protected static final ThreadLocal<SimpleDateFormat> FORMATTER = new ThreadLocal<SimpleDateFormat>() {
+    @Override
+    protected SimpleDateFormat initialValue() {
+      return new SimpleDateFormat(TIMESTAMP_FORMAT);
+    }
+  };
+
+  /**
+   * Weak reference to a lock, which remembers the file it belongs to.
+   */
+  protected static class LockReference
+    extends WeakReference<Object> {
+
+    /** the absolute path of the file. */
+    public final String key;
+
+    /**
+     * Initializes the reference.
+     *
+     * @param key	the absolute path of the file
+     * @param lock	the lock
+     */
+    public LockReference(String key, Object lock) {
+      super(lock, m_Unused);
+      this.key = key;
+    }
+  }
+
+  /** the locks for the output files (absolute path - lock), only held as long as they're in use. */
+  protected static final Map<String, LockReference> m_Locks = new HashMap<String, LockReference>();
+
+  /** the queue for the locks that are no longer in use. */
+  protected static final ReferenceQueue<Object> m_Unused = new ReferenceQueue<Object>();
+
+  /** the sequence number for the file names with timestamp. */
+  protected transient AtomicLong m_Sequence;
+
+  /** the saver for writing instances incrementally. */
+  protected transient AbstractFileSaver m_Saver;
+
+  /** the fast writer for writing ARFF/CSV instances incrementally. */
+  protected transient FastDataWriter m_Writer;
+
+  /** the stream the fast writer writes to. */
+  protected transient FileOutputStream m_WriterStream;
+
+  /** the file that is being written incrementally. */
+  protected transient File m_SaverFile;
+
+  /** the number of instances written incrementally since the last flush. */
+  protected transient int m_SaverRows;
+
+  /** the size of the incrementally written file at the last flush. */
+  protected transient long m_SaverBytes;
+
+  /** the file written by the last batch dump (only without timestamp). */
+  protected transient File m_LastFile;
+
+  /** the structure of the data written by the last batch dump. */
+  protected transient Instances m_LastHeader;
 
   /**
    * Returns a string describing this scheme.
@@ -66,7 +236,24 @@ public class SaveToDisk
   public String globalInfo() {
     return "Saves the data to the specified file.\n"
       + "It is possible to append a timestamp, to allow the dumping also work "
-      + "within cross-validation (format: " + TIMESTAMP_FORMAT + ").";
+      + "within cross-validation (format: " + TIMESTAMP_FORMAT + "-t<thread>-<sequence>); "
+      + "the thread ID and the sequence number ensure unique file names "
+      + "when dumping concurrently.\n"
+      + "In deduplication mode, the data gets hashed and data that has already "
+      + "been written to another file (within the same JVM) is only written "
+      + "as reference: a file with the additional extension "
+      + REFERENCE_EXTENSION + " that contains the path of the file with the "
+      + "actual data; writing either the data file or the reference file "
+      + "removes the other one. If the same data gets written to the same "
+      + "file again, writing is skipped altogether. Only applies to batch "
+      + "dumps.\n"
+      + "Instances dumped incrementally get streamed to the file, which stays "
+      + "open until the structure changes, a batch dump occurs or the dumper "
+      + "gets closed (at the latest at JVM exit); flushing writes out the "
+      + "pending instances. ARFF and CSV streams get appended to the file "
+      + "written by the preceding batch dump if the structure is the same "
+      + "(e.g., the training data of DumperUpdateable), other formats get "
+      + "written to a separate file with timestamp instead.";
   }
 
   /**
@@ -87,10 +274,16 @@ public class SaveToDisk
     result.addElement(
       new Option(
 	"\tWhether to append a timestamp to the file name (eg when used in cross-validation).\n"
-	+ "\tExample: 'output.arff' -> 'output-20190919_164637_234.arff'\n"
+	+ "\tExample: 'output.arff' -> 'output-20190919_164637_234-t1-0.arff'\n"
 	  + "\t(default: no)",
 	"append-timestamp", 0, "-append-timestamp"));
 
+    result.addElement(
+      new Option(
+	"\tWhether to write identical data only once, writing references for repeats.\n"
+	  + "\t(default: no)",
+	"deduplicate", 0, "-deduplicate"));
+
     result.addAll(Collections.list(super.listOptions()));
 
     return result.elements();
@@ -114,6 +307,8 @@ public class SaveToDisk
 
     setAppendTimestamp(Utils.getFlag("append-timestamp", options));
 
+    setDeduplicate(Utils.getFlag("deduplicate", options));
+
     super.setOptions(options);
   }
 
@@ -132,6 +327,9 @@ public class SaveToDisk
     if (getAppendTimestamp())
       result.add("-append-timestamp");
 
+    if (getDeduplicate())
+      result.add("-deduplicate");
+
     Collections.addAll(result, super.getOptions());
 
     return result.toArray(new String[0]);
@@ -189,8 +387,144 @@ public class SaveToDisk
    * @return tip text for this property suitable for displaying in the
    *         explorer/experimenter gui
    */
-  public String appendTimetsampTipText() {
-    return "If enabled, a timestamp is appended to the file name (format: " + TIMESTAMP_FORMAT + ").";
+  public String appendTimestampTipText() {
+    return "If enabled, a timestamp, the thread ID and a sequence number are "
+      + "appended to the file name (format: " + TIMESTAMP_FORMAT + "-t<thread>-<sequence>).";
+  }
+
+  /**
+   * Sets whether to write identical data only once.
+   *
+   * @param value true if to deduplicate
+   */
+  public void setDeduplicate(boolean value) {
+    m_Deduplicate = value;
+  }
+
+  /**
+   * Returns whether to write identical data only once.
+   *
+   * @return true if deduplicating
+   */
+  public boolean getDeduplicate() {
+    return m_Deduplicate;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String deduplicateTipText() {
+    return "If enabled, data that has already been written is only written "
+      + "as reference file (" + REFERENCE_EXTENSION + ") pointing to the "
+      + "file with the data.";
+  }
+
+  /**
+   * Returns the next sequence number for file names with timestamp.
+   *
+   * @return		the sequence number
+   */
+  protected synchronized long nextSequence() {
+    if (m_Sequence == null)
+      m_Sequence = new AtomicLong();
+    return m_Sequence.getAndIncrement();
+  }
+
+  /**
+   * Returns the lock for the file, to serialize writes to the same file.
+   * Callers must hold on to the lock while using it (e.g., by synchronizing
+   * on it), locks that are no longer referenced get removed.
+   *
+   * @param file	the file to get the lock for
+   * @return		the lock
+   */
+  protected static Object getLock(File file) {
+    Object		result;
+    String		key;
+    LockReference	ref;
+    Reference<?>	unused;
+
+    key = file.getAbsolutePath();
+    synchronized (m_Locks) {
+      while ((unused = m_Unused.poll()) != null) {
+	ref = (LockReference) unused;
+	if (m_Locks.get(ref.key) == ref)
+	  m_Locks.remove(ref.key);
+      }
+      ref    = m_Locks.get(key);
+      result = (ref == null) ? null : ref.get();
+      if (result == null) {
+	result = new Object();
+	m_Locks.put(key, new LockReference(key, result));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the file to write the data to, appends the timestamp if
+   * necessary. With timestamp, the thread ID and a sequence number get
+   * appended as well and the file gets created (empty) to reserve the name.
+   *
+   * @return		the output file
+   * @throws Exception	if the file cannot be created
+   */
+  protected File generateOutputFile() throws Exception {
+    return generateOutputFile(m_AppendTimestamp);
+  }
+
+  /**
+   * Generates the file to write the data to, appends the timestamp if
+   * requested. With timestamp, the thread ID and a sequence number get
+   * appended as well and the file gets created (empty) to reserve the name.
+   *
+   * @param timestamp	whether to append the timestamp
+   * @return		the output file
+   * @throws Exception	if the file cannot be created
+   */
+  protected File generateOutputFile(boolean timestamp) throws Exception {
+    File	result;
+    File	parent;
+    String	prefix;
+    String	ext;
+    String	name;
+    int		pos;
+
+    if (!timestamp)
+      return m_OutputFile;
+
+    parent = m_OutputFile.getAbsoluteFile().getParentFile();
+    if (m_OutputFile.getName().contains(".")) {
+      pos = m_OutputFile.getName().lastIndexOf('.');
+      // keep compressed extensions like ".arff.gz" together
+      if (m_OutputFile.getName().endsWith(".gz") && (m_OutputFile.getName().lastIndexOf('.', pos - 1) > 0))
+	pos = m_OutputFile.getName().lastIndexOf('.', pos - 1);
+      prefix = m_OutputFile.getName().substring(0, pos);
+      ext    = m_OutputFile.getName().substring(pos);
+    }
+    else {
+      prefix = m_OutputFile.getName();
+      ext    = "";
+    }
+    if (!parent.exists() && !parent.mkdirs() && !parent.exists())
+      throw new Exception("Failed to create output directory: " + parent);
+
+    while (true) {
+      name = prefix
+	+ "-" + FORMATTER.get().format(new Date())
+	+ "-t" + Thread.currentThread().getId()
+	+ "-" + nextSequence()
+	+ ext;
+      result = new File(parent, name);
+      if (new File(result.getPath() + REFERENCE_EXTENSION).exists())
+	continue;
+      if (result.createNewFile())
+	return result;
+    }
   }
 
   /**
@@ -200,31 +534,337 @@ public class SaveToDisk
    * @throws Exception	if dumping fails
    */
   @Override
-  public void dump(Instances data) throws Exception {
+  protected void doDump(Instances data) throws Exception {
     File	outputFile;
-    String	timestamp;
-
-    if (!m_OutputFile.isDirectory()) {
-      if (m_AppendTimestamp) {
-        if (m_Formatter == null)
-          m_Formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
-        timestamp = m_Formatter.format(new Date());
-        if (m_OutputFile.getName().contains(".")) {
-	  outputFile = new File(m_OutputFile.getParentFile().getAbsolutePath()
-	    + File.separator
-	    + m_OutputFile.getName().substring(0, m_OutputFile.getName().lastIndexOf('.'))
-	    + "-"
-	    + timestamp
-	    + m_OutputFile.getName().substring(m_OutputFile.getName().lastIndexOf('.')));
-	}
-	else {
-          outputFile = new File(m_OutputFile.getAbsolutePath() + "-" + timestamp);
-	}
+
+    if (m_OutputFile.isDirectory())
+      return;
+
+    // a batch dump ends the incremental dumping
+    synchronized (this) {
+      finishSaver();
+    }
+
+    // timestamped files are unique, the others need serializing
+    outputFile = generateOutputFile();
+    if (m_AppendTimestamp) {
+      dumpFile(data, outputFile);
+    }
+    else {
+      synchronized (getLock(outputFile)) {
+	dumpFile(data, outputFile);
+      }
+    }
+  }
+
+  /**
+   * Dumps the data to the specified file.
+   *
+   * @param data	the data to dump
+   * @param outputFile	the file to write to
+   * @throws Exception	if dumping fails
+   */
+  protected void dumpFile(Instances data, File outputFile) throws Exception {
+    if (m_Deduplicate) {
+      dumpDeduplicated(data, outputFile);
+    }
+    else {
+      write(outputFile, data);
+      getMetrics().addBytes(outputFile.length());
+      written(outputFile, data);
+    }
+  }
+
+  /**
+   * Records the file that a batch dump wrote the data to, for appending
+   * incrementally dumped instances with the same structure.
+   *
+   * @param outputFile	the file
+   * @param data	the data that was written
+   */
+  protected synchronized void written(File outputFile, Instances data) {
+    if (m_AppendTimestamp)
+      return;
+    m_LastFile   = outputFile.getAbsoluteFile();
+    m_LastHeader = new Instances(data, 0);
+  }
+
+  /**
+   * Writes the data to the file. Uses {@link FastDataWriter} for ARFF and
+   * CSV files if possible, otherwise DataSink.
+   *
+   * @param outputFile	the file to write to
+   * @param data	the data to write
+   * @throws Exception	if writing fails
+   */
+  protected void write(File outputFile, Instances data) throws Exception {
+    modified(outputFile);
+    if (FastDataWriter.canWrite(outputFile, data))
+      FastDataWriter.write(outputFile, data);
+    else
+      DataSink.write(outputFile.getAbsolutePath(), data);
+  }
+
+  /**
+   * Forgets about the data that was written to the file in deduplication
+   * mode, as the file is about to get overwritten or appended to. Also
+   * removes a reference file left by a previous deduplicated dump, which
+   * would contradict the new content.
+   *
+   * @param file	the file that gets modified
+   */
+  protected static void modified(File file) {
+    File	reference;
+
+    synchronized (m_Written) {
+      m_Contents.remove(file.getAbsolutePath());
+    }
+    reference = new File(file.getAbsolutePath() + REFERENCE_EXTENSION);
+    if (reference.exists() && !reference.delete())
+      System.err.println("Failed to remove stale reference file: " + reference);
+  }
+
+  /**
+   * Writes the data only if it hasn't been written before, otherwise a
+   * reference to the file with the data gets written.
+   *
+   * @param data	the data to dump
+   * @param outputFile	the file to write to
+   * @throws Exception	if dumping fails
+   */
+  protected void dumpDeduplicated(Instances data, File outputFile) throws Exception {
+    String	key;
+    WrittenFile	written;
+    File	reference;
+    Writer	writer;
+
+    key = DataHash.hash(data);
+    if (outputFile.getName().contains("."))
+      key += outputFile.getName().substring(outputFile.getName().lastIndexOf('.'));
+
+    synchronized (m_Written) {
+      written = m_Written.get(key);
+      if ((written != null) && !written.isValid())
+	written = null;
+    }
+
+    if (written == null) {
+      write(outputFile, data);
+      getMetrics().addBytes(outputFile.length());
+      synchronized (m_Written) {
+	m_Written.put(key, new WrittenFile(outputFile, key));
+	m_Contents.put(outputFile.getAbsolutePath(), key);
+      }
+      written(outputFile, data);
+      return;
+    }
+
+    // same data already in that file?
+    if (written.file.equals(outputFile.getAbsoluteFile())) {
+      written(outputFile, data);
+      return;
+    }
+
+    reference = new File(outputFile.getAbsolutePath() + REFERENCE_EXTENSION);
+    writer    = new OutputStreamWriter(new FileOutputStream(reference), "UTF-8");
+    try {
+      writer.write(written.file.getAbsolutePath());
+      writer.write("\n");
+    }
+    finally {
+      writer.close();
+    }
+    getMetrics().addBytes(reference.length());
+
+    // remove the stale data or the file that reserved the name
+    synchronized (m_Written) {
+      m_Contents.remove(outputFile.getAbsolutePath());
+    }
+    if (outputFile.exists() && !outputFile.delete())
+      throw new Exception("Failed to remove data file superseded by reference: " + outputFile);
+  }
+
+  /**
+   * Starts incremental dumping, using the specified dataset structure.
+   * Finishes any file that is still being written, unless the structure is
+   * the same.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    if ((m_Buffer != null) && m_Buffer.equalHeaders(header))
+      return;
+    finishSaver();
+    super.dumpHeader(header);
+  }
+
+  /**
+   * Dumps a single instance. Writes it straight to the file if the file type
+   * supports incremental writing, otherwise it gets buffered and the file
+   * gets rewritten with all the instances of the stream whenever flushed.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    if (m_OutputFile.isDirectory())
+      return;
+
+    if (m_Buffer == null)
+      super.dumpHeader(inst.dataset());
+    if (m_SaverFile == null)
+      startSaver();
+
+    if (m_Writer != null)
+      m_Writer.write(inst);
+    else if (m_Saver != null)
+      m_Saver.writeIncremental(inst);
+    else
+      m_Buffer.add(inst);
+    m_SaverRows++;
+  }
+
+  /**
+   * Opens the file for writing instances incrementally. ARFF and CSV files
+   * written by the preceding batch dump with the same structure get appended
+   * to; the batch dump is never overwritten with other formats, which can't
+   * be appended to, a separate file with timestamp gets used instead.
+   *
+   * @throws Exception	if opening fails
+   */
+  protected void startSaver() throws Exception {
+    File		file;
+    boolean		append;
+    AbstractFileSaver	saver;
+
+    file   = generateOutputFile();
+    append = file.getAbsoluteFile().equals(m_LastFile) && file.exists() && m_LastHeader.equalHeaders(m_Buffer);
+    modified(file);
+    if (FastDataWriter.canWrite(file, m_Buffer)) {
+      ConverterUtils.getSaverForFile(file).getCapabilities().testWithFail(m_Buffer);
+      if ((file.getAbsoluteFile().getParentFile() != null) && !file.getAbsoluteFile().getParentFile().exists())
+	file.getAbsoluteFile().getParentFile().mkdirs();
+      m_Writer       = new FastDataWriter(m_Buffer, FastDataWriter.getFormat(file));
+      m_WriterStream = new FileOutputStream(file, append);
+      m_Writer.open(m_WriterStream.getChannel());
+      if (!append)
+	m_Writer.writeHeader();
+    }
+    else {
+      append = false;
+      if (file.getAbsoluteFile().equals(m_LastFile))
+	file = generateOutputFile(true);
+      saver = ConverterUtils.getSaverForFile(file);
+      if (saver instanceof IncrementalConverter) {
+	saver.setFile(file);
+	saver.setRetrieval(Saver.INCREMENTAL);
+	saver.setStructure(new Instances(m_Buffer, 0));
+	m_Saver = saver;
+      }
+    }
+
+    m_SaverFile  = file;
+    m_SaverRows  = 0;
+    m_SaverBytes = append ? file.length() : 0;
+    closeAtExit(this);
+  }
+
+  /**
+   * Writes the instances that are pending in the file that is being written
+   * incrementally, if any, and records the metrics.
+   *
+   * @throws Exception	if writing fails
+   */
+  protected void flushSaver() throws Exception {
+    if (m_SaverFile == null)
+      return;
+
+    if (m_Writer != null)
+      m_Writer.flush();
+    else if (m_Saver != null)
+      flushWriter(m_Saver);
+    else if (m_SaverRows > 0)
+      write(m_SaverFile, m_Buffer);
+    recordSaver();
+  }
+
+  /**
+   * Flushes the writer of the incremental saver, if any.
+   *
+   * @param saver	the saver to flush
+   * @throws Exception	if flushing fails
+   */
+  protected void flushWriter(AbstractFileSaver saver) throws Exception {
+    if (saver.getWriter() != null)
+      saver.getWriter().flush();
+  }
+
+  /**
+   * Records the metrics for the instances written incrementally since the
+   * last flush.
+   */
+  protected void recordSaver() {
+    long	length;
+
+    length = m_SaverFile.length();
+    getMetrics().addRows(m_SaverRows);
+    getMetrics().addBytes(length - m_SaverBytes);
+    m_SaverRows  = 0;
+    m_SaverBytes = length;
+  }
+
+  /**
+   * Finishes the file that is being written incrementally, if any.
+   *
+   * @throws Exception	if finishing the file fails
+   */
+  protected void finishSaver() throws Exception {
+    if (m_SaverFile == null)
+      return;
+
+    try {
+      if (m_Saver != null) {
+	m_Saver.writeIncremental(null);
+	recordSaver();
       }
       else {
-        outputFile = m_OutputFile;
+	flushSaver();
       }
-      DataSink.write(outputFile.getAbsolutePath(), data);
     }
+    finally {
+      if (m_WriterStream != null)
+	m_WriterStream.close();
+      m_Saver        = null;
+      m_Writer       = null;
+      m_WriterStream = null;
+      m_SaverFile    = null;
+      if (m_Buffer != null)
+	m_Buffer = new Instances(m_Buffer, 0);
+      removeCloseAtExit(this);
+    }
+  }
+
+  /**
+   * Writes the instances that are pending in the file that is being written
+   * incrementally, leaving the file open.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public synchronized void flush() throws Exception {
+    flushSaver();
+  }
+
+  /**
+   * Finishes the file that is being written incrementally.
+   *
+   * @throws Exception	if finishing fails
+   */
+  @Override
+  public synchronized void close() throws Exception {
+    finishSaver();
   }
 }
@@ -0,0 +1,727 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedSink.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends the data of all dumpers that use the same output file to a single
+ * ARFF or CSV file, adding a column that identifies the source of the rows.
+ * The data gets passed on via a bounded queue to a single background
+ * thread per file, which does the writing.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SharedSink
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 3019554270563542917L;
+
+  /**
+   * Container for data waiting to be written.
+   */
+  protected static class Batch {
+
+    /** the data. */
+    public Instances data;
+
+    /** the source of the data. */
+    public String source;
+
+    /**
+     * Initializes the container.
+     *
+     * @param data	the data
+     * @param source	the source of the data
+     */
+    public Batch(Instances data, String source) {
+      this.data   = data;
+      this.source = source;
+    }
+  }
+
+  /**
+   * The sink for a single output file, with its writer thread.
+   */
+  public static class Sink
+    implements Runnable {
+
+    /** the output file. */
+    protected File m_File;
+
+    /** the structure of the data (without source column). */
+    protected Instances m_Header;
+
+    /** the data waiting to be written (guarded by the sink). */
+    protected LinkedList<Batch> m_Queue;
+
+    /** the number of batches queued so far (guarded by the sink). */
+    protected long m_Queued;
+
+    /** the number of batches written to the file so far (guarded by the sink). */
+    protected long m_Written;
+
+    /** the number of rows written so far. */
+    protected AtomicLong m_Rows;
+
+    /** the writer thread. */
+    protected Thread m_Thread;
+
+    /** the writer. */
+    protected FastDataWriter m_Writer;
+
+    /** the stream of the file. */
+    protected FileOutputStream m_Stream;
+
+    /** the encoded source values (writer thread only). */
+    protected Map<String, byte[]> m_Sources;
+
+    /** the first error that occurred while writing. */
+    protected volatile Exception m_Failure;
+
+    /** whether the sink got closed. */
+    protected volatile boolean m_Closed;
+
+    /**
+     * Initializes the sink and writes the header.
+     *
+     * @param file		the output file
+     * @param header		the structure of the data
+     * @param sourceAttribute	the name of the source attribute
+     * @throws Exception	if the file cannot be written
+     */
+    public Sink(File file, Instances header, String sourceAttribute) throws Exception {
+      Instances		output;
+      int		format;
+
+      format = FastDataWriter.getFormat(file);
+      if (format == -1)
+	throw new IllegalArgumentException("Only ARFF and CSV files are supported: " + file);
+      if (!FastDataWriter.isSupported(header))
+	throw new IllegalArgumentException("Relational attributes are not supported!");
+
+      m_File   = file.getAbsoluteFile();
+      m_Header = new Instances(header, 0);
+      output   = new Instances(header, 0);
+      output.insertAttributeAt(new Attribute(sourceAttribute, (List<String>) null), output.numAttributes());
+
+      if (!m_File.getParentFile().exists())
+	m_File.getParentFile().mkdirs();
+      m_Stream  = new FileOutputStream(m_File);
+      m_Writer  = new FastDataWriter(output, format);
+      m_Writer.open(m_Stream.getChannel());
+      m_Writer.writeHeader();
+      m_Writer.flush();
+
+      m_Queue   = new LinkedList<Batch>();
+      m_Rows    = new AtomicLong();
+      m_Sources = new HashMap<String, byte[]>();
+      m_Thread  = new Thread(this, SharedSink.class.getSimpleName() + "-" + m_File.getName());
+      m_Thread.setDaemon(true);
+      m_Thread.start();
+    }
+
+    /**
+     * Checks whether the data is compatible with the data written so far.
+     *
+     * @param data	the data to check
+     * @throws Exception	if not compatible
+     */
+    public void check(Instances data) throws Exception {
+      String	msg;
+
+      msg = m_Header.equalHeadersMsg(data);
+      if (msg != null)
+	throw new IllegalArgumentException("Data not compatible with " + m_File + ": " + msg);
+    }
+
+    /**
+     * Queues the data for writing, waits if too many batches are pending.
+     *
+     * @param batch	the data to write
+     * @param maxPending	the maximum number of pending batches
+     * @throws Exception	if the sink has been closed or writing failed
+     */
+    public synchronized void offer(Batch batch, int maxPending) throws Exception {
+      while (!m_Closed && (m_Failure == null) && (m_Queue.size() >= maxPending))
+	wait();
+      if (m_Closed)
+	throw new IllegalStateException("Sink has been closed: " + m_File);
+      if (m_Failure != null)
+	throw new Exception("Failed to write to " + m_File, m_Failure);
+
+      m_Queue.add(batch);
+      m_Queued++;
+      notifyAll();
+    }
+
+    /**
+     * Returns the next batch to write.
+     *
+     * @param wait	whether to wait for data if the queue is empty
+     * @return		the batch, null if the queue is empty and either not
+     * 			waiting or the sink has been closed
+     */
+    protected synchronized Batch take(boolean wait) {
+      Batch	result;
+
+      while (wait && m_Queue.isEmpty() && !m_Closed) {
+	try {
+	  wait();
+	}
+	catch (InterruptedException e) {
+	  // ignored
+	}
+      }
+      result = m_Queue.poll();
+      if (result != null)
+	notifyAll();
+
+      return result;
+    }
+
+    /**
+     * Records the batches that have been written to the file and notifies
+     * the threads waiting for them.
+     *
+     * @param count	the number of batches
+     */
+    protected synchronized void written(long count) {
+      m_Written += count;
+      notifyAll();
+    }
+
+    /**
+     * Writes the queued data.
+     */
+    @Override
+    public void run() {
+      Batch	batch;
+      long	count;
+      byte[]	source;
+      int	i;
+
+      count = 0;
+      try {
+	while (true) {
+	  batch = take(false);
+	  if (batch == null) {
+	    // queue empty, make the data written so far available
+	    if (count > 0) {
+	      try {
+		m_Writer.flush();
+	      }
+	      catch (Exception e) {
+		fail(e);
+	      }
+	      written(count);
+	      count = 0;
+	    }
+	    batch = take(true);
+	    if (batch == null)
+	      break;
+	  }
+	  count++;
+	  if (m_Failure != null)
+	    continue;
+	  try {
+	    source = m_Sources.get(batch.source);
+	    if (source == null) {
+	      source = m_Writer.encode(batch.source);
+	      m_Sources.put(batch.source, source);
+	    }
+	    for (i = 0; i < batch.data.numInstances(); i++)
+	      m_Writer.write(batch.data.instance(i), source);
+	    m_Rows.addAndGet(batch.data.numInstances());
+	  }
+	  catch (Exception e) {
+	    fail(e);
+	  }
+	}
+      }
+      finally {
+	try {
+	  m_Writer.flush();
+	  m_Stream.close();
+	}
+	catch (Exception e) {
+	  fail(e);
+	}
+	synchronized (this) {
+	  m_Written = m_Queued;
+	  notifyAll();
+	}
+      }
+    }
+
+    /**
+     * Records the error and wakes up the waiting threads.
+     *
+     * @param e		the error
+     */
+    protected synchronized void fail(Exception e) {
+      if (m_Failure == null)
+	m_Failure = e;
+      notifyAll();
+    }
+
+    /**
+     * Waits till all data queued so far has been written to the file.
+     *
+     * @throws Exception	if writing failed
+     */
+    public synchronized void flush() throws Exception {
+      long	queued;
+
+      queued = m_Queued;
+      while ((m_Written < queued) && m_Thread.isAlive())
+	wait();
+      if (m_Failure != null)
+	throw new Exception("Failed to write to " + m_File, m_Failure);
+    }
+
+    /**
+     * Writes any pending data and closes the file.
+     *
+     * @throws Exception	if writing failed
+     */
+    public void close() throws Exception {
+      synchronized (this) {
+	m_Closed = true;
+	notifyAll();
+      }
+      m_Thread.join();
+      if (m_Failure != null)
+	throw new Exception("Failed to write to " + m_File, m_Failure);
+    }
+
+    /**
+     * Returns the output file.
+     *
+     * @return		the file
+     */
+    public File getFile() {
+      return m_File;
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return		the number of rows
+     */
+    public long getRows() {
+      return m_Rows.get();
+    }
+  }
+
+  /** the sinks (absolute path - sink). */
+  protected static Map<String, Sink> m_Sinks = new HashMap<String, Sink>();
+
+  /** the shutdown hook for writing pending data. */
+  protected static Thread m_ShutdownHook;
+
+  /** for generating source IDs. */
+  protected static final AtomicInteger m_NextID = new AtomicInteger();
+
+  /** the output file. */
+  protected File m_OutputFile = new File(".");
+
+  /** the name of the source attribute. */
+  protected String m_SourceAttribute = "source";
+
+  /** the source value, automatically generated if empty. */
+  protected String m_Source = "";
+
+  /** the maximum number of pending batches. */
+  protected int m_MaxPending = 1000;
+
+  /** the generated source value. */
+  protected transient String m_GeneratedSource;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Appends the data of all dumpers in this JVM that use the same "
+      + "output file to a single ARFF or CSV file, e.g., when dumping the "
+      + "data of the classifier copies used in cross-validation.\n"
+      + "An additional string attribute contains the source of the rows: "
+      + "either the supplied source value or an automatically generated one "
+      + "per dumper instance.\n"
+      + "The header is written once, when the file gets written to for the "
+      + "first time (existing files get overwritten); subsequent data must "
+      + "have the same structure. A single background thread per file does "
+      + "the writing, use flush to wait for the data to get written.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe ARFF or CSV file to append the data to.\n"
+	  + "\t(default: .)",
+	"output-file", 1, "-output-file <file>"));
+
+    result.addElement(
+      new Option(
+	"\tThe name of the attribute for the source of the data.\n"
+	  + "\t(default: source)",
+	"source-attribute", 1, "-source-attribute <name>"));
+
+    result.addElement(
+      new Option(
+	"\tThe source value, automatically generated per dumper if empty.\n"
+	  + "\t(default: none)",
+	"source", 1, "-source <value>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum number of batches waiting to be written before\n"
+	  + "\tdumping blocks.\n"
+	  + "\t(default: 1000)",
+	"max-pending", 1, "-max-pending <int>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("output-file", options);
+    if (tmpStr.length() != 0)
+      setOutputFile(new File(tmpStr));
+    else
+      setOutputFile(new File("."));
+
+    tmpStr = Utils.getOption("source-attribute", options);
+    if (tmpStr.length() != 0)
+      setSourceAttribute(tmpStr);
+    else
+      setSourceAttribute("source");
+
+    setSource(Utils.getOption("source", options));
+
+    tmpStr = Utils.getOption("max-pending", options);
+    if (tmpStr.length() != 0)
+      setMaxPending(Integer.parseInt(tmpStr));
+    else
+      setMaxPending(1000);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-output-file");
+    result.add(getOutputFile().toString());
+
+    result.add("-source-attribute");
+    result.add(getSourceAttribute());
+
+    if (!getSource().isEmpty()) {
+      result.add("-source");
+      result.add(getSource());
+    }
+
+    result.add("-max-pending");
+    result.add("" + getMaxPending());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the output file.
+   *
+   * @param value the output file to use
+   */
+  public void setOutputFile(File value) {
+    m_OutputFile = value;
+  }
+
+  /**
+   * Gets the output file.
+   *
+   * @return the output file
+   */
+  public File getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputFileTipText() {
+    return "The ARFF or CSV file to append the data to.";
+  }
+
+  /**
+   * Sets the name of the source attribute.
+   *
+   * @param value the name
+   */
+  public void setSourceAttribute(String value) {
+    m_SourceAttribute = value;
+  }
+
+  /**
+   * Returns the name of the source attribute.
+   *
+   * @return the name
+   */
+  public String getSourceAttribute() {
+    return m_SourceAttribute;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String sourceAttributeTipText() {
+    return "The name of the attribute for the source of the data.";
+  }
+
+  /**
+   * Sets the source value.
+   *
+   * @param value the source, automatically generated if empty
+   */
+  public void setSource(String value) {
+    m_Source = value;
+  }
+
+  /**
+   * Returns the source value.
+   *
+   * @return the source, automatically generated if empty
+   */
+  public String getSource() {
+    return m_Source;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String sourceTipText() {
+    return "The source value for the rows; if empty, a value gets generated "
+      + "per dumper instance (i.e., each copy of the dumper gets its own).";
+  }
+
+  /**
+   * Sets the maximum number of pending batches.
+   *
+   * @param value the maximum (at least 1)
+   */
+  public void setMaxPending(int value) {
+    if (value > 0)
+      m_MaxPending = value;
+  }
+
+  /**
+   * Returns the maximum number of pending batches.
+   *
+   * @return the maximum
+   */
+  public int getMaxPending() {
+    return m_MaxPending;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxPendingTipText() {
+    return "The maximum number of batches waiting to be written before dumping blocks.";
+  }
+
+  /**
+   * Returns the sink for the file, creates it if necessary.
+   *
+   * @param file		the output file
+   * @param header		the structure of the data
+   * @param sourceAttribute	the name of the source attribute
+   * @return			the sink
+   * @throws Exception		if the sink cannot be created
+   */
+  public static synchronized Sink getSink(File file, Instances header, String sourceAttribute) throws Exception {
+    Sink	result;
+    String	key;
+
+    key    = file.getAbsolutePath();
+    result = m_Sinks.get(key);
+    if (result == null) {
+      result = new Sink(file, header, sourceAttribute);
+      m_Sinks.put(key, result);
+      if (m_ShutdownHook == null) {
+	m_ShutdownHook = new Thread(new Runnable() {
+	  @Override
+	  public void run() {
+	    closeAll();
+	  }
+	});
+	Runtime.getRuntime().addShutdownHook(m_ShutdownHook);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes any pending data and closes the file. Dumping to the file again
+   * starts a new file.
+   *
+   * @param file	the output file
+   * @throws Exception	if writing failed
+   */
+  public static void close(File file) throws Exception {
+    Sink	sink;
+
+    synchronized (SharedSink.class) {
+      sink = m_Sinks.remove(file.getAbsolutePath());
+    }
+    if (sink != null)
+      sink.close();
+  }
+
+  /**
+   * Writes any pending data and closes all files.
+   */
+  public static void closeAll() {
+    List<Sink>	sinks;
+
+    synchronized (SharedSink.class) {
+      sinks = new ArrayList<Sink>(m_Sinks.values());
+      m_Sinks.clear();
+    }
+    for (Sink sink: sinks) {
+      try {
+	sink.close();
+      }
+      catch (Exception e) {
+	System.err.println("Failed to close " + sink.getFile() + ":");
+	e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Returns the source value to use.
+   *
+   * @return		the source
+   */
+  protected synchronized String getActualSource() {
+    if (!m_Source.isEmpty())
+      return m_Source;
+    if (m_GeneratedSource == null)
+      m_GeneratedSource = (getLabel().isEmpty() ? "dumper" : getLabel()) + "-" + m_NextID.incrementAndGet();
+    return m_GeneratedSource;
+  }
+
+  /**
+   * Queues the data for appending to the shared file.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    Sink	sink;
+
+    if (m_OutputFile.isDirectory())
+      return;
+
+    sink = getSink(m_OutputFile, data, m_SourceAttribute);
+    sink.check(data);
+    sink.offer(new Batch(InMemory.snapshot(data), getActualSource()), m_MaxPending);
+  }
+
+  /**
+   * Dumps any buffered instances and waits for the data queued so far to
+   * get written.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public void flush() throws Exception {
+    Sink	sink;
+
+    super.flush();
+    synchronized (SharedSink.class) {
+      sink = m_Sinks.get(m_OutputFile.getAbsolutePath());
+    }
+    if (sink != null)
+      sink.flush();
+  }
+}
@@ -0,0 +1,965 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Sketch.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SerializationHelper;
+import weka.core.Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Profiles the data with fixed-memory, mergeable sketches per attribute
+ * rather than dumping the data itself: KLL quantiles (numeric and date
+ * attributes), HyperLogLog distinct counts and count-min heavy hitters
+ * (nominal and string attributes).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Sketch
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = -6339870950219722391L;
+
+  /** the quantiles that get output. */
+  public static final double[] QUANTILES = {0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99};
+
+  /** the extension for state files that were not compatible with the data. */
+  public static final String EXTENSION_INCOMPATIBLE = ".incompatible";
+
+  /**
+   * The sketches of a single attribute.
+   */
+  public static class AttributeSketch
+    implements Serializable {
+
+    private static final long serialVersionUID = 3151185617399213868L;
+
+    /** the attribute name. */
+    protected String m_Name;
+
+    /** the attribute type. */
+    protected String m_Type;
+
+    /** the number of non-missing values. */
+    protected long m_Count;
+
+    /** the number of missing values. */
+    protected long m_Missing;
+
+    /** the quantiles (numeric and date attributes). */
+    protected KLLSketch m_Quantiles;
+
+    /** the distinct values (not for relational attributes). */
+    protected HyperLogLog m_Distinct;
+
+    /** the frequent values (nominal and string attributes). */
+    protected CountMinSketch m_Frequent;
+
+    /**
+     * Initializes the sketches for the attribute.
+     *
+     * @param att	the attribute
+     * @param k		the capacity parameter of the quantile sketch
+     * @param precision	the precision of the distinct count sketch
+     * @param width	the width of the count-min sketch
+     * @param depth	the depth of the count-min sketch
+     * @param top	the number of heavy hitters to keep track of
+     */
+    public AttributeSketch(Attribute att, int k, int precision, int width, int depth, int top) {
+      m_Name = att.name();
+      m_Type = Attribute.typeToString(att);
+      if (att.isNumeric()) {
+	m_Quantiles = new KLLSketch(k);
+	m_Distinct  = new HyperLogLog(precision);
+      }
+      else if (att.isNominal() || att.isString()) {
+	m_Distinct = new HyperLogLog(precision);
+	m_Frequent = new CountMinSketch(width, depth, top);
+      }
+    }
+
+    /**
+     * Adds the value of the attribute.
+     *
+     * @param inst	the instance to get the value from
+     * @param index	the index of the attribute
+     */
+    public void add(Instance inst, int index) {
+      String	str;
+
+      if (inst.isMissing(index)) {
+	m_Missing++;
+	return;
+      }
+      m_Count++;
+      if (m_Quantiles != null) {
+	m_Quantiles.update(inst.value(index));
+	m_Distinct.add(HyperLogLog.hash(inst.value(index)));
+      }
+      else if (m_Frequent != null) {
+	str = inst.stringValue(index);
+	m_Distinct.add(HyperLogLog.hash(str));
+	m_Frequent.add(str, 1);
+      }
+    }
+
+    /**
+     * Merges the other sketches into these ones.
+     *
+     * @param other	the sketches to merge
+     */
+    public void merge(AttributeSketch other) {
+      m_Count   += other.m_Count;
+      m_Missing += other.m_Missing;
+      if (m_Quantiles != null)
+	m_Quantiles.merge(other.m_Quantiles);
+      if (m_Distinct != null)
+	m_Distinct.merge(other.m_Distinct);
+      if (m_Frequent != null)
+	m_Frequent.merge(other.m_Frequent);
+    }
+
+    /**
+     * Returns the attribute name.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return m_Name;
+    }
+
+    /**
+     * Returns the attribute type.
+     *
+     * @return		the type
+     */
+    public String getType() {
+      return m_Type;
+    }
+
+    /**
+     * Returns the number of non-missing values.
+     *
+     * @return		the count
+     */
+    public long getCount() {
+      return m_Count;
+    }
+
+    /**
+     * Returns the number of missing values.
+     *
+     * @return		the count
+     */
+    public long getMissing() {
+      return m_Missing;
+    }
+
+    /**
+     * Returns the quantile sketch.
+     *
+     * @return		the sketch, null if not numeric or date
+     */
+    public KLLSketch getQuantiles() {
+      return m_Quantiles;
+    }
+
+    /**
+     * Returns the distinct count sketch.
+     *
+     * @return		the sketch, null if relational
+     */
+    public HyperLogLog getDistinct() {
+      return m_Distinct;
+    }
+
+    /**
+     * Returns the heavy hitter sketch.
+     *
+     * @return		the sketch, null if not nominal or string
+     */
+    public CountMinSketch getFrequent() {
+      return m_Frequent;
+    }
+  }
+
+  /**
+   * The sketches of all attributes of a dataset.
+   */
+  public static class Profile
+    implements Serializable {
+
+    private static final long serialVersionUID = -1009375018473431706L;
+
+    /** the structure of the data. */
+    protected Instances m_Header;
+
+    /** the number of rows. */
+    protected long m_Rows;
+
+    /** the sketches. */
+    protected AttributeSketch[] m_Sketches;
+
+    /**
+     * Initializes the profile.
+     *
+     * @param header	the structure of the data
+     * @param k		the capacity parameter of the quantile sketches
+     * @param precision	the precision of the distinct count sketches
+     * @param width	the width of the count-min sketches
+     * @param depth	the depth of the count-min sketches
+     * @param top	the number of heavy hitters to keep track of
+     */
+    public Profile(Instances header, int k, int precision, int width, int depth, int top) {
+      int	i;
+
+      m_Header   = header.stringFreeStructure();
+      m_Sketches = new AttributeSketch[header.numAttributes()];
+      for (i = 0; i < m_Sketches.length; i++)
+	m_Sketches[i] = new AttributeSketch(header.attribute(i), k, precision, width, depth, top);
+    }
+
+    /**
+     * Adds the instance.
+     *
+     * @param inst	the instance
+     */
+    public void add(Instance inst) {
+      int	i;
+
+      for (i = 0; i < m_Sketches.length; i++)
+	m_Sketches[i].add(inst, i);
+      m_Rows++;
+    }
+
+    /**
+     * Adds all the instances.
+     *
+     * @param data	the instances
+     */
+    public void add(Instances data) {
+      int	i;
+
+      for (i = 0; i < data.numInstances(); i++)
+	add(data.instance(i));
+    }
+
+    /**
+     * Returns whether the other profile can be merged into this one.
+     *
+     * @param other	the profile to check
+     * @return		null if compatible, otherwise the error message
+     */
+    public String isCompatible(Profile other) {
+      return m_Header.equalHeadersMsg(other.m_Header);
+    }
+
+    /**
+     * Merges the other profile into this one.
+     *
+     * @param other	the profile to merge
+     */
+    public void merge(Profile other) {
+      String	msg;
+      int	i;
+
+      msg = isCompatible(other);
+      if (msg != null)
+	throw new IllegalArgumentException("Cannot merge profiles: " + msg);
+      for (i = 0; i < m_Sketches.length; i++)
+	m_Sketches[i].merge(other.m_Sketches[i]);
+      m_Rows += other.m_Rows;
+    }
+
+    /**
+     * Returns the structure of the data.
+     *
+     * @return		the structure
+     */
+    public Instances getHeader() {
+      return m_Header;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return		the rows
+     */
+    public long getRows() {
+      return m_Rows;
+    }
+
+    /**
+     * Returns the sketches.
+     *
+     * @return		the sketches, one per attribute
+     */
+    public AttributeSketch[] getSketches() {
+      return m_Sketches;
+    }
+
+    /**
+     * Generates the JSON representation of the profile (single line).
+     *
+     * @return		the JSON object
+     */
+    public String toJSON() {
+      StringBuilder	result;
+      AttributeSketch	sketch;
+      double[]		quantiles;
+      int		i;
+      int		n;
+
+      result = new StringBuilder();
+      result.append("{\"relation\":").append(Statistics.toJSON(m_Header.relationName()));
+      result.append(",\"rows\":").append(m_Rows);
+      result.append(",\"attributes\":[");
+      for (i = 0; i < m_Sketches.length; i++) {
+	sketch = m_Sketches[i];
+	if (i > 0)
+	  result.append(",");
+	result.append("{\"name\":").append(Statistics.toJSON(sketch.getName()));
+	result.append(",\"type\":").append(Statistics.toJSON(sketch.getType()));
+	result.append(",\"count\":").append(sketch.getCount());
+	result.append(",\"missing\":").append(sketch.getMissing());
+	if (sketch.getDistinct() != null)
+	  result.append(",\"distinct\":").append(sketch.getDistinct().getEstimate());
+	if (sketch.getQuantiles() != null) {
+	  quantiles = sketch.getQuantiles().getQuantiles(QUANTILES);
+	  result.append(",\"min\":").append(Statistics.toJSON(sketch.getQuantiles().getMin()));
+	  result.append(",\"max\":").append(Statistics.toJSON(sketch.getQuantiles().getMax()));
+	  result.append(",\"quantiles\":{");
+	  for (n = 0; n < QUANTILES.length; n++) {
+	    if (n > 0)
+	      result.append(",");
+	    result.append("\"").append(QUANTILES[n]).append("\":").append(Statistics.toJSON(quantiles[n]));
+	  }
+	  result.append("}");
+	}
+	if (sketch.getFrequent() != null) {
+	  result.append(",\"heavy_hitters\":[");
+	  n = 0;
+	  for (Map.Entry<String, Long> entry: sketch.getFrequent().getHeavyHitters()) {
+	    if (n > 0)
+	      result.append(",");
+	    result.append("{\"value\":").append(Statistics.toJSON(entry.getKey()));
+	    result.append(",\"count\":").append(entry.getValue()).append("}");
+	    n++;
+	  }
+	  result.append("]");
+	}
+	result.append("}");
+      }
+      result.append("]}");
+
+      return result.toString();
+    }
+  }
+
+  /** the JSON file to write the profile to. */
+  protected File m_OutputFile = new File(".");
+
+  /** the file to store the serialized profile in. */
+  protected File m_StateFile = new File(".");
+
+  /** the capacity parameter of the quantile sketches. */
+  protected int m_K = 200;
+
+  /** the precision of the distinct count sketches. */
+  protected int m_Precision = 12;
+
+  /** the width of the count-min sketches. */
+  protected int m_Width = 2048;
+
+  /** the depth of the count-min sketches. */
+  protected int m_Depth = 5;
+
+  /** the number of heavy hitters. */
+  protected int m_Top = 10;
+
+  /** the accumulated profile. */
+  protected transient Profile m_Profile;
+
+  /** the profile of the incrementally dumped instances. */
+  protected transient Profile m_Incremental;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Profiles the data with fixed-memory sketches per attribute rather "
+      + "than dumping the data itself: approximate quantiles (KLL, numeric and "
+      + "date attributes), distinct counts (HyperLogLog) and heavy hitters "
+      + "(count-min, nominal and string attributes).\n"
+      + "The profile accumulates over all dumps with the same structure. "
+      + "If a state file is provided, the profile gets merged into the "
+      + "serialized profile stored in that file, allowing dumpers of parallel "
+      + "folds or subsequent runs to contribute to the same profile (see "
+      + "Sketch.merge(File[]) for combining separate state files). A state "
+      + "file with a different structure gets renamed (suffix '" + EXTENSION_INCOMPATIBLE + "') "
+      + "and a new profile started.\n"
+      + "The JSON output file receives the current profile after each dump.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe JSON file to write the profile to.\n"
+	  + "\t(default: .)",
+	"output-file", 1, "-output-file <file>"));
+
+    result.addElement(
+      new Option(
+	"\tThe file to store the serialized profile in, gets merged with.\n"
+	  + "\t(default: .)",
+	"state-file", 1, "-state-file <file>"));
+
+    result.addElement(
+      new Option(
+	"\tThe capacity parameter of the quantile sketches (>= 8).\n"
+	  + "\t(default: 200)",
+	"k", 1, "-k <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe precision of the distinct count sketches (4-18).\n"
+	  + "\t(default: 12)",
+	"precision", 1, "-precision <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe width of the count-min sketches.\n"
+	  + "\t(default: 2048)",
+	"width", 1, "-width <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe depth of the count-min sketches.\n"
+	  + "\t(default: 5)",
+	"depth", 1, "-depth <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of heavy hitters to output.\n"
+	  + "\t(default: 10)",
+	"top", 1, "-top <int>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("output-file", options);
+    if (tmpStr.length() != 0)
+      setOutputFile(new File(tmpStr));
+    else
+      setOutputFile(new File("."));
+
+    tmpStr = Utils.getOption("state-file", options);
+    if (tmpStr.length() != 0)
+      setStateFile(new File(tmpStr));
+    else
+      setStateFile(new File("."));
+
+    tmpStr = Utils.getOption("k", options);
+    if (tmpStr.length() != 0)
+      setK(Integer.parseInt(tmpStr));
+    else
+      setK(200);
+
+    tmpStr = Utils.getOption("precision", options);
+    if (tmpStr.length() != 0)
+      setPrecision(Integer.parseInt(tmpStr));
+    else
+      setPrecision(12);
+
+    tmpStr = Utils.getOption("width", options);
+    if (tmpStr.length() != 0)
+      setWidth(Integer.parseInt(tmpStr));
+    else
+      setWidth(2048);
+
+    tmpStr = Utils.getOption("depth", options);
+    if (tmpStr.length() != 0)
+      setDepth(Integer.parseInt(tmpStr));
+    else
+      setDepth(5);
+
+    tmpStr = Utils.getOption("top", options);
+    if (tmpStr.length() != 0)
+      setTop(Integer.parseInt(tmpStr));
+    else
+      setTop(10);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-output-file");
+    result.add(getOutputFile().toString());
+
+    result.add("-state-file");
+    result.add(getStateFile().toString());
+
+    result.add("-k");
+    result.add("" + getK());
+
+    result.add("-precision");
+    result.add("" + getPrecision());
+
+    result.add("-width");
+    result.add("" + getWidth());
+
+    result.add("-depth");
+    result.add("" + getDepth());
+
+    result.add("-top");
+    result.add("" + getTop());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the JSON output file.
+   *
+   * @param value the output file to use
+   */
+  public void setOutputFile(File value) {
+    m_OutputFile = value;
+  }
+
+  /**
+   * Gets the JSON output file.
+   *
+   * @return the output file
+   */
+  public File getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputFileTipText() {
+    return "The JSON file to write the profile to; if pointing to a directory, nothing gets written.";
+  }
+
+  /**
+   * Sets the file for the serialized profile.
+   *
+   * @param value the state file to use
+   */
+  public void setStateFile(File value) {
+    m_StateFile = value;
+  }
+
+  /**
+   * Gets the file for the serialized profile.
+   *
+   * @return the state file
+   */
+  public File getStateFile() {
+    return m_StateFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String stateFileTipText() {
+    return "The file to store the serialized profile in, any existing compatible profile gets merged with, an incompatible one gets renamed (suffix '" + EXTENSION_INCOMPATIBLE + "'); if pointing to a directory, the profile is only kept in memory.";
+  }
+
+  /**
+   * Sets the capacity parameter of the quantile sketches.
+   *
+   * @param value the capacity (>= 8)
+   */
+  public void setK(int value) {
+    if (value >= 8)
+      m_K = value;
+  }
+
+  /**
+   * Returns the capacity parameter of the quantile sketches.
+   *
+   * @return the capacity
+   */
+  public int getK() {
+    return m_K;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String kTipText() {
+    return "The capacity parameter of the quantile sketches, larger values are more accurate but use more memory.";
+  }
+
+  /**
+   * Sets the precision of the distinct count sketches.
+   *
+   * @param value the precision (4-18)
+   */
+  public void setPrecision(int value) {
+    if ((value >= 4) && (value <= 18))
+      m_Precision = value;
+  }
+
+  /**
+   * Returns the precision of the distinct count sketches.
+   *
+   * @return the precision
+   */
+  public int getPrecision() {
+    return m_Precision;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String precisionTipText() {
+    return "The precision of the distinct count sketches, uses 2^precision bytes per attribute.";
+  }
+
+  /**
+   * Sets the width of the count-min sketches.
+   *
+   * @param value the width
+   */
+  public void setWidth(int value) {
+    if (value > 0)
+      m_Width = value;
+  }
+
+  /**
+   * Returns the width of the count-min sketches.
+   *
+   * @return the width
+   */
+  public int getWidth() {
+    return m_Width;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String widthTipText() {
+    return "The width of the count-min sketches, larger values reduce the overestimation of counts.";
+  }
+
+  /**
+   * Sets the depth of the count-min sketches.
+   *
+   * @param value the depth
+   */
+  public void setDepth(int value) {
+    if (value > 0)
+      m_Depth = value;
+  }
+
+  /**
+   * Returns the depth of the count-min sketches.
+   *
+   * @return the depth
+   */
+  public int getDepth() {
+    return m_Depth;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String depthTipText() {
+    return "The depth of the count-min sketches, larger values increase the confidence in the counts.";
+  }
+
+  /**
+   * Sets the number of heavy hitters.
+   *
+   * @param value the number
+   */
+  public void setTop(int value) {
+    if (value >= 0)
+      m_Top = value;
+  }
+
+  /**
+   * Returns the number of heavy hitters.
+   *
+   * @return the number
+   */
+  public int getTop() {
+    return m_Top;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String topTipText() {
+    return "The number of most frequent values to output for nominal and string attributes.";
+  }
+
+  /**
+   * Creates a new, empty profile for the data.
+   *
+   * @param header	the structure of the data
+   * @return		the profile
+   */
+  protected Profile newProfile(Instances header) {
+    return new Profile(header, m_K, m_Precision, m_Width, m_Depth, m_Top);
+  }
+
+  /**
+   * Returns the current profile.
+   *
+   * @return		the profile, null if nothing dumped yet
+   */
+  public synchronized Profile getProfile() {
+    return m_Profile;
+  }
+
+  /**
+   * Reads the serialized profile.
+   *
+   * @param file	the file to read from
+   * @return		the profile
+   * @throws Exception	if reading fails
+   */
+  public static Profile read(File file) throws Exception {
+    return (Profile) SerializationHelper.read(file.getAbsolutePath());
+  }
+
+  /**
+   * Merges the serialized profiles, e.g., from parallel runs.
+   *
+   * @param files	the state files to merge
+   * @return		the merged profile
+   * @throws Exception	if reading fails or profiles are not compatible
+   */
+  public static Profile merge(File[] files) throws Exception {
+    Profile	result;
+    int		i;
+
+    if (files.length == 0)
+      throw new IllegalArgumentException("No state files provided!");
+    result = read(files[0]);
+    for (i = 1; i < files.length; i++)
+      result.merge(read(files[i]));
+
+    return result;
+  }
+
+  /**
+   * Merges the profile into the accumulated one and the state file, then
+   * writes the JSON output.
+   *
+   * @param profile	the profile to add
+   * @throws Exception	if storing fails
+   */
+  protected void add(Profile profile) throws Exception {
+    Profile	current;
+    Writer	writer;
+    String	content;
+    String	msg;
+    File	backup;
+
+    if (!m_StateFile.isDirectory()) {
+      synchronized (SaveToDisk.getLock(m_StateFile)) {
+	current = null;
+	if (m_StateFile.exists()) {
+	  current = read(m_StateFile);
+	  msg     = current.isCompatible(profile);
+	  if (msg != null) {
+	    // keep the old profile
+	    backup = new File(m_StateFile.getPath() + "." + System.currentTimeMillis() + EXTENSION_INCOMPATIBLE);
+	    if (!m_StateFile.renameTo(backup))
+	      throw new IOException("State file " + m_StateFile + " is not compatible with the data and cannot be renamed: " + msg);
+	    System.err.println("State file " + m_StateFile + " is not compatible with the data, renamed to " + backup + ": " + msg);
+	    current = null;
+	  }
+	}
+	if (current == null)
+	  current = profile;
+	else
+	  current.merge(profile);
+	SerializationHelper.write(m_StateFile.getAbsolutePath(), current);
+      }
+    }
+    else {
+      synchronized (this) {
+	current = m_Profile;
+	if ((current == null) || (current.isCompatible(profile) != null))
+	  current = profile;
+	else
+	  current.merge(profile);
+      }
+    }
+
+    synchronized (this) {
+      m_Profile = current;
+    }
+
+    if (m_OutputFile.isDirectory())
+      return;
+    content = current.toJSON() + "\n";
+    synchronized (SaveToDisk.getLock(m_OutputFile)) {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_OutputFile), BinaryFormat.UTF8));
+      try {
+	writer.write(content);
+      }
+      finally {
+	writer.close();
+      }
+    }
+    getMetrics().addBytes(content.getBytes(BinaryFormat.UTF8).length);
+  }
+
+  /**
+   * Sketches the data.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    Profile	profile;
+
+    profile = newProfile(data);
+    profile.add(data);
+    add(profile);
+  }
+
+  /**
+   * Starts sketching incrementally.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    m_Incremental = newProfile(header);
+  }
+
+  /**
+   * Adds the instance to the sketches, without buffering it.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    if (m_Incremental == null) {
+      if (inst.dataset() == null)
+	throw new IllegalStateException("No header dumped yet!");
+      dumpHeader(inst.dataset());
+    }
+    m_Incremental.add(inst);
+  }
+
+  /**
+   * Merges the sketches of the incrementally dumped instances, if any, and
+   * starts over.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public void flush() throws Exception {
+    Profile	profile;
+
+    synchronized (this) {
+      if ((m_Incremental == null) || (m_Incremental.getRows() == 0))
+	return;
+      profile       = m_Incremental;
+      m_Incremental = newProfile(profile.getHeader());
+    }
+    getMetrics().addRows(profile.getRows());
+    add(profile);
+  }
+}
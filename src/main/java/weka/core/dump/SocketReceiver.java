@@ -0,0 +1,398 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SocketReceiver.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference consumer for {@link SocketStream}: listens on a local TCP port,
+ * accepts any number of connections and decodes the frames. The received
+ * instances get collected (as long as the structure does not change) and
+ * forwarded to the registered listeners.
+ * <br>
+ * Can be run from the command-line, printing the received data:
+ * <pre>
+ * java weka.core.dump.SocketReceiver [port]
+ * </pre>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SocketReceiver {
+
+  /**
+   * Interface for classes that get notified about received data.
+   */
+  public interface Listener {
+
+    /**
+     * Gets called when a header was received.
+     *
+     * @param header	the structure of the data
+     */
+    public void headerReceived(Instances header);
+
+    /**
+     * Gets called when an instance was received.
+     *
+     * @param inst	the instance
+     */
+    public void instanceReceived(Instance inst);
+  }
+
+  /** the port to listen on (0 for any free one). */
+  protected int m_Port;
+
+  /** the server socket. */
+  protected ServerSocket m_Server;
+
+  /** the connections. */
+  protected List<Socket> m_Sockets;
+
+  /** the received data. */
+  protected Instances m_Data;
+
+  /** the number of received instances. */
+  protected long m_Received;
+
+  /** the listeners. */
+  protected List<Listener> m_Listeners;
+
+  /**
+   * Initializes the receiver.
+   *
+   * @param port	the port to listen on, 0 for any free one
+   */
+  public SocketReceiver(int port) {
+    m_Port      = port;
+    m_Sockets   = new ArrayList<Socket>();
+    m_Listeners = new ArrayList<Listener>();
+  }
+
+  /**
+   * Adds the listener.
+   *
+   * @param l		the listener to add
+   */
+  public synchronized void addListener(Listener l) {
+    m_Listeners.add(l);
+  }
+
+  /**
+   * Removes the listener.
+   *
+   * @param l		the listener to remove
+   */
+  public synchronized void removeListener(Listener l) {
+    m_Listeners.remove(l);
+  }
+
+  /**
+   * Starts listening.
+   *
+   * @return		the port listening on
+   * @throws IOException	if binding fails
+   */
+  public int start() throws IOException {
+    Thread	thread;
+
+    m_Server = new ServerSocket(m_Port, 50, InetAddress.getByName("localhost"));
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+	accept();
+      }
+    }, getClass().getSimpleName() + "-" + getPort());
+    thread.setDaemon(true);
+    thread.start();
+
+    return getPort();
+  }
+
+  /**
+   * Returns the port listening on.
+   *
+   * @return		the port, -1 if not started
+   */
+  public int getPort() {
+    return (m_Server == null) ? -1 : m_Server.getLocalPort();
+  }
+
+  /**
+   * Accepts connections until stopped.
+   */
+  protected void accept() {
+    Socket	socket;
+
+    while (!m_Server.isClosed()) {
+      try {
+	socket = m_Server.accept();
+      }
+      catch (IOException e) {
+	if (!m_Server.isClosed())
+	  e.printStackTrace();
+	return;
+      }
+      synchronized (this) {
+	m_Sockets.add(socket);
+      }
+      startReceiving(socket);
+    }
+  }
+
+  /**
+   * Starts a thread that reads the frames from the connection.
+   *
+   * @param socket	the connection
+   */
+  protected void startReceiving(final Socket socket) {
+    Thread	thread;
+
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+	receive(socket);
+      }
+    }, getClass().getSimpleName() + "-" + socket.getPort());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Reads frames from the connection until closed.
+   *
+   * @param socket	the connection
+   */
+  protected void receive(Socket socket) {
+    DataInputStream	in;
+    Instances		header;
+    byte[]		bytes;
+    int			length;
+    byte		type;
+
+    header = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (true) {
+	try {
+	  length = in.readInt();
+	}
+	catch (EOFException e) {
+	  break;
+	}
+	type  = in.readByte();
+	bytes = new byte[length - 1];
+	in.readFully(bytes);
+	switch (type) {
+	  case SocketStream.TYPE_HEADER:
+	    header = new Instances(new StringReader(new String(bytes, BinaryFormat.UTF8)));
+	    headerReceived(header);
+	    break;
+	  case SocketStream.TYPE_ROW:
+	    if (header == null)
+	      throw new IOException("Instance received before header!");
+	    instanceReceived(header, bytes);
+	    break;
+	  default:
+	    throw new IOException("Unknown frame type: " + type);
+	}
+      }
+    }
+    catch (Exception e) {
+      if (!socket.isClosed())
+	e.printStackTrace();
+    }
+    finally {
+      try {
+	socket.close();
+      }
+      catch (IOException e) {
+	// ignored
+      }
+      synchronized (this) {
+	m_Sockets.remove(socket);
+      }
+    }
+  }
+
+  /**
+   * Processes the received header. Starts a new dataset if the structure
+   * differs from the current one.
+   *
+   * @param header	the structure of the data
+   */
+  protected synchronized void headerReceived(Instances header) {
+    if ((m_Data == null) || !m_Data.equalHeaders(header))
+      m_Data = new Instances(header, 0);
+    for (Listener l: m_Listeners)
+      l.headerReceived(header);
+  }
+
+  /**
+   * Decodes the instance and adds it to the current dataset.
+   *
+   * @param header	the structure of the data
+   * @param bytes	the encoded instance
+   */
+  protected synchronized void instanceReceived(Instances header, byte[] bytes) {
+    ByteBuffer		buffer;
+    Instance		inst;
+    double[]		values;
+    double		weight;
+    byte[]		str;
+    int			length;
+    int			i;
+
+    if (!m_Data.equalHeaders(header))
+      m_Data = new Instances(header, 0);
+
+    buffer = ByteBuffer.wrap(bytes);
+    weight = buffer.getDouble();
+    values = new double[header.numAttributes()];
+    for (i = 0; i < values.length; i++) {
+      if (header.attribute(i).isString()) {
+	length = buffer.getInt();
+	if (length == -1) {
+	  values[i] = Utils.missingValue();
+	}
+	else {
+	  str = new byte[length];
+	  buffer.get(str);
+	  values[i] = m_Data.attribute(i).addStringValue(new String(str, BinaryFormat.UTF8));
+	}
+      }
+      else {
+	values[i] = buffer.getDouble();
+      }
+    }
+
+    inst = new DenseInstance(weight, values);
+    m_Data.add(inst);
+    m_Received++;
+    inst = m_Data.lastInstance();
+    for (Listener l: m_Listeners)
+      l.instanceReceived(inst);
+    notifyAll();
+  }
+
+  /**
+   * Returns a copy of the data received so far (since the last change in
+   * structure).
+   *
+   * @return		the data, null if nothing received yet
+   */
+  public synchronized Instances getData() {
+    return (m_Data == null) ? null : new Instances(m_Data);
+  }
+
+  /**
+   * Returns the total number of received instances.
+   *
+   * @return		the number of instances
+   */
+  public synchronized long getReceived() {
+    return m_Received;
+  }
+
+  /**
+   * Waits until the specified total number of instances has been received.
+   *
+   * @param count	the number of instances to wait for
+   * @param timeout	the maximum msec to wait
+   * @return		true if received, false if timed out
+   * @throws InterruptedException	if interrupted
+   */
+  public synchronized boolean waitFor(long count, long timeout) throws InterruptedException {
+    long	end;
+
+    end = System.currentTimeMillis() + timeout;
+    while ((m_Received < count) && (System.currentTimeMillis() < end))
+      wait(Math.max(1, end - System.currentTimeMillis()));
+
+    return (m_Received >= count);
+  }
+
+  /**
+   * Stops listening and closes all connections.
+   */
+  public void stop() {
+    List<Socket>	sockets;
+
+    try {
+      if (m_Server != null)
+	m_Server.close();
+    }
+    catch (IOException e) {
+      // ignored
+    }
+    synchronized (this) {
+      sockets = new ArrayList<Socket>(m_Sockets);
+    }
+    for (Socket socket: sockets) {
+      try {
+	socket.close();
+      }
+      catch (IOException e) {
+	// ignored
+      }
+    }
+  }
+
+  /**
+   * Listens on the specified port (default: {@link SocketStream#DEFAULT_PORT})
+   * and prints the received data to stdout.
+   *
+   * @param args	the port (optional)
+   * @throws Exception	if listening fails
+   */
+  public static void main(String[] args) throws Exception {
+    SocketReceiver	receiver;
+
+    receiver = new SocketReceiver((args.length > 0) ? Integer.parseInt(args[0]) : SocketStream.DEFAULT_PORT);
+    receiver.addListener(new Listener() {
+      @Override
+      public void headerReceived(Instances header) {
+	System.out.println(header);
+      }
+      @Override
+      public void instanceReceived(Instance inst) {
+	System.out.println(inst);
+      }
+    });
+    System.err.println("Listening on port " + receiver.start());
+    while (true)
+      Thread.sleep(1000);
+  }
+}
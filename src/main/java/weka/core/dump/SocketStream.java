@@ -0,0 +1,870 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SocketStream.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Streams the data to a consumer listening on a TCP port (e.g.,
+ * {@link SocketReceiver}), using length-prefixed binary frames: the header
+ * (ARFF structure) followed by one frame per instance.
+ * <br>
+ * Frame layout: int length (of type and payload), byte type, payload.
+ * <ul>
+ *   <li>{@link #TYPE_HEADER}: the ARFF header in UTF-8</li>
+ *   <li>{@link #TYPE_ROW}: double weight, then per attribute either the
+ *   double value or, for string attributes, the int length of the UTF-8
+ *   bytes (-1 if missing) followed by the bytes</li>
+ * </ul>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SocketStream
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = -4183297212432166093L;
+
+  /** the frame type for the header. */
+  public static final byte TYPE_HEADER = 1;
+
+  /** the frame type for an instance. */
+  public static final byte TYPE_ROW = 2;
+
+  /** the default port. */
+  public static final int DEFAULT_PORT = 12345;
+
+  /** the msec to wait before trying to reconnect when dropping. */
+  public static final long RECONNECT_INTERVAL = 1000;
+
+  /**
+   * A connection to a consumer. Frames get queued (bounded by the buffer
+   * size) and written by a background thread with non-blocking writes.
+   */
+  public static class Connection
+    implements Runnable {
+
+    /** the channel. */
+    protected SocketChannel m_Channel;
+
+    /** for waiting until the channel is writable. */
+    protected Selector m_Selector;
+
+    /** the queued frames. */
+    protected LinkedList<ByteBuffer> m_Queue;
+
+    /** the number of queued bytes. */
+    protected long m_Pending;
+
+    /** the maximum number of queued bytes. */
+    protected long m_Capacity;
+
+    /** the number of bytes written. */
+    protected long m_Written;
+
+    /** the number of dropped instance frames. */
+    protected long m_Dropped;
+
+    /** whether the connection is getting closed. */
+    protected boolean m_Closed;
+
+    /** the error that occurred while writing. */
+    protected IOException m_Error;
+
+    /** the thread writing the frames. */
+    protected Thread m_Sender;
+
+    /**
+     * Connects to the consumer.
+     *
+     * @param host	the host of the consumer
+     * @param port	the port of the consumer
+     * @param capacity	the maximum number of queued bytes
+     * @throws IOException	if connecting fails
+     */
+    public Connection(String host, int port, long capacity) throws IOException {
+      m_Capacity = capacity;
+      m_Queue    = new LinkedList<ByteBuffer>();
+      m_Channel  = SocketChannel.open(new InetSocketAddress(host, port));
+      m_Channel.socket().setTcpNoDelay(true);
+      m_Channel.configureBlocking(false);
+      m_Selector = Selector.open();
+      m_Channel.register(m_Selector, SelectionKey.OP_WRITE);
+      m_Sender = new Thread(this, SocketStream.class.getSimpleName() + "-" + host + ":" + port);
+      m_Sender.setDaemon(true);
+      m_Sender.start();
+    }
+
+    /**
+     * Throws the error that occurred while writing, if any.
+     *
+     * @throws IOException	the error
+     */
+    protected void check() throws IOException {
+      if (m_Error != null)
+	throw new IOException("Failed to write to consumer!", m_Error);
+      if (m_Closed)
+	throw new IOException("Connection closed!");
+    }
+
+    /**
+     * Returns whether the connection is usable.
+     *
+     * @return		true if neither closed nor failed
+     */
+    public synchronized boolean isOpen() {
+      return !m_Closed && (m_Error == null);
+    }
+
+    /**
+     * Queues the frame.
+     *
+     * @param frame	the frame to queue
+     */
+    protected void enqueue(ByteBuffer frame) {
+      m_Queue.add(frame);
+      m_Pending += frame.remaining();
+      notifyAll();
+    }
+
+    /**
+     * Removes all queued frames, counting the instance frames as dropped.
+     */
+    protected void clear() {
+      for (ByteBuffer queued: m_Queue) {
+	if (queued.get(4) == TYPE_ROW)
+	  m_Dropped++;
+      }
+      m_Queue.clear();
+      m_Pending = 0;
+    }
+
+    /**
+     * Removes queued, not yet started instance frames, oldest first, until
+     * the frame fits.
+     *
+     * @param frame	the frame that needs to fit
+     * @return		the number of removed frames
+     */
+    protected int dropOldest(ByteBuffer frame) {
+      Iterator<ByteBuffer>	iter;
+      ByteBuffer		queued;
+      int			result;
+
+      result = 0;
+      iter   = m_Queue.iterator();
+      while (iter.hasNext() && (m_Pending + frame.remaining() > m_Capacity)) {
+	queued = iter.next();
+	if ((queued.position() > 0) || (queued.get(4) != TYPE_ROW))
+	  continue;
+	iter.remove();
+	m_Pending -= queued.remaining();
+	result++;
+      }
+
+      return result;
+    }
+
+    /**
+     * Queues the frame for writing. Header frames always get queued.
+     *
+     * @param frame	the frame to send
+     * @param policy	the policy to apply if the buffer is full, see {@link Async#TAGS_POLICY}
+     * @return		true if queued, false if dropped
+     * @throws IOException	if writing to the consumer failed
+     * @throws InterruptedException	if interrupted while blocking
+     */
+    public synchronized boolean offer(ByteBuffer frame, int policy) throws IOException, InterruptedException {
+      boolean	result;
+
+      check();
+      result = true;
+      if ((frame.get(4) != TYPE_ROW) || (m_Pending + frame.remaining() <= m_Capacity)) {
+	enqueue(frame);
+	return result;
+      }
+
+      switch (policy) {
+	case Async.POLICY_BLOCK:
+	  while ((m_Pending + frame.remaining() > m_Capacity) && !m_Queue.isEmpty()) {
+	    wait(100);
+	    check();
+	  }
+	  enqueue(frame);
+	  break;
+	case Async.POLICY_DROP_OLDEST:
+	  m_Dropped += dropOldest(frame);
+	  if (m_Pending + frame.remaining() <= m_Capacity)
+	    enqueue(frame);
+	  else
+	    result = false;
+	  break;
+	default:
+	  result = false;
+      }
+
+      if (!result)
+	m_Dropped++;
+
+      return result;
+    }
+
+    /**
+     * Writes as many queued frames as possible without blocking.
+     *
+     * @throws IOException	if writing fails
+     */
+    protected void writeAvailable() throws IOException {
+      ByteBuffer	head;
+      int		written;
+
+      while (!m_Queue.isEmpty()) {
+	head      = m_Queue.getFirst();
+	written   = m_Channel.write(head);
+	m_Pending -= written;
+	m_Written += written;
+	if (head.hasRemaining())
+	  break;
+	m_Queue.removeFirst();
+      }
+    }
+
+    /**
+     * Writes the queued frames until closed.
+     */
+    @Override
+    public void run() {
+      try {
+	while (!Thread.currentThread().isInterrupted()) {
+	  synchronized (this) {
+	    while (m_Queue.isEmpty() && !m_Closed)
+	      wait();
+	    if (m_Queue.isEmpty())
+	      break;
+	    writeAvailable();
+	    notifyAll();
+	    if (m_Queue.isEmpty())
+	      continue;
+	  }
+	  m_Selector.select(100);
+	  m_Selector.selectedKeys().clear();
+	}
+      }
+      catch (IOException e) {
+	synchronized (this) {
+	  m_Error = e;
+	  clear();
+	  notifyAll();
+	}
+      }
+      catch (InterruptedException e) {
+	// ignored
+      }
+      finally {
+	synchronized (this) {
+	  clear();
+	}
+	try {
+	  m_Selector.close();
+	  m_Channel.close();
+	}
+	catch (IOException e) {
+	  // ignored
+	}
+      }
+    }
+
+    /**
+     * Waits until all queued frames have been written.
+     *
+     * @throws IOException	if writing failed
+     * @throws InterruptedException	if interrupted while waiting
+     */
+    public synchronized void flush() throws IOException, InterruptedException {
+      while (!m_Queue.isEmpty() && (m_Error == null))
+	wait(100);
+      if (m_Error != null)
+	check();
+    }
+
+    /**
+     * Writes the remaining frames (waiting at most the specified time) and
+     * closes the connection.
+     *
+     * @param timeout	the maximum msec to wait for the frames to get written
+     * @throws InterruptedException	if interrupted while waiting
+     */
+    public void close(long timeout) throws InterruptedException {
+      synchronized (this) {
+	m_Closed = true;
+	notifyAll();
+      }
+      m_Sender.join(timeout);
+      if (m_Sender.isAlive()) {
+	m_Sender.interrupt();
+	m_Sender.join(timeout);
+      }
+    }
+
+    /**
+     * Returns the number of queued bytes.
+     *
+     * @return		the bytes
+     */
+    public synchronized long getPending() {
+      return m_Pending;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return		the bytes
+     */
+    public synchronized long getWritten() {
+      return m_Written;
+    }
+
+    /**
+     * Returns the number of instance frames that got dropped, either because
+     * the buffer was full or because writing failed.
+     *
+     * @return		the number of frames
+     */
+    public synchronized long getDropped() {
+      return m_Dropped;
+    }
+  }
+
+  /** the host of the consumer. */
+  protected String m_Host = "localhost";
+
+  /** the port of the consumer. */
+  protected int m_Port = DEFAULT_PORT;
+
+  /** the maximum number of bytes to queue. */
+  protected long m_BufferSize = 1024 * 1024;
+
+  /** the policy to apply when the buffer is full. */
+  protected int m_Policy = Async.POLICY_BLOCK;
+
+  /** the connection. */
+  protected transient Connection m_Connection;
+
+  /** the last header sent over the connection. */
+  protected transient Instances m_Header;
+
+  /** the time of the last failed connection attempt. */
+  protected transient long m_LastAttempt;
+
+  /** the number of dropped instances. */
+  protected transient long m_Dropped;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Streams the data to a consumer listening on a TCP port (e.g., "
+      + SocketReceiver.class.getName() + "), without touching disk: "
+      + "the header followed by the instances, using length-prefixed binary frames.\n"
+      + "Frames get queued in a bounded buffer and written with non-blocking "
+      + "writes by a background thread. If the buffer is full (slow consumer), "
+      + "the policy determines whether to block or to drop instances; when "
+      + "dropping, an unavailable consumer does not fail the dump either.\n"
+      + "Unix domain sockets are not supported on the targeted Java version, "
+      + "use localhost instead.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe host of the consumer.\n"
+	  + "\t(default: localhost)",
+	"host", 1, "-host <host>"));
+
+    result.addElement(
+      new Option(
+	"\tThe port of the consumer.\n"
+	  + "\t(default: " + DEFAULT_PORT + ")",
+	"port", 1, "-port <int>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum number of bytes to queue for sending.\n"
+	  + "\t(default: 1048576)",
+	"buffer-size", 1, "-buffer-size <bytes>"));
+
+    result.addElement(
+      new Option(
+	"\tThe policy to apply when the buffer is full.\n"
+	  + "\t(default: " + new SelectedTag(Async.POLICY_BLOCK, Async.TAGS_POLICY) + ")",
+	"policy", 1, "-policy " + Tag.toOptionList(Async.TAGS_POLICY)));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("host", options);
+    if (tmpStr.length() != 0)
+      setHost(tmpStr);
+    else
+      setHost("localhost");
+
+    tmpStr = Utils.getOption("port", options);
+    if (tmpStr.length() != 0)
+      setPort(Integer.parseInt(tmpStr));
+    else
+      setPort(DEFAULT_PORT);
+
+    tmpStr = Utils.getOption("buffer-size", options);
+    if (tmpStr.length() != 0)
+      setBufferSize(Long.parseLong(tmpStr));
+    else
+      setBufferSize(1024 * 1024);
+
+    tmpStr = Utils.getOption("policy", options);
+    if (tmpStr.length() != 0)
+      setPolicy(new SelectedTag(tmpStr, Async.TAGS_POLICY));
+    else
+      setPolicy(new SelectedTag(Async.POLICY_BLOCK, Async.TAGS_POLICY));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-host");
+    result.add(getHost());
+
+    result.add("-port");
+    result.add("" + getPort());
+
+    result.add("-buffer-size");
+    result.add("" + getBufferSize());
+
+    result.add("-policy");
+    result.add("" + getPolicy());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the host of the consumer.
+   *
+   * @param value the host
+   */
+  public void setHost(String value) {
+    m_Host = value;
+  }
+
+  /**
+   * Returns the host of the consumer.
+   *
+   * @return the host
+   */
+  public String getHost() {
+    return m_Host;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String hostTipText() {
+    return "The host of the consumer.";
+  }
+
+  /**
+   * Sets the port of the consumer.
+   *
+   * @param value the port
+   */
+  public void setPort(int value) {
+    if ((value > 0) && (value < 65536))
+      m_Port = value;
+  }
+
+  /**
+   * Returns the port of the consumer.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return m_Port;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String portTipText() {
+    return "The port that the consumer listens on.";
+  }
+
+  /**
+   * Sets the maximum number of bytes to queue.
+   *
+   * @param value the size in bytes
+   */
+  public void setBufferSize(long value) {
+    if (value > 0)
+      m_BufferSize = value;
+  }
+
+  /**
+   * Returns the maximum number of bytes to queue.
+   *
+   * @return the size in bytes
+   */
+  public long getBufferSize() {
+    return m_BufferSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String bufferSizeTipText() {
+    return "The maximum number of bytes to queue for sending before applying the policy.";
+  }
+
+  /**
+   * Sets the policy to apply when the buffer is full.
+   *
+   * @param value the policy
+   */
+  public void setPolicy(SelectedTag value) {
+    if (value.getTags() == Async.TAGS_POLICY)
+      m_Policy = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns the policy to apply when the buffer is full.
+   *
+   * @return the policy
+   */
+  public SelectedTag getPolicy() {
+    return new SelectedTag(m_Policy, Async.TAGS_POLICY);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String policyTipText() {
+    return "The policy to apply when the buffer is full, i.e., the consumer is too slow.";
+  }
+
+  /**
+   * Returns the number of instances that got dropped.
+   *
+   * @return		the number of dropped instances
+   */
+  public synchronized long getDropped() {
+    if (m_Connection == null)
+      return m_Dropped;
+    else
+      return m_Dropped + m_Connection.getDropped();
+  }
+
+  /**
+   * Encodes the header.
+   *
+   * @param header	the structure of the data
+   * @return		the frame
+   */
+  public static ByteBuffer encode(Instances header) {
+    ByteBuffer	result;
+    byte[]	bytes;
+
+    bytes  = new Instances(header, 0).toString().getBytes(BinaryFormat.UTF8);
+    result = ByteBuffer.allocate(5 + bytes.length);
+    result.putInt(1 + bytes.length);
+    result.put(TYPE_HEADER);
+    result.put(bytes);
+    result.flip();
+
+    return result;
+  }
+
+  /**
+   * Encodes the instance.
+   *
+   * @param inst	the instance
+   * @return		the frame
+   */
+  public static ByteBuffer encode(Instance inst) {
+    ByteBuffer	result;
+    byte[][]	strings;
+    int		size;
+    int		i;
+
+    strings = new byte[inst.numAttributes()][];
+    size    = 5 + 8;
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (inst.attribute(i).isString()) {
+	size += 4;
+	if (!inst.isMissing(i)) {
+	  strings[i] = inst.stringValue(i).getBytes(BinaryFormat.UTF8);
+	  size      += strings[i].length;
+	}
+      }
+      else {
+	size += 8;
+      }
+    }
+
+    result = ByteBuffer.allocate(size);
+    result.putInt(size - 4);
+    result.put(TYPE_ROW);
+    result.putDouble(inst.weight());
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (inst.attribute(i).isString()) {
+	if (strings[i] == null) {
+	  result.putInt(-1);
+	}
+	else {
+	  result.putInt(strings[i].length);
+	  result.put(strings[i]);
+	}
+      }
+      else {
+	result.putDouble(inst.value(i));
+      }
+    }
+    result.flip();
+
+    return result;
+  }
+
+  /**
+   * Returns the connection, (re)connects if necessary.
+   *
+   * @return		the connection, null if not available and dropping
+   * @throws Exception	if connecting fails and blocking
+   */
+  protected Connection getConnection() throws Exception {
+    if ((m_Connection != null) && m_Connection.isOpen())
+      return m_Connection;
+
+    if (m_Connection != null)
+      m_Dropped += m_Connection.getDropped();
+    m_Connection = null;
+    m_Header     = null;
+    if ((m_Policy != Async.POLICY_BLOCK) && (System.currentTimeMillis() - m_LastAttempt < RECONNECT_INTERVAL))
+      return null;
+    try {
+      m_Connection = new Connection(m_Host, m_Port, m_BufferSize);
+    }
+    catch (IOException e) {
+      m_LastAttempt = System.currentTimeMillis();
+      if (m_Policy == Async.POLICY_BLOCK)
+	throw new IOException("Failed to connect to " + m_Host + ":" + m_Port, e);
+    }
+
+    return m_Connection;
+  }
+
+  /**
+   * Sends the frame, updating the metrics.
+   *
+   * @param conn	the connection to use
+   * @param frame	the frame to send
+   * @throws Exception	if sending fails
+   */
+  protected void send(Connection conn, ByteBuffer frame) throws Exception {
+    int		size;
+
+    size = frame.remaining();
+    if (conn.offer(frame, m_Policy))
+      getMetrics().addBytes(size);
+  }
+
+  /**
+   * Sends the header, unless already sent over the connection.
+   *
+   * @param conn	the connection to use
+   * @param header	the structure of the data
+   * @throws Exception	if sending fails
+   */
+  protected void sendHeader(Connection conn, Instances header) throws Exception {
+    if ((m_Header != null) && m_Header.equalHeaders(header))
+      return;
+    if (!FastDataWriter.isSupported(header))
+      throw new IllegalArgumentException("Relational attributes are not supported!");
+    send(conn, encode(header));
+    m_Header = new Instances(header, 0);
+  }
+
+  /**
+   * Sends the instances.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected synchronized void doDump(Instances data) throws Exception {
+    Connection	conn;
+    int		i;
+
+    conn = getConnection();
+    if (conn == null) {
+      m_Dropped += data.numInstances();
+      return;
+    }
+    sendHeader(conn, data);
+    for (i = 0; i < data.numInstances(); i++)
+      send(conn, encode(data.instance(i)));
+  }
+
+  /**
+   * Sends the header.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    Connection	conn;
+
+    conn = getConnection();
+    if (conn != null)
+      sendHeader(conn, header);
+  }
+
+  /**
+   * Sends the instance, without buffering it.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    Connection	conn;
+
+    if (inst.dataset() == null)
+      throw new IllegalStateException("Instance has no dataset!");
+    conn = getConnection();
+    if (conn == null) {
+      m_Dropped++;
+      return;
+    }
+    sendHeader(conn, inst.dataset());
+    send(conn, encode(inst));
+    getMetrics().addRows(1);
+  }
+
+  /**
+   * Waits until all queued frames have been sent.
+   *
+   * @throws Exception	if sending failed
+   */
+  @Override
+  public void flush() throws Exception {
+    Connection	conn;
+
+    synchronized (this) {
+      conn = m_Connection;
+    }
+    if (conn != null)
+      conn.flush();
+  }
+
+  /**
+   * Sends the remaining frames (waiting at most 5 seconds) and closes the
+   * connection. Dumping again reconnects.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  public void close() throws Exception {
+    Connection	conn;
+
+    synchronized (this) {
+      conn         = m_Connection;
+      m_Connection = null;
+      m_Header     = null;
+    }
+    if (conn != null) {
+      conn.close(5000);
+      synchronized (this) {
+	m_Dropped += conn.getDropped();
+      }
+    }
+  }
+}
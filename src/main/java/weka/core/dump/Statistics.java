@@ -0,0 +1,841 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Statistics.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes summary statistics per attribute in a single pass over the data
+ * and writes them as JSON or CSV, rather than the data itself.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Statistics
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = 8064212446826584813L;
+
+  /** the CSV columns. */
+  public static final String[] CSV_COLUMNS = {"relation", "rows", "attribute", "type", "count", "missing", "min", "max", "mean", "variance", "frequencies"};
+
+  /**
+   * The statistics of a single attribute: count, missing count, min/max,
+   * mean/variance (Welford) and the frequencies of nominal values.
+   */
+  public static class Summary
+    implements Serializable {
+
+    private static final long serialVersionUID = -3720405211342893461L;
+
+    /** the attribute name. */
+    protected String m_Name;
+
+    /** the attribute type. */
+    protected String m_Type;
+
+    /** the labels of a nominal attribute. */
+    protected String[] m_Labels;
+
+    /** the number of non-missing values. */
+    protected long m_Count;
+
+    /** the number of missing values. */
+    protected long m_Missing;
+
+    /** the minimum. */
+    protected double m_Min = Double.POSITIVE_INFINITY;
+
+    /** the maximum. */
+    protected double m_Max = Double.NEGATIVE_INFINITY;
+
+    /** the mean. */
+    protected double m_Mean;
+
+    /** the sum of squared differences from the mean. */
+    protected double m_M2;
+
+    /** the frequencies of the nominal values. */
+    protected long[] m_Frequencies;
+
+    /**
+     * Initializes the statistics for the attribute.
+     *
+     * @param att	the attribute
+     */
+    public Summary(Attribute att) {
+      int	i;
+
+      m_Name = att.name();
+      m_Type = Attribute.typeToString(att);
+      if (att.isNominal()) {
+	m_Labels      = new String[att.numValues()];
+	m_Frequencies = new long[att.numValues()];
+	for (i = 0; i < att.numValues(); i++)
+	  m_Labels[i] = att.value(i);
+      }
+    }
+
+    /**
+     * Adds the value.
+     *
+     * @param value	the internal value
+     * @param numeric	whether to compute min/max/mean/variance
+     */
+    public void add(double value, boolean numeric) {
+      double	delta;
+
+      if (Double.isNaN(value)) {
+	m_Missing++;
+	return;
+      }
+      m_Count++;
+      if (m_Frequencies != null)
+	m_Frequencies[(int) value]++;
+      if (!numeric)
+	return;
+      if (value < m_Min)
+	m_Min = value;
+      if (value > m_Max)
+	m_Max = value;
+      delta   = value - m_Mean;
+      m_Mean += delta / m_Count;
+      m_M2   += delta * (value - m_Mean);
+    }
+
+    /**
+     * Returns the attribute name.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return m_Name;
+    }
+
+    /**
+     * Returns the attribute type.
+     *
+     * @return		the type
+     */
+    public String getType() {
+      return m_Type;
+    }
+
+    /**
+     * Returns the number of non-missing values.
+     *
+     * @return		the count
+     */
+    public long getCount() {
+      return m_Count;
+    }
+
+    /**
+     * Returns the number of missing values.
+     *
+     * @return		the count
+     */
+    public long getMissing() {
+      return m_Missing;
+    }
+
+    /**
+     * Returns the minimum (numeric and date attributes).
+     *
+     * @return		the minimum, NaN if not available
+     */
+    public double getMin() {
+      return (m_Min <= m_Max) ? m_Min : Double.NaN;
+    }
+
+    /**
+     * Returns the maximum (numeric and date attributes).
+     *
+     * @return		the maximum, NaN if not available
+     */
+    public double getMax() {
+      return (m_Min <= m_Max) ? m_Max : Double.NaN;
+    }
+
+    /**
+     * Returns the mean (numeric and date attributes).
+     *
+     * @return		the mean, NaN if not available
+     */
+    public double getMean() {
+      return (m_Min <= m_Max) ? m_Mean : Double.NaN;
+    }
+
+    /**
+     * Returns the sample variance (numeric and date attributes).
+     *
+     * @return		the variance, NaN if less than two values
+     */
+    public double getVariance() {
+      return ((m_Min <= m_Max) && (m_Count > 1)) ? m_M2 / (m_Count - 1) : Double.NaN;
+    }
+
+    /**
+     * Returns the labels of a nominal attribute.
+     *
+     * @return		the labels, null if not nominal
+     */
+    public String[] getLabels() {
+      return m_Labels;
+    }
+
+    /**
+     * Returns the frequencies of the labels of a nominal attribute.
+     *
+     * @return		the frequencies, null if not nominal
+     */
+    public long[] getFrequencies() {
+      return m_Frequencies;
+    }
+  }
+
+  /** the executor shared by all instances. */
+  protected static ExecutorService m_Executor;
+
+  /** the output file (.json or .csv). */
+  protected File m_OutputFile = new File(".");
+
+  /** whether to append to the output file. */
+  protected boolean m_Append = false;
+
+  /** the minimum number of attributes for computing in parallel. */
+  protected int m_ParallelThreshold = 64;
+
+  /** the structure of the incrementally dumped instances. */
+  protected transient Instances m_Header;
+
+  /** the statistics of the incrementally dumped instances. */
+  protected transient Summary[] m_Incremental;
+
+  /** the number of incrementally dumped instances. */
+  protected transient long m_IncrementalRows;
+
+  /** the statistics of the last dump. */
+  protected transient Summary[] m_Last;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Writes summary statistics of the data rather than the data itself: "
+      + "per attribute, the number of values, number of missing values, "
+      + "min/max, mean and variance (numeric and date attributes) and the "
+      + "value frequencies (nominal attributes), computed in a single pass.\n"
+      + "The statistics of wide datasets get computed in parallel, splitting "
+      + "the attributes across threads.\n"
+      + "The output format is determined by the file extension: .json "
+      + "(one JSON object per dump and line) or .csv (one row per attribute).";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe file to write the statistics to (.json or .csv).\n"
+	  + "\t(default: .)",
+	"output-file", 1, "-output-file <file>"));
+
+    result.addElement(
+      new Option(
+	"\tWhether to append the statistics to the file rather than\n"
+	  + "\toverwriting it.\n"
+	  + "\t(default: no)",
+	"append", 0, "-append"));
+
+    result.addElement(
+      new Option(
+	"\tThe minimum number of attributes for computing the statistics\n"
+	  + "\tin parallel.\n"
+	  + "\t(default: 64)",
+	"parallel-threshold", 1, "-parallel-threshold <int>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption("output-file", options);
+    if (tmpStr.length() != 0)
+      setOutputFile(new File(tmpStr));
+    else
+      setOutputFile(new File("."));
+
+    setAppend(Utils.getFlag("append", options));
+
+    tmpStr = Utils.getOption("parallel-threshold", options);
+    if (tmpStr.length() != 0)
+      setParallelThreshold(Integer.parseInt(tmpStr));
+    else
+      setParallelThreshold(64);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-output-file");
+    result.add(getOutputFile().toString());
+
+    if (getAppend())
+      result.add("-append");
+
+    result.add("-parallel-threshold");
+    result.add("" + getParallelThreshold());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the output file.
+   *
+   * @param value the output file to use
+   */
+  public void setOutputFile(File value) {
+    m_OutputFile = value;
+  }
+
+  /**
+   * Gets the output file.
+   *
+   * @return the output file
+   */
+  public File getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String outputFileTipText() {
+    return "The file to write the statistics to (.json or .csv); if pointing to a directory, nothing gets written.";
+  }
+
+  /**
+   * Sets whether to append to the output file.
+   *
+   * @param value true if to append
+   */
+  public void setAppend(boolean value) {
+    m_Append = value;
+  }
+
+  /**
+   * Returns whether to append to the output file.
+   *
+   * @return true if to append
+   */
+  public boolean getAppend() {
+    return m_Append;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String appendTipText() {
+    return "If enabled, the statistics get appended to the file rather than overwriting it.";
+  }
+
+  /**
+   * Sets the minimum number of attributes for computing in parallel.
+   *
+   * @param value the minimum
+   */
+  public void setParallelThreshold(int value) {
+    if (value > 0)
+      m_ParallelThreshold = value;
+  }
+
+  /**
+   * Returns the minimum number of attributes for computing in parallel.
+   *
+   * @return the minimum
+   */
+  public int getParallelThreshold() {
+    return m_ParallelThreshold;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String parallelThresholdTipText() {
+    return "The minimum number of attributes for computing the statistics in parallel.";
+  }
+
+  /**
+   * Returns the executor, initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    final AtomicInteger	count;
+
+    if (m_Executor == null) {
+      count = new AtomicInteger();
+      m_Executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Statistics.class.getSimpleName() + "-" + count.incrementAndGet());
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Initializes the statistics for the data.
+   *
+   * @param header	the structure of the data
+   * @return		the statistics, one per attribute
+   */
+  protected static Summary[] initialize(Instances header) {
+    Summary[]	result;
+    int		i;
+
+    result = new Summary[header.numAttributes()];
+    for (i = 0; i < result.length; i++)
+      result[i] = new Summary(header.attribute(i));
+
+    return result;
+  }
+
+  /**
+   * Returns whether min/max/mean/variance get computed for the attribute.
+   *
+   * @param att	the attribute
+   * @return		true if numeric or date
+   */
+  protected static boolean isNumeric(Attribute att) {
+    return att.isNumeric();
+  }
+
+  /**
+   * Updates the statistics of a range of attributes with all rows.
+   *
+   * @param data	the data
+   * @param stats	the statistics to update
+   * @param from	the first attribute (incl)
+   * @param to		the last attribute (excl)
+   */
+  protected static void update(Instances data, Summary[] stats, int from, int to) {
+    boolean[]	numeric;
+    Instance	inst;
+    int		i;
+    int		n;
+
+    numeric = new boolean[to - from];
+    for (n = from; n < to; n++)
+      numeric[n - from] = isNumeric(data.attribute(n));
+
+    for (i = 0; i < data.numInstances(); i++) {
+      inst = data.instance(i);
+      for (n = from; n < to; n++)
+	stats[n].add(inst.value(n), numeric[n - from]);
+    }
+  }
+
+  /**
+   * Computes the statistics for the data. Wide data gets split into blocks
+   * of attributes that get processed in parallel.
+   *
+   * @param data	the data
+   * @param threshold	the minimum number of attributes for parallel computation
+   * @return		the statistics, one per attribute
+   * @throws Exception	if computation fails
+   */
+  public static Summary[] compute(final Instances data, int threshold) throws Exception {
+    final Summary[]		result;
+    List<Future<Object>>	futures;
+    int				blocks;
+    int				size;
+    int				i;
+
+    result = initialize(data);
+    blocks = Math.min(Runtime.getRuntime().availableProcessors(), data.numAttributes() / Math.max(1, threshold));
+    if (blocks < 2) {
+      update(data, result, 0, result.length);
+      return result;
+    }
+
+    size    = (result.length + blocks - 1) / blocks;
+    futures = new ArrayList<Future<Object>>();
+    for (i = 0; i < result.length; i += size) {
+      final int from = i;
+      final int to   = Math.min(result.length, i + size);
+      futures.add(getExecutor().submit(new Callable<Object>() {
+	@Override
+	public Object call() throws Exception {
+	  update(data, result, from, to);
+	  return null;
+	}
+      }));
+    }
+    for (Future<Object> future: futures)
+      future.get();
+
+    return result;
+  }
+
+  /**
+   * Returns the statistics of the last dump.
+   *
+   * @return		the statistics, null if none available
+   */
+  public synchronized Summary[] getLastStatistics() {
+    return m_Last;
+  }
+
+  /**
+   * Turns the number into a JSON value.
+   *
+   * @param value	the number
+   * @return		the JSON value
+   */
+  protected static String toJSON(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value))
+      return "null";
+    if ((value == Math.rint(value)) && (Math.abs(value) < 1e15))
+      return "" + (long) value;
+    return "" + value;
+  }
+
+  /**
+   * Turns the string into a JSON string.
+   *
+   * @param value	the string
+   * @return		the JSON string
+   */
+  protected static String toJSON(String value) {
+    StringBuilder	result;
+    char		c;
+    int			i;
+
+    result = new StringBuilder("\"");
+    for (i = 0; i < value.length(); i++) {
+      c = value.charAt(i);
+      switch (c) {
+	case '"':
+	  result.append("\\\"");
+	  break;
+	case '\\':
+	  result.append("\\\\");
+	  break;
+	case '\n':
+	  result.append("\\n");
+	  break;
+	case '\r':
+	  result.append("\\r");
+	  break;
+	case '\t':
+	  result.append("\\t");
+	  break;
+	default:
+	  if (c < 0x20)
+	    result.append(String.format("\\u%04x", (int) c));
+	  else
+	    result.append(c);
+      }
+    }
+    result.append("\"");
+
+    return result.toString();
+  }
+
+  /**
+   * Turns the number into a CSV value.
+   *
+   * @param value	the number
+   * @return		the CSV value, empty if not available
+   */
+  protected static String toCSV(double value) {
+    if (Double.isNaN(value))
+      return "";
+    return toJSON(value);
+  }
+
+  /**
+   * Generates the JSON representation of the statistics (single line).
+   *
+   * @param relation	the relation name
+   * @param rows	the number of rows
+   * @param stats	the statistics
+   * @return		the JSON object
+   */
+  public static String toJSON(String relation, long rows, Summary[] stats) {
+    StringBuilder	result;
+    int			i;
+    int			n;
+
+    result = new StringBuilder();
+    result.append("{\"relation\":").append(toJSON(relation));
+    result.append(",\"rows\":").append(rows);
+    result.append(",\"attributes\":[");
+    for (i = 0; i < stats.length; i++) {
+      if (i > 0)
+	result.append(",");
+      result.append("{\"name\":").append(toJSON(stats[i].getName()));
+      result.append(",\"type\":").append(toJSON(stats[i].getType()));
+      result.append(",\"count\":").append(stats[i].getCount());
+      result.append(",\"missing\":").append(stats[i].getMissing());
+      if (stats[i].getFrequencies() != null) {
+	result.append(",\"frequencies\":{");
+	for (n = 0; n < stats[i].getFrequencies().length; n++) {
+	  if (n > 0)
+	    result.append(",");
+	  result.append(toJSON(stats[i].getLabels()[n])).append(":").append(stats[i].getFrequencies()[n]);
+	}
+	result.append("}");
+      }
+      else {
+	result.append(",\"min\":").append(toJSON(stats[i].getMin()));
+	result.append(",\"max\":").append(toJSON(stats[i].getMax()));
+	result.append(",\"mean\":").append(toJSON(stats[i].getMean()));
+	result.append(",\"variance\":").append(toJSON(stats[i].getVariance()));
+      }
+      result.append("}");
+    }
+    result.append("]}");
+
+    return result.toString();
+  }
+
+  /**
+   * Generates the CSV rows of the statistics (one per attribute, no header).
+   *
+   * @param relation	the relation name
+   * @param rows	the number of rows
+   * @param stats	the statistics
+   * @return		the CSV rows
+   */
+  public static String toCSV(String relation, long rows, Summary[] stats) {
+    StringBuilder	result;
+    StringBuilder	freqs;
+    int			i;
+    int			n;
+
+    result = new StringBuilder();
+    for (i = 0; i < stats.length; i++) {
+      freqs = new StringBuilder();
+      if (stats[i].getFrequencies() != null) {
+	for (n = 0; n < stats[i].getFrequencies().length; n++) {
+	  if (n > 0)
+	    freqs.append(";");
+	  freqs.append(stats[i].getLabels()[n]).append("=").append(stats[i].getFrequencies()[n]);
+	}
+      }
+      result.append(Utils.quote(relation));
+      result.append(",").append(rows);
+      result.append(",").append(Utils.quote(stats[i].getName()));
+      result.append(",").append(stats[i].getType());
+      result.append(",").append(stats[i].getCount());
+      result.append(",").append(stats[i].getMissing());
+      result.append(",").append(toCSV(stats[i].getMin()));
+      result.append(",").append(toCSV(stats[i].getMax()));
+      result.append(",").append(toCSV(stats[i].getMean()));
+      result.append(",").append(toCSV(stats[i].getVariance()));
+      result.append(",").append((freqs.length() == 0) ? "" : Utils.quote(freqs.toString()));
+      result.append("\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Writes the statistics to the output file.
+   *
+   * @param relation	the relation name
+   * @param rows	the number of rows
+   * @param stats	the statistics
+   * @throws Exception	if writing fails
+   */
+  protected void write(String relation, long rows, Summary[] stats) throws Exception {
+    Writer	writer;
+    boolean	csv;
+    boolean	header;
+    String	content;
+    int		i;
+
+    synchronized (this) {
+      m_Last = stats;
+    }
+    if (m_OutputFile.isDirectory())
+      return;
+
+    csv = m_OutputFile.getName().toLowerCase().endsWith(".csv");
+    if (csv)
+      content = toCSV(relation, rows, stats);
+    else
+      content = toJSON(relation, rows, stats) + "\n";
+
+    synchronized (SaveToDisk.getLock(m_OutputFile)) {
+      header = csv && (!m_Append || !m_OutputFile.exists() || (m_OutputFile.length() == 0));
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_OutputFile, m_Append), BinaryFormat.UTF8));
+      try {
+	if (header) {
+	  for (i = 0; i < CSV_COLUMNS.length; i++)
+	    writer.write((i > 0 ? "," : "") + CSV_COLUMNS[i]);
+	  writer.write("\n");
+	}
+	writer.write(content);
+      }
+      finally {
+	writer.close();
+      }
+    }
+    getMetrics().addBytes(content.getBytes(BinaryFormat.UTF8).length);
+  }
+
+  /**
+   * Computes and writes the statistics.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    write(data.relationName(), data.numInstances(), compute(data, m_ParallelThreshold));
+  }
+
+  /**
+   * Starts computing the statistics incrementally.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpHeader(Instances header) throws Exception {
+    m_Header          = new Instances(header, 0);
+    m_Incremental     = initialize(header);
+    m_IncrementalRows = 0;
+  }
+
+  /**
+   * Updates the statistics with the instance, without buffering it.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public synchronized void dumpInstance(Instance inst) throws Exception {
+    int		i;
+
+    if (m_Incremental == null) {
+      if (inst.dataset() == null)
+	throw new IllegalStateException("No header dumped yet!");
+      dumpHeader(inst.dataset());
+    }
+    for (i = 0; i < m_Incremental.length; i++)
+      m_Incremental[i].add(inst.value(i), isNumeric(m_Header.attribute(i)));
+    m_IncrementalRows++;
+  }
+
+  /**
+   * Writes the statistics of the incrementally dumped instances, if any,
+   * and starts over.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public void flush() throws Exception {
+    Summary[]	stats;
+    long	rows;
+    String	relation;
+
+    synchronized (this) {
+      if ((m_Incremental == null) || (m_IncrementalRows == 0))
+	return;
+      stats             = m_Incremental;
+      rows              = m_IncrementalRows;
+      relation          = m_Header.relationName();
+      m_Incremental     = initialize(m_Header);
+      m_IncrementalRows = 0;
+    }
+    getMetrics().addRows(rows);
+    write(relation, rows, stats);
+  }
+}
@@ -0,0 +1,460 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Tee.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.SelectedTag;
+import weka.core.Tag;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwards the data to all the specified dumpers concurrently.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class Tee
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = -3402733985611960367L;
+
+  /** aborts as soon as one of the dumpers fails. */
+  public static final int FAILURE_FAIL_FAST = 0;
+
+  /** lets all dumpers finish, only outputs the failures. */
+  public static final int FAILURE_BEST_EFFORT = 1;
+
+  /** the failure handling. */
+  public static final Tag[] TAGS_FAILURE = {
+    new Tag(FAILURE_FAIL_FAST, "fail-fast", "Fail fast"),
+    new Tag(FAILURE_BEST_EFFORT, "best-effort", "Best effort"),
+  };
+
+  /** the executor shared by all instances. */
+  protected static ExecutorService m_Executor;
+
+  /** the dumpers to forward the data to. */
+  protected AbstractDumper[] m_Dumpers = new AbstractDumper[0];
+
+  /** the failure handling. */
+  protected int m_Failure = FAILURE_FAIL_FAST;
+
+  /** the duration of the last dump/flush per dumper (nanoseconds). */
+  protected transient long[] m_LastTimes;
+
+  /** the accumulated durations per dumper (nanoseconds). */
+  protected transient long[] m_TotalTimes;
+
+  /** the errors of the last dump/flush per dumper (null if successful). */
+  protected transient Exception[] m_LastErrors;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Forwards the data to all the specified dumpers concurrently, "
+      + "using a thread pool shared by all Tee instances.\n"
+      + "The data is shared by the dumpers, i.e., they must not modify it.\n"
+      + "With 'fail fast', the first failure gets reported as soon as it "
+      + "occurs and the other dumpers get cancelled; with 'best effort', all "
+      + "dumpers run to completion and failures only get output on stderr.\n"
+      + "Incrementally dumped instances are forwarded to the dumpers one "
+      + "after the other, flushing happens concurrently again.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tA data dumper to forward the data to.\n"
+	  + "\tCan be supplied multiple times.\n"
+	  + "\t(default: none)",
+	"dumper", 1, "-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tHow to handle failures of dumpers.\n"
+	  + "\t(default: " + new SelectedTag(FAILURE_FAIL_FAST, TAGS_FAILURE) + ")",
+	"failure", 1, "-failure " + Tag.toOptionList(TAGS_FAILURE)));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 			tmpStr;
+    String 			className;
+    String[] 			classOptions;
+    List<AbstractDumper>	dumpers;
+
+    dumpers = new ArrayList<AbstractDumper>();
+    while ((tmpStr = Utils.getOption("dumper", options)).length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      dumpers.add((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    setDumpers(dumpers.toArray(new AbstractDumper[0]));
+
+    tmpStr = Utils.getOption("failure", options);
+    if (tmpStr.length() != 0)
+      setFailure(new SelectedTag(tmpStr, TAGS_FAILURE));
+    else
+      setFailure(new SelectedTag(FAILURE_FAIL_FAST, TAGS_FAILURE));
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    for (AbstractDumper dumper: getDumpers()) {
+      result.add("-dumper");
+      result.add(Utils.toCommandLine(dumper));
+    }
+
+    result.add("-failure");
+    result.add("" + getFailure());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the data dumpers to forward the data to.
+   *
+   * @param value the data dumpers
+   */
+  public void setDumpers(AbstractDumper[] value) {
+    m_Dumpers    = value;
+    m_LastTimes  = null;
+    m_TotalTimes = null;
+    m_LastErrors = null;
+  }
+
+  /**
+   * Gets the data dumpers to forward the data to.
+   *
+   * @return the data dumpers
+   */
+  public AbstractDumper[] getDumpers() {
+    return m_Dumpers;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumpersTipText() {
+    return "The data dumpers to forward the data to.";
+  }
+
+  /**
+   * Sets how to handle failures of dumpers.
+   *
+   * @param value the failure handling
+   */
+  public void setFailure(SelectedTag value) {
+    if (value.getTags() == TAGS_FAILURE)
+      m_Failure = value.getSelectedTag().getID();
+  }
+
+  /**
+   * Returns how to handle failures of dumpers.
+   *
+   * @return the failure handling
+   */
+  public SelectedTag getFailure() {
+    return new SelectedTag(m_Failure, TAGS_FAILURE);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String failureTipText() {
+    return "How to handle failures of dumpers.";
+  }
+
+  /**
+   * Returns the executor, initializes it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    final AtomicInteger	count;
+
+    if (m_Executor == null) {
+      count = new AtomicInteger();
+      m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, Tee.class.getSimpleName() + "-" + count.incrementAndGet());
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Returns the duration of the last dump/flush per dumper.
+   *
+   * @return		the durations in msec (same order as dumpers)
+   */
+  public synchronized double[] getLastTimings() {
+    return toMsec(m_LastTimes);
+  }
+
+  /**
+   * Returns the accumulated durations of dumps/flushes per dumper.
+   *
+   * @return		the durations in msec (same order as dumpers)
+   */
+  public synchronized double[] getTotalTimings() {
+    return toMsec(m_TotalTimes);
+  }
+
+  /**
+   * Returns the errors of the last dump/flush per dumper.
+   *
+   * @return		the errors, null entries for successful dumpers
+   */
+  public synchronized Exception[] getLastErrors() {
+    if (m_LastErrors == null)
+      return new Exception[m_Dumpers.length];
+    return m_LastErrors.clone();
+  }
+
+  /**
+   * Turns the nanoseconds into milli-seconds.
+   *
+   * @param nanos	the durations in nanoseconds, can be null
+   * @return		the durations in msec
+   */
+  protected double[] toMsec(long[] nanos) {
+    double[]	result;
+    int		i;
+
+    result = new double[m_Dumpers.length];
+    if (nanos != null) {
+      for (i = 0; i < result.length; i++)
+	result[i] = nanos[i] / 1000000.0;
+    }
+
+    return result;
+  }
+
+  /**
+   * Records the duration and outcome for a dumper.
+   *
+   * @param index	the index of the dumper
+   * @param nanos	the duration in nanoseconds
+   * @param error	the error, null if successful
+   */
+  protected synchronized void record(int index, long nanos, Exception error) {
+    if ((m_LastTimes == null) || (m_LastTimes.length != m_Dumpers.length)) {
+      m_LastTimes  = new long[m_Dumpers.length];
+      m_TotalTimes = new long[m_Dumpers.length];
+      m_LastErrors = new Exception[m_Dumpers.length];
+    }
+    m_LastTimes[index]   = nanos;
+    m_TotalTimes[index] += nanos;
+    m_LastErrors[index]  = error;
+  }
+
+  /**
+   * Executes the dump, flush or close for all dumpers concurrently.
+   *
+   * @param data	the data to dump, null to flush/close
+   * @param close	whether to close rather than flush if no data
+   * @throws Exception	if a dumper failed (fail-fast only)
+   */
+  protected void execute(final Instances data, final boolean close) throws Exception {
+    AbstractDumper[]			dumpers;
+    CompletionService<Exception>	service;
+    List<Future<Exception>>		futures;
+    Exception				error;
+    Exception				first;
+    int					i;
+
+    dumpers = m_Dumpers;
+    service = new ExecutorCompletionService<Exception>(getExecutor());
+    futures = new ArrayList<Future<Exception>>();
+    for (i = 0; i < dumpers.length; i++) {
+      final int index = i;
+      final AbstractDumper dumper = dumpers[i];
+      futures.add(service.submit(new Callable<Exception>() {
+	@Override
+	public Exception call() throws Exception {
+	  long start = System.nanoTime();
+	  Exception result = null;
+	  try {
+	    if ((data == null) && close)
+	      dumper.close();
+	    else if (data == null)
+	      dumper.flush();
+	    else
+	      dumper.dump(data);
+	  }
+	  catch (Exception e) {
+	    result = new Exception("Dumper #" + (index + 1) + " failed: " + Utils.toCommandLine(dumper), e);
+	  }
+	  record(index, System.nanoTime() - start, result);
+	  return result;
+	}
+      }));
+    }
+
+    first = null;
+    try {
+      for (i = 0; i < dumpers.length; i++) {
+	try {
+	  error = service.take().get();
+	}
+	catch (ExecutionException e) {
+	  error = new Exception(e.getCause());
+	}
+	if (error == null)
+	  continue;
+	if (m_Failure == FAILURE_FAIL_FAST) {
+	  first = error;
+	  break;
+	}
+	System.err.println(error.getMessage());
+	error.getCause().printStackTrace();
+      }
+    }
+    finally {
+      if (first != null) {
+	for (Future<Exception> future: futures)
+	  future.cancel(true);
+      }
+    }
+
+    if (first != null)
+      throw first;
+  }
+
+  /**
+   * Forwards the data to all dumpers concurrently.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    execute(data, false);
+  }
+
+  /**
+   * Forwards the header to all dumpers.
+   *
+   * @param header	the structure of the data
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpHeader(Instances header) throws Exception {
+    for (AbstractDumper dumper: m_Dumpers)
+      dumper.dumpHeader(header);
+  }
+
+  /**
+   * Forwards the instance to all dumpers.
+   *
+   * @param inst	the instance to dump
+   * @throws Exception	if dumping fails
+   */
+  @Override
+  public void dumpInstance(Instance inst) throws Exception {
+    for (AbstractDumper dumper: m_Dumpers)
+      dumper.dumpInstance(inst);
+  }
+
+  /**
+   * Flushes all dumpers concurrently.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public void flush() throws Exception {
+    execute(null, false);
+  }
+
+  /**
+   * Closes all dumpers concurrently, using the same failure handling as
+   * for dumping and flushing.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  public void close() throws Exception {
+    execute(null, true);
+  }
+}
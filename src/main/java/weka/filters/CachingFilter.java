@@ -0,0 +1,503 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CachingFilter.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.dump.BinaryFormat;
+import weka.core.dump.DiskCache;
+import weka.core.dump.FastDataWriter;
+import weka.core.dump.InMemory;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Applies the base filter and caches its output on disk, keyed by the
+ * content of the input data and the command-line of the base filter.
+ * Re-running the same (expensive) filter on the same data loads the
+ * cached output instead.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class CachingFilter
+  extends SimpleBatchFilter {
+
+  private static final long serialVersionUID = 2914795337614577440L;
+
+  /**
+   * A cached output of the base filter.
+   */
+  public static class Entry
+    implements Serializable {
+
+    private static final long serialVersionUID = -6467811651419735417L;
+
+    /** the encoded data (see {@link BinaryFormat}), null if not supported. */
+    protected byte[] m_Data;
+
+    /** the data, if it cannot be encoded. */
+    protected Instances m_Instances;
+
+    /** the trained filter (first batch only, if serializable). */
+    protected Filter m_Filter;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param data	the filtered data
+     * @param filter	the trained filter, can be null
+     */
+    public Entry(Instances data, Filter filter) {
+      if (FastDataWriter.isSupported(data))
+	m_Data = BinaryFormat.toBytes(data);
+      else
+	m_Instances = data;
+      m_Filter = filter;
+    }
+
+    /**
+     * Returns the filtered data.
+     *
+     * @return		the data
+     * @throws Exception	if decoding fails
+     */
+    public Instances getData() throws Exception {
+      if (m_Data != null)
+	return BinaryFormat.fromBytes(m_Data);
+      else
+	return new Instances(m_Instances);
+    }
+
+    /**
+     * Returns the trained filter.
+     *
+     * @return		the filter, null if not available
+     */
+    public Filter getFilter() {
+      return m_Filter;
+    }
+  }
+
+  /** the name of the default cache directory in the Weka home directory. */
+  public final static String DEFAULT_CACHE_DIR = "cache";
+
+  /** the base filter. */
+  protected Filter m_Filter = new AllFilter();
+
+  /** the cache directory. */
+  protected File m_CacheDir = DiskCache.getDefaultDir(DEFAULT_CACHE_DIR);
+
+  /** the maximum size of the cache in bytes. */
+  protected long m_MaxSize = 1024L * 1024L * 1024L;
+
+  /** the cache. */
+  protected transient DiskCache m_Cache;
+
+  /** the trained copy of the base filter. */
+  protected transient Filter m_ActualFilter;
+
+  /** the output of the first batch. */
+  protected transient Instances m_FirstOutput;
+
+  /** the first batch, if the trained filter was not available from the cache. */
+  protected transient Instances m_FirstInput;
+
+  /**
+   * Returns a string describing this filter.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Applies the base filter (e.g., an expensive MultiFilter stage) and "
+      + "caches its output in the cache directory, keyed by a hash of the input "
+      + "data and the command-line of the base filter. On a cache hit, the "
+      + "output is loaded from disk instead of re-running the base filter.\n"
+      + "The least recently used entries get removed once the total size of "
+      + "the cache exceeds the maximum. Only the first (training) batch and the "
+      + "trained base filter get cached, subsequent batches are passed through "
+      + "the trained base filter. If the trained base filter cannot be "
+      + "serialized, it only gets trained on the first batch once a subsequent "
+      + "batch arrives.\n"
+      + "Access to the cache directory gets restricted to the owner, the cache "
+      + "does not get used if that fails.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe base filter to apply.\n"
+	  + "\t(default: " + AllFilter.class.getName() + ")",
+	"filter", 1, "-filter <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe directory for the cached output.\n"
+	  + "\t(default: WEKA_HOME/" + DEFAULT_CACHE_DIR + ")",
+	"cache-dir", 1, "-cache-dir <dir>"));
+
+    result.addElement(
+      new Option(
+	"\tThe maximum size of the cache in bytes (<= 0 for unlimited).\n"
+	  + "\t(default: 1073741824)",
+	"max-size", 1, "-max-size <bytes>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 	tmpStr;
+    String 	className;
+    String[] 	classOptions;
+
+    tmpStr = Utils.getOption("filter", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setFilter((Filter) Utils.forName(Filter.class, className, classOptions));
+    }
+    else {
+      setFilter(new AllFilter());
+    }
+
+    tmpStr = Utils.getOption("cache-dir", options);
+    if (tmpStr.length() != 0)
+      setCacheDir(new File(tmpStr));
+    else
+      setCacheDir(DiskCache.getDefaultDir(DEFAULT_CACHE_DIR));
+
+    tmpStr = Utils.getOption("max-size", options);
+    if (tmpStr.length() != 0)
+      setMaxSize(Long.parseLong(tmpStr));
+    else
+      setMaxSize(1024L * 1024L * 1024L);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-filter");
+    result.add(Utils.toCommandLine(getFilter()));
+
+    result.add("-cache-dir");
+    result.add(getCacheDir().toString());
+
+    result.add("-max-size");
+    result.add("" + getMaxSize());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the base filter.
+   *
+   * @param value the filter to use
+   */
+  public void setFilter(Filter value) {
+    m_Filter = value;
+  }
+
+  /**
+   * Gets the base filter.
+   *
+   * @return the filter
+   */
+  public Filter getFilter() {
+    return m_Filter;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String filterTipText() {
+    return "The base filter to apply and cache the output for.";
+  }
+
+  /**
+   * Sets the cache directory.
+   *
+   * @param value the directory
+   */
+  public void setCacheDir(File value) {
+    m_CacheDir = value;
+    m_Cache    = null;
+  }
+
+  /**
+   * Gets the cache directory.
+   *
+   * @return the directory
+   */
+  public File getCacheDir() {
+    return m_CacheDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String cacheDirTipText() {
+    return "The directory for the cached output, can be shared by several filters.";
+  }
+
+  /**
+   * Sets the maximum size of the cache.
+   *
+   * @param value the size in bytes, &lt;= 0 for unlimited
+   */
+  public void setMaxSize(long value) {
+    m_MaxSize = value;
+    m_Cache   = null;
+  }
+
+  /**
+   * Gets the maximum size of the cache.
+   *
+   * @return the size in bytes, &lt;= 0 for unlimited
+   */
+  public long getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String maxSizeTipText() {
+    return "The maximum total size of the cache in bytes, least recently used entries get removed when exceeded; <= 0 for unlimited.";
+  }
+
+  /**
+   * Returns the cache, initializes it if necessary.
+   *
+   * @return		the cache
+   */
+  public synchronized DiskCache getCache() {
+    if (m_Cache == null)
+      m_Cache = new DiskCache(m_CacheDir, m_MaxSize, 0, InMemory.EVICTION_LRU);
+    return m_Cache;
+  }
+
+  /**
+   * Resets the state of the filter.
+   *
+   * @param instanceInfo the format of the input data
+   * @return true if the output format is immediately available
+   * @throws Exception if the format cannot be processed
+   */
+  @Override
+  public boolean setInputFormat(Instances instanceInfo) throws Exception {
+    m_ActualFilter = null;
+    m_FirstOutput  = null;
+    m_FirstInput   = null;
+    return super.setInputFormat(instanceInfo);
+  }
+
+  /**
+   * Returns whether to allow the determineOutputFormat(Instances) method
+   * access to the full dataset rather than just the header.
+   *
+   * @return always true, the output format requires filtering the data
+   */
+  @Override
+  public boolean allowAccessToFullInputFormat() {
+    return true;
+  }
+
+  /**
+   * Returns true if the output format is immediately available after the
+   * input format has been set and not only after all the data has been
+   * seen (see batchFinished()).
+   *
+   * @return always false, the output format requires filtering the data
+   */
+  @Override
+  protected boolean hasImmediateOutputFormat() {
+    return false;
+  }
+
+  /**
+   * Stores the output in the cache, without the trained filter if the
+   * latter cannot be serialized. Failing to store the output only outputs
+   * a warning.
+   *
+   * @param key		the key
+   * @param data	the filtered data
+   * @param filter	the trained filter, null if not to store
+   */
+  protected void store(String key, Instances data, Filter filter) {
+    try {
+      try {
+	getCache().put(key, new Entry(data, filter));
+      }
+      catch (Exception e) {
+	if (filter == null)
+	  throw e;
+	getCache().put(key, new Entry(data, null));
+      }
+    }
+    catch (Exception e) {
+      System.err.println("Failed to cache output of " + Utils.toCommandLine(m_Filter) + ":");
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Filters the data or loads the cached output. Only the first batch gets
+   * cached, subsequent batches get passed through the trained base filter.
+   *
+   * @param data	the data to filter
+   * @return		the filtered data
+   * @throws Exception	if filtering fails
+   */
+  protected Instances apply(Instances data) throws Exception {
+    Instances	result;
+    String	key;
+    Entry	entry;
+
+    // subsequent batch
+    if ((m_ActualFilter != null) || (m_FirstInput != null)) {
+      // trained filter not available from cache?
+      if (m_ActualFilter == null) {
+	m_ActualFilter = Filter.makeCopy(m_Filter);
+	m_ActualFilter.setInputFormat(m_FirstInput);
+	Filter.useFilter(m_FirstInput, m_ActualFilter);
+	m_FirstInput = null;
+      }
+      return Filter.useFilter(data, m_ActualFilter);
+    }
+
+    key   = DiskCache.getKey(data, Utils.toCommandLine(m_Filter));
+    entry = (Entry) getCache().get(key);
+    if (entry != null) {
+      result         = entry.getData();
+      m_ActualFilter = entry.getFilter();
+      if (m_ActualFilter == null)
+	m_FirstInput = data;
+    }
+    else {
+      m_ActualFilter = Filter.makeCopy(m_Filter);
+      m_ActualFilter.setInputFormat(data);
+      result = Filter.useFilter(data, m_ActualFilter);
+      store(key, result, m_ActualFilter);
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines the output format by filtering the first batch (or loading
+   * its cached output).
+   *
+   * @param inputFormat the full input data
+   * @return the output format
+   * @throws Exception in case the determination goes wrong
+   */
+  @Override
+  protected Instances determineOutputFormat(Instances inputFormat) throws Exception {
+    m_FirstOutput = apply(inputFormat);
+    return new Instances(m_FirstOutput, 0);
+  }
+
+  /**
+   * Returns the filtered data, either from the base filter or the cache.
+   *
+   * @param instances the data to process
+   * @return the modified data
+   * @throws Exception in case the processing goes wrong
+   */
+  @Override
+  protected Instances process(Instances instances) throws Exception {
+    Instances	result;
+
+    if (m_FirstOutput != null) {
+      result        = m_FirstOutput;
+      m_FirstOutput = null;
+    }
+    else {
+      result = apply(instances);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: -1 $");
+  }
+
+  /**
+   * Main method for executing this filter.
+   *
+   * @param args arguments to the filter: use -h for help
+   */
+  public static void main(String[] args) {
+    runFilter(new CachingFilter(), args);
+  }
+}
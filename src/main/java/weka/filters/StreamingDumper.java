@@ -0,0 +1,303 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StreamingDumper.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.dump.AbstractDumper;
+import weka.core.dump.Null;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Forwards the instances passing through one by one to the selected data
+ * dumper, without buffering them. Memory usage only stays constant with
+ * dumpers that write the instances one by one (e.g., SaveToDisk with ARFF/CSV,
+ * Rolling, SocketStream, Statistics, Sketch), other dumpers buffer the
+ * instances until they get flushed, see {@link #setDumpBatchSize(int)}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class StreamingDumper
+  extends SimpleStreamFilter {
+
+  private static final long serialVersionUID = -2302924806135385287L;
+
+  /** the scheme to use for dumping the data. */
+  protected AbstractDumper m_Dumper = new Null();
+
+  /** whether the header has been dumped for the current input format. */
+  protected boolean m_HeaderDumped = false;
+
+  /** the number of instances after which to flush the dumper (0 = end of batch). */
+  protected int m_DumpBatchSize = 0;
+
+  /** the number of instances dumped since the last flush. */
+  protected int m_Count;
+
+  /** whether the dumper has been registered for closing at JVM exit. */
+  protected boolean m_Registered = false;
+
+  /**
+   * Returns a string describing this filter.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Forwards the instances passing through one by one to the selected "
+      + "data dumper, without buffering them.\n"
+      + "The dumper gets flushed at the end of each batch and, optionally, "
+      + "whenever the dump batch size is reached. Instances filtered one by "
+      + "one after the first batch (e.g., when making predictions with "
+      + "FilteredClassifier) get forwarded as well; the dumper gets closed "
+      + "at JVM exit to write any that are still pending.\n"
+      + "Memory usage only stays constant with dumpers that write the "
+      + "instances one by one (e.g., SaveToDisk with ARFF/CSV, Rolling, "
+      + "SocketStream, Statistics, Sketch); other dumpers buffer the "
+      + "instances until flushed, which a dump batch size limits.";
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration<Option> listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    result.addElement(
+      new Option(
+	"\tThe data dumper to use.\n"
+	  + "\t(default: " + Null.class.getName() + ")",
+	"dumper", 1, "-dumper <classname + options>"));
+
+    result.addElement(
+      new Option(
+	"\tThe number of instances after which to flush the dumper,\n"
+	  + "\t0 to flush only at the end of a batch.\n"
+	  + "\t(default: 0)",
+	"dump-batch-size", 1, "-dump-batch-size <int>"));
+
+    result.addAll(Collections.list(super.listOptions()));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String 	tmpStr;
+    String 	className;
+    String[] 	classOptions;
+
+    tmpStr = Utils.getOption("dumper", options);
+    if (tmpStr.length() != 0) {
+      classOptions    = Utils.splitOptions(tmpStr);
+      className       = classOptions[0];
+      classOptions[0] = "";
+      setDumper((AbstractDumper) Utils.forName(AbstractDumper.class, className, classOptions));
+    }
+    else {
+      setDumper(new Null());
+    }
+
+    tmpStr = Utils.getOption("dump-batch-size", options);
+    if (tmpStr.length() != 0)
+      setDumpBatchSize(Integer.parseInt(tmpStr));
+    else
+      setDumpBatchSize(0);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the filter.
+   *
+   * @return an array of strings suitable for passing to setOptions
+   */
+  @Override
+  public String[] getOptions() {
+    List<String> result = new ArrayList<String>();
+
+    result.add("-dumper");
+    result.add(Utils.toCommandLine(getDumper()));
+
+    result.add("-dump-batch-size");
+    result.add("" + getDumpBatchSize());
+
+    Collections.addAll(result, super.getOptions());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Sets the data dumper to use.
+   *
+   * @param value the data dumper to use
+   */
+  public void setDumper(AbstractDumper value) {
+    m_Dumper     = value;
+    m_Registered = false;
+  }
+
+  /**
+   * Gets the current data dumper.
+   *
+   * @return the data dumper
+   */
+  public AbstractDumper getDumper() {
+    return m_Dumper;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumperTipText() {
+    return "The data dumper to use.";
+  }
+
+  /**
+   * Sets the number of instances after which to flush the dumper.
+   *
+   * @param value the batch size, 0 to flush only at the end of a batch
+   */
+  public void setDumpBatchSize(int value) {
+    if (value >= 0)
+      m_DumpBatchSize = value;
+  }
+
+  /**
+   * Returns the number of instances after which to flush the dumper.
+   *
+   * @return the batch size, 0 to flush only at the end of a batch
+   */
+  public int getDumpBatchSize() {
+    return m_DumpBatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String dumpBatchSizeTipText() {
+    return "The number of instances after which to flush the dumper, 0 to "
+      + "flush only at the end of a batch; limits the memory of dumpers that "
+      + "buffer the instances.";
+  }
+
+  /**
+   * Determines the output format based on the input format and returns this.
+   *
+   * @param inputFormat the input format to base the output format on
+   * @return the output format
+   * @throws Exception in case the determination goes wrong
+   */
+  @Override
+  protected Instances determineOutputFormat(Instances inputFormat) throws Exception {
+    m_HeaderDumped = false;
+    m_Count        = 0;
+    m_Registered   = false;
+    return inputFormat;
+  }
+
+  /**
+   * Forwards the instance to the dumper.
+   *
+   * @param instance the instance to process
+   * @return the unchanged instance
+   * @throws Exception in case the processing goes wrong
+   */
+  @Override
+  protected Instance process(Instance instance) throws Exception {
+    if (!m_HeaderDumped) {
+      m_Dumper.dumpHeader(getInputFormat());
+      m_HeaderDumped = true;
+    }
+    // instances outside a batch don't get flushed by batchFinished
+    if (!m_Registered && isFirstBatchDone()) {
+      AbstractDumper.closeAtExit(m_Dumper);
+      m_Registered = true;
+    }
+    m_Dumper.dumpInstance(instance);
+    m_Count++;
+    if ((m_DumpBatchSize > 0) && (m_Count >= m_DumpBatchSize)) {
+      m_Dumper.flush();
+      m_Count = 0;
+    }
+    return instance;
+  }
+
+  /**
+   * Flushes the dumper and signifies that this batch of input to the filter
+   * is finished.
+   *
+   * @return true if there are instances pending output
+   * @throws Exception if flushing fails or no input structure has been defined
+   */
+  @Override
+  public boolean batchFinished() throws Exception {
+    if (getInputFormat() == null)
+      throw new IllegalStateException("No input instance format defined");
+
+    m_Dumper.flush();
+    m_Count = 0;
+
+    return super.batchFinished();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: -1 $");
+  }
+
+  /**
+   * Main method for executing this filter.
+   *
+   * @param args arguments to the filter: use -h for help
+   */
+  public static void main(String[] args) {
+    runFilter(new StreamingDumper(), args);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.classifiers.trees.J48;
+import weka.core.Instances;
+import weka.core.dump.DiskCache;
+import weka.core.dump.DumpTestHelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+/**
+ * Tests the Dumper meta-classifier.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperTest
+  extends TestCase {
+
+  /** the temporary directory. */
+  protected File m_TmpDir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public DumperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the temporary directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_TmpDir = DumpTestHelper.newTempDir("dumper");
+  }
+
+  /**
+   * Removes the temporary directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_TmpDir);
+    super.tearDown();
+  }
+
+  /**
+   * Returns a new classifier with the model cache enabled, using a cache
+   * directory that does not exist yet.
+   *
+   * @return		the classifier
+   */
+  protected Dumper newClassifier() {
+    Dumper	result;
+
+    result = new Dumper();
+    result.setClassifier(new J48());
+    result.setModelCache(true);
+    result.setModelCacheDir(new File(m_TmpDir, "model-cache"));
+
+    return result;
+  }
+
+  /**
+   * Training on the same data again must load the model from the cache.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testModelCache() throws Exception {
+    Instances	data;
+    Dumper	first;
+    Dumper	second;
+
+    data  = DumpTestHelper.newNumericData(100);
+    first = newClassifier();
+    first.buildClassifier(data);
+    assertEquals(0, first.getModelCacheHits());
+    assertEquals(1, first.getModelCacheMisses());
+
+    second = newClassifier();
+    second.buildClassifier(data);
+    assertEquals(1, second.getModelCacheHits());
+    assertEquals(0, second.getModelCacheMisses());
+    assertEquals(first.getClassifier().toString(), second.getClassifier().toString());
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals(first.classifyInstance(data.instance(i)), second.classifyInstance(data.instance(i)), 0.0);
+  }
+
+  /**
+   * The default model cache directory must not be located in the shared
+   * temp directory.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDefaultDir() throws Exception {
+    File	tmp;
+    File	dir;
+
+    tmp = new File(System.getProperty("java.io.tmpdir")).getCanonicalFile();
+    dir = new Dumper().getModelCacheDir().getCanonicalFile();
+    assertEquals(DiskCache.getDefaultDir(Dumper.DEFAULT_MODEL_CACHE_DIR).getCanonicalFile(), dir);
+    while (dir != null) {
+      assertFalse(dir.equals(tmp));
+      dir = dir.getParentFile();
+    }
+  }
+
+  /**
+   * Access to the model cache directory must be restricted to the owner.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testOwnerOnly() throws Exception {
+    Dumper		classifier;
+    File		dir;
+    Process		proc;
+    BufferedReader	reader;
+
+    if (File.separatorChar == '\\')
+      return;
+
+    classifier = newClassifier();
+    dir        = classifier.getModelCacheDir();
+    assertTrue(dir.mkdirs());
+    assertTrue(dir.setReadable(true, false));
+    assertTrue(dir.setWritable(true, false));
+    classifier.buildClassifier(DumpTestHelper.newNumericData(20));
+    assertEquals(1, classifier.getCache().size());
+
+    proc   = new ProcessBuilder("stat", "-c", "%a", dir.getAbsolutePath()).start();
+    reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+    try {
+      assertEquals("700", reader.readLine());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DumperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
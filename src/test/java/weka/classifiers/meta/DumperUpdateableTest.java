@@ -0,0 +1,289 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperUpdateableTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.classifiers.meta;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.core.dump.AbstractDumper;
+import weka.core.dump.Async;
+import weka.core.dump.DumpTestHelper;
+import weka.core.dump.RecordingDumper;
+import weka.core.dump.SaveToDisk;
+import weka.core.dump.Tee;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Tests the DumperUpdateable meta-classifier.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperUpdateableTest
+  extends TestCase {
+
+  /** the temp directory. */
+  protected File m_TempDir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public DumperUpdateableTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the temp directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_TempDir = DumpTestHelper.newTempDir("dumperupdateable");
+  }
+
+  /**
+   * Removes the temp directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_TempDir);
+    super.tearDown();
+  }
+
+  /**
+   * Trains on the first rows and updates with the remaining ones.
+   *
+   * @param classifier	the classifier to use
+   * @param data	the data
+   * @param train	the number of training rows
+   * @throws Exception	if training fails
+   */
+  protected void trainAndUpdate(DumperUpdateable classifier, Instances data, int train) throws Exception {
+    int		i;
+
+    classifier.buildClassifier(new Instances(data, 0, train));
+    for (i = train; i < data.numInstances(); i++)
+      classifier.updateClassifier(data.instance(i));
+  }
+
+  /**
+   * Creates the classifier.
+   *
+   * @param file	the output file
+   * @param timestamp	whether to append a timestamp
+   * @return		the classifier
+   */
+  protected DumperUpdateable newClassifier(File file, boolean timestamp) {
+    DumperUpdateable	result;
+    SaveToDisk		dumper;
+
+    dumper = new SaveToDisk();
+    dumper.setOutputFile(file);
+    dumper.setAppendTimestamp(timestamp);
+    result = new DumperUpdateable();
+    result.setDumper(dumper);
+    result.setDumpBatchSize(100);
+    result.setFlushInterval(0);
+    return result;
+  }
+
+  /**
+   * Returns the number of rows stored in the file.
+   *
+   * @param file	the file to read
+   * @return		the number of rows
+   * @throws Exception	if reading fails
+   */
+  protected int numRows(File file) throws Exception {
+    return DataSource.read(file.getAbsolutePath()).numInstances();
+  }
+
+  /**
+   * The update stream must get appended to the training data, also with a
+   * partial batch that only gets written when closing.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testAppendToTrainingData() throws Exception {
+    DumperUpdateable	classifier;
+    Instances		data;
+    File		file;
+
+    data = DumpTestHelper.newNumericData(280);
+    for (String ext: new String[]{".arff", ".csv"}) {
+      file       = new File(m_TempDir, "out" + ext);
+      classifier = newClassifier(file, false);
+      trainAndUpdate(classifier, new Instances(data, 0, 250), 50);
+      assertEquals(ext, 250, numRows(file));
+
+      trainAndUpdate(classifier, data, 50);
+      assertEquals(ext, 250, numRows(file));
+      classifier.close();
+      assertEquals(ext, 280, numRows(file));
+    }
+  }
+
+  /**
+   * With timestamps, the update stream must go into a single file separate
+   * from the training data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testTimestamp() throws Exception {
+    DumperUpdateable	classifier;
+    Instances		data;
+    File[]		files;
+
+    data       = DumpTestHelper.newNumericData(250);
+    classifier = newClassifier(new File(m_TempDir, "out.arff"), true);
+    trainAndUpdate(classifier, data, 50);
+    classifier.close();
+
+    files = m_TempDir.listFiles();
+    assertEquals(2, files.length);
+    Arrays.sort(files);
+    assertEquals(250, numRows(files[0]) + numRows(files[1]));
+    assertTrue(numRows(files[0]) == 50 || numRows(files[1]) == 50);
+  }
+
+  /**
+   * Formats that can't be appended to must not overwrite the training data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testNoOverwrite() throws Exception {
+    DumperUpdateable	classifier;
+    Instances		data;
+    File		file;
+    File[]		files;
+
+    data       = DumpTestHelper.newNumericData(250);
+    file       = new File(m_TempDir, "out.arff.gz");
+    classifier = newClassifier(file, false);
+    trainAndUpdate(classifier, data, 50);
+    classifier.close();
+
+    assertEquals(50, numRows(file));
+    files = m_TempDir.listFiles();
+    assertEquals(2, files.length);
+    for (File f: files) {
+      if (!f.equals(file))
+	assertEquals(200, numRows(f));
+    }
+  }
+
+  /**
+   * Closing must also finish the incremental file behind a wrapper dumper,
+   * e.g., the gzip stream that cannot be read before being closed.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testWrapped() throws Exception {
+    DumperUpdateable	classifier;
+    SaveToDisk		base;
+    AbstractDumper[]	wrappers;
+    Tee			tee;
+    Async		async;
+    Instances		data;
+    File		dir;
+    File		file;
+    File[]		files;
+    int			i;
+
+    data     = DumpTestHelper.newNumericData(200);
+    tee      = new Tee();
+    async    = new Async();
+    wrappers = new AbstractDumper[]{tee, async};
+    for (i = 0; i < wrappers.length; i++) {
+      dir  = new File(m_TempDir, "" + i);
+      dir.mkdirs();
+      file = new File(dir, "out.arff.gz");
+      base = new SaveToDisk();
+      base.setOutputFile(file);
+      if (wrappers[i] == tee)
+	tee.setDumpers(new AbstractDumper[]{base});
+      else
+	async.setDumper(base);
+      classifier = newClassifier(file, false);
+      classifier.setDumper(wrappers[i]);
+      trainAndUpdate(classifier, data, 50);
+      classifier.close();
+
+      assertEquals(50, numRows(file));
+      files = dir.listFiles();
+      assertEquals(2, files.length);
+      for (File f: files) {
+	if (!f.equals(file))
+	  assertEquals(Utils.toCommandLine(wrappers[i]), 150, numRows(f));
+      }
+    }
+  }
+
+  /**
+   * Buffering dumpers must receive the updates in micro-batches.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testMicroBatches() throws Exception {
+    DumperUpdateable	classifier;
+    RecordingDumper	dumper;
+
+    dumper     = new RecordingDumper();
+    classifier = new DumperUpdateable();
+    classifier.setDumper(dumper);
+    classifier.setDumpBatchSize(100);
+    classifier.setFlushInterval(0);
+    trainAndUpdate(classifier, DumpTestHelper.newNumericData(280), 50);
+    assertEquals(3, dumper.getDumps().size());
+    classifier.close();
+    assertEquals(4, dumper.getDumps().size());
+    assertEquals(30, dumper.getDumps().get(3).numInstances());
+    assertEquals(280, dumper.getNumRows());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DumperUpdateableTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
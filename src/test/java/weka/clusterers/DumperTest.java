@@ -0,0 +1,126 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.clusterers;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.dump.DumpTestHelper;
+import weka.core.dump.PredictionCapture;
+import weka.core.dump.RecordingDumper;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.AddCluster;
+
+/**
+ * Tests the Dumper meta-clusterer.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public DumperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * The dumped assignments must use a nominal cluster attribute with a
+   * unique name and the same labels as AddCluster (the latter gets applied
+   * to the data without the clashing attribute name).
+   *
+   * @throws Exception	if test fails
+   */
+  public void testAssignments() throws Exception {
+    Instances		plain;
+    Instances		data;
+    Instances		dumped;
+    Instances		added;
+    RecordingDumper	base;
+    Dumper		dumper;
+    SimpleKMeans	kmeans;
+    AddCluster		add;
+    Attribute		cluster;
+    int			i;
+    int			n;
+
+    plain  = DumpTestHelper.newNumericData(200);
+    plain.setClassIndex(-1);
+    data   = new Instances(plain);
+    data.renameAttribute(0, Dumper.ATT_CLUSTER);
+    kmeans = new SimpleKMeans();
+    kmeans.setNumClusters(3);
+    base   = new RecordingDumper();
+    dumper = new Dumper();
+    dumper.setClusterer(kmeans);
+    dumper.setDumper(base);
+    dumper.setDumpAssignments(true);
+    dumper.setAssignmentChunkSize(50);
+    dumper.buildClusterer(data);
+
+    assertEquals(1, base.getDumps().size());
+    dumped = base.getDumps().get(0);
+    n      = data.numAttributes();
+    assertEquals(n + 1 + 3, dumped.numAttributes());
+    cluster = dumped.attribute(n);
+    assertTrue(cluster.isNominal());
+    assertEquals(PredictionCapture.uniqueName(data, Dumper.ATT_CLUSTER), cluster.name());
+    assertFalse(Dumper.ATT_CLUSTER.equals(cluster.name()));
+    assertEquals(Dumper.ATT_CLUSTER, dumped.attribute(0).name());
+
+    add = new AddCluster();
+    add.setClusterer(new SimpleKMeans());
+    ((SimpleKMeans) add.getClusterer()).setNumClusters(3);
+    add.setInputFormat(plain);
+    added = Filter.useFilter(plain, add);
+    assertEquals(cluster.numValues(), added.attribute(n).numValues());
+    for (i = 0; i < cluster.numValues(); i++)
+      assertEquals(added.attribute(n).value(i), cluster.value(i));
+    for (i = 0; i < data.numInstances(); i++) {
+      assertEquals(added.instance(i).stringValue(n), dumped.instance(i).stringValue(n));
+      assertEquals(data.instance(i).value(0), dumped.instance(i).value(0), 0.0);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DumperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AsyncTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+
+/**
+ * Tests the Async dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class AsyncTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public AsyncTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param base	the base dumper
+   * @param policy	the policy
+   * @param queueSize	the queue size
+   * @return		the dumper
+   */
+  protected Async newDumper(AbstractDumper base, int policy, int queueSize) {
+    Async	result;
+
+    result = new Async();
+    result.setDumper(base);
+    result.setPolicy(new SelectedTag(policy, Async.TAGS_POLICY));
+    result.setQueueSize(queueSize);
+    return result;
+  }
+
+  /**
+   * Blocking policy must not lose any data and flush must wait for it.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testBlock() throws Exception {
+    RecordingDumper	base;
+    Async		dumper;
+    Instances		data;
+    int			i;
+
+    base = new RecordingDumper();
+    base.setDelay(5);
+    dumper = newDumper(base, Async.POLICY_BLOCK, 2);
+    data   = DumpTestHelper.newData(20);
+    for (i = 0; i < 10; i++)
+      dumper.dump(data);
+    dumper.shutdown();
+
+    assertEquals(10, base.getDumps().size());
+    assertEquals(200, base.getNumRows());
+    assertEquals(0, dumper.getDroppedCount());
+    assertEquals(0, dumper.getPendingCount());
+    assertEquals(1, base.getNumFlushes());
+  }
+
+  /**
+   * Drop policies must drop data for a slow dumper instead of blocking,
+   * accounting for every dataset.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDrop() throws Exception {
+    RecordingDumper	base;
+    Async		dumper;
+    Instances		data;
+    int			policy;
+    int			i;
+
+    data = DumpTestHelper.newData(5);
+    for (policy = Async.POLICY_DROP_OLDEST; policy <= Async.POLICY_DROP_NEWEST; policy++) {
+      base = new RecordingDumper();
+      base.setDelay(50);
+      dumper = newDumper(base, policy, 1);
+      for (i = 0; i < 20; i++)
+	dumper.dump(data);
+      dumper.shutdown();
+      assertTrue("policy " + policy, dumper.getDroppedCount() > 0);
+      assertEquals("policy " + policy, 20, base.getDumps().size() + dumper.getDroppedCount());
+    }
+  }
+
+  /**
+   * The background data must be a snapshot, unaffected by later changes.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSnapshot() throws Exception {
+    RecordingDumper	base;
+    Async		dumper;
+    Instances		data;
+    double		value;
+
+    base = new RecordingDumper();
+    base.setDelay(50);
+    dumper = newDumper(base, Async.POLICY_BLOCK, 10);
+    data   = DumpTestHelper.newNumericData(10);
+    value  = data.instance(0).value(0);
+    dumper.dump(data);
+    data.instance(0).setValue(0, value + 1);
+    dumper.shutdown();
+
+    assertEquals(value, base.getDumps().get(0).instance(0).value(0), 0.0);
+  }
+
+  /**
+   * Failures in the background must surface in flush.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testFailure() throws Exception {
+    RecordingDumper	base;
+    Async		dumper;
+
+    base = new RecordingDumper();
+    base.setFail(true);
+    dumper = newDumper(base, Async.POLICY_BLOCK, 10);
+    dumper.dump(DumpTestHelper.newData(5));
+    try {
+      dumper.flush();
+      fail("Background failure not reported");
+    }
+    catch (Exception e) {
+      // expected
+    }
+    dumper.flush();
+    dumper.shutdown();
+  }
+
+  /**
+   * Incrementally dumped data must reach the base dumper in order, without
+   * the flushes overwriting the output, and closing must finish the file.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testIncremental() throws Exception {
+    File		dir;
+    File		file;
+    SaveToDisk		base;
+    Async		dumper;
+    Instances		data;
+    Instances		read;
+    int			i;
+
+    dir = DumpTestHelper.newTempDir("async");
+    try {
+      file = new File(dir, "out.arff");
+      base = new SaveToDisk();
+      base.setOutputFile(file);
+      dumper = newDumper(base, Async.POLICY_BLOCK, 2);
+      data   = DumpTestHelper.newNumericData(200);
+      dumper.dump(new Instances(data, 0, 50));
+      dumper.dumpHeader(data);
+      for (i = 50; i < data.numInstances(); i++) {
+	dumper.dumpInstance(data.instance(i));
+	if (i % 50 == 0)
+	  dumper.flush();
+      }
+      dumper.close();
+
+      read = DataSource.read(file.getAbsolutePath());
+      assertEquals(data.numInstances(), read.numInstances());
+      assertEquals(0, dumper.getPendingCount());
+    }
+    finally {
+      DumpTestHelper.delete(dir);
+    }
+  }
+
+  /**
+   * Closing must close the base dumper, incremental data must arrive in
+   * order with the blocking policy.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testIncrementalOrder() throws Exception {
+    RecordingDumper	base;
+    Async		dumper;
+    Instances		data;
+    int			i;
+
+    base = new RecordingDumper();
+    base.setDelay(1);
+    dumper = newDumper(base, Async.POLICY_BLOCK, 2);
+    data   = DumpTestHelper.newNumericData(100);
+    dumper.setNumThreads(4);
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      dumper.dumpInstance(data.instance(i));
+    dumper.close();
+
+    assertEquals(1, base.getDumps().size());
+    assertEquals(data.toString(), base.getDumps().get(0).toString());
+    assertEquals(0, dumper.getDroppedCount());
+    assertEquals(1, base.getNumCloses());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(AsyncTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
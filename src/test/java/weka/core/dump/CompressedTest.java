@@ -0,0 +1,132 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CompressedTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+/**
+ * Tests the Compressed dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class CompressedTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public CompressedTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Stored data must get restored unchanged, including sparse data and
+   * weights, and be smaller than the encoded data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testRoundTrip() throws Exception {
+    Compressed		dumper;
+    Instances		data;
+    Compressed.Handle	handle;
+
+    data = DumpTestHelper.newData(200);
+    data.instance(3).setWeight(2.5);
+    dumper = new Compressed();
+    dumper.dump(data);
+
+    handle = dumper.getLatest();
+    assertNotNull(handle);
+    assertEquals(200, handle.getRows());
+    assertTrue(handle.getCompressedSize() < handle.getSize());
+    assertEquals(data.toString(), handle.getData().toString());
+    assertEquals(2.5, handle.getData().instance(3).weight(), 0.0);
+    assertEquals(handle.getCompressedSize(), dumper.getBytes());
+  }
+
+  /**
+   * Handles must be retrievable by sequence number and label.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testLookup() throws Exception {
+    Compressed		dumper;
+    Compressed.Handle	first;
+    Compressed.Handle	second;
+
+    dumper = new Compressed();
+    first  = dumper.store(DumpTestHelper.newData(10), "a");
+    second = dumper.store(DumpTestHelper.newData(20), "b");
+    dumper.store(DumpTestHelper.newData(30), "a");
+
+    assertSame(first, dumper.getHandle(first.getSequence()));
+    assertSame(second, dumper.getHandle("b"));
+    assertEquals(30, dumper.getHandle("a").getRows());
+    assertEquals(3, dumper.getHandles().size());
+  }
+
+  /**
+   * The oldest handles must get evicted once the size limit is exceeded,
+   * keeping the most recent one.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testEviction() throws Exception {
+    Compressed		dumper;
+    Compressed.Handle	latest;
+    int			i;
+
+    dumper = new Compressed();
+    dumper.setMaxBytes(1);
+    for (i = 0; i < 5; i++)
+      dumper.dump(DumpTestHelper.newData(50 + i));
+
+    latest = dumper.getLatest();
+    assertEquals(1, dumper.getHandles().size());
+    assertEquals(54, latest.getRows());
+    assertEquals(4, dumper.getEvictions());
+    assertNull(dumper.getHandle(0));
+    assertEquals(latest.getCompressedSize(), dumper.getBytes());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(CompressedTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
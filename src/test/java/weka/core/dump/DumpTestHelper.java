@@ -0,0 +1,130 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumpTestHelper.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+import java.io.File;
+
+/**
+ * Helper methods for the dumper tests.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumpTestHelper {
+
+  /**
+   * Generates a dataset with nominal, numeric, string and date attributes,
+   * missing values and a nominal class.
+   *
+   * @param rows	the number of rows
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  public static Instances newData(int rows) throws Exception {
+    TestInstances	test;
+
+    test = new TestInstances();
+    test.setNumInstances(rows);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setNumString(1);
+    test.setNumDate(1);
+    test.setNumRelational(0);
+    test.setNumClasses(3);
+    test.setClassType(weka.core.Attribute.NOMINAL);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+    test.setSeed(42);
+
+    return test.generate();
+  }
+
+  /**
+   * Generates a dataset with numeric attributes and a nominal class only.
+   *
+   * @param rows	the number of rows
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  public static Instances newNumericData(int rows) throws Exception {
+    TestInstances	test;
+
+    test = new TestInstances();
+    test.setNumInstances(rows);
+    test.setNumNominal(0);
+    test.setNumNumeric(4);
+    test.setNumClasses(2);
+    test.setClassType(weka.core.Attribute.NOMINAL);
+    test.setClassIndex(TestInstances.CLASS_IS_LAST);
+    test.setSeed(42);
+
+    return test.generate();
+  }
+
+  /**
+   * Creates a new, empty temporary directory.
+   *
+   * @param prefix	the prefix for the name
+   * @return		the directory
+   * @throws Exception	if creation fails
+   */
+  public static File newTempDir(String prefix) throws Exception {
+    File	result;
+
+    result = File.createTempFile(prefix, "");
+    result.delete();
+    if (!result.mkdirs())
+      throw new IllegalStateException("Failed to create directory: " + result);
+
+    return result;
+  }
+
+  /**
+   * Deletes the file or directory (recursively).
+   *
+   * @param file	the file/dir to delete
+   */
+  public static void delete(File file) {
+    File[]	files;
+
+    if (file == null)
+      return;
+    files = file.listFiles();
+    if (files != null) {
+      for (File f: files)
+	delete(f);
+    }
+    file.delete();
+  }
+
+  /**
+   * Returns whether the dumper is registered for closing at JVM exit.
+   *
+   * @param dumper	the dumper to check
+   * @return		true if registered
+   */
+  public static boolean isCloseAtExit(AbstractDumper dumper) {
+    synchronized (AbstractDumper.class) {
+      return (AbstractDumper.m_CloseAtExit != null) && AbstractDumper.m_CloseAtExit.contains(dumper);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperMetricsTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Tests the metrics recorded for dumpers.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperMetricsTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public DumperMetricsTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Calls, rows and errors must get recorded.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testRecording() throws Exception {
+    RecordingDumper	dumper;
+    DumperMetrics	metrics;
+    Instances		data;
+    long		total;
+
+    data   = DumpTestHelper.newData(20);
+    dumper = new RecordingDumper();
+    dumper.dump(data);
+    dumper.dump(data);
+    dumper.setFail(true);
+    try {
+      dumper.dump(data);
+      fail("no exception");
+    }
+    catch (Exception e) {
+      // expected
+    }
+
+    metrics = dumper.getMetrics();
+    assertEquals(3, metrics.getCalls());
+    assertEquals(1, metrics.getErrors());
+    assertEquals(40, metrics.getRows());
+    assertNotNull(metrics.getLastError());
+    total = 0;
+    for (long count: metrics.getHistogram())
+      total += count;
+    assertEquals(3, total);
+
+    metrics.reset();
+    assertEquals(0, metrics.getCalls());
+  }
+
+  /**
+   * Dumpers without label must have private metrics.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testPrivate() throws Exception {
+    RecordingDumper	first;
+    RecordingDumper	second;
+
+    first  = new RecordingDumper();
+    second = new RecordingDumper();
+    first.dump(DumpTestHelper.newData(5));
+    assertEquals(1, first.getMetrics().getCalls());
+    assertEquals(0, second.getMetrics().getCalls());
+  }
+
+  /**
+   * Dumpers with the same label must share their metrics, which get
+   * registered with JMX.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testLabelled() throws Exception {
+    RecordingDumper	first;
+    RecordingDumper	second;
+    RecordingDumper	other;
+
+    first = new RecordingDumper();
+    first.setLabel("metrics-test");
+    second = new RecordingDumper();
+    second.setLabel("metrics-test");
+    other = new RecordingDumper();
+    other.setLabel("metrics-test-other");
+    first.getMetrics().reset();
+    first.dump(DumpTestHelper.newData(5));
+    second.dump(DumpTestHelper.newData(5));
+
+    assertSame(first.getMetrics(), second.getMetrics());
+    assertEquals(2, second.getMetrics().getCalls());
+    assertNotSame(first.getMetrics(), other.getMetrics());
+    assertTrue(DumperMetrics.getRegistered().contains(first.getMetrics()));
+    assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(first.getMetrics().getObjectName()));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DumperMetricsTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
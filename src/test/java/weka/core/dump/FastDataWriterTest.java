@@ -0,0 +1,246 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * FastDataWriterTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.ConverterUtils.DataSink;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Tests the FastDataWriter, which must produce the same output as Weka's savers.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class FastDataWriterTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public FastDataWriterTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("fastdatawriter");
+  }
+
+  /**
+   * Removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Generates data with strings that need quoting, missing values,
+   * fractional numbers and optionally weights.
+   *
+   * @param sparse	whether to use sparse instances
+   * @param weighted	whether to set weights
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances newData(boolean sparse, boolean weighted) throws Exception {
+    Instances	result;
+    Instance	inst;
+    int		i;
+    int		n;
+
+    result = DumpTestHelper.newData(50);
+    for (i = 0; i < result.numInstances(); i++) {
+      inst = result.instance(i);
+      for (n = 0; n < result.numAttributes(); n++) {
+	if ((i + n) % 7 == 0)
+	  inst.setMissing(n);
+	else if (result.attribute(n).isNumeric() && !result.attribute(n).isDate() && (i % 3 == 0))
+	  inst.setValue(n, (i % 2 == 0) ? 0.0 : 1.0 / (i + 3));
+	else if (result.attribute(n).isString() && (i % 4 == 0))
+	  inst.setValue(n, "it's \"quoted\", with\ttab and ümlaut " + i);
+      }
+      if (weighted && (i % 5 == 0))
+	inst.setWeight(0.5 + i);
+    }
+
+    if (sparse) {
+      for (i = 0; i < result.numInstances(); i++)
+	result.set(i, new SparseInstance(result.instance(i)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads the file.
+   *
+   * @param file	the file to read
+   * @return		the content
+   * @throws Exception	if reading fails
+   */
+  protected byte[] read(File file) throws Exception {
+    InputStream	in;
+    byte[]	result;
+
+    result = new byte[(int) file.length()];
+    in     = new FileInputStream(file);
+    try {
+      assertEquals(result.length, in.read(result));
+    }
+    finally {
+      in.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes the data with DataSink and FastDataWriter and compares the
+   * output, once as batch and once incrementally.
+   *
+   * @param data	the data to write
+   * @param ext		the file extension
+   * @throws Exception	if test fails
+   */
+  protected void compare(Instances data, String ext) throws Exception {
+    File		expected;
+    File		actual;
+    FastDataWriter	writer;
+    FileOutputStream	out;
+    int			i;
+
+    expected = new File(m_Dir, "expected" + ext);
+    actual   = new File(m_Dir, "actual" + ext);
+    assertTrue(FastDataWriter.canWrite(actual, data));
+    DataSink.write(expected.getAbsolutePath(), data);
+
+    FastDataWriter.write(actual, data);
+    assertTrue("batch output differs", Arrays.equals(read(expected), read(actual)));
+
+    writer = new FastDataWriter(data, FastDataWriter.getFormat(actual));
+    out    = new FileOutputStream(actual);
+    try {
+      writer.open(out.getChannel());
+      writer.writeHeader();
+      for (i = 0; i < data.numInstances(); i++)
+	writer.write(data.instance(i));
+      writer.flush();
+    }
+    finally {
+      out.close();
+    }
+    assertTrue("incremental output differs", Arrays.equals(read(expected), read(actual)));
+    assertEquals(actual.length(), writer.getBytesWritten());
+  }
+
+  /**
+   * Dense ARFF with weights.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDenseARFF() throws Exception {
+    compare(newData(false, true), ".arff");
+  }
+
+  /**
+   * Sparse ARFF with weights.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSparseARFF() throws Exception {
+    compare(newData(true, true), ".arff");
+  }
+
+  /**
+   * Dense CSV.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDenseCSV() throws Exception {
+    compare(newData(false, false), ".csv");
+  }
+
+  /**
+   * Sparse CSV.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSparseCSV() throws Exception {
+    compare(newData(true, false), ".csv");
+  }
+
+  /**
+   * Weighted data must not get written as CSV, as the weights would get
+   * lost; it's left to the CSVSaver, which rejects it.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testWeightedCSV() throws Exception {
+    Instances	data;
+
+    data = newData(false, true);
+    assertFalse(FastDataWriter.canWrite(new File(m_Dir, "out.csv"), data));
+    assertTrue(FastDataWriter.canWrite(new File(m_Dir, "out.arff"), data));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(FastDataWriterTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
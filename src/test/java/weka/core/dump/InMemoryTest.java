@@ -0,0 +1,530 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InMemoryTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests the InMemory dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class InMemoryTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public InMemoryTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Without snapshot, the data itself gets stored.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testNoSnapshot() throws Exception {
+    InMemory	dumper;
+    Instances	data;
+
+    data   = DumpTestHelper.newNumericData(10);
+    dumper = new InMemory();
+    dumper.dump(data);
+    assertSame(data, dumper.getData());
+  }
+
+  /**
+   * A snapshot must not see modifications of values or structure of the
+   * original data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSnapshot() throws Exception {
+    InMemory	dumper;
+    Instances	data;
+    Instances	stored;
+    String	expected;
+
+    data     = DumpTestHelper.newData(10);
+    expected = data.toString();
+    dumper   = new InMemory();
+    dumper.setSnapshot(true);
+    dumper.dump(data);
+
+    data.instance(0).setValue(2, data.instance(0).value(2) + 1);
+    data.instance(1).setMissing(3);
+    data.setClassIndex(-1);
+    data.deleteAttributeAt(0);
+    data.delete(5);
+
+    stored = dumper.getData();
+    assertNotSame(data, stored);
+    assertEquals(expected, stored.toString());
+  }
+
+  /**
+   * Creates a dumper with a history that fits two datasets of the specified size.
+   *
+   * @param size	the size of a dataset
+   * @param eviction	the eviction policy
+   * @return		the dumper
+   */
+  protected InMemory newHistory(long size, int eviction) {
+    InMemory	result;
+
+    result = new InMemory();
+    result.setHistory(true);
+    result.setMaxBytes(size * 5 / 2);
+    result.setEviction(new SelectedTag(eviction, InMemory.TAGS_EVICTION));
+    return result;
+  }
+
+  /**
+   * The history must be accessible via sequence number and label.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testHistoryLookup() throws Exception {
+    InMemory	dumper;
+    Instances	first;
+    Instances	second;
+    Instances	third;
+
+    first  = DumpTestHelper.newNumericData(10);
+    second = DumpTestHelper.newNumericData(20);
+    third  = DumpTestHelper.newNumericData(30);
+    dumper = new InMemory();
+    dumper.setHistory(true);
+    assertEquals(0, dumper.store(first, "fold-1"));
+    assertEquals(1, dumper.store(second, "fold-2"));
+    assertEquals(2, dumper.store(third, "fold-1"));
+
+    assertSame(second, dumper.getData(1));
+    assertSame(third, dumper.getData("fold-1"));
+    assertSame(third, dumper.getData());
+    assertNull(dumper.getData(3));
+    assertNull(dumper.getData("fold-3"));
+    assertEquals(3, dumper.getHistoryEntries().size());
+    assertEquals(2, dumper.getHits());
+    assertEquals(2, dumper.getMisses());
+
+    dumper.clearHistory();
+    assertEquals(0, dumper.getHistoryEntries().size());
+    assertEquals(0, dumper.getHistoryBytes());
+  }
+
+  /**
+   * The size limit must evict the least recently used or the oldest data,
+   * notifying the eviction listeners.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testHistoryEviction() throws Exception {
+    InMemory			dumper;
+    Instances			data;
+    long			size;
+    final List<Long>		evicted;
+
+    data    = DumpTestHelper.newNumericData(100);
+    size    = InMemory.estimateSize(data);
+    evicted = new ArrayList<Long>();
+
+    // LRU: accessing the first one protects it
+    dumper = newHistory(size, InMemory.EVICTION_LRU);
+    dumper.addEvictionListener(new InMemory.EvictionListener() {
+      @Override
+      public void evicted(InMemory source, InMemory.HistoryEntry entry) {
+	evicted.add(entry.getSequence());
+      }
+    });
+    dumper.store(data, "a");
+    dumper.store(data, "b");
+    dumper.getData(0);
+    dumper.store(data, "c");
+    assertNotNull(dumper.getData(0));
+    assertNull(dumper.getData(1));
+    assertNotNull(dumper.getData(2));
+    assertEquals(1, dumper.getEvictions());
+    assertEquals(1, evicted.size());
+    assertEquals(1L, (long) evicted.get(0));
+    assertTrue(dumper.getHistoryBytes() <= dumper.getMaxBytes());
+
+    // FIFO: the oldest one goes
+    dumper = newHistory(size, InMemory.EVICTION_FIFO);
+    dumper.store(data, "a");
+    dumper.store(data, "b");
+    dumper.getData(0);
+    dumper.store(data, "c");
+    assertNull(dumper.getData(0));
+    assertNotNull(dumper.getData(1));
+    assertNotNull(dumper.getData(2));
+  }
+
+  /**
+   * The most recent data must be kept even if it exceeds the limit.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testHistoryKeepsLatest() throws Exception {
+    InMemory	dumper;
+    Instances	data;
+
+    data   = DumpTestHelper.newNumericData(100);
+    dumper = newHistory(10, InMemory.EVICTION_LRU);
+    dumper.store(data, "a");
+    dumper.store(data, "b");
+    assertEquals(1, dumper.getHistoryEntries().size());
+    assertSame(data, dumper.getData(1));
+  }
+
+  /**
+   * Listeners must get notified synchronously by default.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testNotify() throws Exception {
+    InMemory			dumper;
+    final AtomicInteger		count;
+    final Thread		caller;
+
+    count  = new AtomicInteger();
+    caller = Thread.currentThread();
+    dumper = new InMemory();
+    dumper.addListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	if (Thread.currentThread() == caller)
+	  count.incrementAndGet();
+      }
+    });
+    dumper.dump(DumpTestHelper.newNumericData(10));
+    dumper.dump(DumpTestHelper.newNumericData(10));
+    assertEquals(2, count.get());
+  }
+
+  /**
+   * Background notifications must not block the dump calls and coalesce
+   * for a busy listener, which eventually sees the latest data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testAsyncNotify() throws Exception {
+    final InMemory			dumper;
+    final AtomicInteger			count;
+    final AtomicReference<Instances>	seen;
+    final CountDownLatch		release;
+    Instances				last;
+    long				start;
+    int					i;
+
+    count   = new AtomicInteger();
+    seen    = new AtomicReference<Instances>();
+    release = new CountDownLatch(1);
+    dumper  = new InMemory();
+    dumper.setAsyncNotify(true);
+    dumper.addListener(new ChangeListener() {
+      @Override
+      public void stateChanged(ChangeEvent e) {
+	try {
+	  release.await(5, TimeUnit.SECONDS);
+	}
+	catch (InterruptedException ex) {
+	  // ignored
+	}
+	seen.set(dumper.getData());
+	count.incrementAndGet();
+      }
+    });
+
+    last  = null;
+    start = System.currentTimeMillis();
+    for (i = 0; i < 50; i++) {
+      last = DumpTestHelper.newNumericData(5);
+      dumper.dump(last);
+    }
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    release.countDown();
+
+    start = System.currentTimeMillis();
+    while ((seen.get() != last) && (System.currentTimeMillis() - start < 5000))
+      Thread.sleep(10);
+    assertSame(last, seen.get());
+    assertTrue("notifications not coalesced: " + count.get(), count.get() < 50);
+  }
+
+  /**
+   * Adding and removing listeners while dumping concurrently must be safe.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testConcurrentListeners() throws Exception {
+    final InMemory			dumper;
+    final Instances			data;
+    final AtomicReference<Throwable>	failure;
+    Thread[]				threads;
+    ChangeListener			l;
+    int					i;
+
+    dumper  = new InMemory();
+    data    = DumpTestHelper.newNumericData(5);
+    failure = new AtomicReference<Throwable>();
+    threads = new Thread[4];
+    for (i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  try {
+	    for (int n = 0; n < 500; n++)
+	      dumper.dump(data);
+	  }
+	  catch (Throwable t) {
+	    failure.set(t);
+	  }
+	}
+      });
+      threads[i].start();
+    }
+    for (i = 0; i < 500; i++) {
+      l = new ChangeListener() {
+	@Override
+	public void stateChanged(ChangeEvent e) {
+	}
+      };
+      dumper.addListener(l);
+      dumper.removeListener(l);
+    }
+    for (Thread thread: threads)
+      thread.join();
+    assertNull(failure.get());
+  }
+
+  /**
+   * Waits for the spiller to spill the specified number of entries.
+   *
+   * @param dumper	the dumper
+   * @param spills	the expected number of spills
+   * @throws Exception	if waiting fails
+   */
+  protected void waitForSpills(InMemory dumper, long spills) throws Exception {
+    int		i;
+
+    for (i = 0; (i < 100) && (dumper.getSpills() < spills); i++)
+      Thread.sleep(20);
+    assertEquals(spills, dumper.getSpills());
+  }
+
+  /**
+   * Returns the number of files in the directory.
+   *
+   * @param dir		the directory
+   * @return		the number of files
+   */
+  protected int numFiles(File dir) {
+    File[]	files;
+
+    files = dir.listFiles();
+    return (files == null) ? 0 : files.length;
+  }
+
+  /**
+   * Data exceeding the limit must get spilled to disk and reloaded when
+   * accessed, removing the spill file.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSpill() throws Exception {
+    InMemory			dumper;
+    Instances			data;
+    File			dir;
+    InMemory.HistoryEntry	entry;
+
+    data = DumpTestHelper.newNumericData(100);
+    dir  = DumpTestHelper.newTempDir("spill");
+    try {
+      dumper = newHistory(InMemory.estimateSize(data), InMemory.EVICTION_LRU);
+      dumper.setSpill(true);
+      dumper.setSpillDir(dir);
+      dumper.store(data, "a");
+      dumper.store(data, "b");
+      dumper.store(data, "c");
+      waitForSpills(dumper, 1);
+
+      entry = dumper.getHistoryEntries().get(0);
+      assertTrue(entry.isSpilled());
+      assertNotNull(entry.getFile());
+      assertEquals(1, numFiles(dir));
+      assertEquals(data.toString(), entry.getData().toString());
+
+      // reloading keeps the data in memory and removes the file, the
+      // least recently used entry gets spilled instead
+      assertEquals(data.toString(), dumper.getData(0).toString());
+      assertEquals(1, dumper.getReloads());
+      assertFalse(entry.isSpilled());
+      assertNull(entry.getFile());
+      waitForSpills(dumper, 2);
+      assertFalse(entry.isSpilled());
+      assertNotSame(entry, dumper.getHistoryEntries().get(0));
+      assertTrue(dumper.getHistoryEntries().get(0).isSpilled());
+      assertEquals(1, numFiles(dir));
+
+      // clearing removes the files
+      dumper.clearHistory();
+      assertEquals(0, numFiles(dir));
+    }
+    finally {
+      DumpTestHelper.delete(dir);
+    }
+  }
+
+  /**
+   * The spill directory must default to a private directory outside the
+   * shared temp directory and access must get restricted to the owner.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSpillDirPrivate() throws Exception {
+    InMemory		dumper;
+    Instances		data;
+    File		tmp;
+    File		dir;
+    File		parent;
+    Process		proc;
+    BufferedReader	reader;
+
+    tmp = new File(System.getProperty("java.io.tmpdir")).getCanonicalFile();
+    dir = new InMemory().getSpillDir().getCanonicalFile();
+    assertEquals(DiskCache.getDefaultDir(InMemory.DEFAULT_SPILL_DIR).getCanonicalFile(), dir);
+    while (dir != null) {
+      assertFalse(dir.equals(tmp));
+      dir = dir.getParentFile();
+    }
+
+    if (File.separatorChar == '\\')
+      return;
+
+    data   = DumpTestHelper.newNumericData(100);
+    parent = DumpTestHelper.newTempDir("spill");
+    try {
+      dir = new File(parent, "spill");
+      assertTrue(dir.mkdirs());
+      assertTrue(dir.setReadable(true, false));
+      assertTrue(dir.setWritable(true, false));
+      dumper = newHistory(InMemory.estimateSize(data), InMemory.EVICTION_FIFO);
+      dumper.setSpill(true);
+      dumper.setSpillDir(dir);
+      dumper.store(data, "a");
+      dumper.store(data, "b");
+      dumper.store(data, "c");
+      waitForSpills(dumper, 1);
+      assertEquals(1, numFiles(dir));
+
+      proc   = new ProcessBuilder("stat", "-c", "%a", dir.getAbsolutePath()).start();
+      reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+      try {
+	assertEquals("700", reader.readLine());
+      }
+      finally {
+	reader.close();
+      }
+      dumper.clearHistory();
+    }
+    finally {
+      DumpTestHelper.delete(parent);
+    }
+  }
+
+  /**
+   * Spilling that gets cancelled by accessing the data must not leave a
+   * file behind.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSpillCancelled() throws Exception {
+    InMemory	dumper;
+    Instances	data;
+    File	dir;
+    int		i;
+    int		files;
+
+    data = DumpTestHelper.newNumericData(2000);
+    dir  = DumpTestHelper.newTempDir("spill");
+    try {
+      files  = InMemory.getNumSpillFiles();
+      dumper = newHistory(InMemory.estimateSize(data), InMemory.EVICTION_FIFO);
+      dumper.setSpill(true);
+      dumper.setSpillDir(dir);
+      for (i = 0; i < 20; i++) {
+	dumper.store(data, "" + i);
+	dumper.getData(i - 2);
+      }
+      dumper.clearHistory();
+      // wait for the spiller to finish
+      InMemory.getSpiller().submit(new Runnable() {
+	@Override
+	public void run() {
+	}
+      }).get();
+
+      assertEquals(0, numFiles(dir));
+      assertEquals(files, InMemory.getNumSpillFiles());
+    }
+    finally {
+      DumpTestHelper.delete(dir);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(InMemoryTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
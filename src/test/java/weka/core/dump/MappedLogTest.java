@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MappedLogTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+/**
+ * Tests the MappedLog dumper and the MappedLogReader.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class MappedLogTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public MappedLogTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("mappedlog");
+  }
+
+  /**
+   * Closes the logs and removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    MappedLog.closeAll();
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param file	the log file
+   * @param label	the entry label
+   * @param stage	the stage
+   * @return		the dumper
+   */
+  protected MappedLog newDumper(File file, String label, String stage) {
+    MappedLog	result;
+
+    result = new MappedLog();
+    result.setOutputFile(file);
+    result.setEntryLabel(label);
+    result.setStage(stage);
+    result.setLabel("metrics-" + label);
+    return result;
+  }
+
+  /**
+   * Dumps must be retrievable by entry label and stage, independent of the
+   * label for the metrics.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testLookup() throws Exception {
+    File		file;
+    MappedLog		initial;
+    MappedLog		normalized;
+    Instances[]		data;
+    MappedLogReader	reader;
+    List<MappedLog.Entry>	entries;
+    int			i;
+
+    file       = new File(m_Dir, "dumps.log");
+    initial    = newDumper(file, "cv", "initial");
+    normalized = newDumper(file, "cv", "normalized");
+    data       = new Instances[3];
+    for (i = 0; i < data.length; i++) {
+      data[i] = DumpTestHelper.newData(10 + i);
+      initial.dump(data[i]);
+      normalized.dump(DumpTestHelper.newNumericData(5 + i));
+    }
+    MappedLog.close(file);
+
+    reader = new MappedLogReader(file);
+    try {
+      assertEquals(6, reader.getEntries().size());
+      assertTrue(reader.find("metrics-cv", "initial").isEmpty());
+      entries = reader.find("cv", "initial");
+      assertEquals(3, entries.size());
+      for (i = 0; i < data.length; i++) {
+	assertEquals(data[i].numInstances(), entries.get(i).rows);
+	assertEquals(data[i].toString(), reader.getData(entries.get(i)).toString());
+      }
+      assertEquals(3, reader.find("cv", "normalized").size());
+      assertSame(entries.get(1), reader.getEntry(entries.get(1).sequence));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * An incomplete last index entry (e.g., after a crash while writing) must
+   * get dropped when appending again, keeping the index readable.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testTruncatedIndex() throws Exception {
+    File		file;
+    File		index;
+    Instances[]		data;
+    MappedLogReader	reader;
+    RandomAccessFile	raf;
+    int			i;
+
+    file = new File(m_Dir, "dumps.log");
+    data = new Instances[3];
+    for (i = 0; i < data.length; i++)
+      data[i] = DumpTestHelper.newData(10 + i);
+    newDumper(file, "a", "").dump(data[0]);
+    newDumper(file, "b", "").dump(data[1]);
+    MappedLog.close(file);
+
+    // chop off a few bytes of the last entry
+    index = MappedLog.getIndexFile(file);
+    raf   = new RandomAccessFile(index, "rw");
+    try {
+      raf.setLength(raf.length() - 3);
+    }
+    finally {
+      raf.close();
+    }
+
+    newDumper(file, "c", "").dump(data[2]);
+    MappedLog.close(file);
+
+    reader = new MappedLogReader(file);
+    try {
+      assertEquals(2, reader.getEntries().size());
+      assertEquals(data[0].toString(), reader.getData(reader.find("a", "").get(0)).toString());
+      assertTrue(reader.find("b", "").isEmpty());
+      assertEquals(data[2].toString(), reader.getData(reader.find("c", "").get(0)).toString());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Existing logs must get appended to.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testAppend() throws Exception {
+    File		file;
+    MappedLogReader	reader;
+
+    file = new File(m_Dir, "dumps.log");
+    newDumper(file, "run1", "").dump(DumpTestHelper.newData(10));
+    MappedLog.close(file);
+    newDumper(file, "run2", "").dump(DumpTestHelper.newData(20));
+    MappedLog.close(file);
+
+    reader = new MappedLogReader(file);
+    try {
+      assertEquals(2, reader.getEntries().size());
+      assertEquals(20, reader.getData(reader.find("run2", "").get(0)).numInstances());
+      assertEquals(10, reader.getData(reader.find("run1", "").get(0)).numInstances());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Numeric columns of dense data must be accessible directly.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testColumn() throws Exception {
+    File		file;
+    Instances		data;
+    MappedLogReader	reader;
+    DoubleBuffer	column;
+    int			i;
+
+    file = new File(m_Dir, "dumps.log");
+    data = DumpTestHelper.newNumericData(25);
+    newDumper(file, "", "").dump(data);
+    MappedLog.close(file);
+
+    reader = new MappedLogReader(file);
+    try {
+      column = reader.getColumn(reader.getEntries().get(0), 1);
+      assertEquals(25, column.remaining());
+      for (i = 0; i < data.numInstances(); i++)
+	assertEquals(data.instance(i).value(1), column.get(i), 0.0);
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MappedLogTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
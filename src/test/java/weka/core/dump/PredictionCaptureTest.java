@@ -0,0 +1,220 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PredictionCaptureTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.classifiers.meta.Dumper;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Tests the PredictionCapture class and its use in the Dumper classifier.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PredictionCaptureTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public PredictionCaptureTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the data with an attribute called "prediction".
+   *
+   * @param rows	the number of rows
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances newDataWithPrediction(int rows) throws Exception {
+    Instances	result;
+
+    result = DumpTestHelper.newNumericData(rows);
+    result.renameAttribute(0, PredictionCapture.ATT_PREDICTION);
+    return result;
+  }
+
+  /**
+   * The captured predictions must all get dumped, with the prediction and
+   * distribution attributes appended.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testCapture() throws Exception {
+    RecordingDumper	dumper;
+    PredictionCapture	capture;
+    Instances		data;
+    Instances		dumped;
+    int			i;
+
+    data    = DumpTestHelper.newNumericData(250);
+    dumper  = new RecordingDumper();
+    capture = new PredictionCapture(dumper, PredictionCapture.distributionNames(data), 1024, 100);
+    for (i = 0; i < data.numInstances(); i++)
+      assertTrue(capture.capture(data.instance(i), new double[]{0.25, 0.75}, Double.NaN));
+    capture.flush();
+
+    assertEquals(250, dumper.getNumRows());
+    dumped = dumper.getDumps().get(0);
+    assertEquals(data.numAttributes() + 3, dumped.numAttributes());
+    assertEquals(1.0, dumped.instance(0).value(data.numAttributes()), 0.0);
+    assertEquals(0.75, dumped.instance(0).value(data.numAttributes() + 2), 0.0);
+  }
+
+  /**
+   * An existing "prediction" attribute must not break the capture.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testNameClash() throws Exception {
+    RecordingDumper	dumper;
+    PredictionCapture	capture;
+    Instances		data;
+    Instances		dumped;
+    int			i;
+
+    data    = newDataWithPrediction(20);
+    dumper  = new RecordingDumper();
+    capture = new PredictionCapture(dumper, PredictionCapture.distributionNames(data), 64, 100);
+    for (i = 0; i < data.numInstances(); i++)
+      capture.capture(data.instance(i), null, 1.0);
+    capture.flush();
+
+    assertEquals(20, dumper.getNumRows());
+    dumped = dumper.getDumps().get(0);
+    assertNotNull(dumped.attribute(PredictionCapture.ATT_PREDICTION + "-1"));
+    assertEquals(1.0, dumped.instance(0).value(dumped.attribute(PredictionCapture.ATT_PREDICTION + "-1")), 0.0);
+  }
+
+  /**
+   * A prediction that can't be processed must be reported by flush, without
+   * losing the following predictions.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testFailure() throws Exception {
+    RecordingDumper	dumper;
+    PredictionCapture	capture;
+    Instances		data;
+    Instance		orphan;
+    int			i;
+
+    data    = DumpTestHelper.newNumericData(20);
+    dumper  = new RecordingDumper();
+    capture = new PredictionCapture(dumper, PredictionCapture.distributionNames(data), 64, 100);
+    orphan  = new DenseInstance(1.0, data.instance(0).toDoubleArray());
+    capture.capture(orphan, null, 0.0);
+    for (i = 0; i < data.numInstances(); i++)
+      capture.capture(data.instance(i), null, 0.0);
+    try {
+      capture.flush();
+      fail("Failure not reported");
+    }
+    catch (Exception e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    assertEquals(20, dumper.getNumRows());
+
+    capture.capture(data.instance(0), null, 0.0);
+    capture.flush();
+    assertEquals(21, dumper.getNumRows());
+  }
+
+  /**
+   * With a small buffer, every prediction must either get dumped or counted
+   * as dropped.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDropped() throws Exception {
+    RecordingDumper	dumper;
+    PredictionCapture	capture;
+    Instances		data;
+    int			i;
+
+    data    = DumpTestHelper.newNumericData(2000);
+    dumper  = new RecordingDumper();
+    capture = new PredictionCapture(dumper, PredictionCapture.distributionNames(data), 2, 10);
+    for (i = 0; i < data.numInstances(); i++)
+      capture.capture(data.instance(i), null, 0.0);
+    capture.flush();
+
+    assertEquals(2000, dumper.getNumRows() + capture.getDroppedCount());
+  }
+
+  /**
+   * The Dumper classifier must capture the predictions of the base classifier.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testClassifier() throws Exception {
+    Dumper		classifier;
+    RecordingDumper	dumper;
+    Instances		data;
+    Instances		dumped;
+    Attribute		pred;
+    int			i;
+
+    data       = newDataWithPrediction(100);
+    dumper     = new RecordingDumper();
+    classifier = new Dumper();
+    classifier.setClassifier(new J48());
+    classifier.setPredictionDumper(dumper);
+    classifier.buildClassifier(data);
+    for (i = 0; i < data.numInstances(); i++)
+      classifier.classifyInstance(data.instance(i));
+    classifier.flushPredictions();
+
+    assertEquals(100, dumper.getNumRows());
+    dumped = dumper.getDumps().get(0);
+    pred   = dumped.attribute(PredictionCapture.ATT_PREDICTION + "-1");
+    for (i = 0; i < data.numInstances(); i++)
+      assertEquals(classifier.classifyInstance(data.instance(i)), dumped.instance(i).value(pred), 0.0);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(PredictionCaptureTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
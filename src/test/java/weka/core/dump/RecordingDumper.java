@@ -0,0 +1,166 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RecordingDumper.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dumper for tests: records the dumped data, optionally slowly or failing.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class RecordingDumper
+  extends AbstractDumper {
+
+  private static final long serialVersionUID = -2841437312655471287L;
+
+  /** the msec to sleep per dump. */
+  protected long m_Delay;
+
+  /** whether to fail the dumps. */
+  protected boolean m_Fail;
+
+  /** the dumped data. */
+  protected transient List<Instances> m_Dumps = new ArrayList<Instances>();
+
+  /** the number of flush calls. */
+  protected transient int m_Flushes;
+
+  /** the number of close calls. */
+  protected transient int m_Closes;
+
+  /**
+   * Returns a string describing this scheme.
+   *
+   * @return a description of the filter suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Records the dumped data, for tests.";
+  }
+
+  /**
+   * Sets the msec to sleep per dump.
+   *
+   * @param value	the delay
+   */
+  public void setDelay(long value) {
+    m_Delay = value;
+  }
+
+  /**
+   * Sets whether dumps fail.
+   *
+   * @param value	true if to fail
+   */
+  public void setFail(boolean value) {
+    m_Fail = value;
+  }
+
+  /**
+   * Records the data.
+   *
+   * @param data	the data to dump
+   * @throws Exception	if failing is enabled
+   */
+  @Override
+  protected void doDump(Instances data) throws Exception {
+    if (m_Delay > 0)
+      Thread.sleep(m_Delay);
+    if (m_Fail)
+      throw new Exception("Failing as requested");
+    synchronized (this) {
+      m_Dumps.add(new Instances(data));
+    }
+  }
+
+  /**
+   * Flushes the buffered instances and counts the call.
+   *
+   * @throws Exception	if flushing fails
+   */
+  @Override
+  public void flush() throws Exception {
+    super.flush();
+    synchronized (this) {
+      m_Flushes++;
+    }
+  }
+
+  /**
+   * Closes the dumper and counts the call.
+   *
+   * @throws Exception	if closing fails
+   */
+  @Override
+  public void close() throws Exception {
+    synchronized (this) {
+      m_Closes++;
+    }
+    super.close();
+  }
+
+  /**
+   * Returns the recorded dumps.
+   *
+   * @return		the dumps
+   */
+  public synchronized List<Instances> getDumps() {
+    return new ArrayList<Instances>(m_Dumps);
+  }
+
+  /**
+   * Returns the total number of dumped rows.
+   *
+   * @return		the rows
+   */
+  public synchronized int getNumRows() {
+    int		result;
+
+    result = 0;
+    for (Instances data: m_Dumps)
+      result += data.numInstances();
+
+    return result;
+  }
+
+  /**
+   * Returns the number of flush calls.
+   *
+   * @return		the number of calls
+   */
+  public synchronized int getNumFlushes() {
+    return m_Flushes;
+  }
+
+  /**
+   * Returns the number of close calls.
+   *
+   * @return		the number of calls
+   */
+  public synchronized int getNumCloses() {
+    return m_Closes;
+  }
+}
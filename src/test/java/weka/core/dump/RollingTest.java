@@ -0,0 +1,201 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RollingTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+
+/**
+ * Tests the Rolling dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class RollingTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public RollingTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("rolling");
+  }
+
+  /**
+   * Removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @return		the dumper
+   */
+  protected Rolling newDumper() {
+    Rolling	result;
+
+    result = new Rolling();
+    result.setOutputDir(m_Dir);
+    result.setCompress(false);
+    return result;
+  }
+
+  /**
+   * Waits for the background thread to process the completed segments.
+   *
+   * @param dumper	the dumper
+   * @param count	the expected number of completed segments
+   * @throws Exception	if waiting fails
+   */
+  protected void waitForSegments(Rolling dumper, int count) throws Exception {
+    int		i;
+
+    for (i = 0; (i < 100) && (dumper.getCompletedSegments().length != count); i++)
+      Thread.sleep(50);
+  }
+
+  /**
+   * Incrementally dumped instances must get written at the flush interval,
+   * without calling flush().
+   *
+   * @throws Exception	if test fails
+   */
+  public void testFlushInterval() throws Exception {
+    Rolling	dumper;
+    Instances	data;
+    File	segment;
+    int		i;
+
+    data   = DumpTestHelper.newData(20);
+    dumper = newDumper();
+    dumper.setFlushInterval(100);
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      dumper.dumpInstance(data.instance(i));
+
+    segment = dumper.getSegment();
+    for (i = 0; (i < 50) && (segment.length() == 0); i++)
+      Thread.sleep(50);
+    assertEquals(20, DataSource.read(segment.getAbsolutePath()).numInstances());
+
+    dumper.close();
+    assertNull(dumper.getSegment());
+    waitForSegments(dumper, 1);
+    assertEquals(1, dumper.getCompletedSegments().length);
+  }
+
+  /**
+   * Segments must get rotated once full, and the oldest ones removed.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testRotation() throws Exception {
+    Rolling	dumper;
+    Instances	data;
+    File[]	segments;
+    int		i;
+    int		rows;
+
+    data   = DumpTestHelper.newData(50);
+    dumper = newDumper();
+    dumper.setMaxSize(1);
+    dumper.setMaxSegments(3);
+    for (i = 0; i < 5; i++)
+      dumper.dump(data);
+    dumper.close();
+    waitForSegments(dumper, 3);
+
+    segments = dumper.getCompletedSegments();
+    assertEquals(3, segments.length);
+    rows = 0;
+    for (File segment: segments)
+      rows += DataSource.read(segment.getAbsolutePath()).numInstances();
+    assertEquals(150, rows);
+  }
+
+  /**
+   * Completed segments must get compressed.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testCompression() throws Exception {
+    Rolling	dumper;
+    File[]	segments;
+    int		i;
+
+    dumper = newDumper();
+    dumper.setCompress(true);
+    dumper.dump(DumpTestHelper.newData(50));
+    dumper.close();
+    segments = dumper.getCompletedSegments();
+    for (i = 0; (i < 100) && ((segments.length != 1) || !segments[0].getName().endsWith(Rolling.EXTENSION_GZ)); i++) {
+      Thread.sleep(50);
+      segments = dumper.getCompletedSegments();
+    }
+    assertEquals(1, segments.length);
+    assertTrue(segments[0].getName(), segments[0].getName().endsWith(".arff" + Rolling.EXTENSION_GZ));
+    assertEquals(50, DataSource.read(segments[0].getAbsolutePath()).numInstances());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(RollingTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
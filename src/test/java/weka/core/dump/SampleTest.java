@@ -0,0 +1,251 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SampleTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+/**
+ * Tests the Sample dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SampleTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SampleTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param base	the base dumper
+   * @param mode	the sampling mode
+   * @return		the dumper
+   */
+  protected Sample newDumper(AbstractDumper base, int mode) {
+    Sample	result;
+
+    result = new Sample();
+    result.setDumper(base);
+    result.setMode(new SelectedTag(mode, Sample.TAGS_MODE));
+    result.setSeed(1);
+    return result;
+  }
+
+  /**
+   * Checks whether the sample is a subsequence of the data.
+   *
+   * @param data	the full data
+   * @param sample	the sample
+   */
+  protected void assertSubsequence(Instances data, Instances sample) {
+    int		i;
+    int		n;
+
+    n = 0;
+    for (i = 0; i < sample.numInstances(); i++) {
+      while ((n < data.numInstances()) && !data.instance(n).toString().equals(sample.instance(i).toString()))
+	n++;
+      assertTrue("row " + i + " not found in order", n < data.numInstances());
+      n++;
+    }
+  }
+
+  /**
+   * Reservoir sampling must produce the requested number of rows in the
+   * original order, reproducibly.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testReservoir() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+    Instances		data;
+    Instances		sample;
+
+    data   = DumpTestHelper.newData(1000);
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_RESERVOIR);
+    dumper.setSampleSize(50);
+    dumper.dump(data);
+    dumper.dump(data);
+    dumper.dump(new Instances(data, 0, 20));
+
+    sample = base.getDumps().get(0);
+    assertEquals(50, sample.numInstances());
+    assertSubsequence(data, sample);
+    assertEquals(sample.toString(), base.getDumps().get(1).toString());
+    assertEquals(20, base.getDumps().get(2).numInstances());
+  }
+
+  /**
+   * Incremental reservoir sampling must forward the sample when closed.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testReservoirIncremental() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+    Instances		data;
+    int			i;
+
+    data   = DumpTestHelper.newData(500);
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_RESERVOIR);
+    dumper.setSampleSize(30);
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      dumper.dumpInstance(data.instance(i));
+    assertEquals(0, base.getNumRows());
+    dumper.close();
+    assertEquals(30, base.getNumRows());
+    assertSubsequence(data, base.getDumps().get(0));
+  }
+
+  /**
+   * Periodic flushes must not reset the reservoir, the sample keeps its
+   * fixed size and gets forwarded once at the end of the stream.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testReservoirFlushes() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+    Instances		data;
+    int			i;
+
+    data   = DumpTestHelper.newData(200);
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_RESERVOIR);
+    dumper.setSampleSize(20);
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++) {
+      dumper.dumpInstance(data.instance(i));
+      if ((i + 1) % 50 == 0)
+	dumper.flush();
+    }
+    assertEquals(0, base.getNumRows());
+    assertEquals(4, base.getNumFlushes());
+
+    // a new stream ends the current one
+    dumper.dumpHeader(data);
+    assertEquals(20, base.getNumRows());
+    dumper.dumpInstance(data.instance(0));
+    dumper.close();
+    assertEquals(21, base.getNumRows());
+    assertEquals(2, base.getDumps().size());
+    assertSubsequence(data, base.getDumps().get(0));
+  }
+
+  /**
+   * Bernoulli sampling must select roughly the requested percentage.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testBernoulli() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+    Instances		data;
+    int			rows;
+
+    data   = DumpTestHelper.newData(5000);
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_BERNOULLI);
+    dumper.setPercentage(10);
+    dumper.dump(data);
+
+    rows = base.getNumRows();
+    assertTrue("rows: " + rows, (rows > 400) && (rows < 600));
+    assertSubsequence(data, base.getDumps().get(0));
+  }
+
+  /**
+   * Stratified sampling must select the percentage per class value
+   * (rounded up or down).
+   *
+   * @throws Exception	if test fails
+   */
+  public void testStratified() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+    Instances		data;
+    Instances		sample;
+    int[]		full;
+    int[]		sampled;
+    int			i;
+
+    data   = DumpTestHelper.newData(1000);
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_STRATIFIED);
+    dumper.setPercentage(10);
+    dumper.dump(data);
+
+    sample  = base.getDumps().get(0);
+    full    = data.attributeStats(data.classIndex()).nominalCounts;
+    sampled = sample.attributeStats(sample.classIndex()).nominalCounts;
+    for (i = 0; i < full.length; i++)
+      assertTrue("class " + i + ": " + sampled[i] + " of " + full[i], Math.abs(sampled[i] - full[i] / 10.0) < 1.0);
+  }
+
+  /**
+   * Closing must close the base dumper.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testClose() throws Exception {
+    RecordingDumper	base;
+    Sample		dumper;
+
+    base   = new RecordingDumper();
+    dumper = newDumper(base, Sample.MODE_BERNOULLI);
+    dumper.dump(DumpTestHelper.newData(10));
+    dumper.close();
+    assertEquals(1, base.getNumCloses());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SampleTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
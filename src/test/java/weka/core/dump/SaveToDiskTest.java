@@ -0,0 +1,373 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SaveToDiskTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the SaveToDisk dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SaveToDiskTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SaveToDiskTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("savetodisk");
+  }
+
+  /**
+   * Removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param file	the output file
+   * @return		the dumper
+   */
+  protected SaveToDisk newDumper(File file) {
+    SaveToDisk	result;
+
+    result = new SaveToDisk();
+    result.setOutputFile(file);
+    result.setDeduplicate(true);
+    return result;
+  }
+
+  /**
+   * Reads the first line of the file.
+   *
+   * @param file	the file to read
+   * @return		the line
+   * @throws Exception	if reading fails
+   */
+  protected String readLine(File file) throws Exception {
+    BufferedReader	reader;
+
+    reader = new BufferedReader(new FileReader(file));
+    try {
+      return reader.readLine();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Identical data dumped to another file must only be referenced.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testReference() throws Exception {
+    Instances	data;
+    File	first;
+    File	second;
+
+    data   = DumpTestHelper.newData(50);
+    first  = new File(m_Dir, "first.arff");
+    second = new File(m_Dir, "second.arff");
+    newDumper(first).dump(data);
+    newDumper(second).dump(new Instances(data));
+
+    assertTrue(first.exists());
+    assertFalse(second.exists());
+    assertEquals(first.getAbsolutePath(), readLine(new File(second.getPath() + SaveToDisk.REFERENCE_EXTENSION)));
+  }
+
+  /**
+   * Dumping A, B, A to the same file must leave A in the file, even if
+   * B has the same size and the file system's timestamps are too coarse
+   * to tell the difference.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSameFileOverwritten() throws Exception {
+    Instances	a;
+    Instances	b;
+    File	file;
+    SaveToDisk	dumper;
+    long	modified;
+
+    a = DumpTestHelper.newData(50);
+    b = new Instances(a);
+    b.swap(0, 1);
+    file   = new File(m_Dir, "same.arff");
+    dumper = newDumper(file);
+    dumper.dump(a);
+    modified = file.lastModified();
+    dumper.dump(b);
+    file.setLastModified(modified);
+    dumper.dump(a);
+
+    assertEquals(a.toString(), DataSource.read(file.getAbsolutePath()).toString());
+  }
+
+  /**
+   * Dumping A, B (a duplicate of an earlier file), C to the same file must
+   * only ever leave either the data file or the reference file, matching
+   * the last dump.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDataOrReference() throws Exception {
+    Instances	a;
+    Instances	b;
+    Instances	c;
+    File	earlier;
+    File	file;
+    File	reference;
+    SaveToDisk	dumper;
+
+    a = DumpTestHelper.newData(50);
+    b = DumpTestHelper.newData(20);
+    c = DumpTestHelper.newData(30);
+    earlier   = new File(m_Dir, "earlier.arff");
+    file      = new File(m_Dir, "out.arff");
+    reference = new File(file.getPath() + SaveToDisk.REFERENCE_EXTENSION);
+    newDumper(earlier).dump(b);
+    dumper = newDumper(file);
+
+    dumper.dump(a);
+    assertTrue(file.exists());
+    assertFalse(reference.exists());
+
+    dumper.dump(b);
+    assertFalse(file.exists());
+    assertEquals(earlier.getAbsolutePath(), readLine(reference));
+
+    dumper.dump(c);
+    assertFalse(reference.exists());
+    assertEquals(c.toString(), DataSource.read(file.getAbsolutePath()).toString());
+
+    // A is not in the file anymore, must get written again
+    dumper.dump(a);
+    assertFalse(reference.exists());
+    assertEquals(a.toString(), DataSource.read(file.getAbsolutePath()).toString());
+  }
+
+  /**
+   * A file that got overwritten by another (non-deduplicating) dumper must
+   * not be referenced anymore.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testOverwrittenByOther() throws Exception {
+    Instances	a;
+    Instances	b;
+    File	first;
+    File	second;
+    SaveToDisk	other;
+
+    a      = DumpTestHelper.newData(50);
+    b      = DumpTestHelper.newData(20);
+    first  = new File(m_Dir, "first.arff");
+    second = new File(m_Dir, "second.arff");
+    newDumper(first).dump(a);
+    other = newDumper(first);
+    other.setDeduplicate(false);
+    other.dump(b);
+    newDumper(second).dump(a);
+
+    assertTrue(second.exists());
+    assertEquals(a.toString(), DataSource.read(second.getAbsolutePath()).toString());
+  }
+
+  /**
+   * The map of written files must not grow beyond its maximum size.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testBounded() throws Exception {
+    SaveToDisk.BoundedMap<Integer, Integer>	map;
+    int						i;
+
+    map = new SaveToDisk.BoundedMap<Integer, Integer>(10);
+    for (i = 0; i < 100; i++)
+      map.put(i, i);
+    assertEquals(10, map.size());
+    assertTrue(map.containsKey(99));
+    assertFalse(map.containsKey(0));
+  }
+
+  /**
+   * Concurrent dumps to the same file must not interleave.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testConcurrentSameFile() throws Exception {
+    final Instances	data;
+    final File		file;
+    final List<Exception>	errors;
+    Thread[]		threads;
+    int			i;
+
+    data    = DumpTestHelper.newData(500);
+    file    = new File(m_Dir, "concurrent.arff");
+    errors  = Collections.synchronizedList(new ArrayList<Exception>());
+    threads = new Thread[8];
+    for (i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  SaveToDisk dumper = new SaveToDisk();
+	  dumper.setOutputFile(file);
+	  try {
+	    for (int n = 0; n < 5; n++)
+	      dumper.dump(data);
+	  }
+	  catch (Exception e) {
+	    errors.add(e);
+	  }
+	}
+      });
+      threads[i].start();
+    }
+    for (Thread thread: threads)
+      thread.join();
+
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertEquals(data.toString(), DataSource.read(file.getAbsolutePath()).toString());
+  }
+
+  /**
+   * Concurrent dumps with timestamp must produce separate files.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testConcurrentTimestamp() throws Exception {
+    final Instances	data;
+    Thread[]		threads;
+    int			i;
+
+    data    = DumpTestHelper.newData(10);
+    threads = new Thread[8];
+    for (i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  SaveToDisk dumper = new SaveToDisk();
+	  dumper.setOutputFile(new File(m_Dir, "out.arff"));
+	  dumper.setAppendTimestamp(true);
+	  try {
+	    for (int n = 0; n < 5; n++)
+	      dumper.dump(data);
+	  }
+	  catch (Exception e) {
+	    e.printStackTrace();
+	  }
+	}
+      });
+      threads[i].start();
+    }
+    for (Thread thread: threads)
+      thread.join();
+
+    assertEquals(40, m_Dir.listFiles().length);
+  }
+
+  /**
+   * Locks must be shared while in use and get removed once no longer used.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testLocks() throws Exception {
+    Object	lock;
+    int		i;
+    int		size;
+
+    lock = SaveToDisk.getLock(new File(m_Dir, "locked.arff"));
+    assertSame(lock, SaveToDisk.getLock(new File(m_Dir, "locked.arff")));
+    assertNotSame(lock, SaveToDisk.getLock(new File(m_Dir, "other.arff")));
+
+    for (i = 0; i < 10000; i++) {
+      synchronized (SaveToDisk.getLock(new File(m_Dir, "file-" + i + ".arff"))) {
+	// nothing to do
+      }
+    }
+    size = Integer.MAX_VALUE;
+    for (i = 0; (i < 50) && (size > 100); i++) {
+      System.gc();
+      Thread.sleep(20);
+      SaveToDisk.getLock(new File(m_Dir, "locked.arff"));
+      synchronized (SaveToDisk.m_Locks) {
+	size = SaveToDisk.m_Locks.size();
+      }
+    }
+    assertTrue("locks: " + size, size <= 100);
+    assertSame(lock, SaveToDisk.getLock(new File(m_Dir, "locked.arff")));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SaveToDiskTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
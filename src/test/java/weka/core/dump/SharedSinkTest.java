@@ -0,0 +1,166 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedSinkTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the SharedSink dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SharedSinkTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SharedSinkTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("sharedsink");
+  }
+
+  /**
+   * Closes the sinks and removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    SharedSink.closeAll();
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Concurrent dumpers must end up in the same file, each with its own
+   * source, also when waiting for the writer thread.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testConcurrent() throws Exception {
+    final Instances		data;
+    final File			file;
+    final List<Exception>	errors;
+    Thread[]			threads;
+    Instances			written;
+    int				i;
+
+    data    = DumpTestHelper.newData(50);
+    file    = new File(m_Dir, "shared.arff");
+    errors  = Collections.synchronizedList(new ArrayList<Exception>());
+    threads = new Thread[8];
+    for (i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(new Runnable() {
+	@Override
+	public void run() {
+	  SharedSink dumper = new SharedSink();
+	  dumper.setOutputFile(file);
+	  dumper.setMaxPending(1);
+	  try {
+	    for (int n = 0; n < 20; n++)
+	      dumper.dump(data);
+	    dumper.flush();
+	  }
+	  catch (Exception e) {
+	    errors.add(e);
+	  }
+	}
+      });
+      threads[i].start();
+    }
+    for (Thread thread: threads)
+      thread.join();
+    assertTrue(errors.toString(), errors.isEmpty());
+
+    // flushed, but still open
+    written = DataSource.read(file.getAbsolutePath());
+    assertEquals(8 * 20 * 50, written.numInstances());
+    assertEquals(data.numAttributes() + 1, written.numAttributes());
+    assertEquals("source", written.attribute(written.numAttributes() - 1).name());
+    assertEquals(8, written.attribute(written.numAttributes() - 1).numValues());
+
+    SharedSink.close(file);
+    assertEquals(8 * 20 * 50, DataSource.read(file.getAbsolutePath()).numInstances());
+  }
+
+  /**
+   * Incompatible data must get rejected.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testIncompatible() throws Exception {
+    SharedSink	dumper;
+
+    dumper = new SharedSink();
+    dumper.setOutputFile(new File(m_Dir, "shared.csv"));
+    dumper.dump(DumpTestHelper.newData(10));
+    try {
+      dumper.dump(DumpTestHelper.newNumericData(10));
+      fail("no exception");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SharedSinkTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
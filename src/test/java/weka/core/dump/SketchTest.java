@@ -0,0 +1,197 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SketchTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests the Sketch dumper and the count-min sketch.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SketchTest
+  extends TestCase {
+
+  /** the directory for the output. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SketchTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the output directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Dir = DumpTestHelper.newTempDir("sketch");
+  }
+
+  /**
+   * Removes the output directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_Dir);
+    super.tearDown();
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param state	the state file
+   * @return		the dumper
+   */
+  protected Sketch newDumper(File state) {
+    Sketch	result;
+
+    result = new Sketch();
+    result.setStateFile(state);
+    result.setOutputFile(new File(m_Dir, "profile.json"));
+    return result;
+  }
+
+  /**
+   * The profile must not store the values of string attributes.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testStringFree() throws Exception {
+    Sketch	dumper;
+    Instances	data;
+    int		i;
+
+    data   = DumpTestHelper.newData(100);
+    dumper = newDumper(m_Dir);
+    dumper.dump(data);
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (data.attribute(i).isString())
+	assertEquals(0, dumper.getProfile().getHeader().attribute(i).numValues());
+    }
+    assertEquals(100, dumper.getProfile().getRows());
+  }
+
+  /**
+   * The state file must accumulate the profiles of compatible data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testStateFile() throws Exception {
+    File	state;
+
+    state = new File(m_Dir, "state.ser");
+    newDumper(state).dump(DumpTestHelper.newData(100));
+    newDumper(state).dump(DumpTestHelper.newData(50));
+    assertEquals(150, Sketch.read(state).getRows());
+  }
+
+  /**
+   * An incompatible state file must get renamed rather than overwritten.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testIncompatibleStateFile() throws Exception {
+    File	state;
+    File[]	backups;
+
+    state = new File(m_Dir, "state.ser");
+    newDumper(state).dump(DumpTestHelper.newData(100));
+    newDumper(state).dump(DumpTestHelper.newNumericData(30));
+
+    assertEquals(30, Sketch.read(state).getRows());
+    backups = m_Dir.listFiles();
+    assertNotNull(backups);
+    for (File backup: backups) {
+      if (backup.getName().endsWith(Sketch.EXTENSION_INCOMPATIBLE)) {
+	assertEquals(100, Sketch.read(backup).getRows());
+	return;
+      }
+    }
+    fail("no renamed state file");
+  }
+
+  /**
+   * The count-min sketch must keep track of the most frequent values, also
+   * after serialization.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testHeavyHitters() throws Exception {
+    CountMinSketch			sketch;
+    List<Map.Entry<String, Long>>	top;
+    int					i;
+
+    sketch = new CountMinSketch(1024, 5, 3);
+    for (i = 0; i < 10000; i++)
+      sketch.add("v" + (i % 100), 1);
+    sketch.add("a", 500);
+    sketch.add("b", 400);
+    SerializationHelper.write(new File(m_Dir, "sketch.ser").getAbsolutePath(), sketch);
+    sketch = (CountMinSketch) SerializationHelper.read(new File(m_Dir, "sketch.ser").getAbsolutePath());
+    sketch.add("c", 300);
+    for (i = 0; i < 10000; i++)
+      sketch.add("w" + (i % 1000), 1);
+
+    top = sketch.getHeavyHitters();
+    assertEquals(3, top.size());
+    assertEquals("a", top.get(0).getKey());
+    assertEquals("b", top.get(1).getKey());
+    assertEquals("c", top.get(2).getKey());
+    assertTrue(top.get(0).getValue() >= 500);
+    assertEquals(21200, sketch.getTotal());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SketchTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SocketStreamTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests the SocketStream dumper together with the SocketReceiver.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SocketStreamTest
+  extends TestCase {
+
+  /** the receiver. */
+  protected SocketReceiver m_Receiver;
+
+  /** the dumper. */
+  protected SocketStream m_Dumper;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public SocketStreamTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Starts the receiver and sets up the dumper.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_Receiver = new SocketReceiver(0);
+    m_Dumper   = new SocketStream();
+    m_Dumper.setHost("localhost");
+    m_Dumper.setPort(m_Receiver.start());
+  }
+
+  /**
+   * Closes the dumper and stops the receiver.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Dumper.close();
+    m_Receiver.stop();
+    super.tearDown();
+  }
+
+  /**
+   * Generates the data, with weights and missing values (incl string).
+   * The header gets sent as ARFF, hence without class attribute.
+   *
+   * @return		the data
+   * @throws Exception	if generation fails
+   */
+  protected Instances newData() throws Exception {
+    Instances	result;
+    int		i;
+
+    result = DumpTestHelper.newData(50);
+    result.setClassIndex(-1);
+    for (i = 0; i < result.numInstances(); i += 7)
+      result.instance(i).setWeight(0.5 + i);
+    for (i = 0; i < result.numAttributes(); i++)
+      result.instance(3).setValue(i, Utils.missingValue());
+
+    return result;
+  }
+
+  /**
+   * The receiver must reconstruct the dumped batch.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testRoundTrip() throws Exception {
+    Instances	data;
+    Instances	received;
+    int		i;
+
+    data = newData();
+    m_Dumper.dump(data);
+    m_Dumper.flush();
+    assertTrue(m_Receiver.waitFor(data.numInstances(), 10000));
+
+    received = m_Receiver.getData();
+    assertTrue(data.equalHeaders(received));
+    assertEquals(data.toString(), received.toString());
+    for (i = 0; i < data.numInstances(); i++)
+      assertEquals(data.instance(i).weight(), received.instance(i).weight(), 0.0);
+    assertEquals(0, m_Dumper.getDropped());
+  }
+
+  /**
+   * The listeners must receive the header once and each instance dumped
+   * one by one, in order.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testInstances() throws Exception {
+    Instances			data;
+    final List<Instances>	headers;
+    final List<Instance>	instances;
+    int				i;
+
+    headers   = new ArrayList<Instances>();
+    instances = new ArrayList<Instance>();
+    m_Receiver.addListener(new SocketReceiver.Listener() {
+      @Override
+      public void headerReceived(Instances header) {
+	headers.add(header);
+      }
+      @Override
+      public void instanceReceived(Instance inst) {
+	instances.add(inst);
+      }
+    });
+
+    data = newData();
+    m_Dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      m_Dumper.dumpInstance(data.instance(i));
+    m_Dumper.flush();
+    assertTrue(m_Receiver.waitFor(data.numInstances(), 10000));
+
+    synchronized (m_Receiver) {
+      assertEquals(1, headers.size());
+      assertTrue(data.equalHeaders(headers.get(0)));
+      assertEquals(data.numInstances(), instances.size());
+      for (i = 0; i < data.numInstances(); i++)
+	assertEquals(data.instance(i).toString(), instances.get(i).toString());
+    }
+  }
+
+  /**
+   * Without a receiver, a dropping policy must drop the data rather than
+   * block or fail.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDropWithoutReceiver() throws Exception {
+    Instances	data;
+
+    m_Receiver.stop();
+    m_Dumper.setPolicy(new SelectedTag(Async.POLICY_DROP_NEWEST, Async.TAGS_POLICY));
+    data = newData();
+    m_Dumper.dump(data);
+    m_Dumper.flush();
+    assertEquals(data.numInstances(), m_Dumper.getDropped());
+    assertEquals(0, m_Receiver.getReceived());
+  }
+
+  /**
+   * With a buffer too small for any instance, only the header must get
+   * sent and counted as bytes, all instances must count as dropped.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDropBytes() throws Exception {
+    Instances	data;
+    long	bytes;
+    long	written;
+
+    m_Dumper.setBufferSize(1);
+    m_Dumper.setPolicy(new SelectedTag(Async.POLICY_DROP_NEWEST, Async.TAGS_POLICY));
+    data  = newData();
+    bytes = m_Dumper.getMetrics().getBytes();
+    m_Dumper.dump(data);
+    m_Dumper.flush();
+    written = m_Dumper.getConnection().getWritten();
+    assertTrue(written > 0);
+    assertEquals(written, m_Dumper.getMetrics().getBytes() - bytes);
+    assertEquals(data.numInstances(), m_Dumper.getDropped());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(SocketStreamTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StatisticsTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.AttributeStats;
+import weka.core.Instances;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+/**
+ * Tests the Statistics dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class StatisticsTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public StatisticsTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the tolerance for comparing the value (relative for large
+   * values, e.g., dates).
+   *
+   * @param expected	the expected value
+   * @return		the tolerance
+   */
+  protected double delta(double expected) {
+    return 1e-9 * Math.max(1.0, Math.abs(expected));
+  }
+
+  /**
+   * Compares the statistics with the ones computed by Weka.
+   *
+   * @param data	the data
+   * @param stats	the statistics to check
+   */
+  protected void check(Instances data, Statistics.Summary[] stats) {
+    AttributeStats	expected;
+    int			i;
+    int			n;
+
+    assertEquals(data.numAttributes(), stats.length);
+    for (i = 0; i < data.numAttributes(); i++) {
+      expected = data.attributeStats(i);
+      assertEquals(data.attribute(i).name(), stats[i].getName());
+      assertEquals(expected.missingCount, stats[i].getMissing());
+      assertEquals(data.numInstances() - expected.missingCount, stats[i].getCount());
+      if (data.attribute(i).isNumeric()) {
+	assertEquals(expected.numericStats.min, stats[i].getMin(), delta(expected.numericStats.min));
+	assertEquals(expected.numericStats.max, stats[i].getMax(), delta(expected.numericStats.max));
+	assertEquals(expected.numericStats.mean, stats[i].getMean(), delta(expected.numericStats.mean));
+	assertEquals(Math.pow(expected.numericStats.stdDev, 2), stats[i].getVariance(), delta(Math.pow(expected.numericStats.stdDev, 2)));
+      }
+      if (data.attribute(i).isNominal()) {
+	for (n = 0; n < data.attribute(i).numValues(); n++)
+	  assertEquals(expected.nominalCounts[n], stats[i].getFrequencies()[n]);
+      }
+    }
+  }
+
+  /**
+   * Adds missing values to the data.
+   *
+   * @param data	the data to modify
+   * @return		the data
+   */
+  protected Instances addMissing(Instances data) {
+    int		i;
+
+    for (i = 0; i < data.numInstances(); i++)
+      data.instance(i).setMissing(i % data.numAttributes());
+    return data;
+  }
+
+  /**
+   * The statistics must match Weka's, sequential and parallel.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testCompute() throws Exception {
+    Instances	data;
+
+    data = addMissing(DumpTestHelper.newData(300));
+    check(data, Statistics.compute(data, Integer.MAX_VALUE));
+    check(data, Statistics.compute(data, 1));
+  }
+
+  /**
+   * Incrementally dumped instances must result in the same statistics.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testIncremental() throws Exception {
+    Statistics	dumper;
+    Instances	data;
+    int		i;
+
+    data   = addMissing(DumpTestHelper.newData(300));
+    dumper = new Statistics();
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      dumper.dumpInstance(data.instance(i));
+    dumper.flush();
+    check(data, dumper.getLastStatistics());
+  }
+
+  /**
+   * The CSV output must contain one row per attribute and dump, with a
+   * single header row when appending.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testCSV() throws Exception {
+    Statistics		dumper;
+    Instances		data;
+    File		dir;
+    File		file;
+    BufferedReader	reader;
+    String		line;
+    int			lines;
+
+    data = DumpTestHelper.newData(50);
+    dir  = DumpTestHelper.newTempDir("statistics");
+    try {
+      file   = new File(dir, "stats.csv");
+      dumper = new Statistics();
+      dumper.setOutputFile(file);
+      dumper.setAppend(true);
+      dumper.dump(data);
+      dumper.dump(data);
+
+      reader = new BufferedReader(new FileReader(file));
+      try {
+	assertTrue(reader.readLine().startsWith(Statistics.CSV_COLUMNS[0] + ","));
+	lines = 0;
+	while ((line = reader.readLine()) != null) {
+	  assertFalse(line.startsWith(Statistics.CSV_COLUMNS[0] + ","));
+	  lines++;
+	}
+      }
+      finally {
+	reader.close();
+      }
+      assertEquals(2 * data.numAttributes(), lines);
+    }
+    finally {
+      DumpTestHelper.delete(dir);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(StatisticsTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
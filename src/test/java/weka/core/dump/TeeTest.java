@@ -0,0 +1,183 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * TeeTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.dump;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+
+/**
+ * Tests the Tee dumper.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class TeeTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public TeeTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the dumper.
+   *
+   * @param failure	the failure handling
+   * @param dumpers	the dumpers to forward the data to
+   * @return		the dumper
+   */
+  protected Tee newDumper(int failure, AbstractDumper... dumpers) {
+    Tee		result;
+
+    result = new Tee();
+    result.setDumpers(dumpers);
+    result.setFailure(new SelectedTag(failure, Tee.TAGS_FAILURE));
+    return result;
+  }
+
+  /**
+   * All dumpers must receive the data, concurrently.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testForward() throws Exception {
+    RecordingDumper[]	base;
+    Tee			dumper;
+    Instances		data;
+    long		start;
+    int			i;
+
+    base = new RecordingDumper[3];
+    for (i = 0; i < base.length; i++) {
+      base[i] = new RecordingDumper();
+      base[i].setDelay(300);
+    }
+    dumper = newDumper(Tee.FAILURE_FAIL_FAST, base);
+    data   = DumpTestHelper.newData(25);
+    start  = System.currentTimeMillis();
+    dumper.dump(data);
+    assertTrue("not concurrent", System.currentTimeMillis() - start < 800);
+
+    for (i = 0; i < base.length; i++)
+      assertEquals(25, base[i].getNumRows());
+    assertEquals(3, dumper.getLastTimings().length);
+    assertTrue(dumper.getTotalTimings()[0] >= 300);
+  }
+
+  /**
+   * Fail-fast must throw an exception.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testFailFast() throws Exception {
+    RecordingDumper	ok;
+    RecordingDumper	failing;
+    Tee			dumper;
+
+    ok      = new RecordingDumper();
+    failing = new RecordingDumper();
+    failing.setFail(true);
+    dumper = newDumper(Tee.FAILURE_FAIL_FAST, ok, failing);
+    try {
+      dumper.dump(DumpTestHelper.newData(10));
+      fail("no exception");
+    }
+    catch (Exception e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Dumper #2 failed"));
+    }
+  }
+
+  /**
+   * Best-effort must not throw an exception and the other dumpers still
+   * receive the data.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testBestEffort() throws Exception {
+    RecordingDumper	ok;
+    RecordingDumper	failing;
+    Tee			dumper;
+    Exception[]		errors;
+
+    ok      = new RecordingDumper();
+    failing = new RecordingDumper();
+    failing.setFail(true);
+    dumper = newDumper(Tee.FAILURE_BEST_EFFORT, failing, ok);
+    dumper.dump(DumpTestHelper.newData(10));
+
+    assertEquals(10, ok.getNumRows());
+    errors = dumper.getLastErrors();
+    assertNotNull(errors[0]);
+    assertNull(errors[1]);
+  }
+
+  /**
+   * Closing must close all dumpers, best-effort also if one of them fails.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testClose() throws Exception {
+    RecordingDumper	ok;
+    RecordingDumper	failing;
+    Tee			dumper;
+    Instances		data;
+    int			i;
+
+    ok      = new RecordingDumper();
+    failing = new RecordingDumper();
+    dumper  = newDumper(Tee.FAILURE_BEST_EFFORT, failing, ok);
+    data    = DumpTestHelper.newData(10);
+    dumper.dumpHeader(data);
+    for (i = 0; i < data.numInstances(); i++)
+      dumper.dumpInstance(data.instance(i));
+    failing.setFail(true);
+    dumper.close();
+
+    assertEquals(10, ok.getNumRows());
+    assertEquals(1, ok.getNumCloses());
+    assertEquals(1, failing.getNumCloses());
+    assertNotNull(dumper.getLastErrors()[0]);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(TeeTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CachingFilterTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.dump.DiskCache;
+import weka.core.dump.DumpTestHelper;
+import weka.filters.unsupervised.attribute.Standardize;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+
+/**
+ * Tests the CachingFilter.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class CachingFilterTest
+  extends TestCase {
+
+  /** the temporary directory. */
+  protected File m_TmpDir;
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public CachingFilterTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Creates the temporary directory.
+   *
+   * @throws Exception	if setup fails
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    m_TmpDir = DumpTestHelper.newTempDir("cachingfilter");
+  }
+
+  /**
+   * Removes the temporary directory.
+   *
+   * @throws Exception	if tear down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    DumpTestHelper.delete(m_TmpDir);
+    super.tearDown();
+  }
+
+  /**
+   * Returns a new filter using Standardize as base filter and a cache
+   * directory that does not exist yet.
+   *
+   * @return		the filter
+   */
+  protected CachingFilter newFilter() {
+    CachingFilter	result;
+
+    result = new CachingFilter();
+    result.setFilter(new Standardize());
+    result.setCacheDir(new File(m_TmpDir, "cache"));
+
+    return result;
+  }
+
+  /**
+   * Filters the training and test batch.
+   *
+   * @param filter	the filter to use
+   * @param train	the first batch
+   * @param test	the subsequent batch
+   * @return		the filtered batches
+   * @throws Exception	if filtering fails
+   */
+  protected Instances[] apply(Filter filter, Instances train, Instances test) throws Exception {
+    Instances[]	result;
+
+    filter.setInputFormat(train);
+    result    = new Instances[2];
+    result[0] = Filter.useFilter(train, filter);
+    result[1] = Filter.useFilter(test, filter);
+    result[0].setRelationName("filtered");
+    result[1].setRelationName("filtered");
+
+    return result;
+  }
+
+  /**
+   * Only the first batch may get cached, subsequent batches go through the
+   * trained filter; re-running loads the first batch from the cache.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testFirstBatchOnly() throws Exception {
+    Instances		train;
+    Instances		test;
+    Instances[]		expected;
+    Instances[]		actual;
+    CachingFilter	filter;
+    DiskCache		cache;
+
+    train    = DumpTestHelper.newData(100);
+    test     = DumpTestHelper.newData(30);
+    expected = apply(new Standardize(), train, test);
+
+    filter = newFilter();
+    actual = apply(filter, train, test);
+    cache  = filter.getCache();
+    assertEquals(expected[0].toString(), actual[0].toString());
+    assertEquals(expected[1].toString(), actual[1].toString());
+    assertEquals(1, cache.size());
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // re-run
+    filter = newFilter();
+    actual = apply(filter, train, test);
+    cache  = filter.getCache();
+    assertEquals(expected[0].toString(), actual[0].toString());
+    assertEquals(expected[1].toString(), actual[1].toString());
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getHits());
+    assertEquals(0, cache.getMisses());
+  }
+
+  /**
+   * The default cache directory must not be located in the shared temp
+   * directory.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDefaultDir() throws Exception {
+    File	tmp;
+    File	dir;
+
+    tmp = new File(System.getProperty("java.io.tmpdir")).getCanonicalFile();
+    dir = new CachingFilter().getCacheDir().getCanonicalFile();
+    assertEquals(DiskCache.getDefaultDir(CachingFilter.DEFAULT_CACHE_DIR).getCanonicalFile(), dir);
+    while (dir != null) {
+      assertFalse(dir.equals(tmp));
+      dir = dir.getParentFile();
+    }
+  }
+
+  /**
+   * Access to the cache directory must be restricted to the owner.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testOwnerOnly() throws Exception {
+    CachingFilter	filter;
+    File		dir;
+    Process		proc;
+    BufferedReader	reader;
+
+    if (File.separatorChar == '\\')
+      return;
+
+    filter = newFilter();
+    dir    = filter.getCacheDir();
+    assertTrue(dir.mkdirs());
+    assertTrue(dir.setReadable(true, false));
+    assertTrue(dir.setWritable(true, false));
+    apply(filter, DumpTestHelper.newData(20), DumpTestHelper.newData(10));
+    assertEquals(1, filter.getCache().size());
+
+    proc   = new ProcessBuilder("stat", "-c", "%a", dir.getAbsolutePath()).start();
+    reader = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+    try {
+      assertEquals("700", reader.readLine());
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(CachingFilterTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
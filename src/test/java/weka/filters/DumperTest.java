@@ -0,0 +1,102 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DumperTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.dump.DumpTestHelper;
+import weka.core.dump.RecordingDumper;
+
+/**
+ * Tests the Dumper filter.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class DumperTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public DumperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * The filter must output the same data as AllFilter and forward each
+   * batch to the dumper.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testTransparent() throws Exception {
+    RecordingDumper	base;
+    Dumper		dumper;
+    Instances		data;
+    Instances		test;
+    Instances		expected;
+    Instances		actual;
+    AllFilter		all;
+
+    data = DumpTestHelper.newData(100);
+    test = DumpTestHelper.newData(30);
+    base = new RecordingDumper();
+    dumper = new Dumper();
+    dumper.setDumper(base);
+    dumper.setInputFormat(data);
+    all = new AllFilter();
+    all.setInputFormat(data);
+
+    expected = Filter.useFilter(data, all);
+    actual   = Filter.useFilter(data, dumper);
+    actual.setRelationName(expected.relationName());
+    assertEquals(expected.toString(), actual.toString());
+    expected = Filter.useFilter(test, all);
+    actual   = Filter.useFilter(test, dumper);
+    actual.setRelationName(expected.relationName());
+    assertEquals(expected.toString(), actual.toString());
+
+    assertEquals(2, base.getDumps().size());
+    assertEquals(data.toString(), base.getDumps().get(0).toString());
+    assertEquals(test.toString(), base.getDumps().get(1).toString());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DumperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StreamingDumperTest.java
+ * Copyright (C) 2019 University of Waikato, Hamilton, NZ
+ */
+
+package weka.filters;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.core.dump.AbstractDumper;
+import weka.core.dump.DumpTestHelper;
+import weka.core.dump.RecordingDumper;
+import weka.core.dump.SaveToDisk;
+
+import java.io.File;
+
+/**
+ * Tests the StreamingDumper filter.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class StreamingDumperTest
+  extends TestCase {
+
+  /**
+   * Initializes the test.
+   *
+   * @param name	the name of the test
+   */
+  public StreamingDumperTest(String name) {
+    super(name);
+  }
+
+  /**
+   * The filter must pass the data through unchanged and the dumper receive
+   * the batch, flushed at the end.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testBatch() throws Exception {
+    StreamingDumper	filter;
+    RecordingDumper	dumper;
+    Instances		data;
+    Instances		filtered;
+
+    data   = DumpTestHelper.newData(50);
+    dumper = new RecordingDumper();
+    filter = new StreamingDumper();
+    filter.setDumper(dumper);
+    filter.setInputFormat(data);
+    filtered = Filter.useFilter(data, filter);
+
+    assertNull(filtered.equalHeadersMsg(data));
+    assertEquals(50, filtered.numInstances());
+    assertEquals(1, dumper.getDumps().size());
+    assertEquals(50, dumper.getNumRows());
+  }
+
+  /**
+   * A dump batch size must limit the number of buffered instances.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testDumpBatchSize() throws Exception {
+    StreamingDumper	filter;
+    RecordingDumper	dumper;
+    Instances		data;
+
+    data   = DumpTestHelper.newData(55);
+    dumper = new RecordingDumper();
+    filter = new StreamingDumper();
+    filter.setDumper(dumper);
+    filter.setDumpBatchSize(10);
+    filter.setInputFormat(data);
+    Filter.useFilter(data, filter);
+
+    assertEquals(6, dumper.getDumps().size());
+    for (Instances dump: dumper.getDumps())
+      assertTrue(dump.numInstances() <= 10);
+    assertEquals(55, dumper.getNumRows());
+  }
+
+  /**
+   * Instances filtered one by one after the first batch must get forwarded
+   * as well.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testAfterFirstBatch() throws Exception {
+    StreamingDumper	filter;
+    RecordingDumper	dumper;
+    Instances		data;
+    int			i;
+
+    data   = DumpTestHelper.newData(30);
+    dumper = new RecordingDumper();
+    filter = new StreamingDumper();
+    filter.setDumper(dumper);
+    filter.setInputFormat(data);
+    Filter.useFilter(new Instances(data, 0, 20), filter);
+    for (i = 20; i < 30; i++) {
+      assertTrue(filter.input(data.instance(i)));
+      assertNotNull(filter.output());
+    }
+    dumper.close();
+
+    assertEquals(30, dumper.getNumRows());
+  }
+
+  /**
+   * The dumper must get registered for closing at JVM exit only once per
+   * input format, with the first instance after the first batch.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testRegisterOnce() throws Exception {
+    StreamingDumper	filter;
+    RecordingDumper	dumper;
+    Instances		data;
+
+    data   = DumpTestHelper.newData(30);
+    dumper = new RecordingDumper();
+    filter = new StreamingDumper();
+    filter.setDumper(dumper);
+    filter.setInputFormat(data);
+    Filter.useFilter(new Instances(data, 0, 20), filter);
+    assertFalse(DumpTestHelper.isCloseAtExit(dumper));
+
+    filter.input(data.instance(20));
+    assertTrue(DumpTestHelper.isCloseAtExit(dumper));
+    AbstractDumper.removeCloseAtExit(dumper);
+    filter.input(data.instance(21));
+    assertFalse(DumpTestHelper.isCloseAtExit(dumper));
+
+    // new input format registers again
+    filter.setInputFormat(data);
+    Filter.useFilter(new Instances(data, 0, 20), filter);
+    filter.input(data.instance(22));
+    assertTrue(DumpTestHelper.isCloseAtExit(dumper));
+    AbstractDumper.removeCloseAtExit(dumper);
+  }
+
+  /**
+   * With SaveToDisk, the instances must get streamed to the file.
+   *
+   * @throws Exception	if test fails
+   */
+  public void testSaveToDisk() throws Exception {
+    StreamingDumper	filter;
+    SaveToDisk		dumper;
+    Instances		data;
+    File		dir;
+    File		file;
+
+    dir = DumpTestHelper.newTempDir("streamingdumper");
+    try {
+      file   = new File(dir, "out.arff");
+      data   = DumpTestHelper.newData(50);
+      dumper = new SaveToDisk();
+      dumper.setOutputFile(file);
+      filter = new StreamingDumper();
+      filter.setDumper(dumper);
+      filter.setInputFormat(data);
+      Filter.useFilter(data, filter);
+      assertEquals(50, DataSource.read(file.getAbsolutePath()).numInstances());
+      dumper.close();
+      assertEquals(data.toString(), DataSource.read(file.getAbsolutePath()).toString());
+    }
+    finally {
+      DumpTestHelper.delete(dir);
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(StreamingDumperTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    junit.textui.TestRunner.run(suite());
+  }
+}